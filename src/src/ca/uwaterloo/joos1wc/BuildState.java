@@ -0,0 +1,347 @@
+package ca.uwaterloo.joos1wc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ca.uwaterloo.joos1wc.analysis.DependencyVisitor;
+import ca.uwaterloo.joos1wc.ast.CompilationUnit;
+import ca.uwaterloo.joos1wc.ast.Literal;
+import ca.uwaterloo.joos1wc.ast.Modifier;
+import ca.uwaterloo.joos1wc.ast.TreeNode;
+import ca.uwaterloo.joos1wc.ast.Type;
+import ca.uwaterloo.joos1wc.ast.Type.FormalType;
+import ca.uwaterloo.joos1wc.ast.declaration.BodyDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.VariableDeclaration;
+import ca.uwaterloo.joos1wc.scanner.TokenCache;
+
+/**
+ * What the last successful compilation into an output directory was built from, so that the compile server only
+ * generates the code of the types an edit can change. Each source file is kept with the fingerprint of its contents, a
+ * description of the declarations of its types, the superclasses whose field initializers its code holds, and the
+ * types its code depends on, as collected by the DependencyVisitor.
+ *
+ * The code of a type is generated again when its source changed, when the declarations of one of its dependencies or
+ * supertypes changed, or when the source of a superclass whose field initializers it holds changed. Any change to the
+ * options or to the layout of the type tables generates everything again. The other types are reused: they are marked
+ * precompiled once the hierarchy is checked, so that, like the types of a library snapshot, only their declarations
+ * are analysed, and their output files are left as they are.
+ */
+public class BuildState {
+  private final TokenCache tokenCache;
+  private final Map<String, Unit> units = new HashMap<String, Unit>();
+  private final Set<String> reusedTypes = new TreeSet<String>();
+  private List<File> outputFiles = new ArrayList<File>();
+  private String options = null;
+  private String layout = null;
+
+  private static class Unit {
+    final byte[] fingerprint;
+    // the description of each type, by canonical name
+    final Map<String, String> declarations;
+    final Set<String> initializers;
+    // null if the code of the unit was not analysed, as when it came from a library snapshot
+    final Set<String> dependencies;
+
+    Unit(byte[] fingerprint, Map<String, String> declarations, Set<String> initializers, Set<String> dependencies) {
+      this.fingerprint = fingerprint;
+      this.declarations = declarations;
+      this.initializers = initializers;
+      this.dependencies = dependencies;
+    }
+  }
+
+  /**
+   * @param tokenCache
+   *          The cache the source files are lexed through, whose fingerprints tell which files changed.
+   */
+  public BuildState(TokenCache tokenCache) {
+    this.tokenCache = tokenCache;
+  }
+
+  /**
+   * @return the canonical names of the types the last compilation reused
+   */
+  public Set<String> getReusedTypes() {
+    return Collections.unmodifiableSet(reusedTypes);
+  }
+
+  /**
+   * @return the files the last successful compilation wrote to or kept in the output directory
+   */
+  public List<File> getOutputFiles() {
+    return Collections.unmodifiableList(outputFiles);
+  }
+
+  /**
+   * Marks the types whose code the last compilation generated and no change since can affect as precompiled. The
+   * hierarchy must be checked and the type tables of the context built.
+   *
+   * @return the output files of the reused types
+   */
+  List<File> reuse(CompilationContext context, String[] sourceFileNames, List<TreeNode> allTrees, File outputDir)
+      throws IOException {
+    reusedTypes.clear();
+    List<File> reusedFiles = new ArrayList<File>();
+    if (!getOptions(context.args).equals(options) || !getLayout(context).equals(layout)) {
+      return reusedFiles;
+    }
+
+    // the types whose source changed, and those whose declarations or supertypes did
+    Set<String> changedSources = new HashSet<String>();
+    List<TypeDeclaration> changedDecls = new ArrayList<TypeDeclaration>();
+    for (int i = 0; i < sourceFileNames.length; i++) {
+      Unit unit = units.get(getKey(sourceFileNames[i]));
+      boolean changed = unit == null
+          || !Arrays.equals(unit.fingerprint, tokenCache.getFingerprint(new File(sourceFileNames[i])));
+      for (TypeDeclaration typeDecl : ((CompilationUnit) allTrees.get(i)).typeDecls) {
+        if (changed) {
+          changedSources.add(typeDecl.getCanonicalName());
+        }
+        if (unit == null || !describe(typeDecl).equals(unit.declarations.get(typeDecl.getCanonicalName()))) {
+          changedDecls.add(typeDecl);
+        }
+      }
+    }
+    Set<String> changedTypes = new HashSet<String>();
+    for (TreeNode root : allTrees) {
+      for (TypeDeclaration typeDecl : ((CompilationUnit) root).typeDecls) {
+        for (TypeDeclaration changedDecl : changedDecls) {
+          if (typeDecl.isSubtypeOf(changedDecl)) {
+            changedTypes.add(typeDecl.getCanonicalName());
+            break;
+          }
+        }
+      }
+    }
+
+    List<TypeDeclaration> reusedDecls = new ArrayList<TypeDeclaration>();
+    for (int i = 0; i < sourceFileNames.length; i++) {
+      List<TypeDeclaration> typeDecls = ((CompilationUnit) allTrees.get(i)).typeDecls;
+      Unit unit = units.get(getKey(sourceFileNames[i]));
+      if (typeDecls.isEmpty() || typeDecls.get(0).isPrecompiled || unit == null || unit.dependencies == null
+          || intersects(unit.dependencies, changedTypes) || intersects(unit.initializers, changedSources)
+          || intersects(getInitializers(typeDecls), changedSources)) {
+        continue;
+      }
+      boolean reusable = true;
+      for (TypeDeclaration typeDecl : typeDecls) {
+        reusable &= !changedSources.contains(typeDecl.getCanonicalName())
+            && !changedTypes.contains(typeDecl.getCanonicalName())
+            && getOutputFile(outputDir, typeDecl).isFile();
+      }
+      if (reusable) {
+        reusedDecls.addAll(typeDecls);
+      }
+    }
+    for (TypeDeclaration typeDecl : reusedDecls) {
+      typeDecl.isPrecompiled = true;
+    }
+
+    // a class generated again needs the field initializers of its superclasses generated too
+    for (TreeNode root : allTrees) {
+      for (TypeDeclaration typeDecl : ((CompilationUnit) root).typeDecls) {
+        if (typeDecl.isPrecompiled || !typeDecl.isClass) {
+          continue;
+        }
+        for (TypeDeclaration decl = typeDecl.getSuperclassDecl(); decl != null; decl = decl.getSuperclassDecl()) {
+          if (hasInitializers(decl) && reusedDecls.contains(decl)) {
+            decl.isPrecompiled = false;
+          }
+        }
+      }
+    }
+
+    for (TypeDeclaration typeDecl : reusedDecls) {
+      if (typeDecl.isPrecompiled) {
+        reusedTypes.add(typeDecl.getCanonicalName());
+        reusedFiles.add(getOutputFile(outputDir, typeDecl));
+      }
+    }
+    return reusedFiles;
+  }
+
+  /**
+   * Keeps what a successful compilation was built from, for the next one into the same output directory.
+   */
+  void record(CompilationContext context, String[] sourceFileNames, List<TreeNode> allTrees) throws IOException {
+    Map<String, Unit> lastUnits = new HashMap<String, Unit>(units);
+    units.clear();
+    for (int i = 0; i < sourceFileNames.length; i++) {
+      String key = getKey(sourceFileNames[i]);
+      List<TypeDeclaration> typeDecls = ((CompilationUnit) allTrees.get(i)).typeDecls;
+      if (!typeDecls.isEmpty() && reusedTypes.contains(typeDecls.get(0).getCanonicalName())) {
+        units.put(key, lastUnits.get(key));
+        continue;
+      }
+
+      Map<String, String> declarations = new HashMap<String, String>();
+      for (TypeDeclaration typeDecl : typeDecls) {
+        declarations.put(typeDecl.getCanonicalName(), describe(typeDecl));
+      }
+      Set<String> dependencies = null;
+      if (typeDecls.isEmpty() || !typeDecls.get(0).isPrecompiled) {
+        DependencyVisitor v = new DependencyVisitor();
+        allTrees.get(i).accept(v);
+        dependencies = getNames(v.getDependencies());
+      }
+      units.put(key, new Unit(tokenCache.getFingerprint(new File(sourceFileNames[i])), declarations,
+          getInitializers(typeDecls), dependencies));
+    }
+    options = getOptions(context.args);
+    layout = getLayout(context);
+    outputFiles = new ArrayList<File>(context.outputFiles);
+  }
+
+  /**
+   * Forgets what the last compilation was built from, so that the next one generates everything. The output files are
+   * kept, as they are still in the output directory.
+   */
+  void clear() {
+    units.clear();
+    reusedTypes.clear();
+    options = null;
+    layout = null;
+  }
+
+  /**
+   * @return the options among the arguments, any change to which generates everything again
+   */
+  private static String getOptions(String[] args) {
+    StringBuilder sb = new StringBuilder();
+    for (String arg : args) {
+      if (arg.startsWith("-")) {
+        sb.append(arg).append(' ');
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The layout of the type tables: the order of the types and of the interface selectors, and the declarations of
+   * Object, which every array inherits from.
+   */
+  private static String getLayout(CompilationContext context) {
+    StringBuilder sb = new StringBuilder();
+    for (TypeDeclaration typeDecl : context.typeHierarchyTable.getTypeDecls()) {
+      sb.append("type ").append(typeDecl.getCanonicalName()).append('\n');
+    }
+    for (MethodDeclaration.Signature signature : context.selectorTable.getSignatures()) {
+      sb.append("selector ").append(signature.name());
+      for (FormalType type : signature.getTypes()) {
+        sb.append(' ').append(type.getGlobalName());
+      }
+      sb.append('\n');
+    }
+    sb.append(describe(Literal.getObjectType(context.defaultPackage)));
+    return sb.toString();
+  }
+
+  /**
+   * Describes what the code of other types can depend on: the modifiers, supertypes and members of a type.
+   */
+  private static String describe(TypeDeclaration typeDecl) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(typeDecl.isClass ? "class " : "interface ").append(typeDecl.getCanonicalName());
+    appendModifiers(sb, typeDecl.modifiers);
+    if (typeDecl.isClass && typeDecl.getSuperclassDecl() != null) {
+      sb.append(" extends ").append(typeDecl.getSuperclassDecl().getCanonicalName());
+    }
+    Collection<TypeDeclaration> supertypes = typeDecl.isClass ? typeDecl.getIfaceDecls()
+        : typeDecl.getSuperifaceDecls();
+    sb.append(" implements ").append(getNames(supertypes)).append('\n');
+
+    for (BodyDeclaration decl : typeDecl.getBody()) {
+      sb.append(decl instanceof FieldDeclaration ? "field" : "method");
+      appendModifiers(sb, decl.modifiers);
+      sb.append(' ').append(getName(decl.type)).append(' ').append(decl.name);
+      if (decl instanceof MethodDeclaration) {
+        sb.append('(');
+        for (VariableDeclaration param : ((MethodDeclaration) decl).formalParams) {
+          sb.append(' ').append(getName(param.type));
+        }
+        sb.append(" )");
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static void appendModifiers(StringBuilder sb, List<Modifier> modifiers) {
+    if (modifiers != null) {
+      for (Modifier modifier : modifiers) {
+        sb.append(' ').append(modifier.keyword.name().toLowerCase());
+      }
+    }
+  }
+
+  private static String getName(Type type) {
+    return type == null ? "void" : type.getFormalType().getGlobalName();
+  }
+
+  /**
+   * @return the superclasses whose field initializers are generated into the initializers of the classes
+   */
+  private static Set<String> getInitializers(List<TypeDeclaration> typeDecls) {
+    Set<String> initializers = new TreeSet<String>();
+    for (TypeDeclaration typeDecl : typeDecls) {
+      if (!typeDecl.isClass) {
+        continue;
+      }
+      for (TypeDeclaration decl = typeDecl.getSuperclassDecl(); decl != null; decl = decl.getSuperclassDecl()) {
+        if (hasInitializers(decl)) {
+          initializers.add(decl.getCanonicalName());
+        }
+      }
+    }
+    return initializers;
+  }
+
+  private static boolean hasInitializers(TypeDeclaration typeDecl) {
+    for (FieldDeclaration field : typeDecl.getFields()) {
+      if (!field.isStatic() && field.initExpr != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> getNames(Collection<TypeDeclaration> typeDecls) {
+    Set<String> names = new TreeSet<String>();
+    for (TypeDeclaration typeDecl : typeDecls) {
+      names.add(typeDecl.getCanonicalName());
+    }
+    return names;
+  }
+
+  private static boolean intersects(Set<String> a, Set<String> b) {
+    for (String name : a) {
+      if (b.contains(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // named as Joos1Wc writes them
+  private static File getOutputFile(File outputDir, TypeDeclaration typeDecl) {
+    return new File(outputDir, String.format("%s.s", typeDecl.getCanonicalName()));
+  }
+
+  private static String getKey(String sourceFileName) throws IOException {
+    return new File(sourceFileName).getCanonicalPath();
+  }
+
+}
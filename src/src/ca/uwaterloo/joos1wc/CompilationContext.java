@@ -0,0 +1,101 @@
+package ca.uwaterloo.joos1wc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ca.uwaterloo.joos1wc.analysis.PackageTable;
+import ca.uwaterloo.joos1wc.codegen.ArrayVTable;
+import ca.uwaterloo.joos1wc.codegen.InterfaceSelectorTable;
+import ca.uwaterloo.joos1wc.codegen.PeepholeOptimizer;
+import ca.uwaterloo.joos1wc.codegen.TypeHierarchyTable;
+import ca.uwaterloo.joos1wc.ir.IROptimizer;
+import ca.uwaterloo.joos1wc.scanner.TokenCache;
+
+/**
+ * The state of one compilation: its options, the package tables built by the front end and the tables shared by code
+ * generation. Every phase gets these from the context it is given rather than from static fields, so several
+ * compilations can run at once in one JVM. Only the lexer and the parse table, which never change, are shared.
+ *
+ * A context is used by one compilation, and is not thread safe by itself. Phases that run in parallel only read it.
+ */
+public class CompilationContext {
+  public final File workingDir;
+  public final String[] args;
+
+  // Options, which start from the defaults in Joos1Wc and are then set from the arguments
+  public boolean tableLexer = Joos1Wc.TABLE_LEXER;
+  public boolean tableParser = Joos1Wc.TABLE_PARSER;
+  public int threads = Joos1Wc.THREADS;
+  public File stdlibDir = Joos1Wc.STDLIB_DIR;
+  public File stdlibCache = Joos1Wc.STDLIB_CACHE;
+  public boolean registerLocals = Joos1Wc.REGISTER_LOCALS;
+  public Set<PeepholeOptimizer.Rule> peepholeRules = Joos1Wc.PEEPHOLE_RULES;
+  public boolean peepholeStats = Joos1Wc.PEEPHOLE_STATS;
+  public boolean optimizeIR = Joos1Wc.OPTIMIZE_IR;
+  public boolean irStats = Joos1Wc.IR_STATS;
+  public TokenCache tokenCache = null;
+  public BuildState buildState = null;
+
+  public final PackageTable defaultPackage = new PackageTable();
+  public TypeHierarchyTable typeHierarchyTable = null;
+  public InterfaceSelectorTable selectorTable = null;
+  public ArrayVTable arrayVTable = null;
+
+  // added to by each type as it is generated, possibly from several threads
+  final AtomicIntegerArray peepholeCounts = new AtomicIntegerArray(PeepholeOptimizer.Rule.values().length);
+  final AtomicIntegerArray irCounts = new AtomicIntegerArray(IROptimizer.Pass.values().length);
+  final List<File> outputFiles = new ArrayList<File>();
+  Exception error = null;
+
+  /**
+   * @param workingDir
+   *          The directory to write output/ under.
+   * @param args
+   *          The command line arguments: options and source files.
+   */
+  public CompilationContext(File workingDir, String[] args) {
+    this.workingDir = workingDir;
+    this.args = args;
+  }
+
+  /**
+   * @return the error that stopped the compilation, or null if there was none
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return the number of rewrites a peephole rule made in the code generated so far
+   */
+  public int getPeepholeCount(PeepholeOptimizer.Rule rule) {
+    return peepholeCounts.get(rule.ordinal());
+  }
+
+  /**
+   * Adds the changes made by the passes of an optimizer to the counts of the compilation.
+   */
+  public void addIRCounts(IROptimizer optimizer) {
+    for (IROptimizer.Pass pass : IROptimizer.Pass.values()) {
+      irCounts.addAndGet(pass.ordinal(), optimizer.getCount(pass));
+    }
+  }
+
+  /**
+   * @return the number of instructions an IR pass changed in the methods generated so far
+   */
+  public int getIRCount(IROptimizer.Pass pass) {
+    return irCounts.get(pass.ordinal());
+  }
+
+  /**
+   * @return the files written to or kept in the output directory
+   */
+  public List<File> getOutputFiles() {
+    return outputFiles;
+  }
+
+}
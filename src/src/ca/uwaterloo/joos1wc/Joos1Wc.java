@@ -1,30 +1,50 @@
 package ca.uwaterloo.joos1wc;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ca.uwaterloo.joos1wc.analysis.HierarchyChecker;
 import ca.uwaterloo.joos1wc.analysis.NameLinkerVisitor;
-import ca.uwaterloo.joos1wc.analysis.PackageTable;
 import ca.uwaterloo.joos1wc.analysis.ReachabilityVisitor;
 import ca.uwaterloo.joos1wc.analysis.SymbolVisitor;
 import ca.uwaterloo.joos1wc.analysis.TypeChecker;
 import ca.uwaterloo.joos1wc.analysis.TypeLinkerVisitor;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
+import ca.uwaterloo.joos1wc.ast.Literal;
 import ca.uwaterloo.joos1wc.ast.TreeNode;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+import ca.uwaterloo.joos1wc.codegen.ArrayVTable;
 import ca.uwaterloo.joos1wc.codegen.CodeGenUtils;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode;
 import ca.uwaterloo.joos1wc.codegen.CodeGenVisitor;
+import ca.uwaterloo.joos1wc.codegen.InterfaceSelectorTable;
+import ca.uwaterloo.joos1wc.codegen.LibrarySnapshot;
+import ca.uwaterloo.joos1wc.codegen.PeepholeOptimizer;
 import ca.uwaterloo.joos1wc.codegen.TypeHierarchyTable;
 import ca.uwaterloo.joos1wc.diagnostics.Diagnostics;
 import ca.uwaterloo.joos1wc.diagnostics.JoosException;
@@ -32,113 +52,481 @@ import ca.uwaterloo.joos1wc.diagnostics.LRException;
 import ca.uwaterloo.joos1wc.diagnostics.LexException;
 import ca.uwaterloo.joos1wc.diagnostics.ParseException;
 import ca.uwaterloo.joos1wc.diagnostics.ValidationException;
+import ca.uwaterloo.joos1wc.ir.IROptimizer;
 import ca.uwaterloo.joos1wc.parse.LRGrammar;
 import ca.uwaterloo.joos1wc.parse.LRParser;
 import ca.uwaterloo.joos1wc.parse.LRParseState;
+import ca.uwaterloo.joos1wc.parse.LRParseTable;
 import ca.uwaterloo.joos1wc.parse.TreePrinter;
 import ca.uwaterloo.joos1wc.parse.Weeder;
 import ca.uwaterloo.joos1wc.scanner.Lexer;
+import ca.uwaterloo.joos1wc.scanner.TableLexer;
 import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.Token;
+import ca.uwaterloo.joos1wc.scanner.TokenCache;
 import ca.uwaterloo.joos1wc.scanner.TokenKind;
 
 public class Joos1Wc {
   private static final int EXIT_CODE_ERROR = 42;
   private static final int EXIT_CODE_NUM_ARGUMENTS = 2;
   private static final String GRAMMAR_FILE = "tools/joos1w.lalr1";
+  private static final String GRAMMAR_TABLE = "joos1w.lrt"; // GRAMMAR_FILE compiled by the grammar build target
+  private static final String OPTION_PREFIX = "--";
+  private static final String SERVER_OPTION = "--server";
+  private static final String OUTPUT_DIR = "output";
+  private static final String TYPE_TABLES_FILE = "type-tables.s"; // not a type name, so it cannot clash with one
   public static File CWD = new File(System.getProperty("user.dir")); // To allow E2E test to change working directory
   public static boolean DEBUG = false;
 
-  public static PackageTable DEFAULT_PKG = null;
-  public static TypeHierarchyTable TYPE_HIERARCHY_TABLE = null;
+  // Defaults for the options of each compilation, which its arguments then override in its CompilationContext
+  public static final boolean TABLE_LEXER = true; // --lexer=automata runs each token automaton in turn
+  public static final boolean TABLE_PARSER = true; // --parser=states walks the LRParseState graph
+  public static final int THREADS = Runtime.getRuntime().availableProcessors(); // --threads=N for the parallel phases
+  public static final File STDLIB_DIR = null; // --stdlib=DIR treats the sources under DIR as the standard library
+  public static final File STDLIB_CACHE = null; // --stdlib-cache=DIR reuses the code generated for the library
+  public static final boolean REGISTER_LOCALS = false; // --locals=registers keeps the most used variables in registers
+  // --peephole=all|none|RULE,... picks the rewrites made to the generated code, see PeepholeOptimizer.Rule
+  public static final Set<PeepholeOptimizer.Rule> PEEPHOLE_RULES = Collections.unmodifiableSet(EnumSet
+      .allOf(PeepholeOptimizer.Rule.class));
+  public static final boolean PEEPHOLE_STATS = false; // --peephole-stats prints the number of rewrites by each rule
+  // --ir=on generates the methods from their graphs in the mid-level IR after the scalar optimizations of IROptimizer.
+  // -O2 turns it on along with --locals=registers, -O0 turns every optimization off and -O1 is the defaults
+  public static final boolean OPTIMIZE_IR = false;
+  public static final boolean IR_STATS = false; // --ir-stats prints the number of instructions changed by each IR pass
+
+  // The lexers and parsers never change once built, so every compilation in the process shares them, see getLexer
+  private static Lexer tableLexer = null;
+  private static Lexer automataLexer = null;
+  private static LRParser tableParser = null;
+  private static LRParser statesParser = null;
 
   public static void main(String[] args) {
-    if (args.length > 0) {
+    if (args.length > 0 && args[0].equals(SERVER_OPTION)) {
       try {
-        run(args);
-
-        // unless we decide to care, let's just catch everything and drop out
-        // with a useful message and an error code.
-      } catch (NullPointerException exception) {
-        exception.printStackTrace();
-        System.exit(EXIT_CODE_ERROR);
-      } catch (Exception exception) {
+        serve(Arrays.copyOfRange(args, 1, args.length), System.in, System.out);
+      } catch (IOException exception) {
         System.err.println(exception.getMessage());
-        if (DEBUG) {
-          exception.printStackTrace();
-        }
         System.exit(EXIT_CODE_ERROR);
       }
+    } else if (args.length > 0) {
+      int exitCode = compile(args);
+      if (exitCode != 0) {
+        System.exit(exitCode);
+      }
     } else {
       System.err.println("At least one command line argument is required.");
       System.exit(EXIT_CODE_NUM_ARGUMENTS);
     }
   }
 
-  static void run(String[] sourceFileNames) throws FileNotFoundException, IOException, JoosException,
+  /**
+   * Compiles the program given by the arguments, writing the output under CWD.
+   * 
+   * @return the exit code, which is 0 on success
+   */
+  static int compile(String[] args) {
+    return compile(new CompilationContext(CWD, args));
+  }
+
+  /**
+   * Compiles the program given by the arguments of the context. The error that stopped the compilation, if any, is
+   * kept in the context.
+   * 
+   * @return the exit code, which is 0 on success
+   */
+  public static int compile(CompilationContext context) {
+    try {
+      run(context);
+      return 0;
+
+      // unless we decide to care, let's just catch everything and drop out
+      // with a useful message and an error code.
+    } catch (NullPointerException exception) {
+      context.error = exception;
+      exception.printStackTrace();
+      return EXIT_CODE_ERROR;
+    } catch (Exception exception) {
+      context.error = exception;
+      System.err.println(exception.getMessage());
+      if (DEBUG) {
+        exception.printStackTrace();
+      }
+      return EXIT_CODE_ERROR;
+    }
+  }
+
+  /**
+   * Compiles several programs at once on up to the given number of threads. Each compilation has its own context, and
+   * so should have its own working directory unless the programs are the same.
+   * 
+   * @return the exit code of each compilation, in the order of the contexts
+   */
+  public static int[] compileAll(List<CompilationContext> contexts, int threads) {
+    int[] exitCodes = new int[contexts.size()];
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, contexts.size())));
+    try {
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>(contexts.size());
+      for (final CompilationContext context : contexts) {
+        results.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return compile(context);
+          }
+        }));
+      }
+      for (int i = 0; i < exitCodes.length; i++) {
+        exitCodes[i] = results.get(i).get();
+      }
+      return exitCodes;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the compilations", e);
+    } catch (ExecutionException e) {
+      // compile catches every exception, so only errors get here
+      throw (Error) e.getCause();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs a compile server, which reads one compilation per line of input, with the arguments separated by whitespace,
+   * and answers each with a line "exit CODE". The arguments given when starting the server are added to every request,
+   * while options on a request line only apply to that request. An empty line or the end of the input stops the server.
+   * 
+   * Each request is compiled in a fresh context, but the tokens of unchanged source files are kept between requests,
+   * and so is the BuildState of each output directory, so that only the code of the types an edit can change is
+   * generated again. Only the output files whose contents changed are written, and those the previous request in the
+   * same directory wrote but this one did not are deleted.
+   */
+  static void serve(String[] options, InputStream input, PrintStream output) throws IOException {
+    // reject bad options before the first request
+    parseOptions(new CompilationContext(CWD, options), options);
+    TokenCache tokenCache = new TokenCache();
+    Map<File, BuildState> buildStates = new HashMap<File, BuildState>();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+    String line;
+    while ((line = reader.readLine()) != null && !line.trim().isEmpty()) {
+      String[] request = line.trim().split("\\s+");
+      String[] args = Arrays.copyOf(options, options.length + request.length);
+      System.arraycopy(request, 0, args, options.length, request.length);
+      CompilationContext context = new CompilationContext(CWD, args);
+      File outputDir = new File(context.workingDir, OUTPUT_DIR).getCanonicalFile();
+      BuildState buildState = buildStates.get(outputDir);
+      if (buildState == null) {
+        buildState = new BuildState(tokenCache);
+        buildStates.put(outputDir, buildState);
+      }
+      List<File> staleFiles = new ArrayList<File>(buildState.getOutputFiles());
+      context.tokenCache = tokenCache;
+      context.buildState = buildState;
+      int exitCode = compile(context);
+
+      // a failed compilation leaves the output of the last successful one alone, but nothing is reused from it
+      if (exitCode == 0) {
+        staleFiles.removeAll(context.outputFiles);
+        for (File staleFile : staleFiles) {
+          staleFile.delete();
+        }
+      } else {
+        buildState.clear();
+      }
+
+      output.println("exit " + exitCode);
+      output.flush();
+    }
+  }
+
+  static void run(CompilationContext context) throws FileNotFoundException, IOException, JoosException,
       ValidationException {
+    String[] sourceFileNames = parseOptions(context, context.args);
     Diagnostics diagnostics = new Diagnostics();
-    List<List<Token>> allTokens = tokenize(sourceFileNames);
+    List<TreeNode> allTrees = lexAndParse(context, sourceFileNames);
 
-    if (DEBUG) {
-      for (List<Token> tokens : allTokens) {
-        Token.printTokenList(tokens);
+    // library types are always numbered first, but only skip analysis and code generation with a stored snapshot
+    LibrarySnapshot snapshot = null;
+    List<TypeDeclaration> libraryDecls = new ArrayList<TypeDeclaration>();
+    boolean precompiled = false;
+    if (context.stdlibDir != null) {
+      snapshot = new LibrarySnapshot(context.stdlibDir, context.stdlibCache, sourceFileNames,
+          String.format("locals=%s peephole=%s ir=%s", context.registerLocals ? "registers" : "stack",
+              PeepholeOptimizer.format(context.peepholeRules), context.optimizeIR ? "on" : "off"));
+      precompiled = snapshot.isStored();
+      for (int i = 0; i < sourceFileNames.length; i++) {
+        if (snapshot.isLibrary(new File(sourceFileNames[i]))) {
+          for (TypeDeclaration typeDecl : ((CompilationUnit) allTrees.get(i)).typeDecls) {
+            typeDecl.isLibrary = true;
+            typeDecl.isPrecompiled = precompiled;
+            libraryDecls.add(typeDecl);
+          }
+        }
       }
     }
 
-    List<TreeNode> allTrees = parse(allTokens);
-    DEFAULT_PKG = new PackageTable();
-
     for (TreeNode root : allTrees) {
       if (DEBUG) {
         root.accept(new TreePrinter());
       }
       root.accept(new Weeder());
 
-      SymbolVisitor v = new SymbolVisitor(diagnostics);
+      SymbolVisitor v = new SymbolVisitor(context, diagnostics);
       root.accept(v);
       checkErrors(diagnostics);
     }
 
     for (TreeNode root : allTrees) {
-      TypeLinkerVisitor v = new TypeLinkerVisitor(diagnostics);
+      TypeLinkerVisitor v = new TypeLinkerVisitor(context, diagnostics);
       root.accept(v);
       checkErrors(diagnostics);
     }
 
-    new HierarchyChecker(diagnostics);
+    new HierarchyChecker(context, diagnostics);
     checkErrors(diagnostics);
 
+    File outputDir = new File(context.workingDir, OUTPUT_DIR);
+    if (context.buildState != null) {
+      // what can be reused depends on the layout of the type tables, so build them before the bodies are analysed
+      buildTypeTables(context, allTrees);
+      context.outputFiles.addAll(context.buildState.reuse(context, sourceFileNames, allTrees, outputDir));
+    }
+
     for (TreeNode root : allTrees) {
-      NameLinkerVisitor v = new NameLinkerVisitor(diagnostics);
+      if (isPrecompiled(root)) {
+        continue;
+      }
+      NameLinkerVisitor v = new NameLinkerVisitor(context, diagnostics);
       root.accept(v);
       checkErrors(diagnostics);
     }
 
-    new TypeChecker(diagnostics);
+    new TypeChecker(context, diagnostics);
     checkErrors(diagnostics);
 
     for (TreeNode root : allTrees) {
+      if (isPrecompiled(root)) {
+        continue;
+      }
       ReachabilityVisitor v = new ReachabilityVisitor(diagnostics);
       root.accept(v);
       checkErrors(v.getErrors());
     }
 
-    TYPE_HIERARCHY_TABLE = new TypeHierarchyTable(allTrees);
-    CodeGenVisitor codeGenVisitor = new CodeGenVisitor();
-    for (TreeNode root : allTrees) {
-      root.accept(codeGenVisitor);
+    if (context.buildState == null) {
+      buildTypeTables(context, allTrees);
     }
-    CodeGenUtils.addStartBlock(allTrees);
+    context.arrayVTable = new ArrayVTable(Literal.getObjectType(context.defaultPackage));
+    generateCode(context, allTrees, outputDir);
+
+    AssemblyNode typeTables = new AssemblyNode();
+    CodeGenUtils.addTypeTables(context, typeTables, allTrees);
+    CodeGenUtils.addStartBlock(typeTables, allTrees);
+    File typeTablesFile = new File(outputDir, TYPE_TABLES_FILE);
+    print(typeTables, typeTablesFile);
+    context.outputFiles.add(typeTablesFile);
 
+    if (snapshot != null && !libraryDecls.isEmpty()) {
+      if (precompiled) {
+        context.outputFiles.addAll(snapshot.restore(outputDir));
+      } else {
+        snapshot.store(outputDir, libraryDecls);
+      }
+    }
+
+    if (context.buildState != null) {
+      context.buildState.record(context, sourceFileNames, allTrees);
+    }
+
+    if (context.peepholeStats) {
+      for (PeepholeOptimizer.Rule rule : PeepholeOptimizer.Rule.values()) {
+        System.err.println(String.format("peephole %s: %d", rule.name, context.getPeepholeCount(rule)));
+      }
+    }
+    if (context.irStats) {
+      for (IROptimizer.Pass pass : IROptimizer.Pass.values()) {
+        System.err.println(String.format("ir %s: %d", pass.name, context.getIRCount(pass)));
+      }
+    }
+  }
+
+  /**
+   * Builds the type hierarchy and interface selector tables, which number the types and the interface methods.
+   */
+  private static void buildTypeTables(CompilationContext context, List<TreeNode> allTrees) {
+    context.typeHierarchyTable = new TypeHierarchyTable(allTrees);
+    context.selectorTable = new InterfaceSelectorTable(context.typeHierarchyTable.getTypeDecls());
+  }
+
+  /**
+   * Generates and writes the code for every type that is not precompiled. The vtables are laid out first, superclasses
+   * before subclasses. A class initializes the fields it inherits with the code generated for its superclass, so the
+   * types are then generated in waves by their depth in the class hierarchy, and the types of a wave are spread over
+   * the threads of the context. Each type is generated by its own visitor into its own assembly, which only its thread
+   * touches until the wave is over.
+   */
+  private static void generateCode(final CompilationContext context, List<TreeNode> allTrees, final File outputDir)
+      throws IOException, JoosException {
+    List<List<TypeDeclaration>> waves = new ArrayList<List<TypeDeclaration>>();
     for (TreeNode root : allTrees) {
-      CompilationUnit unit = (CompilationUnit) root;
-      for (TypeDeclaration typeDecl : unit.typeDecls) {
-        String outputFilename = String.format("output/%s.s", typeDecl.getCanonicalName());
-        typeDecl.asm.print(new PrintStream(new FileOutputStream(new File(Joos1Wc.CWD, outputFilename))));
+      for (TypeDeclaration typeDecl : ((CompilationUnit) root).typeDecls) {
+        int depth = 0;
+        if (typeDecl.isClass) {
+          // the layout of a library class is needed even when its code is precompiled
+          typeDecl.getVTable();
+          for (TypeDeclaration decl = typeDecl.getSuperclassDecl(); decl != null; decl = decl.getSuperclassDecl()) {
+            depth++;
+          }
+        }
+        if (!typeDecl.isPrecompiled) {
+          while (waves.size() <= depth) {
+            waves.add(new ArrayList<TypeDeclaration>());
+          }
+          waves.get(depth).add(typeDecl);
+        }
+      }
+    }
+
+    ExecutorService executor = context.threads > 1 ? Executors.newFixedThreadPool(context.threads) : null;
+    try {
+      for (List<TypeDeclaration> wave : waves) {
+        if (executor == null || wave.size() <= 1) {
+          for (TypeDeclaration typeDecl : wave) {
+            generateCode(context, typeDecl, outputDir);
+          }
+          continue;
+        }
+
+        List<Future<File>> results = new ArrayList<Future<File>>(wave.size());
+        for (final TypeDeclaration typeDecl : wave) {
+          results.add(executor.submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+              return generateCode(context, typeDecl, outputDir);
+            }
+          }));
+        }
+        for (Future<File> result : results) {
+          getResult(result);
+        }
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+
+    for (List<TypeDeclaration> wave : waves) {
+      for (TypeDeclaration typeDecl : wave) {
+        context.outputFiles.add(getOutputFile(outputDir, typeDecl));
+      }
+    }
+  }
+
+  private static File generateCode(CompilationContext context, TypeDeclaration typeDecl, File outputDir)
+      throws IOException {
+    typeDecl.accept(new CodeGenVisitor(context));
+    if (!context.peepholeRules.isEmpty()) {
+      PeepholeOptimizer optimizer = new PeepholeOptimizer(context.peepholeRules,
+          Collections.singleton(CodeGenUtils.EXCEPTION));
+      optimizer.optimize(typeDecl.asm);
+      for (PeepholeOptimizer.Rule rule : PeepholeOptimizer.Rule.values()) {
+        context.peepholeCounts.addAndGet(rule.ordinal(), optimizer.getCount(rule));
+      }
+    }
+    File outputFile = getOutputFile(outputDir, typeDecl);
+    print(typeDecl.asm, outputFile);
+    return outputFile;
+  }
+
+  private static File getOutputFile(File outputDir, TypeDeclaration typeDecl) {
+    return new File(outputDir, String.format("%s.s", typeDecl.getCanonicalName()));
+  }
+
+  /**
+   * Writes the assembly to the output file, unless the file already holds exactly that. Leaving unchanged files alone
+   * keeps their timestamps, so that only changed files need to be assembled again.
+   */
+  private static void print(AssemblyNode asm, File outputFile) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream stream = new PrintStream(bytes);
+    asm.print(stream);
+    stream.close();
+
+    byte[] contents = bytes.toByteArray();
+    if (outputFile.isFile() && outputFile.length() == contents.length
+        && Arrays.equals(Files.readAllBytes(outputFile.toPath()), contents)) {
+      return;
+    }
+    Files.write(outputFile.toPath(), contents);
+  }
+
+  /**
+   * @return whether the code for the compilation unit is restored from a library snapshot or reused from the last build
+   */
+  private static boolean isPrecompiled(TreeNode root) {
+    List<TypeDeclaration> typeDecls = ((CompilationUnit) root).typeDecls;
+    return !typeDecls.isEmpty() && typeDecls.get(0).isPrecompiled;
+  }
+
+  /**
+   * Applies the command line options (arguments starting with --, and the optimization levels) to the context and
+   * returns the remaining arguments, which are the source files to compile. A level sets the options it stands for,
+   * which the options after it can change again.
+   */
+  static String[] parseOptions(CompilationContext context, String[] args) {
+    List<String> sourceFileNames = new ArrayList<String>(args.length);
+    for (String arg : args) {
+      if (arg.equals("-O0")) {
+        // straight from the tree, as fast as it compiles
+        context.peepholeRules = EnumSet.noneOf(PeepholeOptimizer.Rule.class);
+        context.registerLocals = false;
+        context.optimizeIR = false;
+      } else if (arg.equals("-O1")) {
+        // the defaults
+        context.peepholeRules = EnumSet.allOf(PeepholeOptimizer.Rule.class);
+        context.registerLocals = false;
+        context.optimizeIR = false;
+      } else if (arg.equals("-O2")) {
+        context.peepholeRules = EnumSet.allOf(PeepholeOptimizer.Rule.class);
+        context.registerLocals = true;
+        context.optimizeIR = true;
+      } else if (!arg.startsWith(OPTION_PREFIX)) {
+        sourceFileNames.add(arg);
+      } else if (arg.equals("--lexer=table")) {
+        context.tableLexer = true;
+      } else if (arg.equals("--lexer=automata")) {
+        context.tableLexer = false;
+      } else if (arg.equals("--parser=table")) {
+        context.tableParser = true;
+      } else if (arg.equals("--parser=states")) {
+        context.tableParser = false;
+      } else if (arg.startsWith("--threads=")) {
+        context.threads = Math.max(1, Integer.parseInt(arg.substring("--threads=".length())));
+      } else if (arg.equals("--locals=stack")) {
+        context.registerLocals = false;
+      } else if (arg.equals("--locals=registers")) {
+        context.registerLocals = true;
+      } else if (arg.startsWith("--peephole=")) {
+        context.peepholeRules = PeepholeOptimizer.parse(arg.substring("--peephole=".length()));
+      } else if (arg.equals("--peephole-stats")) {
+        context.peepholeStats = true;
+      } else if (arg.equals("--ir=on")) {
+        context.optimizeIR = true;
+      } else if (arg.equals("--ir=off")) {
+        context.optimizeIR = false;
+      } else if (arg.equals("--ir-stats")) {
+        context.irStats = true;
+      } else if (arg.equals(SERVER_OPTION)) {
+        throw new IllegalArgumentException(String.format("'%s' must be the first argument", arg));
+      } else if (arg.startsWith("--stdlib=")) {
+        context.stdlibDir = new File(arg.substring("--stdlib=".length()));
+      } else if (arg.startsWith("--stdlib-cache=")) {
+        context.stdlibCache = new File(arg.substring("--stdlib-cache=".length()));
+      } else {
+        throw new IllegalArgumentException(String.format("Unknown option '%s'", arg));
       }
     }
-    // CodeGenUtils.writeTypeTable("typeTable");
+    return sourceFileNames.toArray(new String[sourceFileNames.size()]);
   }
 
   static void checkErrors(Diagnostics diag) throws JoosException {
@@ -151,15 +539,7 @@ public class Joos1Wc {
 
   static List<List<Token>> tokenize(String[] sourceFileNames) throws FileNotFoundException, IOException,
       ParseException, LexException {
-    // generate a list of DFAutomaton for Lexing
-    List<DFAutomaton> dfaList = new ArrayList<DFAutomaton>();
-    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
-      dfaList.add(kind.getDFAutomaton());
-    }
-    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
-    ignore.add(TerminalTokenKind.WHITESPACE);
-    ignore.add(TerminalTokenKind.COMMENT);
-    Lexer lexer = new Lexer(dfaList, ignore);
+    Lexer lexer = getLexer(TABLE_LEXER);
     List<List<Token>> allTokens = new ArrayList<List<Token>>();
 
     for (String sourceFileName : sourceFileNames) {
@@ -172,9 +552,7 @@ public class Joos1Wc {
 
   static List<TreeNode> parse(List<List<Token>> allTokens) throws FileNotFoundException, IOException, ParseException,
       LRException {
-    LRGrammar grammar = new LRGrammar();
-    LRParseState startState = grammar.fromFile(new FileInputStream(GRAMMAR_FILE));
-    LRParser parser = new LRParser(startState);
+    LRParser parser = getParser(TABLE_PARSER);
 
     List<TreeNode> trees = new ArrayList<TreeNode>(allTokens.size());
     for (List<Token> tokens : allTokens) {
@@ -183,4 +561,149 @@ public class Joos1Wc {
 
     return trees;
   }
+
+  static List<TreeNode> lexAndParse(String[] sourceFileNames) throws FileNotFoundException, IOException,
+      JoosException {
+    return lexAndParse(new CompilationContext(CWD, sourceFileNames), sourceFileNames);
+  }
+
+  /**
+   * Lexes and parses each source file. Files are independent at this stage, so they are spread over the worker threads
+   * of the context, which share one lexer and one parse table. The trees are returned in the order of the source files,
+   * and if several files fail, the error of the first one in that order is thrown.
+   */
+  static List<TreeNode> lexAndParse(final CompilationContext context, String[] sourceFileNames)
+      throws FileNotFoundException, IOException, JoosException {
+    final Lexer lexer = getLexer(context.tableLexer);
+    final LRParser parser = getParser(context.tableParser);
+    if (context.tokenCache != null) {
+      context.tokenCache.retain(sourceFileNames);
+    }
+
+    // debug output is printed per file, so keep it in order
+    int threads = DEBUG ? 1 : Math.min(context.threads, sourceFileNames.length);
+    if (threads <= 1) {
+      List<TreeNode> trees = new ArrayList<TreeNode>(sourceFileNames.length);
+      for (String sourceFileName : sourceFileNames) {
+        trees.add(lexAndParse(context, lexer, parser, sourceFileName));
+      }
+      return trees;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<TreeNode>> results = new ArrayList<Future<TreeNode>>(sourceFileNames.length);
+      for (final String sourceFileName : sourceFileNames) {
+        results.add(executor.submit(new Callable<TreeNode>() {
+          @Override
+          public TreeNode call() throws Exception {
+            return lexAndParse(context, lexer, parser, sourceFileName);
+          }
+        }));
+      }
+
+      List<TreeNode> trees = new ArrayList<TreeNode>(sourceFileNames.length);
+      for (Future<TreeNode> result : results) {
+        trees.add(getResult(result));
+      }
+      return trees;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static TreeNode lexAndParse(CompilationContext context, Lexer lexer, LRParser parser, String sourceFileName)
+      throws IOException, JoosException {
+    File sourceFile = new File(sourceFileName);
+    TokenCache tokenCache = context.tokenCache;
+    List<Token> tokens = tokenCache == null ? lexer.lex(sourceFile) : tokenCache.lex(lexer, sourceFile);
+    if (DEBUG) {
+      Token.printTokenList(tokens);
+    }
+    return parser.parse(tokens);
+  }
+
+  /**
+   * Waits for a task, rethrowing whatever it threw.
+   */
+  private static <T> T getResult(Future<T> result) throws IOException, JoosException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a task");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof JoosException) {
+        throw (JoosException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Lexers and parsers are built on first use and then shared by every compilation, including concurrent ones, since
+   * lexing and parsing never change them.
+   */
+  private static synchronized Lexer getLexer(boolean table) {
+    if (table) {
+      if (tableLexer == null) {
+        tableLexer = createLexer(true);
+      }
+      return tableLexer;
+    }
+    if (automataLexer == null) {
+      automataLexer = createLexer(false);
+    }
+    return automataLexer;
+  }
+
+  private static synchronized LRParser getParser(boolean table) throws FileNotFoundException, IOException,
+      ParseException {
+    if (table) {
+      if (tableParser == null) {
+        tableParser = createParser(true);
+      }
+      return tableParser;
+    }
+    if (statesParser == null) {
+      statesParser = createParser(false);
+    }
+    return statesParser;
+  }
+
+  private static Lexer createLexer(boolean table) {
+    // generate a list of DFAutomaton for Lexing
+    List<DFAutomaton> dfaList = new ArrayList<DFAutomaton>();
+    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
+      dfaList.add(kind.getDFAutomaton());
+    }
+    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
+    ignore.add(TerminalTokenKind.WHITESPACE);
+    ignore.add(TerminalTokenKind.COMMENT);
+    return table ? new TableLexer(dfaList, ignore) : new Lexer(dfaList, ignore);
+  }
+
+  private static LRParser createParser(boolean table) throws FileNotFoundException, IOException, ParseException {
+    if (table) {
+      // prefer the precompiled table bundled with the parser classes, and fall back to the text for a plain compile
+      InputStream stream = LRParseTable.class.getResourceAsStream(GRAMMAR_TABLE);
+      if (stream != null) {
+        try {
+          return new LRParser(LRParseTable.readFrom(stream));
+        } finally {
+          stream.close();
+        }
+      }
+    }
+    LRGrammar grammar = new LRGrammar();
+    LRParseState startState = grammar.fromFile(new FileInputStream(GRAMMAR_FILE));
+    return table ? new LRParser(LRParseTable.fromStartState(startState)) : new LRParser(startState);
+  }
 }
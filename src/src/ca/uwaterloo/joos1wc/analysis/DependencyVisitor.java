@@ -0,0 +1,85 @@
+package ca.uwaterloo.joos1wc.analysis;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.ast.Expression;
+import ca.uwaterloo.joos1wc.ast.Name;
+import ca.uwaterloo.joos1wc.ast.RecursiveVisitor;
+import ca.uwaterloo.joos1wc.ast.Type.FormalType;
+import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+import ca.uwaterloo.joos1wc.ast.expression.ClassInstanceCreation;
+import ca.uwaterloo.joos1wc.ast.expression.FieldAccess;
+import ca.uwaterloo.joos1wc.ast.expression.MethodInvocation;
+
+/**
+ * Collects the types a linked and type checked tree refers to: the types named in it, the types of its expressions and
+ * the types declaring the fields, methods and constructors it uses. The code generated for the tree only depends on the
+ * declarations of these types, and on nothing in their bodies.
+ */
+public class DependencyVisitor extends RecursiveVisitor {
+
+  private final Set<TypeDeclaration> dependencies = new HashSet<TypeDeclaration>();
+
+  public Set<TypeDeclaration> getDependencies() {
+    return dependencies;
+  }
+
+  @Override
+  protected void postVisit(Name node) {
+    if (node.declNode instanceof TypeDeclaration) {
+      dependencies.add((TypeDeclaration) node.declNode);
+    } else if (node.declNode instanceof FieldDeclaration) {
+      add(((FieldDeclaration) node.declNode).getTypeDeclaration());
+    }
+    super.postVisit(node);
+  }
+
+  @Override
+  protected void postVisit(Expression node) {
+    if (node.expressionType != null) {
+      add(node.expressionType);
+    }
+    super.postVisit(node);
+  }
+
+  @Override
+  protected void postVisit(FieldAccess node) {
+    if (node.declNode != null) {
+      add(node.declNode.getTypeDeclaration());
+    }
+    super.postVisit(node);
+  }
+
+  @Override
+  protected void postVisit(MethodInvocation node) {
+    add(node.methodDecl);
+    super.postVisit(node);
+  }
+
+  @Override
+  protected void postVisit(ClassInstanceCreation node) {
+    add(node.constructor);
+    super.postVisit(node);
+  }
+
+  private void add(FormalType type) {
+    add(type.decl);
+  }
+
+  private void add(MethodDeclaration methodDecl) {
+    if (methodDecl != null) {
+      add(methodDecl.getTypeDeclaration());
+    }
+  }
+
+  // the length of an array has no declaring type
+  private void add(TypeDeclaration typeDecl) {
+    if (typeDecl != null) {
+      dependencies.add(typeDecl);
+    }
+  }
+
+}
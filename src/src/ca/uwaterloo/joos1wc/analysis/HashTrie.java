@@ -0,0 +1,198 @@
+package ca.uwaterloo.joos1wc.analysis;
+
+/**
+ * An immutable hash map, implemented as a hash array mapped trie. Adding a key copies only the path to it, so every
+ * older version of the map stays valid. This is what lets each SymbolTable keep an index of just the symbols that
+ * were declared before it, while sharing almost all of it with the tables before and after it.
+ */
+final class HashTrie<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  @SuppressWarnings("rawtypes")
+  private static final HashTrie EMPTY = new HashTrie<Object, Object>(null);
+
+  private final Node<K, V> root;
+
+  private HashTrie(Node<K, V> root) {
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> HashTrie<K, V> empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @return The value for the key, or null if the key is not in the map
+   */
+  public V get(K key) {
+    return root == null ? null : root.get(key, key.hashCode(), 0);
+  }
+
+  /**
+   * @return A map with the key set to the value, which replaces any value it had in this map
+   */
+  public HashTrie<K, V> put(K key, V value) {
+    int hash = key.hashCode();
+    if (root == null) {
+      return new HashTrie<K, V>(new Leaf<K, V>(hash, key, value));
+    }
+    return new HashTrie<K, V>(root.put(hash, key, value, 0));
+  }
+
+  private static int index(int hash, int shift) {
+    return (hash >>> shift) & MASK;
+  }
+
+  /**
+   * Creates the smallest branch that tells two nodes apart, given that their hashes differ.
+   */
+  private static <K, V> Node<K, V> merge(HashedNode<K, V> a, HashedNode<K, V> b, int shift) {
+    int ia = index(a.hash, shift);
+    int ib = index(b.hash, shift);
+    if (ia == ib) {
+      Node<K, V>[] children = newNodes(1);
+      children[0] = merge(a, b, shift + BITS);
+      return new Branch<K, V>(1 << ia, children);
+    }
+    Node<K, V>[] children = newNodes(2);
+    children[ia < ib ? 0 : 1] = a;
+    children[ia < ib ? 1 : 0] = b;
+    return new Branch<K, V>((1 << ia) | (1 << ib), children);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] newNodes(int length) {
+    return (Node<K, V>[]) new Node<?, ?>[length];
+  }
+
+  private static abstract class Node<K, V> {
+    abstract V get(K key, int hash, int shift);
+
+    abstract Node<K, V> put(int hash, K key, V value, int shift);
+  }
+
+  private static abstract class HashedNode<K, V> extends Node<K, V> {
+    final int hash;
+
+    HashedNode(int hash) {
+      this.hash = hash;
+    }
+  }
+
+  private static class Leaf<K, V> extends HashedNode<K, V> {
+    private final K key;
+    private final V value;
+
+    Leaf(int hash, K key, V value) {
+      super(hash);
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    V get(K key, int hash, int shift) {
+      return this.hash == hash && this.key.equals(key) ? value : null;
+    }
+
+    @Override
+    Node<K, V> put(int hash, K key, V value, int shift) {
+      if (this.hash != hash) {
+        return merge(this, new Leaf<K, V>(hash, key, value), shift);
+      }
+      if (this.key.equals(key)) {
+        return new Leaf<K, V>(hash, key, value);
+      }
+      return new Collision<K, V>(hash, new Object[] { this.key, key }, new Object[] { this.value, value });
+    }
+  }
+
+  /**
+   * Different keys with the same hash, which are just searched in order.
+   */
+  private static class Collision<K, V> extends HashedNode<K, V> {
+    private final Object[] keys;
+    private final Object[] values;
+
+    Collision(int hash, Object[] keys, Object[] values) {
+      super(hash);
+      this.keys = keys;
+      this.values = values;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    V get(K key, int hash, int shift) {
+      if (this.hash == hash) {
+        for (int i = 0; i < keys.length; i++) {
+          if (keys[i].equals(key)) {
+            return (V) values[i];
+          }
+        }
+      }
+      return null;
+    }
+
+    @Override
+    Node<K, V> put(int hash, K key, V value, int shift) {
+      if (this.hash != hash) {
+        return merge(this, new Leaf<K, V>(hash, key, value), shift);
+      }
+      int i = 0;
+      while (i < keys.length && !keys[i].equals(key)) {
+        i++;
+      }
+      Object[] newKeys = keys;
+      Object[] newValues = new Object[Math.max(i + 1, values.length)];
+      if (i == keys.length) {
+        newKeys = new Object[i + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        newKeys[i] = key;
+      }
+      System.arraycopy(values, 0, newValues, 0, values.length);
+      newValues[i] = value;
+      return new Collision<K, V>(hash, newKeys, newValues);
+    }
+  }
+
+  /**
+   * An inner node, with a bit set in the bitmap for each of the 32 slots that has a child. Children are stored densely
+   * in slot order.
+   */
+  private static class Branch<K, V> extends Node<K, V> {
+    private final int bitmap;
+    private final Node<K, V>[] children;
+
+    Branch(int bitmap, Node<K, V>[] children) {
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+
+    @Override
+    V get(K key, int hash, int shift) {
+      int bit = 1 << index(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[Integer.bitCount(bitmap & (bit - 1))].get(key, hash, shift + BITS);
+    }
+
+    @Override
+    Node<K, V> put(int hash, K key, V value, int shift) {
+      int bit = 1 << index(hash, shift);
+      int i = Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) != 0) {
+        Node<K, V>[] newChildren = children.clone();
+        newChildren[i] = children[i].put(hash, key, value, shift + BITS);
+        return new Branch<K, V>(bitmap, newChildren);
+      }
+      Node<K, V>[] newChildren = newNodes(children.length + 1);
+      System.arraycopy(children, 0, newChildren, 0, i);
+      newChildren[i] = new Leaf<K, V>(hash, key, value);
+      System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+      return new Branch<K, V>(bitmap | bit, newChildren);
+    }
+  }
+
+}
@@ -1,14 +1,15 @@
 package ca.uwaterloo.joos1wc.analysis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
+import ca.uwaterloo.joos1wc.ast.Literal;
 import ca.uwaterloo.joos1wc.ast.Type;
 import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
@@ -17,52 +18,41 @@ import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
 import ca.uwaterloo.joos1wc.diagnostics.SemanticException;
 
 public class HierarchyChecker {
+  private final CompilationContext context;
   private final Diagnostics diagnostic;
 
-  public HierarchyChecker(Diagnostics diagnostic) {
+  public HierarchyChecker(CompilationContext context, Diagnostics diagnostic) {
+    this.context = context;
     this.diagnostic = diagnostic;
 
-    runCheck(Joos1Wc.DEFAULT_PKG, new Checker() {
-      @Override
-      public void check(TypeDeclaration decl) {
-        mapDeclaredMethods(decl);
-      }
-    });
+    List<TypeDeclaration> typeDecls = new ArrayList<>();
+    collectTypes(context.defaultPackage, typeDecls);
 
-    runCheck(Joos1Wc.DEFAULT_PKG, new Checker() {
-      @Override
-      public void check(TypeDeclaration decl) {
-        checkCycles(decl);
-      }
-    });
+    for (TypeDeclaration typeDecl : typeDecls) {
+      mapDeclaredMethods(typeDecl);
+    }
+
+    List<TypeDeclaration> sorted = sortSupertypesFirst(typeDecls);
 
     // Cycles mess with everything else, so short-circuit the checks if we find one
     if (!diagnostic.isEmpty()) {
       return;
     }
 
-    runCheck(Joos1Wc.DEFAULT_PKG, new Checker() {
-      @Override
-      public void check(TypeDeclaration decl) {
-        mapInheritedMethods(decl);
-      }
-    });
-
-    runCheck(Joos1Wc.DEFAULT_PKG, new Checker() {
-      @Override
-      public void check(TypeDeclaration decl) {
-        checkDefaultConstructor(decl);
-      }
-    });
+    // Everything a type inherits is worked out by the time we get to it, so each type is only done once
+    int typeNumber = 0;
+    for (TypeDeclaration typeDecl : sorted) {
+      mapInheritedMethods(typeDecl);
+      typeDecl.setTypeNumber(typeNumber++);
+      checkDefaultConstructor(typeDecl);
+    }
   }
 
-  private void runCheck(PackageTable pkg, Checker checker) {
+  private void collectTypes(PackageTable pkg, List<TypeDeclaration> typeDecls) {
     for (PackageTable subpackage : pkg.getSubpackages()) {
-      runCheck(subpackage, checker);
-    }
-    for (TypeDeclaration typeDecl : pkg.getTypeDecls()) {
-      checker.check(typeDecl);
+      collectTypes(subpackage, typeDecls);
     }
+    typeDecls.addAll(pkg.getTypeDecls());
   }
 
   private void checkDefaultConstructor(TypeDeclaration typeDecl) {
@@ -79,7 +69,7 @@ public class HierarchyChecker {
     Map<MethodDeclaration.Signature, MethodDeclaration> declaredMethods = new HashMap<>();
     for (List<MethodDeclaration> methodList : typeDecl.getMethods()) {
       for (MethodDeclaration method : methodList) {
-        if (method.isConstructor && !method.name.equals(typeDecl.name)) {
+        if (method.isConstructor && method.name != typeDecl.name) {
           diagnostic.add(new SemanticException(String.format(Exceptions.CONSTRUCTOR_MISMATCH, typeDecl.name)));
         }
         if (declaredMethods.containsKey(method.getSignature())) {
@@ -97,62 +87,56 @@ public class HierarchyChecker {
   }
 
   private void mapInheritedMethods(TypeDeclaration typeDecl) {
-    Map<MethodDeclaration.Signature, MethodDeclaration> inheritedMethods = typeDecl.getInheritedMethods();
+    Map<MethodDeclaration.Signature, MethodDeclaration> inheritedMethods = new HashMap<>();
 
-    if (inheritedMethods == null) {
-      inheritedMethods = new HashMap<>();
-
-      // Interface inherit from Object (JLS 9.2)
-      if (!typeDecl.isClass && typeDecl.getSuperifaceDecls().size() == 0) {
-        // TODO refactor check with other java.lang.Object references
-        TypeDeclaration object = TypeDeclaration.getObjectType();
-        inheritedMethods.putAll(object.getDeclaredMethods());
-      }
+    // Interface inherit from Object (JLS 9.2)
+    if (!typeDecl.isClass && typeDecl.getSuperifaceDecls().size() == 0) {
+      // TODO refactor check with other java.lang.Object references
+      TypeDeclaration object = Literal.getObjectType(context.defaultPackage);
+      inheritedMethods.putAll(object.getDeclaredMethods());
+    }
 
-      Collection<TypeDeclaration> ifaces = typeDecl.isClass ? typeDecl.getIfaceDecls() : typeDecl.getSuperifaceDecls();
-      for (TypeDeclaration iface : ifaces) {
-        mapInheritedMethods(iface);
-        checkAndInherit(inheritedMethods, iface.getInheritedMethods());
-      }
+    Collection<TypeDeclaration> ifaces = typeDecl.isClass ? typeDecl.getIfaceDecls() : typeDecl.getSuperifaceDecls();
+    for (TypeDeclaration iface : ifaces) {
+      checkAndInherit(inheritedMethods, iface.getInheritedMethods());
+    }
 
-      // Check superclass last - overwrite with implementations
-      if (typeDecl.isClass) {
-        TypeDeclaration superclass = typeDecl.getSuperclassDecl();
-        if (superclass != null) {
-          mapInheritedMethods(superclass);
-          checkAndInherit(inheritedMethods, superclass.getInheritedMethods());
-        }
+    // Check superclass last - overwrite with implementations
+    if (typeDecl.isClass) {
+      TypeDeclaration superclass = typeDecl.getSuperclassDecl();
+      if (superclass != null) {
+        checkAndInherit(inheritedMethods, superclass.getInheritedMethods());
       }
+    }
 
-      // Check own declared methods
-      for (Map.Entry<MethodDeclaration.Signature, MethodDeclaration> entry : typeDecl.getDeclaredMethods().entrySet()) {
-        MethodDeclaration declared = entry.getValue();
-        MethodDeclaration overriden = inheritedMethods.get(entry.getKey());
-        if (overriden != null && !overriden.isConstructor) {
-          checkInheritedMethod(declared, overriden, true);
-        }
-        inheritedMethods.put(declared.getSignature(), declared);
+    // Check own declared methods
+    for (Map.Entry<MethodDeclaration.Signature, MethodDeclaration> entry : typeDecl.getDeclaredMethods().entrySet()) {
+      MethodDeclaration declared = entry.getValue();
+      MethodDeclaration overriden = inheritedMethods.get(entry.getKey());
+      if (overriden != null && !overriden.isConstructor) {
+        checkInheritedMethod(declared, overriden, true);
       }
+      inheritedMethods.put(declared.getSignature(), declared);
+    }
 
-      // Check if concrete class has abstract methods
-      if (typeDecl.isClass && !typeDecl.isAbstract()) {
-        for (MethodDeclaration method : inheritedMethods.values()) {
-          if (method.isReallyAbstract()) {
-            MethodDeclaration declared = typeDecl.getDeclaredMethod(method.getSignature());
-            if (declared == null || declared.isReallyAbstract()) {
-              diagnostic.add(new SemanticException(String.format(Exceptions.ABSTRACT_NOT_IMPLEMENTED, method.name)));
-            }
-          }
-        }
-        for (MethodDeclaration method : typeDecl.getDeclaredMethods().values()) {
-          if (method.isReallyAbstract()) {
+    // Check if concrete class has abstract methods
+    if (typeDecl.isClass && !typeDecl.isAbstract()) {
+      for (MethodDeclaration method : inheritedMethods.values()) {
+        if (method.isReallyAbstract()) {
+          MethodDeclaration declared = typeDecl.getDeclaredMethod(method.getSignature());
+          if (declared == null || declared.isReallyAbstract()) {
             diagnostic.add(new SemanticException(String.format(Exceptions.ABSTRACT_NOT_IMPLEMENTED, method.name)));
           }
         }
       }
-
-      typeDecl.setInheritedMethods(inheritedMethods);
+      for (MethodDeclaration method : typeDecl.getDeclaredMethods().values()) {
+        if (method.isReallyAbstract()) {
+          diagnostic.add(new SemanticException(String.format(Exceptions.ABSTRACT_NOT_IMPLEMENTED, method.name)));
+        }
+      }
     }
+
+    typeDecl.setInheritedMethods(inheritedMethods);
   }
 
   private void checkAndInherit(Map<MethodDeclaration.Signature, MethodDeclaration> current,
@@ -199,86 +183,115 @@ public class HierarchyChecker {
     }
   }
 
-  private void checkCycles(TypeDeclaration node) {
-    // check for cycles in the hierarchy
-    try {
-      if (node.isClass) {
-        // check for class extension cycles
-        checkForCycles(node, new Adjacency() {
-          @Override
-          @SuppressWarnings("unchecked")
-          public Collection<TypeDeclaration> adjacentNodes(TypeDeclaration node) {
-            if (node.superclass == null) {
-              return (Collection<TypeDeclaration>) Collections.EMPTY_SET;
-            }
-            return Collections.singleton(node.getSuperclassDecl());
-          }
-        });
-      } else {
-        // check for interface implements cycles
-        checkForCycles(node, new Adjacency() {
-          @Override
-          public Collection<TypeDeclaration> adjacentNodes(TypeDeclaration node) {
-            return node.getSuperifaceDecls();
-          }
-        });
-      }
-
-    } catch (SemanticException se) {
-      diagnostic.add(se);
-    }
-  }
-
   /**
-   * Interface that lets us make a generic cycle checking algorithm
+   * @return the types a type directly extends or implements
    */
-  private static interface Adjacency {
-    public Collection<TypeDeclaration> adjacentNodes(TypeDeclaration node);
+  private static Collection<TypeDeclaration> getDirectSupertypes(TypeDeclaration typeDecl) {
+    if (!typeDecl.isClass) {
+      return typeDecl.getSuperifaceDecls();
+    }
+    List<TypeDeclaration> supertypes = new ArrayList<>(typeDecl.getIfaceDecls());
+    if (typeDecl.getSuperclassDecl() != null) {
+      supertypes.add(typeDecl.getSuperclassDecl());
+    }
+    return supertypes;
   }
 
   /**
-   * Check for cycles in some kind of graph
+   * Orders the types so that each one comes after its supertypes, using Tarjan's algorithm to find the strongly
+   * connected components of the graph of supertype edges. Components come out of the algorithm after every component
+   * they can reach, so supertypes first. Since classes only extend classes and interfaces only extend interfaces, a
+   * component with more than one type, or a type that is its own supertype, is a cycle in the class or interface
+   * hierarchy.
    * 
-   * @param node
-   *          a node in the graph
-   * @param tree
-   *          an adjacency relationship for the graph
-   * @throws SemanticException
-   *           if a cycle is found
-   */
-  private void checkForCycles(TypeDeclaration node, Adjacency graph) throws SemanticException {
-    checkForCyclesWorker(node, graph, new HashSet<TypeDeclaration>());
-  }
-
-  /**
-   * Worker method for checking for cycles in some kind of graph
+   * The depth-first search keeps its own stack, since hierarchies can be deeper than the call stack.
    * 
-   * @param node
-   *          the current state in the depth-first search of the traversal
-   * @param graph
-   *          an adjacency relationship for the graph
-   * @param visited
-   *          a set of visited nodes in the graph
-   * @throws SemanticException
-   *           if a cycle is found
+   * @param typeDecls
+   *          every type in the program
+   * @return the types, supertypes first
    */
-  private void checkForCyclesWorker(TypeDeclaration node, Adjacency graph, Set<TypeDeclaration> visited)
-      throws SemanticException {
-
-    // if we've seen the node before, and it matches the start node, then we have a cycle
-    if (visited.contains(node)) {
-      throw new SemanticException(String.format(Exceptions.CYCLE_IN_HIERARCHY, node.name));
+  private List<TypeDeclaration> sortSupertypesFirst(List<TypeDeclaration> typeDecls) {
+    int count = typeDecls.size();
+    // types hash alike, so number them by identity
+    Map<TypeDeclaration, Integer> ids = new IdentityHashMap<>(count);
+    for (int i = 0; i < count; i++) {
+      ids.put(typeDecls.get(i), i);
     }
-
-    visited.add(node);
-    for (TypeDeclaration neighbour : graph.adjacentNodes(node)) {
-      checkForCyclesWorker(neighbour, graph, visited);
+    int[][] edges = new int[count][];
+    for (int i = 0; i < count; i++) {
+      Collection<TypeDeclaration> supertypes = getDirectSupertypes(typeDecls.get(i));
+      edges[i] = new int[supertypes.size()];
+      int j = 0;
+      for (TypeDeclaration supertype : supertypes) {
+        edges[i][j++] = ids.get(supertype);
+      }
     }
-    visited.remove(node);
-  }
 
-  private interface Checker {
-    public void check(TypeDeclaration decl);
+    List<TypeDeclaration> sorted = new ArrayList<>(count);
+    int[] index = new int[count];
+    Arrays.fill(index, -1);
+    int[] lowlink = new int[count];
+    boolean[] onStack = new boolean[count];
+    int[] stack = new int[count];
+    int stackSize = 0;
+    // the path of the search, and how many edges of each type on it have been followed
+    int[] path = new int[count];
+    int[] followed = new int[count];
+    int nextIndex = 0;
+
+    for (int root = 0; root < count; root++) {
+      if (index[root] >= 0) {
+        continue;
+      }
+      int depth = 0;
+      path[0] = root;
+      followed[0] = 0;
+      index[root] = lowlink[root] = nextIndex++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+
+      while (depth >= 0) {
+        int v = path[depth];
+        if (followed[depth] < edges[v].length) {
+          int w = edges[v][followed[depth]++];
+          if (index[w] < 0) {
+            index[w] = lowlink[w] = nextIndex++;
+            stack[stackSize++] = w;
+            onStack[w] = true;
+            depth++;
+            path[depth] = w;
+            followed[depth] = 0;
+          } else if (onStack[w]) {
+            lowlink[v] = Math.min(lowlink[v], index[w]);
+          }
+          continue;
+        }
+
+        if (lowlink[v] == index[v]) {
+          // v is the root of a component, which is everything above it on the stack
+          int first = stackSize;
+          do {
+            onStack[stack[--first]] = false;
+          } while (stack[first] != v);
+          boolean isCycle = stackSize - first > 1;
+          for (int w : edges[v]) {
+            isCycle |= w == v;
+          }
+          if (isCycle) {
+            diagnostic.add(new SemanticException(String.format(Exceptions.CYCLE_IN_HIERARCHY, typeDecls.get(v).name)));
+          }
+          for (int i = first; i < stackSize; i++) {
+            sorted.add(typeDecls.get(stack[i]));
+          }
+          stackSize = first;
+        }
+        depth--;
+        if (depth >= 0) {
+          lowlink[path[depth]] = Math.min(lowlink[path[depth]], lowlink[v]);
+        }
+      }
+    }
+    return sorted;
   }
 
 }
@@ -1,12 +1,16 @@
 package ca.uwaterloo.joos1wc.analysis;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import java.util.Map;
+
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.QualifiedName;
 import ca.uwaterloo.joos1wc.ast.SimpleName;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
 import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.ImportDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration.Signature;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
 import ca.uwaterloo.joos1wc.diagnostics.SemanticException;
@@ -21,7 +25,19 @@ public class LinkerUtils {
   private LinkerUtils() {
   }
 
-  static TypeDeclaration resolveType(CompilationUnit unit, SimpleName node) throws SemanticException {
+  static TypeDeclaration resolveType(CompilationContext context, CompilationUnit unit, SimpleName node) throws SemanticException {
+    TypeDeclaration decl = unit.resolvedTypes.get(node.identifier);
+    if (decl != null || unit.resolvedTypes.contains(node.identifier)) {
+      return decl;
+    }
+    // ambiguous names aren't cached, so that every reference to them is reported
+    decl = findType(context, unit, node);
+    unit.resolvedTypes.put(node.identifier, decl);
+    return decl;
+  }
+
+  private static TypeDeclaration findType(CompilationContext context, CompilationUnit unit, SimpleName node)
+      throws SemanticException {
     TypeDeclaration decl;
 
     // Type? (this, or single import)
@@ -31,7 +47,7 @@ public class LinkerUtils {
     }
 
     // Type? (in local package)
-    decl = unit.getLocalPackage().getType(node.identifier);
+    decl = unit.getLocalPackage(context.defaultPackage).getType(node.identifier);
     if (decl != null) {
       return decl;
     }
@@ -47,7 +63,7 @@ public class LinkerUtils {
         }
       }
     }
-    PackageTable java = Joos1Wc.DEFAULT_PKG.getSubpackage("java");
+    PackageTable java = context.defaultPackage.getSubpackage("java");
     if (java != null) {
       PackageTable lang = java.getSubpackage("lang");
       if (lang != null) {
@@ -63,8 +79,8 @@ public class LinkerUtils {
     return decl;
   }
 
-  static PackageTable resolvePackage(SimpleName node) {
-    return Joos1Wc.DEFAULT_PKG.getSubpackage(node.identifier);
+  static PackageTable resolvePackage(CompilationContext context, SimpleName node) {
+    return context.defaultPackage.getSubpackage(node.identifier);
   }
 
   static TypeDeclaration resolveType(QualifiedName node) {
@@ -83,16 +99,10 @@ public class LinkerUtils {
 
   static FieldDeclaration resolveField(final TypeDeclaration thisDecl, final TypeDeclaration targetType, String name,
       EntityType lhsEntityType, boolean isInStaticScope) throws SemanticException {
-    FieldDeclaration ret = null;
-    TypeDeclaration type = targetType;
-    while (ret == null && type != null) {
-      ret = type.getField(name);
-      if (ret == null) {
-        type = type.superclass == null ? null : (TypeDeclaration) type.superclass.name.declNode;
-      }
-    }
+    FieldDeclaration ret = findField(targetType, name);
     // If resolved:
     if (ret != null) {
+      TypeDeclaration type = ret.getTypeDeclaration();
       // Check access restrictions
       if (ret.isProtected() && thisDecl.getPackage() != type.getPackage()
           && (!thisDecl.isSubclassOf(type) || (lhsEntityType != EntityType.TYPE && !targetType.isSubclassOf(thisDecl)))) {
@@ -112,4 +122,50 @@ public class LinkerUtils {
     return ret;
   }
 
+  private static FieldDeclaration findField(TypeDeclaration targetType, String name) {
+    FieldDeclaration ret = targetType.resolvedFields.get(name);
+    if (ret != null || targetType.resolvedFields.contains(name)) {
+      return ret;
+    }
+    TypeDeclaration type = targetType;
+    while (ret == null && type != null) {
+      ret = type.getField(name);
+      if (ret == null) {
+        type = type.superclass == null ? null : (TypeDeclaration) type.superclass.name.declNode;
+      }
+    }
+    targetType.resolvedFields.put(name, ret);
+    return ret;
+  }
+
+  /**
+   * Finds the method a call with the given signature refers to: the method with exactly that signature, or else the
+   * only one that matches it up to boxing.
+   * 
+   * @return The method, or null if there is none
+   * @throws SemanticException
+   *           If several methods match
+   */
+  static MethodDeclaration resolveMethod(TypeDeclaration targetType, Signature signature) throws SemanticException {
+    MethodDeclaration method = targetType.resolvedMethods.get(signature);
+    if (method != null || targetType.resolvedMethods.contains(signature)) {
+      return method;
+    }
+    method = targetType.getInheritedMethod(signature);
+    if (method == null) {
+      // Could not find exact match - look for other applicable methods
+      for (Map.Entry<Signature, MethodDeclaration> entry : targetType.getInheritedMethods().entrySet()) {
+        if (entry.getKey().matches(signature)) {
+          // Must be ambiguous, since we do not allow closest match overloading
+          if (method != null) {
+            throw new SemanticException(String.format(Exceptions.AMBIGUOUS_METHOD_INVOCATION, signature.name()));
+          }
+          method = entry.getValue();
+        }
+      }
+    }
+    targetType.resolvedMethods.put(signature, method);
+    return method;
+  }
+
 }
@@ -1,6 +1,6 @@
 package ca.uwaterloo.joos1wc.analysis;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.ArrayType;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
@@ -23,6 +23,7 @@ import ca.uwaterloo.joos1wc.diagnostics.SemanticException;
 
 public class NameLinkerVisitor extends RecursiveVisitor {
 
+  private final CompilationContext context;
   private final Diagnostics diagnostic;
 
   PackageTable localPackage;
@@ -32,9 +33,10 @@ public class NameLinkerVisitor extends RecursiveVisitor {
   boolean inFieldDeclaration = false;
   boolean isInStaticScope = false;
 
-  public NameLinkerVisitor(Diagnostics diagnostic) {
+  public NameLinkerVisitor(CompilationContext context, Diagnostics diagnostic) {
     // If we don't see a package declaration, we are in the default package
-    this.localPackage = Joos1Wc.DEFAULT_PKG;
+    this.localPackage = context.defaultPackage;
+    this.context = context;
     this.diagnostic = diagnostic;
   }
 
@@ -81,22 +83,17 @@ public class NameLinkerVisitor extends RecursiveVisitor {
       return;
     }
 
-    // Local variable?
-    for (SymbolTable.Entry entry : node.symbols) {
-      if (entry.decl.getEntityType() != EntityType.VARIABLE) {
-        break;
-      }
-      if (entry.key.equals(node.identifier)) {
-        node.declNode = entry.decl;
-        // Error if we are in the initializer of the declaration
-        for (TreeNode ancestor : stack) {
-          if (ancestor == entry.decl) {
-            diagnostic
-                .add(new SemanticException(String.format(Exceptions.LOCAL_VARIABLE_IN_OWN_INITIALIZER, entry.key)));
-          }
+    // Local variable? Locals are always more recent than the fields and types in the table, so they shadow them
+    SymbolTable.Entry entry = node.symbols.getEntry(node.identifier);
+    if (entry != null && entry.decl.getEntityType() == EntityType.VARIABLE) {
+      node.declNode = entry.decl;
+      // Error if we are in the initializer of the declaration
+      for (TreeNode ancestor : stack) {
+        if (ancestor == entry.decl) {
+          diagnostic.add(new SemanticException(String.format(Exceptions.LOCAL_VARIABLE_IN_OWN_INITIALIZER, entry.key)));
         }
-        return;
       }
+      return;
     }
 
     // Field?
@@ -115,7 +112,7 @@ public class NameLinkerVisitor extends RecursiveVisitor {
 
     // Type?
     try {
-      node.declNode = LinkerUtils.resolveType(unit, node);
+      node.declNode = LinkerUtils.resolveType(context, unit, node);
     } catch (SemanticException e) {
       diagnostic.add(e);
     }
@@ -124,7 +121,7 @@ public class NameLinkerVisitor extends RecursiveVisitor {
     }
 
     // Package?
-    node.packageTable = LinkerUtils.resolvePackage(node);
+    node.packageTable = LinkerUtils.resolvePackage(context, node);
     if (node.packageTable == null) {
       diagnostic.add(new SemanticException(String.format(Exceptions.NO_RESOLUTION, node.identifier)));
     }
@@ -183,7 +180,7 @@ public class NameLinkerVisitor extends RecursiveVisitor {
       Type type = node.qualifier.declNode.getType();
       if (type instanceof ArrayType) {
         // Array - can only do .length
-        if (node.identifier.equals(FieldDeclaration.ARRAY_LENGTH)) {
+        if (node.identifier == FieldDeclaration.ARRAY_LENGTH) {
           node.declNode = FieldDeclaration.LENGTH_FIELD;
         } else {
           diagnostic.add(new SemanticException(String.format(Exceptions.NO_RESOLUTION, node.identifier)));
@@ -225,12 +222,7 @@ public class NameLinkerVisitor extends RecursiveVisitor {
       }
     }
     // Is the field found in the symbol table? If so, this isn't a forward reference
-    for (SymbolTable.Entry entry : node.symbols) {
-      if (entry.key.equals(node.declNode.getName()) && entry.decl.getEntityType() == EntityType.FIELD) {
-        return false;
-      }
-    }
-    return true;
+    return node.symbols.get(node.declNode.getName(), EntityType.FIELD) == null;
   }
 
 }
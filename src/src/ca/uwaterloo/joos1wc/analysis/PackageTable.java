@@ -7,9 +7,10 @@ import java.util.List;
 import java.util.Map;
 
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+import ca.uwaterloo.joos1wc.scanner.Names;
 
 /*
- * Just a glorified map
+ * Just a glorified map. Names are interned (see Names), so lookups only compare them by identity.
  */
 public class PackageTable {
 
@@ -26,16 +27,18 @@ public class PackageTable {
   public PackageTable(String prefix, String name) {
     isDefault = false;
     this.name = name;
-    this.fullname = prefix.length() > 0 ? prefix + "." + name : name;
+    this.fullname = Names.qualify(prefix, name);
   }
 
   public PackageTable addSubpackage(String name) {
+    assert Names.isInterned(name);
     PackageTable t = new PackageTable(fullname, name);
     subpackages.put(name, t);
     return t;
   }
 
   public void addType(String name, TypeDeclaration node) {
+    assert Names.isInterned(name);
     types.put(name, node);
   }
 
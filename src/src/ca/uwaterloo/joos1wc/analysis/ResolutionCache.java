@@ -0,0 +1,45 @@
+package ca.uwaterloo.joos1wc.analysis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers what a name resolved to, including the names that resolved to nothing, so that a name referred to over and
+ * over again is only looked up once. LinkerUtils fills these in as it resolves names.
+ *
+ * The type checker checks the bodies of a type in parallel, so the cache may be shared between threads. Two threads
+ * may both resolve a name the first time, but they find the same declaration.
+ */
+public class ResolutionCache<K, V> {
+  private static final Object NOT_FOUND = new Object();
+
+  private final ConcurrentMap<K, Object> results = new ConcurrentHashMap<K, Object>();
+
+  /**
+   * @return The cached declaration for the key, or null if it resolved to nothing or has not been resolved
+   */
+  @SuppressWarnings("unchecked")
+  public V get(K key) {
+    Object result = results.get(key);
+    return result == NOT_FOUND ? null : (V) result;
+  }
+
+  /**
+   * @return Whether the key has been resolved, for telling the two kinds of null result from get apart
+   */
+  public boolean contains(K key) {
+    return results.containsKey(key);
+  }
+
+  public void put(K key, V value) {
+    results.put(key, value == null ? NOT_FOUND : value);
+  }
+
+  /**
+   * Forgets every result, for when something they depend on has changed.
+   */
+  public void clear() {
+    results.clear();
+  }
+
+}
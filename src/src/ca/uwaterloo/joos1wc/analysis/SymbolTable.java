@@ -4,17 +4,22 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
+import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
 
 /**
  * The Symbol Table, implemented as a sort of linked-list of linked-lists. This choice was made to allow the tables to
  * be added first, and then the symbols themselves to be added later with little effort. Since the symbols don't link
  * between tables, inserting a new symbol in the middle doesn't require any other table to change.
- *
+ * 
+ * Each table also keeps an index from each key to the most recent entry with that key, so lookups don't have to walk
+ * the whole chain. The index is a persistent map that shares its structure with the index of the table before, so a
+ * table still only sees the symbols declared before it.
  */
 public class SymbolTable implements Iterable<SymbolTable.Entry> {
   // nextTable keeps a reference to the most recent scope before this one
   private final SymbolTable next;
   private final Entry entry;
+  private final HashTrie<String, Entry> index;
 
   /**
    * The empty constructor is used for the global scope
@@ -22,6 +27,7 @@ public class SymbolTable implements Iterable<SymbolTable.Entry> {
   public SymbolTable() {
     this.next = null;
     this.entry = null;
+    this.index = HashTrie.empty();
   }
 
   /**
@@ -32,7 +38,13 @@ public class SymbolTable implements Iterable<SymbolTable.Entry> {
    */
   public SymbolTable(SymbolTable next, String key, INamedEntityNode decl) {
     this.next = next;
-    this.entry = new Entry(key, decl);
+    if (key == null) {
+      this.entry = new Entry(null, decl, null);
+      this.index = next.index;
+    } else {
+      this.entry = new Entry(key, decl, next.index.get(key));
+      this.index = next.index.put(key, entry);
+    }
   }
 
   /**
@@ -43,15 +55,36 @@ public class SymbolTable implements Iterable<SymbolTable.Entry> {
    * @return The symbol object representing the first encountered symbol with a matching key
    */
   public INamedEntityNode get(String key) {
-    assert key != null;
-    for (Entry entry : this) {
-      if (entry != null && key.equals(entry.key)) {
+    Entry entry = getEntry(key);
+    return entry == null ? null : entry.decl;
+  }
+
+  /**
+   * Returns null if no symbol with a matching key and entity type is found.
+   * 
+   * @param key
+   *          The name of the symbol to find
+   * @param entityType
+   *          The kind of symbol to find
+   * @return The symbol object representing the first encountered symbol with a matching key and entity type
+   */
+  public INamedEntityNode get(String key, EntityType entityType) {
+    for (Entry entry = getEntry(key); entry != null; entry = entry.shadowed) {
+      if (entry.decl.getEntityType() == entityType) {
         return entry.decl;
       }
     }
     return null;
   }
 
+  /**
+   * @return The first encountered entry with a matching key, or null if there isn't one
+   */
+  public SymbolTable.Entry getEntry(String key) {
+    assert key != null;
+    return index.get(key);
+  }
+
   public SymbolTable.Entry head() {
     return entry;
   }
@@ -93,10 +126,13 @@ public class SymbolTable implements Iterable<SymbolTable.Entry> {
   public static class Entry {
     public final String key;
     public final INamedEntityNode decl;
+    // the next most recent entry with the same key
+    private final Entry shadowed;
 
-    public Entry(String key, INamedEntityNode decl) {
+    private Entry(String key, INamedEntityNode decl, Entry shadowed) {
       this.key = key;
       this.decl = decl;
+      this.shadowed = shadowed;
     }
   }
 
@@ -6,7 +6,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.Block;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
@@ -42,8 +42,8 @@ public class SymbolVisitor extends RecursiveVisitor {
 
   PackageTable currentPackage;
 
-  public SymbolVisitor(Diagnostics diagnostic) {
-    currentPackage = Joos1Wc.DEFAULT_PKG;
+  public SymbolVisitor(CompilationContext context, Diagnostics diagnostic) {
+    currentPackage = context.defaultPackage;
     this.diagnostic = diagnostic;
   }
 
@@ -212,11 +212,8 @@ public class SymbolVisitor extends RecursiveVisitor {
   }
 
   private void checkDuplicateLocalVar(INamedEntityNode node) {
-    for (SymbolTable.Entry entry : lastNodeInScope.symbols) {
-      if (entry.decl.getEntityType() == EntityType.VARIABLE && entry.key.equals(node.getName())) {
-        diagnostic.add(new SemanticException(String.format(Exceptions.DUPLICATE_LOCAL_VAR, node.getName())));
-        break;
-      }
+    if (lastNodeInScope.symbols.get(node.getName(), EntityType.VARIABLE) != null) {
+      diagnostic.add(new SemanticException(String.format(Exceptions.DUPLICATE_LOCAL_VAR, node.getName())));
     }
   }
 
@@ -2,9 +2,12 @@ package ca.uwaterloo.joos1wc.analysis;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
@@ -14,6 +17,7 @@ import ca.uwaterloo.joos1wc.ast.PrimitiveType.Code;
 import ca.uwaterloo.joos1wc.ast.QualifiedName;
 import ca.uwaterloo.joos1wc.ast.RecursiveVisitor;
 import ca.uwaterloo.joos1wc.ast.SimpleName;
+import ca.uwaterloo.joos1wc.ast.TreeNode;
 import ca.uwaterloo.joos1wc.ast.Type;
 import ca.uwaterloo.joos1wc.ast.Type.FormalType;
 import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
@@ -50,56 +54,133 @@ import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
 import ca.uwaterloo.joos1wc.diagnostics.SemanticException;
 
 public class TypeChecker {
+  private final CompilationContext context;
   private final Diagnostics diagnostic;
 
-  PackageTable localPackage;
-  CompilationUnit localUnit;
   FormalType strType;
   FormalType objType;
   FormalType icloneable;
   FormalType iserializable;
 
-  public TypeChecker(Diagnostics diagnostic) {
-    // If we don't see a package declaration, we are in the default package
-    this.localPackage = Joos1Wc.DEFAULT_PKG;
+  public TypeChecker(CompilationContext context, Diagnostics diagnostic) {
+    this.context = context;
     this.diagnostic = diagnostic;
 
-    strType = StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG).formalType;
-    objType = Literal.getObjectType(Joos1Wc.DEFAULT_PKG).formalType;
+    strType = StringLiteral.getStringType(context.defaultPackage).formalType;
+    objType = Literal.getObjectType(context.defaultPackage).formalType;
 
     // array interfaces
-    icloneable = Joos1Wc.DEFAULT_PKG.getSubpackage("java").getSubpackage("lang").getType("Cloneable").formalType;
-    iserializable = Joos1Wc.DEFAULT_PKG.getSubpackage("java").getSubpackage("io").getType("Serializable").formalType;
+    icloneable = context.defaultPackage.getSubpackage("java").getSubpackage("lang").getType("Cloneable").formalType;
+    iserializable = context.defaultPackage.getSubpackage("java").getSubpackage("io").getType("Serializable").formalType;
 
-    runCheck(Joos1Wc.DEFAULT_PKG);
+    List<TypeCheckerVisitor> visitors = new ArrayList<TypeCheckerVisitor>();
+    addChecks(context.defaultPackage, visitors);
+    runChecks(visitors);
   }
 
-  private void runCheck(PackageTable pkg) {
+  /**
+   * Adds a visitor for every method and field to check, in the order their errors are reported.
+   */
+  private void addChecks(PackageTable pkg, List<TypeCheckerVisitor> visitors) {
     for (PackageTable subpackage : pkg.getSubpackages()) {
-      runCheck(subpackage);
+      addChecks(subpackage, visitors);
     }
     for (TypeDeclaration typeDecl : pkg.getTypeDecls()) {
+      // the bodies of precompiled types were checked when their code was generated
+      if (typeDecl.isPrecompiled) {
+        continue;
+      }
+      boolean addedFields = false;
       for (List<MethodDeclaration> mdecls : typeDecl.getMethods()) {
         for (MethodDeclaration mdecl : mdecls) {
-          TypeCheckerVisitor visitor = new TypeCheckerVisitor(typeDecl, mdecl);
-          mdecl.accept(visitor);
+          visitors.add(new TypeCheckerVisitor(typeDecl, mdecl, mdecl));
         }
-        for (FieldDeclaration fdecl : typeDecl.getFields()) {
-          TypeCheckerVisitor visitor = new TypeCheckerVisitor(typeDecl, null);
-          fdecl.accept(visitor);
+        // the fields come after the first methods, as they always have; checking them again only repeated their errors
+        if (!addedFields) {
+          for (FieldDeclaration fdecl : typeDecl.getFields()) {
+            visitors.add(new TypeCheckerVisitor(typeDecl, null, fdecl));
+          }
+          addedFields = true;
         }
       }
     }
   }
 
+  /**
+   * Runs the checks on the threads of the context. Once names are linked, a method body or field initializer only
+   * changes its own nodes, so the checks are independent. Each collects its own errors, which are then reported in the
+   * order of the checks, whatever order they finished in.
+   */
+  private void runChecks(List<TypeCheckerVisitor> visitors) {
+    int threads = Math.min(context.threads, visitors.size());
+    if (threads <= 1) {
+      for (TypeCheckerVisitor visitor : visitors) {
+        visitor.check();
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<?>> results = new ArrayList<Future<?>>(visitors.size());
+        for (final TypeCheckerVisitor visitor : visitors) {
+          results.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+              visitor.check();
+            }
+          }));
+        }
+        for (Future<?> result : results) {
+          waitFor(result);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    for (TypeCheckerVisitor visitor : visitors) {
+      diagnostic.addAll(visitor.diagnostic.getErrors());
+    }
+  }
+
+  /**
+   * Waits for a check, rethrowing whatever it threw.
+   */
+  private static void waitFor(Future<?> result) {
+    try {
+      result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while type checking", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
   class TypeCheckerVisitor extends RecursiveVisitor {
+    // Each visitor has its own errors and state, so that visitors can run at the same time
+    final Diagnostics diagnostic = new Diagnostics();
+    final TreeNode root;
 
+    // If we don't see a package declaration, we are in the default package
+    PackageTable localPackage = context.defaultPackage;
+    CompilationUnit localUnit;
     TypeDeclaration localType;
     MethodDeclaration localMethod;
 
-    public TypeCheckerVisitor(TypeDeclaration type, MethodDeclaration mdecl) {
+    public TypeCheckerVisitor(TypeDeclaration type, MethodDeclaration mdecl, TreeNode root) {
       localType = type;
       localMethod = mdecl;
+      this.root = root;
+    }
+
+    void check() {
+      root.accept(this);
     }
 
     @Override
@@ -280,7 +361,7 @@ public class TypeChecker {
      */
     @Override
     public void postVisit(FieldAccess node) {
-      if (node.expr.expressionType.isArray && node.name.equals(FieldDeclaration.ARRAY_LENGTH)) {
+      if (node.expr.expressionType.isArray && node.name == FieldDeclaration.ARRAY_LENGTH) {
         // <array>.length
         node.expressionType = Code.INT.formalType;
         node.isFinal = true;
@@ -305,7 +386,7 @@ public class TypeChecker {
         ParenthesizedExpression ptype = (ParenthesizedExpression) node.expr;
         if (ptype.expr instanceof SimpleName) {
           SimpleName sname = (SimpleName) ptype.expr;
-          if (sname.identifier.equals(sname.declNode.getName())) {
+          if (sname.identifier == sname.declNode.getName()) {
             diagnostic.add(new SemanticException(String.format(Exceptions.TYPE_IN_PAREN, node.token.getImage())));
             return;
           }
@@ -335,7 +416,7 @@ public class TypeChecker {
         case DEQUAL:
           node.expressionType = PrimitiveType.Code.BOOLEAN.formalType;
 
-          TypeDeclaration tdecl = PrimitiveType.Code.INT.getBoxedDeclaration();
+          TypeDeclaration tdecl = PrimitiveType.Code.INT.getBoxedDeclaration(context.defaultPackage);
           if (lhsType.decl == tdecl || rhsType.decl == tdecl) {
             diagnostic.add(new SemanticException(String.format(Exceptions.EQUALITY_MISMATCH, lhsType.format(),
                 rhsType.format())));
@@ -650,32 +731,19 @@ public class TypeChecker {
       }
 
       Signature sig = new Signature(false, node.methodName, paramTypes);
-      MethodDeclaration method = target.getInheritedMethod(sig);
+      MethodDeclaration method;
+      try {
+        method = LinkerUtils.resolveMethod(target, sig);
+      } catch (SemanticException e) {
+        diagnostic.add(e);
+        return;
+      }
       if (method == null) {
-        // Could not find exact match - look for other applicable methods
-        boolean found = false;
-        for (Map.Entry<Signature, MethodDeclaration> entry : target.getInheritedMethods().entrySet()) {
-          if (entry.getKey().matches(sig)) {
-            // Must be ambiguous, since we do not allow closest match overloading
-            if (found) {
-              diagnostic.add(new SemanticException(String.format(Exceptions.AMBIGUOUS_METHOD_INVOCATION,
-                  node.methodName)));
-              return;
-            }
-            found = true;
-            method = entry.getValue();
-          }
-        }
-
-        if (!found) {
-          diagnostic.add(new SemanticException(String.format(Exceptions.METHOD_NOT_FOUND, node.methodName,
-              getTypes(paramTypes), localType.name)));
-          return;
-        }
+        diagnostic.add(new SemanticException(String.format(Exceptions.METHOD_NOT_FOUND, node.methodName,
+            getTypes(paramTypes), localType.name)));
+        return;
       }
 
-      assert method != null;
-
       // Check static/non-static invocation
       boolean isInStaticScope = localMethod != null && localMethod.isStatic();
       if (((lhsEntityType == null && isInStaticScope) // implicit type in static scope
@@ -4,8 +4,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
+import ca.uwaterloo.joos1wc.ast.Literal;
 import ca.uwaterloo.joos1wc.ast.Name;
 import ca.uwaterloo.joos1wc.ast.QualifiedName;
 import ca.uwaterloo.joos1wc.ast.RecursiveVisitor;
@@ -22,6 +23,7 @@ import ca.uwaterloo.joos1wc.diagnostics.SemanticException;
 
 public class TypeLinkerVisitor extends RecursiveVisitor {
 
+  private final CompilationContext context;
   private final Diagnostics diagnostic;
 
   CompilationUnit unit;
@@ -29,13 +31,14 @@ public class TypeLinkerVisitor extends RecursiveVisitor {
 
   boolean inFieldDeclaration = false;
 
-  public TypeLinkerVisitor(Diagnostics diagnostic) {
+  public TypeLinkerVisitor(CompilationContext context, Diagnostics diagnostic) {
+    this.context = context;
     this.diagnostic = diagnostic;
   }
 
   @Override
   public void visit(ImportDeclaration node) {
-    ImportVisitor iv = new ImportVisitor(node.isOnDemand);
+    ImportVisitor iv = new ImportVisitor(context.defaultPackage, node.isOnDemand);
     node.accept(iv);
     if (iv.error != null) {
       diagnostic.add(iv.error);
@@ -88,7 +91,7 @@ public class TypeLinkerVisitor extends RecursiveVisitor {
       } else {
         // Inherit from Object
         // TODO refactor this and automatic import java.lang check
-        TypeDeclaration objectDecl = TypeDeclaration.getObjectType();
+        TypeDeclaration objectDecl = Literal.getObjectType(context.defaultPackage);
         assert (objectDecl != null);
         if (node != objectDecl) {
           node.setSuperclassDecl(objectDecl);
@@ -157,8 +160,8 @@ public class TypeLinkerVisitor extends RecursiveVisitor {
     private boolean isOnDemand;
     public JoosException error;
 
-    public ImportVisitor(boolean isOnDemand) {
-      currentPackage = Joos1Wc.DEFAULT_PKG;
+    public ImportVisitor(PackageTable defaultPackage, boolean isOnDemand) {
+      currentPackage = defaultPackage;
       this.isOnDemand = isOnDemand;
     }
 
@@ -203,7 +206,7 @@ public class TypeLinkerVisitor extends RecursiveVisitor {
     public void postVisit(SimpleName node) {
       // Type?
       try {
-        node.declNode = LinkerUtils.resolveType(unit, node);
+        node.declNode = LinkerUtils.resolveType(context, unit, node);
       } catch (SemanticException e) {
         diagnostic.add(e);
       }
@@ -211,7 +214,7 @@ public class TypeLinkerVisitor extends RecursiveVisitor {
         return;
       }
       // Package?
-      node.packageTable = LinkerUtils.resolvePackage(node);
+      node.packageTable = LinkerUtils.resolvePackage(context, node);
       if (node.packageTable == null) {
         diagnostic.add(new SemanticException(String.format(Exceptions.NO_RESOLUTION, node.identifier)));
       }
@@ -1,6 +1,6 @@
 package ca.uwaterloo.joos1wc.ast;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +40,7 @@ import ca.uwaterloo.joos1wc.codegen.AssemblyNode;
 import ca.uwaterloo.joos1wc.scanner.NonTerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.Token;
+import ca.uwaterloo.joos1wc.scanner.TokenKind;
 
 @SuppressWarnings("rawtypes")
 public abstract class ASTNode extends TreeNode {
@@ -62,353 +63,607 @@ public abstract class ASTNode extends TreeNode {
   static {
     // 3: lexical structure
     AST_PRODUCTION_MAP.put("Literal", new ASTProduction[] {
-        new ASTProduction(Literal.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(Literal.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> Literal.newInstance(t, (Terminal) c.get(0))) });
     
     // 4: types, values, and variables
     AST_PRODUCTION_MAP.put("Type", new ASTProduction[] {
-        new ASTProduction(Type.class, new Class[] { Token.class, Type.class }) });
+        new ASTProduction(Type.class, new Class[] { Token.class, Type.class },
+            (t, c) -> Type.newInstance(t, (Type) c.get(0))) });
     AST_PRODUCTION_MAP.put("PrimitiveType", new ASTProduction[] {
-        new ASTProduction(PrimitiveType.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(PrimitiveType.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> PrimitiveType.newInstance(t, (Terminal) c.get(0))) });
     AST_PRODUCTION_MAP.put("ReferenceType", new ASTProduction[] {
-        new ASTProduction(Type.class, new Class[] { Token.class, Type.class }) });
+        new ASTProduction(Type.class, new Class[] { Token.class, Type.class },
+            (t, c) -> Type.newInstance(t, (Type) c.get(0))) });
     AST_PRODUCTION_MAP.put("ClassOrInterfaceType", new ASTProduction[] {
-        new ASTProduction(SimpleType.class, new Class[] { Token.class, Name.class }) });
+        new ASTProduction(SimpleType.class, new Class[] { Token.class, Name.class },
+            (t, c) -> SimpleType.newInstance(t, (Name) c.get(0))) });
     AST_PRODUCTION_MAP.put("ClassType", new ASTProduction[] {
-        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class }) });
+        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class },
+            (t, c) -> SimpleType.newInstance(t, (SimpleType) c.get(0))) });
     AST_PRODUCTION_MAP.put("InterfaceType", new ASTProduction[] {
-        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class }) });
+        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class },
+            (t, c) -> SimpleType.newInstance(t, (SimpleType) c.get(0))) });
     AST_PRODUCTION_MAP.put("ArrayType", new ASTProduction[] {
-        new ASTProduction(ArrayType.class, new Class[] { Token.class, PrimitiveType.class, Terminal.class, Terminal.class }),
-        new ASTProduction(ArrayType.class, new Class[] { Token.class, Name.class, Terminal.class, Terminal.class }) });
+        new ASTProduction(ArrayType.class, new Class[] { Token.class, PrimitiveType.class, Terminal.class, Terminal.class },
+            (t, c) -> ArrayType.newInstance(t, (PrimitiveType) c.get(0), (Terminal) c.get(1), (Terminal) c.get(2))),
+        new ASTProduction(ArrayType.class, new Class[] { Token.class, Name.class, Terminal.class, Terminal.class },
+            (t, c) -> ArrayType.newInstance(t, (Name) c.get(0), (Terminal) c.get(1), (Terminal) c.get(2))) });
     
     // 6: names
     AST_PRODUCTION_MAP.put("Name", new ASTProduction[] {
-        new ASTProduction(Name.class, new Class[] { Token.class, Name.class }) });
+        new ASTProduction(Name.class, new Class[] { Token.class, Name.class },
+            (t, c) -> Name.newInstance(t, (Name) c.get(0))) });
     AST_PRODUCTION_MAP.put("SimpleName", new ASTProduction[] {
-        new ASTProduction(SimpleName.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(SimpleName.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> SimpleName.newInstance(t, (Terminal) c.get(0))) });
     AST_PRODUCTION_MAP.put("QualifiedName", new ASTProduction[] {
-        new ASTProduction(QualifiedName.class, new Class[] { Token.class, Name.class, Terminal.class, SimpleName.class }) });
+        new ASTProduction(QualifiedName.class, new Class[] { Token.class, Name.class, Terminal.class, SimpleName.class },
+            (t, c) -> QualifiedName.newInstance(t, (Name) c.get(0), (Terminal) c.get(1), (SimpleName) c.get(2))) });
     
     // 7: packages
     AST_PRODUCTION_MAP.put("CompilationUnit", new ASTProduction[] {
         new ASTProduction(CompilationUnit.class, new Class[] { Token.class, PackageDeclaration.class,
-          ImportDeclarationList.class, TypeDeclarationList.class }),
+          ImportDeclarationList.class, TypeDeclarationList.class },
+            (t, c) -> CompilationUnit.newInstance(t, (PackageDeclaration) c.get(0),
+                (ImportDeclarationList) c.get(1), (TypeDeclarationList) c.get(2))),
         new ASTProduction(CompilationUnit.class, new Class[] { Token.class, Null.class,
-          ImportDeclarationList.class, TypeDeclarationList.class }) });
+          ImportDeclarationList.class, TypeDeclarationList.class },
+            (t, c) -> CompilationUnit.newInstance(t, (Null) c.get(0), (ImportDeclarationList) c.get(1),
+                (TypeDeclarationList) c.get(2))) });
     AST_PRODUCTION_MAP.put("ImportDeclarations", new ASTProduction[] {
-        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class, ImportDeclaration.class }),
+        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class, ImportDeclaration.class },
+            (t, c) -> ImportDeclarationList.newInstance(t, (ImportDeclaration) c.get(0))),
         new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class, ImportDeclarationList.class,
-          ImportDeclaration.class }) });
+          ImportDeclaration.class },
+            (t, c) -> ImportDeclarationList.newInstance(t, (ImportDeclarationList) c.get(0),
+                (ImportDeclaration) c.get(1))) });
     AST_PRODUCTION_MAP.put("ImportDeclarations(opt)", new ASTProduction[] {
-        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class }),
-        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class, ImportDeclarationList.class }) });
+        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class },
+            (t, c) -> ImportDeclarationList.newInstance(t)),
+        new ASTProduction(ImportDeclarationList.class, new Class[] { Token.class, ImportDeclarationList.class },
+            (t, c) -> ImportDeclarationList.newInstance(t, (ImportDeclarationList) c.get(0))) });
     AST_PRODUCTION_MAP.put("TypeDeclarations", new ASTProduction[] {
-        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclaration.class }),
+        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclaration.class },
+            (t, c) -> TypeDeclarationList.newInstance(t, (TypeDeclaration) c.get(0))),
         new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclarationList.class,
-          TypeDeclaration.class }),
-        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, Null.class }),
+          TypeDeclaration.class },
+            (t, c) -> TypeDeclarationList.newInstance(t, (TypeDeclarationList) c.get(0),
+                (TypeDeclaration) c.get(1))),
+        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, Null.class },
+            (t, c) -> TypeDeclarationList.newInstance(t, (Null) c.get(0))),
         new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclarationList.class,
-          Null.class }) });
+          Null.class },
+            (t, c) -> TypeDeclarationList.newInstance(t, (TypeDeclarationList) c.get(0), (Null) c.get(1))) });
     AST_PRODUCTION_MAP.put("TypeDeclarations(opt)", new ASTProduction[] {
-        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class }),
-        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclarationList.class }) });
+        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class },
+            (t, c) -> TypeDeclarationList.newInstance(t)),
+        new ASTProduction(TypeDeclarationList.class, new Class[] { Token.class, TypeDeclarationList.class },
+            (t, c) -> TypeDeclarationList.newInstance(t, (TypeDeclarationList) c.get(0))) });
     AST_PRODUCTION_MAP.put("PackageDeclaration", new ASTProduction[] {
         new ASTProduction(PackageDeclaration.class, new Class[] { Token.class, Terminal.class, Name.class,
-          Terminal.class }) });
+          Terminal.class },
+            (t, c) -> PackageDeclaration.newInstance(t, (Terminal) c.get(0), (Name) c.get(1), (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("PackageDeclaration(opt)", new ASTProduction[] {
-        new ASTProduction(PackageDeclaration.class, new Class[] { Token.class, PackageDeclaration.class }),
-        new ASTProduction(Null.class, new Class[] { Token.class }) });
+        new ASTProduction(PackageDeclaration.class, new Class[] { Token.class, PackageDeclaration.class },
+            (t, c) -> PackageDeclaration.newInstance(t, (PackageDeclaration) c.get(0))),
+        new ASTProduction(Null.class, new Class[] { Token.class },
+            (t, c) -> Null.newInstance(t)) });
     AST_PRODUCTION_MAP.put("ImportDeclaration", new ASTProduction[] {
-        new ASTProduction(ImportDeclaration.class, new Class[] { Token.class, ImportDeclaration.class }) });
+        new ASTProduction(ImportDeclaration.class, new Class[] { Token.class, ImportDeclaration.class },
+            (t, c) -> ImportDeclaration.newInstance(t, (ImportDeclaration) c.get(0))) });
     AST_PRODUCTION_MAP.put("SingleTypeImportDeclaration", new ASTProduction[] {
         new ASTProduction(ImportDeclaration.class, new Class[] { Token.class, Terminal.class, Name.class,
-          Terminal.class }) });
+          Terminal.class },
+            (t, c) -> ImportDeclaration.newInstance(t, (Terminal) c.get(0), (Name) c.get(1), (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("TypeImportOnDemandDeclaration", new ASTProduction[] {
         new ASTProduction(ImportDeclaration.class, new Class[] { Token.class, Terminal.class, Name.class,
-          Terminal.class, Terminal.class, Terminal.class }) });
+          Terminal.class, Terminal.class, Terminal.class },
+            (t, c) -> ImportDeclaration.newInstance(t, (Terminal) c.get(0), (Name) c.get(1), (Terminal) c.get(2),
+                (Terminal) c.get(3), (Terminal) c.get(4))) });
     AST_PRODUCTION_MAP.put("TypeDeclaration", new ASTProduction[] {
-        new ASTProduction(TypeDeclaration.class, new Class[] { Token.class, TypeDeclaration.class }),
-        new ASTProduction(Null.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(TypeDeclaration.class, new Class[] { Token.class, TypeDeclaration.class },
+            (t, c) -> TypeDeclaration.newInstance(t, (TypeDeclaration) c.get(0))),
+        new ASTProduction(Null.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> Null.newInstance(t, (Terminal) c.get(0))) });
     
     // modifiers (only used in LALR(1) grammar)
     AST_PRODUCTION_MAP.put("Modifier", new ASTProduction[] {
-        new ASTProduction(Modifier.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(Modifier.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> Modifier.newInstance(t, (Terminal) c.get(0))) });
     AST_PRODUCTION_MAP.put("Modifiers", new ASTProduction[] {
-        new ASTProduction(ModifierList.class, new Class[] { Token.class, Modifier.class }),
-        new ASTProduction(ModifierList.class, new Class[] { Token.class, ModifierList.class, Modifier.class }) });
+        new ASTProduction(ModifierList.class, new Class[] { Token.class, Modifier.class },
+            (t, c) -> ModifierList.newInstance(t, (Modifier) c.get(0))),
+        new ASTProduction(ModifierList.class, new Class[] { Token.class, ModifierList.class, Modifier.class },
+            (t, c) -> ModifierList.newInstance(t, (ModifierList) c.get(0), (Modifier) c.get(1))) });
     AST_PRODUCTION_MAP.put("Modifiers(opt)", new ASTProduction[] {
-        new ASTProduction(ModifierList.class, new Class[] { Token.class }),
-        new ASTProduction(ModifierList.class, new Class[] { Token.class, ModifierList.class }) });
+        new ASTProduction(ModifierList.class, new Class[] { Token.class },
+            (t, c) -> ModifierList.newInstance(t)),
+        new ASTProduction(ModifierList.class, new Class[] { Token.class, ModifierList.class },
+            (t, c) -> ModifierList.newInstance(t, (ModifierList) c.get(0))) });
     
     // 8.1: class declaration
     AST_PRODUCTION_MAP.put("ClassDeclaration", new ASTProduction[] {
         new ASTProduction(TypeDeclaration.class, new Class[] { Token.class, ModifierList.class, Terminal.class,
-          Terminal.class, SimpleType.class, SimpleTypeList.class, BodyDeclarationList.class }) });
+          Terminal.class, SimpleType.class, SimpleTypeList.class, BodyDeclarationList.class },
+            (t, c) -> TypeDeclaration.newInstance(t, (ModifierList) c.get(0), (Terminal) c.get(1),
+                (Terminal) c.get(2), (SimpleType) c.get(3), (SimpleTypeList) c.get(4),
+                (BodyDeclarationList) c.get(5))) });
     AST_PRODUCTION_MAP.put("Super", new ASTProduction[] {
-        new ASTProduction(SimpleType.class, new Class[] { Token.class, Terminal.class, SimpleType.class }) });
+        new ASTProduction(SimpleType.class, new Class[] { Token.class, Terminal.class, SimpleType.class },
+            (t, c) -> SimpleType.newInstance(t, (Terminal) c.get(0), (SimpleType) c.get(1))) });
     AST_PRODUCTION_MAP.put("Super(opt)", new ASTProduction[] {
-        new ASTProduction(SimpleType.class, new Class[] { Token.class }),
-        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class }) });
+        new ASTProduction(SimpleType.class, new Class[] { Token.class },
+            (t, c) -> SimpleType.newInstance(t)),
+        new ASTProduction(SimpleType.class, new Class[] { Token.class, SimpleType.class },
+            (t, c) -> SimpleType.newInstance(t, (SimpleType) c.get(0))) });
     AST_PRODUCTION_MAP.put("Interfaces", new ASTProduction[] {
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, Terminal.class, SimpleTypeList.class }) });
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, Terminal.class, SimpleTypeList.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (Terminal) c.get(0), (SimpleTypeList) c.get(1))) });
     AST_PRODUCTION_MAP.put("Interfaces(opt)", new ASTProduction[] {
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class }),
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class }) });
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class },
+            (t, c) -> SimpleTypeList.newInstance(t)),
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (SimpleTypeList) c.get(0))) });
     AST_PRODUCTION_MAP.put("InterfaceTypeList", new ASTProduction[] {
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleType.class }),
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class, Terminal.class, SimpleType.class }) });
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleType.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (SimpleType) c.get(0))),
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class, Terminal.class, SimpleType.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (SimpleTypeList) c.get(0), (Terminal) c.get(1),
+                (SimpleType) c.get(2))) });
     AST_PRODUCTION_MAP.put("ClassBody", new ASTProduction[] {
         new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, Terminal.class,
-          BodyDeclarationList.class, Terminal.class }) });
+          BodyDeclarationList.class, Terminal.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (Terminal) c.get(0), (BodyDeclarationList) c.get(1),
+                (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("ClassBodyDeclarations", new ASTProduction[] {
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclaration.class }),
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclaration.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclaration) c.get(0))),
         new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class,
-          BodyDeclaration.class }) });
+          BodyDeclaration.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclarationList) c.get(0),
+                (BodyDeclaration) c.get(1))) });
     AST_PRODUCTION_MAP.put("ClassBodyDeclarations(opt)", new ASTProduction[] {
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class }),
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class }) });
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class },
+            (t, c) -> BodyDeclarationList.newInstance(t)),
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclarationList) c.get(0))) });
     AST_PRODUCTION_MAP.put("ClassBodyDeclaration", new ASTProduction[] {
-        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class }) });
+        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class },
+            (t, c) -> BodyDeclaration.newInstance(t, (BodyDeclaration) c.get(0))) });
     AST_PRODUCTION_MAP.put("ClassMemberDeclaration", new ASTProduction[] {
-        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class }) });
+        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class },
+            (t, c) -> BodyDeclaration.newInstance(t, (BodyDeclaration) c.get(0))) });
     
     // 8.3: field declarations
     AST_PRODUCTION_MAP.put("FieldDeclaration", new ASTProduction[] {
         new ASTProduction(FieldDeclaration.class, new Class[] { Token.class, ModifierList.class, Type.class,
-          Terminal.class, Terminal.class }),
+          Terminal.class, Terminal.class },
+            (t, c) -> FieldDeclaration.newInstance(t, (ModifierList) c.get(0), (Type) c.get(1), (Terminal) c.get(2),
+                (Terminal) c.get(3))),
         new ASTProduction(FieldDeclaration.class, new Class[] { Token.class, ModifierList.class, Type.class,
-          Terminal.class, Terminal.class, Expression.class, Terminal.class }) });
+          Terminal.class, Terminal.class, Expression.class, Terminal.class },
+            (t, c) -> FieldDeclaration.newInstance(t, (ModifierList) c.get(0), (Type) c.get(1), (Terminal) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5))) });
     
     // 8.4: method declarations
     AST_PRODUCTION_MAP.put("MethodDeclaration", new ASTProduction[] {
-        new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, MethodDeclaration.class, Block.class }) });
+        new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, MethodDeclaration.class, Block.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (MethodDeclaration) c.get(0), (Block) c.get(1))) });
     AST_PRODUCTION_MAP.put("AbstractMethodDeclaration", new ASTProduction[] {
-        new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, MethodDeclaration.class, Terminal.class }) });
+        new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, MethodDeclaration.class, Terminal.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (MethodDeclaration) c.get(0), (Terminal) c.get(1))) });
     AST_PRODUCTION_MAP.put("MethodHeader", new ASTProduction[] {
         new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, ModifierList.class, Type.class,
-          MethodDeclaration.class }),
+          MethodDeclaration.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (ModifierList) c.get(0), (Type) c.get(1),
+                (MethodDeclaration) c.get(2))),
         new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, ModifierList.class, Terminal.class,
-          MethodDeclaration.class }) });
+          MethodDeclaration.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (ModifierList) c.get(0), (Terminal) c.get(1),
+                (MethodDeclaration) c.get(2))) });
     AST_PRODUCTION_MAP.put("MethodDeclarator", new ASTProduction[] {
         new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, Terminal.class, Terminal.class,
-          VariableDeclarationList.class, Terminal.class }) });
+          VariableDeclarationList.class, Terminal.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1),
+                (VariableDeclarationList) c.get(2), (Terminal) c.get(3))) });
     AST_PRODUCTION_MAP.put("FormalParameterList", new ASTProduction[] {
-        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class, VariableDeclaration.class }),
+        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class, VariableDeclaration.class },
+            (t, c) -> VariableDeclarationList.newInstance(t, (VariableDeclaration) c.get(0))),
         new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class, VariableDeclarationList.class,
-          Terminal.class, VariableDeclaration.class }) });
+          Terminal.class, VariableDeclaration.class },
+            (t, c) -> VariableDeclarationList.newInstance(t, (VariableDeclarationList) c.get(0),
+                (Terminal) c.get(1), (VariableDeclaration) c.get(2))) });
     AST_PRODUCTION_MAP.put("FormalParameterList(opt)", new ASTProduction[] {
-        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class }),
-        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class, VariableDeclarationList.class }) });
+        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class },
+            (t, c) -> VariableDeclarationList.newInstance(t)),
+        new ASTProduction(VariableDeclarationList.class, new Class[] { Token.class, VariableDeclarationList.class },
+            (t, c) -> VariableDeclarationList.newInstance(t, (VariableDeclarationList) c.get(0))) });
     AST_PRODUCTION_MAP.put("FormalParameter", new ASTProduction[] {
-        new ASTProduction(VariableDeclaration.class, new Class[] { Token.class, Type.class, Terminal.class }) });
+        new ASTProduction(VariableDeclaration.class, new Class[] { Token.class, Type.class, Terminal.class },
+            (t, c) -> VariableDeclaration.newInstance(t, (Type) c.get(0), (Terminal) c.get(1))) });
     
     // 8.6: constructor declarations
     AST_PRODUCTION_MAP.put("ConstructorDeclaration", new ASTProduction[] {
         new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, ModifierList.class,
-          MethodDeclaration.class, Block.class }) });
+          MethodDeclaration.class, Block.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (ModifierList) c.get(0), (MethodDeclaration) c.get(1),
+                (Block) c.get(2))) });
     AST_PRODUCTION_MAP.put("ConstructorDeclarator", new ASTProduction[] {
         new ASTProduction(MethodDeclaration.class, new Class[] { Token.class, Terminal.class, Terminal.class,
-          VariableDeclarationList.class, Terminal.class }) });
+          VariableDeclarationList.class, Terminal.class },
+            (t, c) -> MethodDeclaration.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1),
+                (VariableDeclarationList) c.get(2), (Terminal) c.get(3))) });
     
     // 9.1: interface declarations
     AST_PRODUCTION_MAP.put("InterfaceDeclaration", new ASTProduction[] {
         new ASTProduction(TypeDeclaration.class, new Class[] { Token.class, ModifierList.class, Terminal.class, Terminal.class,
-          SimpleTypeList.class, BodyDeclarationList.class }) });
+          SimpleTypeList.class, BodyDeclarationList.class },
+            (t, c) -> TypeDeclaration.newInstance(t, (ModifierList) c.get(0), (Terminal) c.get(1),
+                (Terminal) c.get(2), (SimpleTypeList) c.get(3), (BodyDeclarationList) c.get(4))) });
     AST_PRODUCTION_MAP.put("ExtendsInterfaces", new ASTProduction[] {
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, Terminal.class, SimpleType.class }),
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class, Terminal.class, SimpleType.class }) });
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, Terminal.class, SimpleType.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (Terminal) c.get(0), (SimpleType) c.get(1))),
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class, Terminal.class, SimpleType.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (SimpleTypeList) c.get(0), (Terminal) c.get(1),
+                (SimpleType) c.get(2))) });
     AST_PRODUCTION_MAP.put("ExtendsInterfaces(opt)", new ASTProduction[] {
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class }),
-        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class }) });
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class },
+            (t, c) -> SimpleTypeList.newInstance(t)),
+        new ASTProduction(SimpleTypeList.class, new Class[] { Token.class, SimpleTypeList.class },
+            (t, c) -> SimpleTypeList.newInstance(t, (SimpleTypeList) c.get(0))) });
     AST_PRODUCTION_MAP.put("InterfaceBody", new ASTProduction[] {
         new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, Terminal.class,
-          BodyDeclarationList.class, Terminal.class }) });
+          BodyDeclarationList.class, Terminal.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (Terminal) c.get(0), (BodyDeclarationList) c.get(1),
+                (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("InterfaceMemberDeclarations", new ASTProduction[] {
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclaration.class }),
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclaration.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclaration) c.get(0))),
         new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class,
-          BodyDeclaration.class }) });
+          BodyDeclaration.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclarationList) c.get(0),
+                (BodyDeclaration) c.get(1))) });
     AST_PRODUCTION_MAP.put("InterfaceMemberDeclarations(opt)", new ASTProduction[] {
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class }),
-        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class }) });
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class },
+            (t, c) -> BodyDeclarationList.newInstance(t)),
+        new ASTProduction(BodyDeclarationList.class, new Class[] { Token.class, BodyDeclarationList.class },
+            (t, c) -> BodyDeclarationList.newInstance(t, (BodyDeclarationList) c.get(0))) });
     AST_PRODUCTION_MAP.put("InterfaceMemberDeclaration", new ASTProduction[] {
-        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class }) });
+        new ASTProduction(BodyDeclaration.class, new Class[] { Token.class, BodyDeclaration.class },
+            (t, c) -> BodyDeclaration.newInstance(t, (BodyDeclaration) c.get(0))) });
     
     // 14: statements
     AST_PRODUCTION_MAP.put("Block", new ASTProduction[] {
-        new ASTProduction(Block.class, new Class[] { Token.class, Statement.class }),
-        new ASTProduction(Block.class, new Class[] { Token.class, Block.class, Statement.class }),
-        new ASTProduction(Block.class, new Class[] { Token.class, Terminal.class, Block.class, Terminal.class }) });
+        new ASTProduction(Block.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Block.newInstance(t, (Statement) c.get(0))),
+        new ASTProduction(Block.class, new Class[] { Token.class, Block.class, Statement.class },
+            (t, c) -> Block.newInstance(t, (Block) c.get(0), (Statement) c.get(1))),
+        new ASTProduction(Block.class, new Class[] { Token.class, Terminal.class, Block.class, Terminal.class },
+            (t, c) -> Block.newInstance(t, (Terminal) c.get(0), (Block) c.get(1), (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("BlockStatements", new ASTProduction[] {
-        new ASTProduction(Block.class, new Class[] { Token.class, Statement.class }),
-        new ASTProduction(Block.class, new Class[] { Token.class, Block.class, Statement.class }) });
+        new ASTProduction(Block.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Block.newInstance(t, (Statement) c.get(0))),
+        new ASTProduction(Block.class, new Class[] { Token.class, Block.class, Statement.class },
+            (t, c) -> Block.newInstance(t, (Block) c.get(0), (Statement) c.get(1))) });
     AST_PRODUCTION_MAP.put("BlockStatements(opt)", new ASTProduction[] {
-        new ASTProduction(Block.class, new Class[] { Token.class }),
-        new ASTProduction(Block.class, new Class[] { Token.class, Block.class }) });
+        new ASTProduction(Block.class, new Class[] { Token.class },
+            (t, c) -> Block.newInstance(t)),
+        new ASTProduction(Block.class, new Class[] { Token.class, Block.class },
+            (t, c) -> Block.newInstance(t, (Block) c.get(0))) });
     AST_PRODUCTION_MAP.put("BlockStatement", new ASTProduction[] {
-        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class }) });
+        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Statement.newInstance(t, (Statement) c.get(0))) });
     AST_PRODUCTION_MAP.put("LocalVariableDeclarationStatement", new ASTProduction[] {
         new ASTProduction(VariableDeclarationStatement.class, new Class[] { Token.class, VariableDeclaration.class,
-          Terminal.class }) });
+          Terminal.class },
+            (t, c) -> VariableDeclarationStatement.newInstance(t, (VariableDeclaration) c.get(0),
+                (Terminal) c.get(1))) });
     AST_PRODUCTION_MAP.put("LocalVariableDeclaration", new ASTProduction[] {
         new ASTProduction(VariableDeclaration.class, new Class[] { Token.class, Type.class, Terminal.class,
-          Terminal.class, Expression.class }) });
+          Terminal.class, Expression.class },
+            (t, c) -> VariableDeclaration.newInstance(t, (Type) c.get(0), (Terminal) c.get(1), (Terminal) c.get(2),
+                (Expression) c.get(3))) });
     AST_PRODUCTION_MAP.put("Statement", new ASTProduction[] {
-        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class }) });
+        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Statement.newInstance(t, (Statement) c.get(0))) });
     AST_PRODUCTION_MAP.put("StatementNoShortIf", new ASTProduction[] {
-        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class }) });
+        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Statement.newInstance(t, (Statement) c.get(0))) });
     AST_PRODUCTION_MAP.put("StatementWithoutTrailingSubstatement", new ASTProduction[] {
-        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class }),
-        new ASTProduction(EmptyStatement.class, new Class[] { Token.class, Terminal.class }) });
+        new ASTProduction(Statement.class, new Class[] { Token.class, Statement.class },
+            (t, c) -> Statement.newInstance(t, (Statement) c.get(0))),
+        new ASTProduction(EmptyStatement.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> EmptyStatement.newInstance(t, (Terminal) c.get(0))) });
     AST_PRODUCTION_MAP.put("ExpressionStatement", new ASTProduction[] {
-        new ASTProduction(ExpressionStatement.class, new Class[] { Token.class, Expression.class, Terminal.class }) });
+        new ASTProduction(ExpressionStatement.class, new Class[] { Token.class, Expression.class, Terminal.class },
+            (t, c) -> ExpressionStatement.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1))) });
     AST_PRODUCTION_MAP.put("StatementExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("IfThenStatement", new ASTProduction[] {
         new ASTProduction(IfThenStatement.class, new Class[] { Token.class, Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Statement.class }) });
+          Terminal.class, Statement.class },
+            (t, c) -> IfThenStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2), (Terminal) c.get(3), (Statement) c.get(4))) });
     AST_PRODUCTION_MAP.put("IfThenElseStatement", new ASTProduction[] {
         new ASTProduction(IfThenStatement.class, new Class[] { Token.class, Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Statement.class, Terminal.class, Statement.class }) });
+          Terminal.class, Statement.class, Terminal.class, Statement.class },
+            (t, c) -> IfThenStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2), (Terminal) c.get(3), (Statement) c.get(4), (Terminal) c.get(5),
+                (Statement) c.get(6))) });
     AST_PRODUCTION_MAP.put("IfThenElseStatementNoShortIf", new ASTProduction[] {
         new ASTProduction(IfThenStatement.class, new Class[] { Token.class, Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Statement.class, Terminal.class, Statement.class }) });
+          Terminal.class, Statement.class, Terminal.class, Statement.class },
+            (t, c) -> IfThenStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2), (Terminal) c.get(3), (Statement) c.get(4), (Terminal) c.get(5),
+                (Statement) c.get(6))) });
     AST_PRODUCTION_MAP.put("WhileStatement", new ASTProduction[] {
         new ASTProduction(WhileStatement.class, new Class[] { Token.class, Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Statement.class }) });
+          Terminal.class, Statement.class },
+            (t, c) -> WhileStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Statement) c.get(4))) });
     AST_PRODUCTION_MAP.put("WhileStatementNoShortIf", new ASTProduction[] {
         new ASTProduction(WhileStatement.class, new Class[] { Token.class, Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Statement.class }) });
+          Terminal.class, Statement.class },
+            (t, c) -> WhileStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Statement) c.get(4))) });
     AST_PRODUCTION_MAP.put("ForStatement", new ASTProduction[] {
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Null) c.get(6), (Terminal) c.get(7),
+                (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Null) c.get(6), (Terminal) c.get(7),
+                (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Expression.class, Terminal.class, Null.class, Terminal.class, Statement.class }) });
+          Terminal.class, Expression.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Null) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))) });
     AST_PRODUCTION_MAP.put("ForStatementNoShortIf", new ASTProduction[] {
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Expression.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Null.class,
-          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Null) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Null) c.get(6), (Terminal) c.get(7),
+                (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Expression.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Expression) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class }),
+          Terminal.class, Null.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Null) c.get(4), (Terminal) c.get(5), (Null) c.get(6), (Terminal) c.get(7),
+                (Statement) c.get(8))),
         new ASTProduction(ForStatement.class, new Class[] { Token.class,  Terminal.class, Terminal.class, Expression.class,
-          Terminal.class, Expression.class, Terminal.class, Null.class, Terminal.class, Statement.class }) });
+          Terminal.class, Expression.class, Terminal.class, Null.class, Terminal.class, Statement.class },
+            (t, c) -> ForStatement.newInstance(t, (Terminal) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3), (Expression) c.get(4), (Terminal) c.get(5), (Null) c.get(6),
+                (Terminal) c.get(7), (Statement) c.get(8))) });
     AST_PRODUCTION_MAP.put("ForInit", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(VariableDeclarationExpression.class, new Class[] { Token.class, VariableDeclaration.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(VariableDeclarationExpression.class, new Class[] { Token.class, VariableDeclaration.class },
+            (t, c) -> VariableDeclarationExpression.newInstance(t, (VariableDeclaration) c.get(0))) });
     AST_PRODUCTION_MAP.put("ForInit(opt)", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(Null.class, new Class[] { Token.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(Null.class, new Class[] { Token.class },
+            (t, c) -> Null.newInstance(t)) });
     AST_PRODUCTION_MAP.put("ForUpdate", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("ForUpdate(opt)", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(Null.class, new Class[] { Token.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(Null.class, new Class[] { Token.class },
+            (t, c) -> Null.newInstance(t)) });
     AST_PRODUCTION_MAP.put("StatementExpressionList", new ASTProduction[] {
-        new ASTProduction(ExpressionList.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(ExpressionList.class, new Class[] { Token.class, ExpressionList.class, Token.class, Expression.class }) });
+        new ASTProduction(ExpressionList.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> ExpressionList.newInstance(t, (Expression) c.get(0))),
+        // a child is never a Token, so this never accepts and comma lists are left as NonTerminals
+        new ASTProduction(ExpressionList.class, new Class[] { Token.class, ExpressionList.class, Token.class, Expression.class },
+            (t, c) -> ExpressionList.newInstance(t, (ExpressionList) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("ReturnStatement", new ASTProduction[] {
-        new ASTProduction(ReturnStatement.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class }),
-        new ASTProduction(ReturnStatement.class, new Class[] { Token.class, Terminal.class, Null.class, Terminal.class }) });
+        new ASTProduction(ReturnStatement.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class },
+            (t, c) -> ReturnStatement.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1),
+                (Terminal) c.get(2))),
+        new ASTProduction(ReturnStatement.class, new Class[] { Token.class, Terminal.class, Null.class, Terminal.class },
+            (t, c) -> ReturnStatement.newInstance(t, (Terminal) c.get(0), (Null) c.get(1), (Terminal) c.get(2))) });
     
     // 15: expressions
     AST_PRODUCTION_MAP.put("Primary", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("PrimaryNoNewArray", new ASTProduction[] {
-        new ASTProduction(ThisExpression.class, new Class[] { Token.class, Terminal.class }),
-        new ASTProduction(Expression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class }),
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(ThisExpression.class, new Class[] { Token.class, Terminal.class },
+            (t, c) -> ThisExpression.newInstance(t, (Terminal) c.get(0))),
+        new ASTProduction(Expression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class },
+            (t, c) -> Expression.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1), (Terminal) c.get(2))),
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("ClassInstanceCreationExpression", new ASTProduction[] {
         new ASTProduction(ClassInstanceCreation.class, new Class[] { Token.class, Terminal.class, SimpleType.class, Terminal.class,
-          ExpressionList.class, Terminal.class}) });
+          ExpressionList.class, Terminal.class},
+            (t, c) -> ClassInstanceCreation.newInstance(t, (Terminal) c.get(0), (SimpleType) c.get(1),
+                (Terminal) c.get(2), (ExpressionList) c.get(3), (Terminal) c.get(4))) });
     AST_PRODUCTION_MAP.put("ArgumentList(opt)", new ASTProduction[] {
-        new ASTProduction(ExpressionList.class, new Class[] { Token.class }),
-        new ASTProduction(ExpressionList.class, new Class[] { Token.class, ExpressionList.class }) });
+        new ASTProduction(ExpressionList.class, new Class[] { Token.class },
+            (t, c) -> ExpressionList.newInstance(t)),
+        new ASTProduction(ExpressionList.class, new Class[] { Token.class, ExpressionList.class },
+            (t, c) -> ExpressionList.newInstance(t, (ExpressionList) c.get(0))) });
     AST_PRODUCTION_MAP.put("ArgumentList", new ASTProduction[] {
-        new ASTProduction(ExpressionList.class, new Class[] { Token.class, Expression.class }),
+        new ASTProduction(ExpressionList.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> ExpressionList.newInstance(t, (Expression) c.get(0))),
         new ASTProduction(ExpressionList.class, new Class[] { Token.class, ExpressionList.class, Terminal.class,
-          Expression.class }) });
+          Expression.class },
+            (t, c) -> ExpressionList.newInstance(t, (ExpressionList) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("ArrayCreationExpression", new ASTProduction[] {
-        new ASTProduction(ArrayCreation.class, new Class[] { Token.class, Terminal.class, PrimitiveType.class, Expression.class }),
-        new ASTProduction(ArrayCreation.class, new Class[] { Token.class, Terminal.class, SimpleType.class, Expression.class }) });
+        new ASTProduction(ArrayCreation.class, new Class[] { Token.class, Terminal.class, PrimitiveType.class, Expression.class },
+            (t, c) -> ArrayCreation.newInstance(t, (Terminal) c.get(0), (PrimitiveType) c.get(1),
+                (Expression) c.get(2))),
+        new ASTProduction(ArrayCreation.class, new Class[] { Token.class, Terminal.class, SimpleType.class, Expression.class },
+            (t, c) -> ArrayCreation.newInstance(t, (Terminal) c.get(0), (SimpleType) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("DimExpr", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class },
+            (t, c) -> Expression.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1), (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("FieldAccess", new ASTProduction[] {
-        new ASTProduction(FieldAccess.class, new Class[] { Token.class, Expression.class, Terminal.class, Terminal.class }) });
+        new ASTProduction(FieldAccess.class, new Class[] { Token.class, Expression.class, Terminal.class, Terminal.class },
+            (t, c) -> FieldAccess.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1), (Terminal) c.get(2))) });
     AST_PRODUCTION_MAP.put("MethodInvocation", new ASTProduction[] {
         new ASTProduction(MethodInvocation.class, new Class[] { Token.class, Name.class, Terminal.class,
-          ExpressionList.class, Terminal.class }),
+          ExpressionList.class, Terminal.class },
+            (t, c) -> MethodInvocation.newInstance(t, (Name) c.get(0), (Terminal) c.get(1),
+                (ExpressionList) c.get(2), (Terminal) c.get(3))),
         new ASTProduction(MethodInvocation.class, new Class[] { Token.class, Expression.class, Terminal.class,
-          Terminal.class, Terminal.class, ExpressionList.class, Terminal.class }) });
+          Terminal.class, Terminal.class, ExpressionList.class, Terminal.class },
+            (t, c) -> MethodInvocation.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Terminal) c.get(2), (Terminal) c.get(3), (ExpressionList) c.get(4), (Terminal) c.get(5))) });
     AST_PRODUCTION_MAP.put("ArrayAccess", new ASTProduction[] {
         new ASTProduction(ArrayAccess.class, new Class[] { Token.class, Expression.class, Terminal.class,
-          Expression.class, Terminal.class }) });
+          Expression.class, Terminal.class },
+            (t, c) -> ArrayAccess.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1), (Expression) c.get(2),
+                (Terminal) c.get(3))) });
     AST_PRODUCTION_MAP.put("UnaryExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(PrefixExpression.class, new Class[] { Token.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(PrefixExpression.class, new Class[] { Token.class, Terminal.class, Expression.class },
+            (t, c) -> PrefixExpression.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1))) });
     AST_PRODUCTION_MAP.put("UnaryExpressionNotPlusMinus", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(Name.class, new Class[] { Token.class, Name.class }),
-        new ASTProduction(PrefixExpression.class, new Class[] { Token.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(Name.class, new Class[] { Token.class, Name.class },
+            (t, c) -> Name.newInstance(t, (Name) c.get(0))),
+        new ASTProduction(PrefixExpression.class, new Class[] { Token.class, Terminal.class, Expression.class },
+            (t, c) -> PrefixExpression.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1))) });
     AST_PRODUCTION_MAP.put("CastExpression", new ASTProduction[] {
         new ASTProduction(CastExpression.class, new Class[] { Token.class, Terminal.class, PrimitiveType.class, Terminal.class,
-          Terminal.class, Terminal.class, Expression.class }),
+          Terminal.class, Terminal.class, Expression.class },
+            (t, c) -> CastExpression.newInstance(t, (Terminal) c.get(0), (PrimitiveType) c.get(1),
+                (Terminal) c.get(2), (Terminal) c.get(3), (Terminal) c.get(4), (Expression) c.get(5))),
         new ASTProduction(CastExpression.class, new Class[] { Token.class, Terminal.class, PrimitiveType.class,
-          Terminal.class, Expression.class }),
-        new ASTProduction(CastExpression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class, Expression.class }),
+          Terminal.class, Expression.class },
+            (t, c) -> CastExpression.newInstance(t, (Terminal) c.get(0), (PrimitiveType) c.get(1),
+                (Terminal) c.get(2), (Expression) c.get(3))),
+        new ASTProduction(CastExpression.class, new Class[] { Token.class, Terminal.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> CastExpression.newInstance(t, (Terminal) c.get(0), (Expression) c.get(1), (Terminal) c.get(2),
+                (Expression) c.get(3))),
         new ASTProduction(CastExpression.class, new Class[] { Token.class, Terminal.class, Name.class, Terminal.class, Terminal.class,
-          Terminal.class, Expression.class }) });
+          Terminal.class, Expression.class },
+            (t, c) -> CastExpression.newInstance(t, (Terminal) c.get(0), (Name) c.get(1), (Terminal) c.get(2),
+                (Terminal) c.get(3), (Terminal) c.get(4), (Expression) c.get(5))) });
     AST_PRODUCTION_MAP.put("MultiplicativeExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("AdditiveExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("RelationalExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InstanceofExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Type.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InstanceofExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Type.class },
+            (t, c) -> InstanceofExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Type) c.get(2))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("EqualityExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("AndExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("InclusiveOrExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("ConditionalAndExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("ConditionalOrExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(InfixExpression.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> InfixExpression.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1),
+                (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("AssignmentExpression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("Assignment", new ASTProduction[] {
-        new ASTProduction(Assignment.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class }) });
+        new ASTProduction(Assignment.class, new Class[] { Token.class, Expression.class, Terminal.class, Expression.class },
+            (t, c) -> Assignment.newInstance(t, (Expression) c.get(0), (Terminal) c.get(1), (Expression) c.get(2))) });
     AST_PRODUCTION_MAP.put("LeftHandSide", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("Expression", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))) });
     AST_PRODUCTION_MAP.put("Expression(opt)", new ASTProduction[] {
-        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class }),
-        new ASTProduction(Null.class, new Class[] { Token.class }) });
+        new ASTProduction(Expression.class, new Class[] { Token.class, Expression.class },
+            (t, c) -> Expression.newInstance(t, (Expression) c.get(0))),
+        new ASTProduction(Null.class, new Class[] { Token.class },
+            (t, c) -> Null.newInstance(t)) });
   }
 
   /*
@@ -423,17 +678,18 @@ public abstract class ASTNode extends TreeNode {
     ASTProduction[] productions = AST_PRODUCTION_MAP.get(tk.name());
     if (productions == null) return null;
     
+    return newNonTerminalNode(productions, token, children);
+  }
+
+  /*
+   * Builds the node with the first of the given productions that accepts the children, or returns null if none do
+   */
+  static ASTNode newNonTerminalNode(ASTProduction[] productions, Token token, List<TreeNode> children) {
     for (ASTProduction production : productions) {
       if (production.accepts(children)) {
-        Object[] args = new Object[children.size()+1];
-        args[0] = token;
-        for (int i = 0; i < children.size(); i++)
-          args[i+1] = children.get(i);
-        
         try {
-          return (ASTNode) production.lhsClass.getMethod("newInstance", production.rhsClasses).invoke(null, args);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException
-            | SecurityException e) {
+          return production.factory.newInstance(token, children);
+        } catch (Exception e) {
           System.err.println(production.lhsClass);
           e.printStackTrace();
           throw new RuntimeException("Error while generating AST");
@@ -444,6 +700,28 @@ public abstract class ASTNode extends TreeNode {
     return null;
   }
 
+  /*
+   * Gets the productions that can build a node for a nonterminal with the given number of children. A grammar rule only
+   * ever has the one length, so this can be resolved once per rule instead of on every reduction.
+   */
+  static ASTProduction[] getProductions(TokenKind kind, int size) {
+    if (!(kind instanceof NonTerminalTokenKind)) {
+      return null;
+    }
+    ASTProduction[] productions = AST_PRODUCTION_MAP.get(kind.name());
+    if (productions == null) {
+      return null;
+    }
+    
+    List<ASTProduction> candidates = new ArrayList<ASTProduction>(productions.length);
+    for (ASTProduction production : productions) {
+      if (production.rhsClasses.length == size + 1) {
+        candidates.add(production);
+      }
+    }
+    return candidates.isEmpty() ? null : candidates.toArray(new ASTProduction[candidates.size()]);
+  }
+
   public static ASTNode newTerminalNode(Token token) {
     if (!(token.getKind() instanceof TerminalTokenKind)) {
       return null;
@@ -456,14 +734,23 @@ public abstract class ASTNode extends TreeNode {
       return null;
     }
   }
+
+  /*
+   * Calls the newInstance method of an ASTNode class directly, with the children cast to its parameter types
+   */
+  interface Factory {
+    ASTNode newInstance(Token token, List<TreeNode> children) throws Exception;
+  }
   
-  private static class ASTProduction {
+  static class ASTProduction {
     final Class<? extends ASTNode> lhsClass;
     final Class[] rhsClasses;
+    final Factory factory;
     
-    public ASTProduction(Class<? extends ASTNode> lhsClass, Class[] rhsClasses) {
+    public ASTProduction(Class<? extends ASTNode> lhsClass, Class[] rhsClasses, Factory factory) {
       this.lhsClass = lhsClass;
       this.rhsClasses = rhsClasses;
+      this.factory = factory;
     }
     
     public boolean accepts(List<TreeNode> rhsObjs) {
@@ -4,8 +4,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
 import ca.uwaterloo.joos1wc.analysis.PackageTable;
+import ca.uwaterloo.joos1wc.analysis.ResolutionCache;
 import ca.uwaterloo.joos1wc.ast.declaration.ImportDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.ImportDeclarationList;
 import ca.uwaterloo.joos1wc.ast.declaration.PackageDeclaration;
@@ -21,6 +21,8 @@ public class CompilationUnit extends ASTNode {
 
   // For convenience in semantic analysis
   private final Map<String, TypeDeclaration> typesInNamespace = new HashMap<>();
+  // simple type names, as resolved by LinkerUtils in the scope of this unit
+  public final ResolutionCache<String, TypeDeclaration> resolvedTypes = new ResolutionCache<>();
 
   public CompilationUnit(Token token, PackageDeclaration packageDecl, List<ImportDeclaration> importDecls,
       List<TypeDeclaration> typeDecls) {
@@ -34,8 +36,8 @@ public class CompilationUnit extends ASTNode {
     v.visit(this);
   }
 
-  public PackageTable getLocalPackage() {
-    return packageDecl == null ? Joos1Wc.DEFAULT_PKG : packageDecl.packageTable;
+  public PackageTable getLocalPackage(PackageTable defaultPackage) {
+    return packageDecl == null ? defaultPackage : packageDecl.packageTable;
   }
 
   public TypeDeclaration getTypeInNamespace(String name) {
@@ -44,6 +46,7 @@ public class CompilationUnit extends ASTNode {
 
   public void addTypeToNamespace(String name, TypeDeclaration decl) {
     typesInNamespace.put(name, decl);
+    resolvedTypes.clear();
   }
 
   public static CompilationUnit newInstance(Token token, PackageDeclaration packageDecl,
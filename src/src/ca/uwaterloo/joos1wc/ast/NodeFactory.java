@@ -0,0 +1,44 @@
+package ca.uwaterloo.joos1wc.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwaterloo.joos1wc.ast.ASTNode.ASTProduction;
+import ca.uwaterloo.joos1wc.scanner.Token;
+import ca.uwaterloo.joos1wc.scanner.TokenKind;
+
+/**
+ * Builds the tree nodes for one rule of the grammar. The AST productions for the rule are looked up once, when the
+ * grammar is loaded, so a reduction does not have to look up its nonterminal by name on every call.
+ */
+public class NodeFactory {
+
+  private final ASTProduction[] productions;
+
+  private NodeFactory(ASTProduction[] productions) {
+    this.productions = productions;
+  }
+
+  /**
+   * Resolves the factory for a grammar rule.
+   *
+   * @param lhs
+   *          The nonterminal on the left hand side of the rule.
+   * @param size
+   *          The number of symbols on the right hand side of the rule.
+   * @return The factory for the rule.
+   */
+  public static NodeFactory forRule(TokenKind lhs, int size) {
+    return new NodeFactory(ASTNode.getProductions(lhs, size));
+  }
+
+  /**
+   * Builds the node for a reduction by this rule, as TreeNode.newNonTerminalNode does. The children are only read during
+   * the call, so the parser can pass a view of its stack. They are copied if they have to be kept in a NonTerminal.
+   */
+  public TreeNode newNode(Token token, List<TreeNode> children) {
+    ASTNode astNode = productions == null ? null : ASTNode.newNonTerminalNode(productions, token, children);
+    return astNode == null ? new NonTerminal(token, new ArrayList<TreeNode>(children)) : astNode;
+  }
+
+}
@@ -1,8 +1,9 @@
 package ca.uwaterloo.joos1wc.ast;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.analysis.PackageTable;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 import ca.uwaterloo.joos1wc.ast.expression.InfixExpression.InfixOperator;
+import ca.uwaterloo.joos1wc.scanner.Names;
 import ca.uwaterloo.joos1wc.scanner.Token;
 
 public class PrimitiveType extends Type {
@@ -11,9 +12,11 @@ public class PrimitiveType extends Type {
     BOOLEAN("Boolean"), BYTE("Byte"), SHORT("Short"), INT("Integer"), CHAR("Character");
     public final String boxedName;
     public final FormalType formalType;
+    private final String boxedCanonicalName;
 
     Code(String boxedName) {
       this.boxedName = boxedName;
+      this.boxedCanonicalName = Names.qualify("java.lang", boxedName);
       formalType = new FormalType(false, this);
     }
 
@@ -29,8 +32,13 @@ public class PrimitiveType extends Type {
       return this == BYTE || this == INT || this == SHORT;
     }
 
-    public TypeDeclaration getBoxedDeclaration() {
-      return Joos1Wc.DEFAULT_PKG.getSubpackage("java").getSubpackage("lang").getType(boxedName);
+    public TypeDeclaration getBoxedDeclaration(PackageTable packages) {
+      return packages.getSubpackage("java").getSubpackage("lang").getType(boxedName);
+    }
+
+    // compares by name, since the declarations are only found through the package table of one compilation
+    public boolean isBoxedBy(TypeDeclaration decl) {
+      return decl != null && decl.getCanonicalName() == boxedCanonicalName;
     }
   }
 
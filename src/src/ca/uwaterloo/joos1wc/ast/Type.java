@@ -133,7 +133,7 @@ public abstract class Type extends ASTNode {
         // Matching reference or primitive types
         return true;
       }
-      return primitive.code.getBoxedDeclaration() == reference.decl;
+      return primitive.code.isBoxedBy(reference.decl);
     }
 
     @Override
@@ -141,7 +141,7 @@ public abstract class Type extends ASTNode {
       if (!(o instanceof FormalType))
         return false;
       FormalType ot = (FormalType) o;
-      return isArray == ot.isArray && code == ot.code && decl == ot.decl;
+      return isArray == ot.isArray && code == ot.code && decl == ot.decl && isNull == ot.isNull;
     }
 
     public String format() {
@@ -181,7 +181,9 @@ public abstract class Type extends ASTNode {
       if (isNull) // fix
         return 1;
 
-      return 31 * (31 * isArray.hashCode() + (code == null ? 1 : code.hashCode()))
+      // not code.hashCode(), which is an identity hash: the order of the methods in a vtable follows these hashes, and
+      // it has to be the same on every run for a snapshot of the library to be reused
+      return 31 * (31 * isArray.hashCode() + (code == null ? 1 : code.ordinal() + 2))
           + (decl == null ? 1 : decl.hashCode());
     }
   }
@@ -13,6 +13,7 @@ import ca.uwaterloo.joos1wc.ast.Visitor;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
 import ca.uwaterloo.joos1wc.ast.Modifier.ModifierKeyword;
 import ca.uwaterloo.joos1wc.ast.Type.FormalType;
+import ca.uwaterloo.joos1wc.scanner.Names;
 import ca.uwaterloo.joos1wc.scanner.Token;
 
 public class MethodDeclaration extends BodyDeclaration {
@@ -185,6 +186,7 @@ public class MethodDeclaration extends BodyDeclaration {
     private int hashCode;
 
     public Signature(boolean isConstructor, String name, List<Type.FormalType> parameterTypes) {
+      assert Names.isInterned(name);
       this.isConstructor = isConstructor;
       this.name = name;
       this.parameterTypes = parameterTypes;
@@ -209,7 +211,7 @@ public class MethodDeclaration extends BodyDeclaration {
     }
 
     public boolean matches(Signature o) {
-      if (!name.equals(o.name) || size() != o.size()) {
+      if (name != o.name || size() != o.size()) {
         return false;
       }
       for (int i = 0; i < size(); i++) {
@@ -226,7 +228,7 @@ public class MethodDeclaration extends BodyDeclaration {
       if (!(o instanceof Signature))
         return false;
       Signature os = (Signature) o;
-      return isConstructor == os.isConstructor && name.equals(os.name) && parameterTypes.equals(os.parameterTypes);
+      return isConstructor == os.isConstructor && name == os.name && parameterTypes.equals(os.parameterTypes);
     }
 
     @Override
@@ -3,13 +3,11 @@ package ca.uwaterloo.joos1wc.ast.declaration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
 import ca.uwaterloo.joos1wc.analysis.PackageTable;
+import ca.uwaterloo.joos1wc.analysis.ResolutionCache;
 import ca.uwaterloo.joos1wc.ast.ASTNode;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
 import ca.uwaterloo.joos1wc.ast.Modifier;
@@ -24,6 +22,7 @@ import ca.uwaterloo.joos1wc.ast.Modifier.ModifierKeyword;
 import ca.uwaterloo.joos1wc.ast.Type.FormalType;
 import ca.uwaterloo.joos1wc.codegen.CodeGenUtils;
 import ca.uwaterloo.joos1wc.codegen.VTable;
+import ca.uwaterloo.joos1wc.scanner.Names;
 import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.Token;
 
@@ -45,6 +44,12 @@ public class TypeDeclaration extends ASTNode implements INamedEntityNode {
 
   private VTable vtable;
 
+  // Standard library types are numbered first in the type tables, so that their code does not depend on the program.
+  // Precompiled ones are only analysed as far as their signatures, and their code is restored from a LibrarySnapshot.
+  // The compile server marks the program types whose code it reuses as precompiled too, see BuildState.
+  public boolean isLibrary = false;
+  public boolean isPrecompiled = false;
+
   public final boolean isClass;
   public final boolean isInterface;
 
@@ -55,10 +60,18 @@ public class TypeDeclaration extends ASTNode implements INamedEntityNode {
   private Collection<TypeDeclaration> ifaceDecls;
   private Collection<TypeDeclaration> superifaceDecls;
   private PackageTable pkg;
+  // built on first use, after the package is set; every thread builds the same name
+  private volatile String canonicalName, globalName;
+
+  // Numbered by the HierarchyChecker, supertypes first. The supertypes of a type, itself included, are the bits set in
+  // supertypeBits, so subtype tests are a single bit test. Supertypes are numbered lower, so the bits of a type fit in
+  // (typeNumber / 64) + 1 words.
+  private int typeNumber = -1;
+  private long[] supertypeBits;
 
-  // For code gen. Should probably be constructed at some other stage, but oh well. (If you need something, just throw
-  // more memory at the problem?)
-  private Set<TypeDeclaration> supertypes;
+  // fields and methods, as resolved by LinkerUtils on this type and its supertypes
+  public final ResolutionCache<String, FieldDeclaration> resolvedFields = new ResolutionCache<>();
+  public final ResolutionCache<MethodDeclaration.Signature, MethodDeclaration> resolvedMethods = new ResolutionCache<>();
 
   public TypeDeclaration(Token token, List<Modifier> modifiers, String name, SimpleType superclass,
       List<SimpleType> ifaces, List<SimpleType> superifaces, List<BodyDeclaration> body, boolean isClass,
@@ -139,27 +152,44 @@ public class TypeDeclaration extends ASTNode implements INamedEntityNode {
     return Collections.unmodifiableCollection(ifaceDecls);
   }
 
-  public Set<TypeDeclaration> getSupertypes() {
-    if (supertypes == null) {
-      supertypes = new HashSet<>();
-      if (isClass) {
-        if (superclassDecl != null) {
-          supertypes.add(superclassDecl);
-          supertypes.addAll(superclassDecl.getSupertypes());
-        }
-        for (TypeDeclaration ifaceDecl : ifaceDecls) {
-          supertypes.add(ifaceDecl);
-          supertypes.addAll(ifaceDecl.getSupertypes());
-        }
-      } else {
-        for (TypeDeclaration superifaceDecl : superifaceDecls) {
-          supertypes.add(superifaceDecl);
-          supertypes.addAll(superifaceDecl.getSupertypes());
-        }
-      }
-      supertypes.add(this);
+  /**
+   * Numbers this type after its supertypes, which must have been numbered already.
+   * 
+   * @param typeNumber
+   *          a number greater than that of every supertype, and different from the number of any other type
+   */
+  public void setTypeNumber(int typeNumber) {
+    long[] bits = new long[(typeNumber >>> 6) + 1];
+    Collection<TypeDeclaration> supertypes = isClass ? ifaceDecls : superifaceDecls;
+    for (TypeDeclaration supertype : supertypes) {
+      orSupertypeBits(bits, supertype);
+    }
+    if (isClass && superclassDecl != null) {
+      orSupertypeBits(bits, superclassDecl);
+    }
+    bits[typeNumber >>> 6] |= 1L << typeNumber;
+    this.typeNumber = typeNumber;
+    this.supertypeBits = bits;
+  }
+
+  private static void orSupertypeBits(long[] bits, TypeDeclaration supertype) {
+    assert supertype.supertypeBits != null && supertype.supertypeBits.length <= bits.length;
+    for (int i = 0; i < supertype.supertypeBits.length; i++) {
+      bits[i] |= supertype.supertypeBits[i];
     }
-    return Collections.unmodifiableSet(supertypes);
+  }
+
+  public int getTypeNumber() {
+    return typeNumber;
+  }
+
+  /**
+   * @return whether this type is the given type, or extends or implements it directly or indirectly
+   */
+  public boolean isSubtypeOf(TypeDeclaration type) {
+    assert supertypeBits != null && type.typeNumber >= 0;
+    int word = type.typeNumber >>> 6;
+    return word < supertypeBits.length && (supertypeBits[word] & (1L << type.typeNumber)) != 0;
   }
 
   // TODO copy?
@@ -201,21 +231,12 @@ public class TypeDeclaration extends ASTNode implements INamedEntityNode {
   }
 
   public boolean isAssignable(TypeDeclaration type) {
-    if (type.isClass)
-      return isSubclassOf(type);
-
-    return ifaceDecls.contains(type) || superifaceDecls.contains(type);
+    return isSubtypeOf(type);
   }
 
   public boolean isSubclassOf(TypeDeclaration ancestor) {
     assert fields != null && methods != null && isClass && ancestor.isClass;
-    TypeDeclaration cdecl = this;
-    while (cdecl != null) {
-      if (cdecl == ancestor)
-        return true;
-      cdecl = cdecl.getSuperclassDecl();
-    }
-    return false;
+    return ancestor.isClass && isSubtypeOf(ancestor);
   }
 
   public Collection<FieldDeclaration> getFields() {
@@ -306,20 +327,17 @@ public class TypeDeclaration extends ASTNode implements INamedEntityNode {
   }
 
   public String getCanonicalName() {
-    String fullName = pkg.getFullName();
-    if (fullName.length() > 0) {
-      return String.format("%s.%s", pkg.getFullName(), name);
-    } else {
-      return name;
+    if (canonicalName == null) {
+      canonicalName = Names.qualify(pkg.getFullName(), name);
     }
+    return canonicalName;
   }
 
   public String getGlobalName() {
-    return String.format("C%s", getCanonicalName());
-  }
-
-  public static TypeDeclaration getObjectType() {
-    return Joos1Wc.DEFAULT_PKG.getSubpackage("java").getSubpackage("lang").getType("Object");
+    if (globalName == null) {
+      globalName = "C" + getCanonicalName();
+    }
+    return globalName;
   }
 
   public static TypeDeclaration newInstance(Token token, TypeDeclaration o) {
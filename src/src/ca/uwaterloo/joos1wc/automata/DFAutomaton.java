@@ -1,7 +1,8 @@
 package ca.uwaterloo.joos1wc.automata;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.Token;
@@ -12,10 +13,24 @@ import ca.uwaterloo.joos1wc.utility.CharacterStream;
  */
 public class DFAutomaton {
 
+  /** The number of input characters covered by the compiled transition table. Input is restricted to ASCII. */
+  public static final int ALPHABET_SIZE = 128;
+
+  /** The compiled transition table entry for a missing transition. */
+  public static final int NO_TRANSITION = -1;
+
+  private static final byte[] NO_LITERAL_VALUE = new byte[0];
+
   private final DFState[] states;
   private final DFTransition[] transitions;
   private TerminalTokenKind kind;
 
+  // compiled form of the states, indexed by state index * ALPHABET_SIZE + character
+  private int[] nextStates;
+  private DFTransition[] actions;
+  private boolean[] terminal;
+  private boolean hasActions;
+
   /**
    * Constructs a deterministic finite automaton that accepts a specific TokenKind.
    * 
@@ -32,6 +47,60 @@ public class DFAutomaton {
     this.states = states;
     this.transitions = transitions;
     this.kind = kind;
+
+    if (states != null) {
+      compile();
+    }
+  }
+
+  /**
+   * Lowers the states into a transition table, so that following a transition is a single array load instead of a
+   * scan over the transitions of the state. Each entry holds the index of the state reached by the first matching
+   * transition, and a side table holds the transitions whose action must run to record a literal value. Called by the
+   * constructor; call again if transitions are added to the states afterwards.
+   */
+  public void compile() {
+    Map<DFState, Integer> index = new IdentityHashMap<DFState, Integer>();
+    for (int i = 0; i < states.length; i++) {
+      index.put(states[i], i);
+    }
+
+    int[] nextStates = new int[states.length * ALPHABET_SIZE];
+    DFTransition[] actions = new DFTransition[states.length * ALPHABET_SIZE];
+    boolean[] terminal = new boolean[states.length];
+    boolean hasActions = false;
+    for (int i = 0; i < states.length; i++) {
+      terminal[i] = states[i].isTerminal;
+      for (int c = 0; c < ALPHABET_SIZE; c++) {
+        int entry = i * ALPHABET_SIZE + c;
+        nextStates[entry] = NO_TRANSITION;
+        for (DFTransition trans : states[i].transitions) {
+          if (trans.matches((char) c)) {
+            nextStates[entry] = index.get(trans.toState);
+            if (trans.hasAction()) {
+              actions[entry] = trans;
+              hasActions = true;
+            }
+            break;
+          }
+        }
+      }
+    }
+
+    this.nextStates = nextStates;
+    this.actions = actions;
+    this.terminal = terminal;
+    this.hasActions = hasActions;
+  }
+
+  /**
+   * Gets the compiled transition table, indexed by state index * ALPHABET_SIZE + character, where the state index is
+   * the position of the state in getStates().
+   * 
+   * @return The index of the next state for each state and character, or NO_TRANSITION.
+   */
+  public int[] getTransitionTable() {
+    return nextStates;
   }
 
   /**
@@ -71,7 +140,9 @@ public class DFAutomaton {
   }
 
   /**
-   * Iterates through the input stream returning as much of the available input as possible that can be consumed.
+   * Iterates through the input stream returning as much of the available input as possible that can be consumed. The
+   * returned token refers to the buffer of the stream; nothing is allocated unless a token is found, apart from the
+   * literal value of automata with actions.
    * 
    * @param cursor
    *          The input stream.
@@ -81,41 +152,37 @@ public class DFAutomaton {
   public Token munge(CharacterStream cursor) throws IOException {
     assert cursor != null;
 
-    DFState state = getStartingState();
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    DFState result = null;
-    boolean isScanning = true;
+    int[] nextStates = this.nextStates;
+    int state = 0;
+    LiteralBuffer buffer = hasActions ? new LiteralBuffer() : null;
+    boolean result = false;
+    int length = 0;
 
-    StringBuilder image = new StringBuilder();
-    while (isScanning && !cursor.isEndOfInput()) {
-      if (state.isTerminal) {
-        result = state;
+    while (!cursor.isEndOfInput()) {
+      if (terminal[state]) {
+        result = true;
       }
 
       char nextSym = cursor.next();
-      DFState newstate = null;
-      for (DFTransition trans : state.transitions) {
-        if (trans.execute(nextSym, buffer)) {
-          newstate = trans.toState;
-          break;
-        }
+      int entry = state * ALPHABET_SIZE + nextSym;
+      int newstate = nextStates[entry];
+      if (newstate == NO_TRANSITION) {
+        break;
       }
 
-      if (newstate == null) {
-        isScanning = false;
-      } else {
-        state = newstate;
-        image.append(nextSym);
+      if (actions[entry] != null) {
+        actions[entry].executeAction(nextSym, buffer);
       }
+      state = newstate;
+      length++;
     }
 
-    if (!state.isTerminal && result == null) {
+    if (!terminal[state] && !result) {
       return null; // unable to parse token
     }
 
-    String lexeme = image.toString();
-    return new Token(cursor.getFile(), this.kind, lexeme, cursor.getCurrentLine(), cursor.getLinePosition(),
-        buffer.toByteArray());
+    return new Token(cursor.getFile(), this.kind, cursor.getBuffer(), cursor.getStartPosition(), length,
+        cursor.getCurrentLine(), cursor.getLinePosition(), buffer == null ? NO_LITERAL_VALUE : buffer.toByteArray());
   }
 
 }
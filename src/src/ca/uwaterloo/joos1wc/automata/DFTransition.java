@@ -1,14 +1,12 @@
 package ca.uwaterloo.joos1wc.automata;
 
-import java.io.ByteArrayOutputStream;
-
 /**
  * A transition between two states.
  */
 public class DFTransition {
 
   public static interface Action {
-    public void execute(char c, DFTransition t, ByteArrayOutputStream out);
+    public void execute(char c, DFTransition t, LiteralBuffer out);
   }
 
   /*
@@ -86,7 +84,7 @@ public class DFTransition {
    *          An input character.
    * @return True if the transition is successful; false otherwise.
    */
-  public boolean execute(char input, ByteArrayOutputStream out) {
+  public boolean execute(char input, LiteralBuffer out) {
     if (!shouldExecute(input)) {
       return false;
     }
@@ -96,6 +94,40 @@ public class DFTransition {
     return true;
   }
 
+  /**
+   * Check if the transition applies to the specified character, without running its action.
+   * 
+   * @param input
+   *          An input character.
+   * @return True if the transition applies to the character; false otherwise.
+   */
+  public boolean matches(char input) {
+    return shouldExecute(input);
+  }
+
+  /**
+   * Runs the action of the transition, if any, without checking whether the transition applies.
+   * 
+   * @param input
+   *          The input character the transition was taken on.
+   * @param out
+   *          The literal value being recorded.
+   */
+  public void executeAction(char input, LiteralBuffer out) {
+    if (action != null) {
+      action.execute(input, this, out);
+    }
+  }
+
+  /**
+   * Check if the transition records a literal value when it is taken.
+   * 
+   * @return True if the transition has an action; false otherwise.
+   */
+  public boolean hasAction() {
+    return action != null;
+  }
+
   /**
    * Check if the transition applies to the specified character.
    * 
@@ -0,0 +1,14 @@
+package ca.uwaterloo.joos1wc.automata;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Collects the value of a literal while an automaton runs. Context that has to be carried between transitions is kept
+ * here rather than in the actions, so that one automaton can be run by several threads at once.
+ */
+public class LiteralBuffer extends ByteArrayOutputStream {
+
+  /** The value of the octal escape sequence being read. */
+  public byte escapeValue = 0;
+
+}
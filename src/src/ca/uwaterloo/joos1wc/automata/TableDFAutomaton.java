@@ -0,0 +1,233 @@
+package ca.uwaterloo.joos1wc.automata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
+
+/**
+ * A single deterministic finite automaton that recognizes the union of a list of automata. It is the minimized
+ * product of its component automata, encoded as a dense transition table indexed by <code>state * 128 + char</code>.
+ * Accepting states carry the kind of the first component automaton (in list order) that accepts there, so priority
+ * between token kinds is the same as running the automata one after the other.
+ */
+public class TableDFAutomaton {
+
+  /** The number of input characters covered by the table. Input is restricted to ASCII. */
+  public static final int ALPHABET_SIZE = DFAutomaton.ALPHABET_SIZE;
+
+  /** The table entry for a missing transition. */
+  public static final int DEAD_STATE = -1;
+
+  private final int[] table;
+  private final TerminalTokenKind[] accepting;
+  private final DFAutomaton[] automata;
+
+  private TableDFAutomaton(int[] table, TerminalTokenKind[] accepting, DFAutomaton[] automata) {
+    this.table = table;
+    this.accepting = accepting;
+    this.automata = automata;
+  }
+
+  /**
+   * Gets the starting state of the automaton.
+   *
+   * @return The starting state.
+   */
+  public int getStartingState() {
+    return 0;
+  }
+
+  /**
+   * Gets the number of states in the automaton.
+   *
+   * @return The number of states.
+   */
+  public int getStateCount() {
+    return accepting.length;
+  }
+
+  /**
+   * Follows the transition from a state on a character.
+   *
+   * @param state
+   *          The current state.
+   * @param c
+   *          The input character, which must be ASCII.
+   * @return The next state, or DEAD_STATE if there is no transition.
+   */
+  public int next(int state, char c) {
+    return table[state * ALPHABET_SIZE + c];
+  }
+
+  /**
+   * Gets the token kind accepted by a state.
+   *
+   * @param state
+   *          The state to check.
+   * @return The accepted token kind, or null if the state is not accepting.
+   */
+  public TerminalTokenKind getAcceptingKind(int state) {
+    return accepting[state];
+  }
+
+  /**
+   * Gets the component automaton for a token kind, used to compute literal values.
+   *
+   * @param kind
+   *          The token kind.
+   * @return The component automaton matching that kind, or null if there is none.
+   */
+  public DFAutomaton getAutomaton(TerminalTokenKind kind) {
+    for (DFAutomaton dfa : automata) {
+      if (dfa.getKind() == kind) {
+        return dfa;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Builds the minimized product automaton of the given automata.
+   *
+   * @param dfaList
+   *          The component automata, in priority order.
+   * @return The combined automaton.
+   */
+  public static TableDFAutomaton fromAutomata(List<DFAutomaton> dfaList) {
+    assert dfaList != null;
+
+    DFAutomaton[] automata = dfaList.toArray(new DFAutomaton[dfaList.size()]);
+    int[][] steps = new int[automata.length][];
+    for (int i = 0; i < automata.length; i++) {
+      steps[i] = automata[i].getTransitionTable();
+    }
+
+    // subset construction over tuples of component states, with -1 marking a component that is stuck
+    Map<List<Integer>, Integer> ids = new HashMap<List<Integer>, Integer>();
+    List<int[]> tuples = new ArrayList<int[]>();
+    int[] start = new int[automata.length];
+    ids.put(asKey(start), 0);
+    tuples.add(start);
+
+    List<int[]> rows = new ArrayList<int[]>();
+    for (int s = 0; s < tuples.size(); s++) {
+      int[] tuple = tuples.get(s);
+      int[] row = new int[ALPHABET_SIZE];
+      for (int c = 0; c < ALPHABET_SIZE; c++) {
+        int[] target = new int[automata.length];
+        boolean alive = false;
+        for (int i = 0; i < automata.length; i++) {
+          target[i] = tuple[i] < 0 ? -1 : steps[i][tuple[i] * ALPHABET_SIZE + c];
+          alive |= target[i] >= 0;
+        }
+
+        if (!alive) {
+          row[c] = DEAD_STATE;
+          continue;
+        }
+        List<Integer> key = asKey(target);
+        Integer id = ids.get(key);
+        if (id == null) {
+          id = tuples.size();
+          ids.put(key, id);
+          tuples.add(target);
+        }
+        row[c] = id;
+      }
+      rows.add(row);
+    }
+
+    TerminalTokenKind[] kinds = new TerminalTokenKind[tuples.size()];
+    for (int s = 0; s < tuples.size(); s++) {
+      int[] tuple = tuples.get(s);
+      for (int i = 0; i < automata.length && kinds[s] == null; i++) {
+        if (tuple[i] >= 0 && automata[i].getStates()[tuple[i]].isTerminal) {
+          kinds[s] = automata[i].getKind();
+        }
+      }
+    }
+
+    return minimize(rows, kinds, automata);
+  }
+
+  /**
+   * Merges equivalent states by partition refinement, starting from a partition by accepted kind.
+   */
+  private static TableDFAutomaton minimize(List<int[]> rows, TerminalTokenKind[] kinds, DFAutomaton[] automata) {
+    int count = rows.size();
+    int[] block = new int[count];
+    Map<TerminalTokenKind, Integer> initial = new HashMap<TerminalTokenKind, Integer>();
+    for (int s = 0; s < count; s++) {
+      Integer b = initial.get(kinds[s]);
+      if (b == null) {
+        b = initial.size();
+        initial.put(kinds[s], b);
+      }
+      block[s] = b;
+    }
+    int blockCount = initial.size();
+
+    while (true) {
+      // the signature of a state is its own block followed by the blocks of its successors
+      Map<List<Integer>, Integer> signatures = new HashMap<List<Integer>, Integer>();
+      int[] refined = new int[count];
+      for (int s = 0; s < count; s++) {
+        int[] row = rows.get(s);
+        int[] signature = new int[ALPHABET_SIZE + 1];
+        signature[0] = block[s];
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+          signature[c + 1] = row[c] == DEAD_STATE ? -1 : block[row[c]];
+        }
+        List<Integer> key = asKey(signature);
+        Integer b = signatures.get(key);
+        if (b == null) {
+          b = signatures.size();
+          signatures.put(key, b);
+        }
+        refined[s] = b;
+      }
+
+      block = refined;
+      if (signatures.size() == blockCount) {
+        break;
+      }
+      blockCount = signatures.size();
+    }
+
+    // renumber the blocks so that the starting state stays at zero
+    int[] renumber = new int[blockCount];
+    Arrays.fill(renumber, -1);
+    int next = 0;
+    for (int s = 0; s < count; s++) {
+      if (renumber[block[s]] < 0) {
+        renumber[block[s]] = next++;
+      }
+    }
+
+    int[] table = new int[blockCount * ALPHABET_SIZE];
+    TerminalTokenKind[] accepting = new TerminalTokenKind[blockCount];
+    for (int s = 0; s < count; s++) {
+      int state = renumber[block[s]];
+      int[] row = rows.get(s);
+      for (int c = 0; c < ALPHABET_SIZE; c++) {
+        table[state * ALPHABET_SIZE + c] = row[c] == DEAD_STATE ? DEAD_STATE : renumber[block[row[c]]];
+      }
+      accepting[state] = kinds[s];
+    }
+
+    return new TableDFAutomaton(table, accepting, automata);
+  }
+
+  private static List<Integer> asKey(int[] values) {
+    List<Integer> key = new ArrayList<Integer>(values.length);
+    for (int value : values) {
+      key.add(value);
+    }
+    return key;
+  }
+
+}
@@ -1,6 +1,6 @@
 package ca.uwaterloo.joos1wc.codegen;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
@@ -8,16 +8,12 @@ import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 public class ArrayVTable {
   private static final String ARRAY_VTABLE_LABEL = "NATIVE_ARRAY_VTABLE";
   private static final String ARRAY_NAME = "[]";
-  private static final ArrayVTable singleton = new ArrayVTable();
   public static final int ARRAY_LENGTH_OFFSET = -4;
 
-  private final VTable objectVTable = TypeDeclaration.getObjectType().getVTable();
+  private final TypeDeclaration objectDecl;
 
-  private ArrayVTable() {
-  }
-
-  public static ArrayVTable getVTable() {
-    return singleton;
+  public ArrayVTable(TypeDeclaration objectDecl) {
+    this.objectDecl = objectDecl;
   }
 
   public String getLabel() {
@@ -25,7 +21,7 @@ public class ArrayVTable {
   }
 
   public int getOffset(MethodDeclaration.Signature signature) {
-    return objectVTable.getOffset(signature);
+    return getObjectVTable().getOffset(signature);
   }
 
   public int getOffset(String fieldName) {
@@ -44,17 +40,16 @@ public class ArrayVTable {
     node.addChild(AssemblyNode.dbChar(ARRAY_NAME));
 
     String hierarchyTableLabel = ARRAY_VTABLE_LABEL + VTable.HIERARCHY_TABLE_SUFFIX;
-    node.addChild(AssemblyNode.label(hierarchyTableLabel));
-    Joos1Wc.TYPE_HIERARCHY_TABLE.addHierarchyTableSlice(node, TypeDeclaration.getObjectType());
+    node.requires(hierarchyTableLabel);
 
     // Output class label and addresses of name, type hierarchy table
     node.addChild(AssemblyNode.label(ARRAY_VTABLE_LABEL));
     node.addChild(AssemblyNode.dd(nameLabel));
     node.addChild(AssemblyNode.dd(hierarchyTableLabel));
-    node.addChild(AssemblyNode.DD, "no iface methods"); // add a null pointer for interface methods
+    node.addChild(AssemblyNode.dd("0"), "no iface methods"); // add a null pointer for interface methods
 
     // then all the methods in order
-    for (MethodDeclaration element : this.objectVTable.getMethods()) {
+    for (MethodDeclaration element : getObjectVTable().getMethods()) {
       node.addChild(AssemblyNode.dd(element.getGlobalName()));
       node.requires(element.getGlobalName());
     }
@@ -62,4 +57,13 @@ public class ArrayVTable {
 
   }
 
+  private VTable getObjectVTable() {
+    return objectDecl.getVTable();
+  }
+
+  public void addTables(CompilationContext context, AssemblyNode node) {
+    node.addChild(AssemblyNode.label(ARRAY_VTABLE_LABEL + VTable.HIERARCHY_TABLE_SUFFIX));
+    context.typeHierarchyTable.addHierarchyTableSlice(node, objectDecl);
+  }
+
 }
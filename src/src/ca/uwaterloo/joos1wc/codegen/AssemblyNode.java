@@ -1,124 +1,492 @@
 package ca.uwaterloo.joos1wc.codegen;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
+/**
+ * A run of instructions. Each instruction is WIDTH ints of code: its opcode, condition and operand kinds packed
+ * together, its two operands (a register or an immediate), and the displacement of a memory operand. A symbol operand
+ * (a label, or any other text NASM should see as is) and a comment are kept alongside, one slot per instruction. Adding
+ * a node to another copies its instructions, so the node for a method holds the code for the whole method, and the text
+ * is only built by print, as it is written.
+ *
+ * A push or pop that makes or drops the stack slot of a variable is flagged in the opcode word. The variable is found
+ * at a fixed offset from ebp, so an optimization must never move or remove its slot.
+ */
 public class AssemblyNode {
-  // Only leaf nodes are allowed to have actual assembly
-  // TODO further abstract assembly instructions?
-  private final String instruction;
-  private String comment;
-  private List<AssemblyNode> children = new ArrayList<AssemblyNode>();
-  private Set<String> providedSymbols = new HashSet<String>();
-  private Set<String> requiredSymbols = new HashSet<String>();
+  private static final int WIDTH = 4;
+  private static final int OPCODE = 0, DISPLACEMENT = 3;
+  // set in the opcode word of a push or pop of a variable slot
+  private static final int SLOT = 1 << 24;
+  // the operands of an instruction
+  static final int A = 1, B = 2;
+
+  private int[] code;
+  private String[] symbols;
+  private String[] comments;
+  private int size;
+  // made by one of the factories below; a comment on any other node is not printed
+  private final boolean isInstruction;
+
+  // in the order they were added, which decides the order of the extern and global lines
+  private String[] providedSymbols;
+  private int providedCount;
+  private String[] requiredSymbols;
+  private int requiredCount;
 
   public AssemblyNode() {
-    this.instruction = null;
+    this.code = new int[0];
+    this.isInstruction = false;
+  }
+
+  private AssemblyNode(Opcode opcode, Condition condition, Object a, Object b, int displacement) {
+    this.code = new int[WIDTH];
+    this.isInstruction = true;
+    int kinds = (encode(a, A) << 16) | (encode(b, B) << 20);
+    code[OPCODE] = opcode.ordinal() | (condition == null ? 0 : condition.ordinal() + 1) << 8 | kinds;
+    code[DISPLACEMENT] = displacement;
+    size = 1;
+  }
+
+  private int encode(Object operand, int index) {
+    if (operand == null) {
+      return OperandKind.NONE.ordinal();
+    } else if (operand instanceof Register) {
+      code[index] = ((Register) operand).ordinal();
+      return OperandKind.REGISTER.ordinal();
+    } else if (operand instanceof Number) {
+      code[index] = ((Number) operand).intValue();
+      return OperandKind.IMMEDIATE.ordinal();
+    }
+    // only one operand of an instruction is ever a symbol
+    assert symbols == null;
+    symbols = new String[] { operand.toString() };
+    return OperandKind.SYMBOL.ordinal();
   }
 
-  public AssemblyNode(String instruction) {
-    this.instruction = instruction;
+  public void setComment(String comment) {
+    if (isInstruction) {
+      setComment(size - 1, comment);
+    }
   }
 
-  public AssemblyNode(String instruction, String label) {
-    this.instruction = instruction;
-    this.provides(label);
+  private void setComment(int i, String comment) {
+    if (comments == null) {
+      comments = new String[code.length / WIDTH];
+    }
+    comments[i] = comment;
   }
 
-  public void setComment(String comment) {
-    this.comment = comment;
+  public void provides(String label) {
+    if (providedSymbols == null || providedCount == providedSymbols.length) {
+      providedSymbols = grow(providedSymbols, providedCount + 1);
+    }
+    providedSymbols[providedCount++] = label;
   }
 
-  public void provides(String label) {
-    providedSymbols.add(label);
+  public void requires(String label) {
+    if (requiredSymbols == null || requiredCount == requiredSymbols.length) {
+      requiredSymbols = grow(requiredSymbols, requiredCount + 1);
+    }
+    requiredSymbols[requiredCount++] = label;
   }
 
-  public Set<String> provides() {
-    return providedSymbols;
+  public void addChild(AssemblyNode child, String comment) {
+    addChild(child);
+    if (child.isInstruction) {
+      setComment(size - 1, comment);
+    }
   }
 
-  public void requires(String label) {
-    requiredSymbols.add(label);
+  public void addChild(AssemblyNode child) {
+    int total = size + child.size;
+    if (total * WIDTH > code.length) {
+      int capacity = Math.max(total, 2 * size);
+      code = Arrays.copyOf(code, capacity * WIDTH);
+      if (symbols != null) {
+        symbols = Arrays.copyOf(symbols, capacity);
+      }
+      if (comments != null) {
+        comments = Arrays.copyOf(comments, capacity);
+      }
+    }
+    System.arraycopy(child.code, 0, code, size * WIDTH, child.size * WIDTH);
+    if (child.symbols != null) {
+      if (symbols == null) {
+        symbols = new String[code.length / WIDTH];
+      }
+      System.arraycopy(child.symbols, 0, symbols, size, child.size);
+    }
+    if (child.comments != null) {
+      if (comments == null) {
+        comments = new String[code.length / WIDTH];
+      }
+      System.arraycopy(child.comments, 0, comments, size, child.size);
+    }
+    size = total;
+
+    if (child.providedCount > 0) {
+      providedSymbols = grow(providedSymbols, providedCount + child.providedCount);
+      System.arraycopy(child.providedSymbols, 0, providedSymbols, providedCount, child.providedCount);
+      providedCount += child.providedCount;
+    }
+    if (child.requiredCount > 0) {
+      requiredSymbols = grow(requiredSymbols, requiredCount + child.requiredCount);
+      System.arraycopy(child.requiredSymbols, 0, requiredSymbols, requiredCount, child.requiredCount);
+      requiredCount += child.requiredCount;
+    }
   }
 
-  public Set<String> requires() {
-    return requiredSymbols;
+  private static String[] grow(String[] array, int length) {
+    if (array == null) {
+      return new String[Math.max(length, 4)];
+    }
+    return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, 2 * array.length));
   }
 
-  public void addChild(AssemblyNode child, String comment) {
-    child.setComment(comment);
-    addChild(child);
+  /**
+   * @return the number of instructions
+   */
+  int size() {
+    return size;
   }
 
-  public void addChild(AssemblyNode child) {
-    assert instruction == null;
-    // Filter out empty leaves, e.g. from EmptyStatement
-    if (child.instruction != null) {
-      children.add(child);
-    } else if (child.children.size() > 0) {
-      // flatten the list
-      children.addAll(child.children);
+  Opcode getOpcode(int i) {
+    return Opcode.VALUES[code[i * WIDTH + OPCODE] & 0xff];
+  }
+
+  Condition getCondition(int i) {
+    int condition = (code[i * WIDTH + OPCODE] >> 8) & 0xf;
+    return condition == 0 ? null : Condition.VALUES[condition - 1];
+  }
+
+  /**
+   * @return the operand as a Register, an Integer or a String, or null if there is none
+   */
+  Object getOperand(int i, int operand) {
+    switch (getKind(i, operand)) {
+    case REGISTER:
+      return Register.VALUES[code[i * WIDTH + operand]];
+    case IMMEDIATE:
+      return code[i * WIDTH + operand];
+    case SYMBOL:
+      return symbols[i];
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * @return the operand if it is a register, otherwise null
+   */
+  Register getRegister(int i, int operand) {
+    return getKind(i, operand) == OperandKind.REGISTER ? Register.VALUES[code[i * WIDTH + operand]] : null;
+  }
+
+  /**
+   * @return whether instruction i makes or drops the stack slot of a variable
+   */
+  boolean isSlot(int i) {
+    return (code[i * WIDTH + OPCODE] & SLOT) != 0;
+  }
+
+  String getSymbol(int i) {
+    return symbols == null ? null : symbols[i];
+  }
+
+  int getDisplacement(int i) {
+    return code[i * WIDTH + DISPLACEMENT];
+  }
+
+  /**
+   * Replaces an instruction with another, made by one of the factories. The comment stays unless the new instruction
+   * has its own.
+   */
+  void set(int i, AssemblyNode instruction) {
+    assert instruction.isInstruction && instruction.size == 1;
+    System.arraycopy(instruction.code, 0, code, i * WIDTH, WIDTH);
+    if (instruction.symbols != null || symbols != null) {
+      if (symbols == null) {
+        symbols = new String[code.length / WIDTH];
+      }
+      symbols[i] = instruction.symbols == null ? null : instruction.symbols[0];
+    }
+    if (instruction.comments != null && instruction.comments[0] != null) {
+      setComment(i, instruction.comments[0]);
+    }
+  }
+
+  /**
+   * Removes an instruction, leaving a NOP in its place until compact is called, so the other instructions keep their
+   * indices.
+   */
+  void remove(int i) {
+    code[i * WIDTH + OPCODE] = Opcode.NOP.ordinal();
+    if (comments != null) {
+      comments[i] = null;
+    }
+  }
+
+  void compact() {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (getOpcode(i) == Opcode.NOP) {
+        continue;
+      }
+      if (count != i) {
+        System.arraycopy(code, i * WIDTH, code, count * WIDTH, WIDTH);
+        if (symbols != null) {
+          symbols[count] = symbols[i];
+        }
+        if (comments != null) {
+          comments[count] = comments[i];
+        }
+      }
+      count++;
+    }
+    for (int i = count; i < size; i++) {
+      if (symbols != null) {
+        symbols[i] = null;
+      }
+      if (comments != null) {
+        comments[i] = null;
+      }
     }
-    providedSymbols.addAll(child.provides());
-    requiredSymbols.addAll(child.requires());
+    size = count;
   }
 
   public void print(PrintStream stream) {
-    assert instruction == null || children.size() == 0;
-    for (String extern : this.requiredSymbols) {
-      if (!this.providedSymbols.contains(extern)) {
-        stream.println(String.format("  extern %s", extern));
+    Set<String> provided = new HashSet<String>();
+    for (int i = 0; i < providedCount; i++) {
+      provided.add(providedSymbols[i]);
+    }
+    Set<String> required = new HashSet<String>();
+    for (int i = 0; i < requiredCount; i++) {
+      required.add(requiredSymbols[i]);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (String extern : required) {
+      if (!provided.contains(extern)) {
+        sb.append("  extern ").append(extern).append('\n');
       }
     }
-    for (String global : this.providedSymbols) {
+    for (String global : provided) {
       if (global.charAt(0) != '.') {
-        stream.println(String.format("  global %s", global));
+        sb.append("  global ").append(global).append('\n');
       }
     }
 
-    if (instruction != null) {
-      printInstruction(stream);
-    } else {
-      for (AssemblyNode child : children) {
-        child.printInstruction(stream);
+    for (int i = 0; i < size; i++) {
+      if (getOpcode(i) == Opcode.NOP) {
+        continue;
+      }
+      printInstruction(sb, i);
+      if (comments != null && comments[i] != null) {
+        sb.append(" ; ").append(comments[i]);
+      }
+      sb.append('\n');
+      if (sb.length() >= 8192) {
+        stream.append(sb);
+        sb.setLength(0);
+      }
+    }
+    stream.append(sb);
+  }
+
+  private void printInstruction(StringBuilder sb, int i) {
+    int word = code[i * WIDTH + OPCODE];
+    Opcode opcode = Opcode.VALUES[word & 0xff];
+    switch (opcode) {
+    case LABEL:
+      printOperand(sb, i, A);
+      sb.append(':');
+      return;
+    case COMMENT:
+      sb.append("; ");
+      printOperand(sb, i, A);
+      return;
+    case SECTION:
+      sb.append("section ");
+      printOperand(sb, i, A);
+      return;
+    default:
+    }
+
+    sb.append("  ").append(opcode.mnemonic);
+    int condition = (word >> 8) & 0xf;
+    if (condition > 0) {
+      sb.append(Condition.NAMES[condition - 1]);
+    }
+    switch (opcode) {
+    case DB_CHARS:
+      sb.append(" '");
+      printOperand(sb, i, A);
+      sb.append('\'');
+      return;
+    case PUSH:
+      sb.append(getKind(i, A) == OperandKind.REGISTER ? " " : " dword ");
+      printOperand(sb, i, A);
+      return;
+    case LEA:
+    case LOAD_OFFSET:
+      sb.append(' ');
+      printOperand(sb, i, A);
+      sb.append(", [");
+      printOperand(sb, i, B);
+      sb.append(" + ").append(code[i * WIDTH + DISPLACEMENT]).append(']');
+      return;
+    case LOAD:
+      sb.append(' ');
+      printOperand(sb, i, A);
+      sb.append(", [");
+      printOperand(sb, i, B);
+      sb.append(']');
+      return;
+    case STORE:
+      sb.append(" DWORD [");
+      printOperand(sb, i, A);
+      sb.append("], ");
+      printOperand(sb, i, B);
+      return;
+    case STORE_OFFSET:
+      sb.append(" DWORD [");
+      printOperand(sb, i, A);
+      sb.append(" + ").append(code[i * WIDTH + DISPLACEMENT]).append("], ");
+      printOperand(sb, i, B);
+      return;
+    default:
+      if (getKind(i, A) != OperandKind.NONE) {
+        sb.append(' ');
+        printOperand(sb, i, A);
+      }
+      if (getKind(i, B) != OperandKind.NONE) {
+        sb.append(", ");
+        printOperand(sb, i, B);
       }
     }
   }
 
-  private void printInstruction(PrintStream stream) {
-    stream.print(instruction);
-    if (comment != null) {
-      stream.format(" ; %s", comment);
+  private OperandKind getKind(int i, int operand) {
+    return OperandKind.VALUES[(code[i * WIDTH + OPCODE] >> (operand == A ? 16 : 20)) & 0xf];
+  }
+
+  private void printOperand(StringBuilder sb, int i, int operand) {
+    switch (getKind(i, operand)) {
+    case REGISTER:
+      sb.append(Register.NAMES[code[i * WIDTH + operand]]);
+      break;
+    case IMMEDIATE:
+      sb.append(code[i * WIDTH + operand]);
+      break;
+    case SYMBOL:
+      sb.append(symbols[i]);
+      break;
+    default:
     }
-    stream.println();
   }
 
   public static enum Register {
     AL, BL, CL, DL, AH, BH, CH, DH, AX, BX, CX, DX, SI, DI, SP, BP, IP, EAX, EBX, ECX, EDX, ESI, EDI, ESP, EBP, EIP;
+
+    static final Register[] VALUES = values();
+    private static final String[] NAMES = new String[values().length];
+    static {
+      for (Register register : values()) {
+        NAMES[register.ordinal()] = register.name().toLowerCase();
+      }
+    }
+
     @Override
     public String toString() {
-      return super.toString().toLowerCase();
+      return NAMES[ordinal()];
     }
   }
 
   public static enum Condition {
     E, G, GE, L, LE, NE;
+
+    static final Condition[] VALUES = values();
+    private static final String[] NAMES = new String[values().length];
+    static {
+      for (Condition condition : values()) {
+        NAMES[condition.ordinal()] = condition.name().toLowerCase();
+      }
+    }
+
     @Override
     public String toString() {
-      return super.toString().toLowerCase();
+      return NAMES[ordinal()];
+    }
+
+    /**
+     * @return the condition that holds when this one does not
+     */
+    public Condition negate() {
+      switch (this) {
+      case E:
+        return NE;
+      case NE:
+        return E;
+      case G:
+        return LE;
+      case LE:
+        return G;
+      case GE:
+        return L;
+      default:
+        return GE;
+      }
+    }
+
+    /**
+     * @return the condition that holds for b and a when this one holds for a and b
+     */
+    public Condition swap() {
+      switch (this) {
+      case G:
+        return L;
+      case GE:
+        return LE;
+      case L:
+        return G;
+      case LE:
+        return GE;
+      default:
+        return this;
+      }
     }
   }
 
-  // try to generate a valid unique label with the given suffix
-  public static String generateLabel(String suffix) {
-    UUID uuid = UUID.randomUUID();
-    String lsb = "" + Math.abs(uuid.getLeastSignificantBits());
-    String msb = "" + Math.abs(uuid.getMostSignificantBits());
-    return String.format("._%s_%s$%s", lsb, msb, suffix);
+  /**
+   * LOAD and STORE are moves from and to memory, and the _OFFSET ones add the displacement to the address. NOP marks an
+   * instruction removed by an optimization, and is never printed. The rest are the x86 instructions and NASM directives
+   * of the same name.
+   */
+  public static enum Opcode {
+    ADD, AND, CALL, CBW, CDQ, CMP, COMMENT, CWDE, DB, DB_CHARS("db"), DD, IDIV, IMUL, INT, J, JMP, LABEL, LEA, LEAVE,
+    LOAD("mov"), LOAD_OFFSET("mov"), MOV, NEG, NOP, OR, POP, PUSH, RET, SECTION, SET, SHL, STORE("mov"),
+    STORE_OFFSET("mov"), SUB, XOR;
+
+    private static final Opcode[] VALUES = values();
+
+    final String mnemonic;
+
+    private Opcode() {
+      this.mnemonic = name().toLowerCase();
+    }
+
+    private Opcode(String mnemonic) {
+      this.mnemonic = mnemonic;
+    }
+  }
+
+  private static enum OperandKind {
+    NONE, REGISTER, IMMEDIATE, SYMBOL;
+
+    private static final OperandKind[] VALUES = values();
   }
 
   public static String offset(Register r, int offset) {
@@ -129,128 +497,152 @@ public class AssemblyNode {
     }
   }
 
-  public static final AssemblyNode CBW = new AssemblyNode("  cbw");
-  public static final AssemblyNode CDQ = new AssemblyNode("  cdq");
-  public static final AssemblyNode CWDE = new AssemblyNode("  cwde");
+  // Shared by every compilation; adding them to a node copies them, so they are never changed
+  public static final AssemblyNode CBW = new AssemblyNode(Opcode.CBW, null, null, null, 0);
+  public static final AssemblyNode CDQ = new AssemblyNode(Opcode.CDQ, null, null, null, 0);
+  public static final AssemblyNode CWDE = new AssemblyNode(Opcode.CWDE, null, null, null, 0);
   public static final AssemblyNode DD = AssemblyNode.dd("0");
-  public static final AssemblyNode INT_EXIT = new AssemblyNode("  int 0x80");
-  public static final AssemblyNode LEAVE = new AssemblyNode("  leave");
-  public static final AssemblyNode RET = new AssemblyNode("  ret");
-  public static final AssemblyNode SECTION_DATA = new AssemblyNode("section .data");
-  public static final AssemblyNode SECTION_TEXT = new AssemblyNode("section .text");
-  public static final AssemblyNode TYPE_TABLE = new AssemblyNode("typeTable");
+  public static final AssemblyNode INT_EXIT = new AssemblyNode(Opcode.INT, null, "0x80", null, 0);
+  public static final AssemblyNode LEAVE = new AssemblyNode(Opcode.LEAVE, null, null, null, 0);
+  public static final AssemblyNode RET = new AssemblyNode(Opcode.RET, null, null, null, 0);
+  public static final AssemblyNode SECTION_DATA = new AssemblyNode(Opcode.SECTION, null, ".data", null, 0);
+  public static final AssemblyNode SECTION_TEXT = new AssemblyNode(Opcode.SECTION, null, ".text", null, 0);
 
   public static AssemblyNode add(Register register, Object from) {
-    return new AssemblyNode(String.format("  add %s, %s", register, from));
+    return new AssemblyNode(Opcode.ADD, null, register, from, 0);
   }
 
   public static AssemblyNode and(Register register, Object from) {
-    return new AssemblyNode(String.format("  and %s, %s", register, from));
+    return new AssemblyNode(Opcode.AND, null, register, from, 0);
   }
 
   public static AssemblyNode call(Object label) {
-    return new AssemblyNode(String.format("  call %s", label));
+    return new AssemblyNode(Opcode.CALL, null, label, null, 0);
   }
 
   public static AssemblyNode cmp(Register to, Object from) {
-    return new AssemblyNode(String.format("  cmp %s, %s", to, from));
+    return new AssemblyNode(Opcode.CMP, null, to, from, 0);
   }
 
   public static AssemblyNode comment(String comment) {
-    return new AssemblyNode(String.format("; %s", comment.replace('\n', ' ').replace('\r', ' ')));
+    return new AssemblyNode(Opcode.COMMENT, null, comment.replace('\n', ' ').replace('\r', ' '), null, 0);
   }
 
   // unless we think we need a db for something other than a string...
   public static AssemblyNode dbChar(String label) {
-    return new AssemblyNode(String.format("  db '%s'", label));
+    return new AssemblyNode(Opcode.DB_CHARS, null, label, null, 0);
   }
 
   public static AssemblyNode db(String value) {
-    return new AssemblyNode(String.format("  db %s", value));
+    return new AssemblyNode(Opcode.DB, null, value, null, 0);
   }
 
   public static AssemblyNode dd(String label) {
-    return new AssemblyNode(String.format("  dd %s", label));
+    return new AssemblyNode(Opcode.DD, null, label, null, 0);
   }
 
   public static AssemblyNode dd(int label) {
-    return new AssemblyNode(String.format("  dd %d", label));
+    return new AssemblyNode(Opcode.DD, null, label, null, 0);
   }
 
   public static AssemblyNode idiv(Register divisor) {
-    return new AssemblyNode(String.format("  idiv %s", divisor));
+    return new AssemblyNode(Opcode.IDIV, null, divisor, null, 0);
   }
 
   public static AssemblyNode imul(Register to, Object from) {
-    return new AssemblyNode(String.format("  imul %s, %s", to, from));
+    return new AssemblyNode(Opcode.IMUL, null, to, from, 0);
   }
 
   public static AssemblyNode j(Condition condition, String label) {
-    return new AssemblyNode(String.format("  j%s %s", condition, label));
+    return new AssemblyNode(Opcode.J, condition, label, null, 0);
   }
 
   public static AssemblyNode jmp(String label) {
-    return new AssemblyNode(String.format("  jmp %s", label));
+    return new AssemblyNode(Opcode.JMP, null, label, null, 0);
   }
 
   public static AssemblyNode label(String label) {
-    return new AssemblyNode(String.format("%s:", label), label);
+    AssemblyNode node = new AssemblyNode(Opcode.LABEL, null, label, null, 0);
+    node.provides(label);
+    return node;
   }
 
   public static AssemblyNode lea(Register to, Object from, int offset) {
-    return new AssemblyNode(String.format("  lea %s, [%s + %d]", to, from, offset));
+    return new AssemblyNode(Opcode.LEA, null, to, from, offset);
   }
 
   public static AssemblyNode mov(Register to, Object from) {
-    return new AssemblyNode(String.format("  mov %s, %s", to, from));
+    return new AssemblyNode(Opcode.MOV, null, to, from, 0);
   }
 
   public static AssemblyNode movToMem(Object to, Object from) {
-    return new AssemblyNode(String.format("  mov DWORD [%s], %s", to, from));
+    return new AssemblyNode(Opcode.STORE, null, to, from, 0);
   }
 
   public static AssemblyNode movToMem(Object to, Object from, int offset) {
-    return new AssemblyNode(String.format("  mov DWORD [%s + %d], %s", to, offset, from));
+    return new AssemblyNode(Opcode.STORE_OFFSET, null, to, from, offset);
   }
 
   public static AssemblyNode movFromMem(Register to, Object from) {
-    return new AssemblyNode(String.format("  mov %s, [%s]", to, from));
+    return new AssemblyNode(Opcode.LOAD, null, to, from, 0);
   }
 
   public static AssemblyNode movFromMem(Register to, Object from, int offset) {
-    return new AssemblyNode(String.format("  mov %s, [%s + %d]", to, from, offset));
+    return new AssemblyNode(Opcode.LOAD_OFFSET, null, to, from, offset);
   }
 
   public static AssemblyNode neg(Register register) {
-    return new AssemblyNode(String.format("  neg %s", register));
+    return new AssemblyNode(Opcode.NEG, null, register, null, 0);
   }
 
   public static AssemblyNode or(Register to, Object from) {
-    return new AssemblyNode(String.format("  or %s, %s", to, from));
+    return new AssemblyNode(Opcode.OR, null, to, from, 0);
   }
 
   public static AssemblyNode pop(Register register) {
-    return new AssemblyNode(String.format("  pop %s", register));
+    return new AssemblyNode(Opcode.POP, null, register, null, 0);
   }
 
   public static AssemblyNode push(Register register) {
-    return new AssemblyNode(String.format("  push %s", register));
+    return new AssemblyNode(Opcode.PUSH, null, register, null, 0);
+  }
+
+  /**
+   * @return a pop that drops the slot of a variable going out of scope
+   */
+  public static AssemblyNode popSlot(Register register) {
+    AssemblyNode node = pop(register);
+    node.code[OPCODE] |= SLOT;
+    return node;
+  }
+
+  /**
+   * @return a push that makes the slot of a variable, or of a register saved for one
+   */
+  public static AssemblyNode pushSlot(Register register) {
+    AssemblyNode node = push(register);
+    node.code[OPCODE] |= SLOT;
+    return node;
   }
 
   public static AssemblyNode push(String value) {
-    return new AssemblyNode(String.format("  push dword %s", value));
+    return new AssemblyNode(Opcode.PUSH, null, value, null, 0);
   }
 
   public static AssemblyNode set(Condition condition, Register register) {
-    return new AssemblyNode(String.format("  set%s %s", condition, register));
+    return new AssemblyNode(Opcode.SET, condition, register, null, 0);
+  }
+
+  public static AssemblyNode shl(Register register, int count) {
+    return new AssemblyNode(Opcode.SHL, null, register, count, 0);
   }
 
   public static AssemblyNode sub(Register register, Object from) {
-    return new AssemblyNode(String.format("  sub %s, %s", register, from));
+    return new AssemblyNode(Opcode.SUB, null, register, from, 0);
   }
 
   public static AssemblyNode xor(Register register, Object value) {
-    return new AssemblyNode(String.format("  xor %s, %s", register, value));
+    return new AssemblyNode(Opcode.XOR, null, register, value, 0);
   }
 
 }
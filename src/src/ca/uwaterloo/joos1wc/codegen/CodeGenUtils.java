@@ -4,8 +4,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.analysis.SymbolTable;
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.Expression;
@@ -14,6 +15,7 @@ import ca.uwaterloo.joos1wc.ast.PrimitiveType;
 import ca.uwaterloo.joos1wc.ast.TreeNode;
 import ca.uwaterloo.joos1wc.ast.Type.FormalType;
 import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.IVariableDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration.Signature;
@@ -50,7 +52,8 @@ public class CodeGenUtils {
    * The address of 'this' should already be on the top of the stack when callMethod is called, unless the method is
    * static.
    */
-  public static void callMethod(AssemblyNode asm, MethodDeclaration method, Collection<AssemblyNode> nodes) {
+  public static void callMethod(CompilationContext context, AssemblyNode asm, MethodDeclaration method,
+      Collection<AssemblyNode> nodes) {
     asm.addChild(AssemblyNode.comment("calling " + method.getGlobalName()));
 
     // Evaluate and push arguments on to stack
@@ -61,7 +64,7 @@ public class CodeGenUtils {
       args++;
     }
 
-    callMethod(asm, method, args);
+    callMethod(context, asm, method, args);
 
     // Expect return value to be in EAX - clear arguments off stack
     asm.addChild(AssemblyNode.add(Register.ESP, DWORD * nodes.size()), String.format("clear %d args", nodes.size()));
@@ -73,19 +76,39 @@ public class CodeGenUtils {
     asm.addChild(AssemblyNode.j(Condition.E, EXCEPTION));
   }
 
-  public static void callMethod(AssemblyNode asm, MethodDeclaration method, int numberOfArguments) {
+  public static void callMethod(CompilationContext context, AssemblyNode asm, MethodDeclaration method,
+      int numberOfArguments) {
+    callMethod(context, asm, method, numberOfArguments, true);
+  }
+
+  /**
+   * @param checkReceiver
+   *          Whether to check that the receiver of an instance method is not null, which can be left out when it is
+   *          known not to be.
+   */
+  public static void callMethod(CompilationContext context, AssemblyNode asm, MethodDeclaration method,
+      int numberOfArguments, boolean checkReceiver) {
     // Call method
     if (method.isStatic()) {
       String methodName = method.getGlobalName();
       asm.requires(methodName);
-      asm.addChild(AssemblyNode.call(methodName));
+      if (method.isNative() && (context.registerLocals || context.optimizeIR)) {
+        // the runtime does not save the registers variables are kept in
+        asm.addChild(AssemblyNode.push(Register.ECX));
+        asm.addChild(AssemblyNode.call(methodName));
+        asm.addChild(AssemblyNode.pop(Register.ECX));
+      } else {
+        asm.addChild(AssemblyNode.call(methodName));
+      }
     } else {
       TypeDeclaration type = method.getTypeDeclaration();
 
       int vtableOffset = CodeGenUtils.DWORD * numberOfArguments;
       // get the runtime vtable (same as this)
       asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.ESP, vtableOffset), "this");
-      addNullCheck(asm, Register.EAX);
+      if (checkReceiver) {
+        addNullCheck(asm, Register.EAX);
+      }
       // dereference
       asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EAX), "vtable");
 
@@ -101,7 +124,7 @@ public class CodeGenUtils {
         // it's an interface and we have to use the selector index table
         asm.addChild(AssemblyNode.comment(String.format("find method %s in interface %s", method.name, type.name)));
 
-        int methodOffset = InterfaceSelectorTable.getSelectorTable().getOffset(method.getSignature());
+        int methodOffset = context.selectorTable.getOffset(method.getSignature());
         int selectorOffset = VTable.getSelectorIndexOffset();
         // get the selector table
         asm.addChild(AssemblyNode.movFromMem(Register.EBX, Register.EAX, selectorOffset), "selector table");
@@ -134,7 +157,8 @@ public class CodeGenUtils {
    * -3           -2                          -1       0               1         ...
    * primitive?   VTable(Type)/primitiveIdx   length   VTable(array)   array[0]  ...
    */
-  public static void allocateArray(AssemblyNode asm, FormalType type, AssemblyNode sizeExpr) {
+  public static void allocateArray(CompilationContext context, AssemblyNode asm, FormalType type,
+      AssemblyNode sizeExpr) {
     asm.addChild(AssemblyNode.comment("ArrayCreation Start"));
 
     // Calculate and store array size for later
@@ -168,7 +192,7 @@ public class CodeGenUtils {
     asm.addChild(AssemblyNode.movToMem(Register.EAX, Register.EBX, -1 * DWORD), "-1: length");
 
     // 0: array vtable reference
-    String arrayVtableLabel = ArrayVTable.getVTable().getLabel();
+    String arrayVtableLabel = context.arrayVTable.getLabel();
     asm.requires(arrayVtableLabel);
     asm.addChild(AssemblyNode.movToMem(Register.EAX, arrayVtableLabel));
 
@@ -188,7 +212,7 @@ public class CodeGenUtils {
     return type.getDeclaredMethod(sig);
   }
 
-  public static AssemblyNode getConstantAssembly(Expression expr) {
+  public static AssemblyNode getConstantAssembly(CompilationContext context, Expression expr) {
     Literal literal;
     try {
       literal = expr.constantValue();
@@ -203,7 +227,7 @@ public class CodeGenUtils {
       if (literal instanceof StringLiteral) {
         AssemblyNode asm = new AssemblyNode();
         String value = ((StringLiteral) literal).valueOf();
-        addStringLiteral(asm, StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG), value);
+        addStringLiteral(context, asm, StringLiteral.getStringType(context.defaultPackage), value);
         return asm;
       }
       return literal.getAssembly();
@@ -211,22 +235,39 @@ public class CodeGenUtils {
     return null;
   }
 
-  public static void addStartBlock(List<TreeNode> sourceTrees) {
+  /**
+   * Adds the type hierarchy and interface method tables of every class. These depend on the whole program, so they are
+   * kept out of the code for each type, which then only depends on the types it uses.
+   */
+  public static void addTypeTables(CompilationContext context, AssemblyNode asm, List<TreeNode> sourceTrees) {
+    asm.addChild(AssemblyNode.SECTION_DATA);
+    for (TreeNode rootNode : sourceTrees) {
+      for (TypeDeclaration typeDecl : ((CompilationUnit) rootNode).typeDecls) {
+        if (typeDecl.isClass) {
+          typeDecl.getVTable().addTables(context, asm);
+        }
+      }
+    }
+    context.arrayVTable.addTables(context, asm);
+  }
+
+  public static void addStartBlock(AssemblyNode asm, List<TreeNode> sourceTrees) {
     CompilationUnit main = (CompilationUnit) sourceTrees.get(0);
     if (main.typeDecls.size() == 0) {
       return;
     }
 
     TypeDeclaration mainType = main.typeDecls.get(0);
-    mainType.asm.addChild(AssemblyNode.label("_start"));
+    asm.addChild(AssemblyNode.SECTION_TEXT);
+    asm.addChild(AssemblyNode.label("_start"));
 
     // Call all static initialization methods
     for (TreeNode rootNode : sourceTrees) {
       for (TypeDeclaration typeDecl : ((CompilationUnit) rootNode).typeDecls) {
         if (typeDecl.isClass) {
           String label = classInitLabel(typeDecl);
-          mainType.asm.requires(label);
-          mainType.asm.addChild(AssemblyNode.call(label));
+          asm.requires(label);
+          asm.addChild(AssemblyNode.call(label));
         }
       }
     }
@@ -237,21 +278,25 @@ public class CodeGenUtils {
     if (mainMethod == null) {
       return;
     }
-    mainType.asm.addChild(AssemblyNode.call(mainMethod.getGlobalName()));
+    asm.requires(mainMethod.getGlobalName());
+    asm.addChild(AssemblyNode.call(mainMethod.getGlobalName()));
 
     // Exit
-    mainType.asm.addChild(AssemblyNode.mov(Register.EBX, Register.EAX));
-    mainType.asm.addChild(AssemblyNode.mov(Register.EAX, "1"));
-    mainType.asm.addChild(AssemblyNode.INT_EXIT);
+    asm.addChild(AssemblyNode.mov(Register.EBX, Register.EAX));
+    asm.addChild(AssemblyNode.mov(Register.EAX, "1"));
+    asm.addChild(AssemblyNode.INT_EXIT);
   }
 
-  public static int popStack(AssemblyNode parent, SymbolTable from, SymbolTable to) {
+  public static int popStack(AssemblyNode parent, SymbolTable from, SymbolTable to,
+      Map<IVariableDeclaration, Register> registers) {
     int popped = 0;
     for (SymbolTable.Entry entry : from) {
       if (entry == to.head()) {
         break;
       }
-      parent.addChild(AssemblyNode.pop(Register.EBX), "clear " + entry.key);
+      // a variable kept in a register saved the register in its slot
+      Register register = registers.get(entry.decl);
+      parent.addChild(AssemblyNode.popSlot(register != null ? register : Register.EBX), "clear " + entry.key);
       popped++;
     }
     return popped;
@@ -264,12 +309,13 @@ public class CodeGenUtils {
   /**
    * The LHS qualifier should be in $eax when this is called
    */
-  public static void addFieldAccess(AssemblyNode asm, FieldDeclaration fieldDecl, boolean addressExpected) {
+  public static void addFieldAccess(CompilationContext context, AssemblyNode asm, FieldDeclaration fieldDecl,
+      boolean addressExpected) {
     if (fieldDecl == FieldDeclaration.LENGTH_FIELD || !fieldDecl.isStatic()) {
       // Instance field access
       int offset;
       if (fieldDecl == FieldDeclaration.LENGTH_FIELD) {
-        offset = ArrayVTable.getVTable().getOffset(fieldDecl.name);
+        offset = context.arrayVTable.getOffset(fieldDecl.name);
       } else {
         TypeDeclaration type = fieldDecl.getTypeDeclaration();
         offset = type.getVTable().getOffset(fieldDecl.name);
@@ -292,7 +338,8 @@ public class CodeGenUtils {
     }
   }
 
-  public static void addStringLiteral(AssemblyNode asm, TypeDeclaration CLASS_STRING, String value) {
+  public static void addStringLiteral(CompilationContext context, AssemblyNode asm, TypeDeclaration CLASS_STRING,
+      String value) {
     char[] chars = value.toCharArray();
     int size = chars.length;
 
@@ -306,7 +353,7 @@ public class CodeGenUtils {
     // we need to set the length of the char array
     AssemblyNode sizeOf = AssemblyNode.mov(Register.EAX, size);
     // allocate an array for the type
-    allocateArray(asm, PrimitiveType.Code.CHAR.formalType, sizeOf);
+    allocateArray(context, asm, PrimitiveType.Code.CHAR.formalType, sizeOf);
 
     // set offset
     int offset = 1;
@@ -343,7 +390,7 @@ public class CodeGenUtils {
     MethodDeclaration constructor = CodeGenUtils.getStringConstructor(CLASS_STRING);
 
     // call the constructor (we have already set up the args
-    callMethod(asm, constructor, 1);
+    callMethod(context, asm, constructor, 1);
 
     // clear char[] arg off the stack
     asm.addChild(AssemblyNode.pop(Register.EBX));
@@ -355,7 +402,8 @@ public class CodeGenUtils {
   /*
    * Expects expr value to be in $eax
    */
-  private static void safeToString(AssemblyNode asm, Expression expr) {
+  private static void safeToString(CompilationContext context, LabelGenerator labels, AssemblyNode asm,
+      Expression expr) {
     Literal literal = null;
     try {
       literal = expr.constantValue();
@@ -366,23 +414,24 @@ public class CodeGenUtils {
       throw new RuntimeException(ce);
     }
     if (literal != null && literal instanceof NullLiteral) {
-      addStringLiteral(asm, StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG), "null");
+      addStringLiteral(context, asm, StringLiteral.getStringType(context.defaultPackage), "null");
     } else if (expr.expressionType.isReference()) {
-      String toStringLabel = AssemblyNode.generateLabel("ToString");
-      String endToStringLabel = AssemblyNode.generateLabel("EndToString");
+      String toStringLabel = labels.generate("ToString");
+      String endToStringLabel = labels.generate("EndToString");
       asm.addChild(AssemblyNode.cmp(Register.EAX, 0));
       asm.addChild(AssemblyNode.j(Condition.NE, toStringLabel), "not null");
-      addStringLiteral(asm, StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG), "null");
+      addStringLiteral(context, asm, StringLiteral.getStringType(context.defaultPackage), "null");
       asm.addChild(AssemblyNode.jmp(endToStringLabel), "null");
       asm.addChild(AssemblyNode.label(toStringLabel));
-      callToString(asm, StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG), expr);
+      callToString(asm, StringLiteral.getStringType(context.defaultPackage), expr);
       asm.addChild(AssemblyNode.label(endToStringLabel));
     } else {
-      callToString(asm, StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG), expr);
+      callToString(asm, StringLiteral.getStringType(context.defaultPackage), expr);
     }
   }
 
-  public static void performStringConcat(AssemblyNode node, TypeDeclaration CLASS_STRING, Expression lhs, Expression rhs) {
+  public static void performStringConcat(CompilationContext context, LabelGenerator labels, AssemblyNode node,
+      TypeDeclaration CLASS_STRING, Expression lhs, Expression rhs) {
     List<FormalType> args = Arrays.asList(new FormalType[] { CLASS_STRING.formalType });
     MethodDeclaration concat = CLASS_STRING.getDeclaredMethod(new Signature(false, "concat", args));
 
@@ -391,7 +440,7 @@ public class CodeGenUtils {
 
     // get value of lhs (push rhs first)
     node.addChild(AssemblyNode.push(Register.EBX), "rhs");
-    safeToString(node, lhs);
+    safeToString(context, labels, node, lhs);
 
     // pop rhs back off
     node.addChild(AssemblyNode.pop(Register.EBX));
@@ -400,7 +449,7 @@ public class CodeGenUtils {
 
     // then put rhs into EAX and get the value again
     node.addChild(AssemblyNode.mov(Register.EAX, Register.EBX), "rhs");
-    safeToString(node, rhs);
+    safeToString(context, labels, node, rhs);
 
     // rhs goes in eax and lhs goes in ebx
     node.addChild(AssemblyNode.pop(Register.EBX));
@@ -462,33 +511,34 @@ public class CodeGenUtils {
 
   /**
    * Assumes that LHS is in $ebx and non-null. Places result in $al. Assumes $eax has been set to 0. Clobbers $ebx and
-   * $ecx.
+   * $edx.
    */
-  public static void addInstanceofCheck(AssemblyNode asm, FormalType rhsType, String endLabel) {
+  public static void addInstanceofCheck(CompilationContext context, AssemblyNode asm, FormalType rhsType,
+      String endLabel) {
     if (!rhsType.isArray) {
       asm.addChild(AssemblyNode.movFromMem(Register.EBX, Register.EBX), "dereference vtable");
-      checkHierarchyTable(asm, rhsType.decl, Register.EBX, Register.AL);
+      checkHierarchyTable(context, asm, rhsType.decl, Register.EBX, Register.AL);
     } else {
       // Is LHS actually an array?
-      String arrayVtableLabel = ArrayVTable.getVTable().getLabel();
+      String arrayVtableLabel = context.arrayVTable.getLabel();
       asm.requires(arrayVtableLabel);
-      asm.addChild(AssemblyNode.movFromMem(Register.ECX, Register.EBX), "dereference array vtable");
-      asm.addChild(AssemblyNode.cmp(Register.ECX, arrayVtableLabel));
+      asm.addChild(AssemblyNode.movFromMem(Register.EDX, Register.EBX), "dereference array vtable");
+      asm.addChild(AssemblyNode.cmp(Register.EDX, arrayVtableLabel));
       asm.addChild(AssemblyNode.j(Condition.NE, endLabel), "LHS not array");
       // Check component type
-      asm.addChild(AssemblyNode.movFromMem(Register.ECX, Register.EBX, -3 * CodeGenUtils.DWORD));
-      asm.addChild(AssemblyNode.cmp(Register.ECX, rhsType.code == null ? 0 : 1),
+      asm.addChild(AssemblyNode.movFromMem(Register.EDX, Register.EBX, -3 * CodeGenUtils.DWORD));
+      asm.addChild(AssemblyNode.cmp(Register.EDX, rhsType.code == null ? 0 : 1),
           "component type primitive/non-primitive");
       asm.addChild(AssemblyNode.j(Condition.NE, endLabel), "primitive/non-primitive mismatch");
-      asm.addChild(AssemblyNode.movFromMem(Register.ECX, Register.EBX, -2 * CodeGenUtils.DWORD));
+      asm.addChild(AssemblyNode.movFromMem(Register.EDX, Register.EBX, -2 * CodeGenUtils.DWORD));
       if (rhsType.code != null) {
         // Primitive: check primitive index
-        asm.addChild(AssemblyNode.cmp(Register.ECX, rhsType.code.ordinal()));
+        asm.addChild(AssemblyNode.cmp(Register.EDX, rhsType.code.ordinal()));
         asm.addChild(AssemblyNode.set(Condition.E, Register.AL));
       } else {
         // Reference: check vtable entry
-        // Component type vtable address is in $ecx
-        checkHierarchyTable(asm, rhsType.decl, Register.ECX, Register.AL);
+        // Component type vtable address is in $edx
+        checkHierarchyTable(context, asm, rhsType.decl, Register.EDX, Register.AL);
       }
     }
   }
@@ -496,11 +546,11 @@ public class CodeGenUtils {
   /**
    * Clobbers $ebx. Assumes vtable is at address stored at $vtableReg.
    */
-  private static void checkHierarchyTable(AssemblyNode asm, TypeDeclaration typeDecl, Register vtableReg,
-      Register resultReg) {
+  private static void checkHierarchyTable(CompilationContext context, AssemblyNode asm, TypeDeclaration typeDecl,
+      Register vtableReg, Register resultReg) {
     asm.addChild(AssemblyNode.movFromMem(Register.EBX, vtableReg, VTable.HIERARCHY_TABLE_OFFSET),
         "dereference hierarchy table");
-    asm.addChild(AssemblyNode.movFromMem(resultReg, Register.EBX, Joos1Wc.TYPE_HIERARCHY_TABLE.getIndex(typeDecl)));
+    asm.addChild(AssemblyNode.movFromMem(resultReg, Register.EBX, context.typeHierarchyTable.getIndex(typeDecl)));
   }
 
 }
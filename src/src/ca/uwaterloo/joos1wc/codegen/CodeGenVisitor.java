@@ -1,12 +1,18 @@
 package ca.uwaterloo.joos1wc.codegen;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
+import ca.uwaterloo.joos1wc.analysis.SymbolTable;
 import ca.uwaterloo.joos1wc.ast.ArrayType;
 import ca.uwaterloo.joos1wc.ast.Block;
+import ca.uwaterloo.joos1wc.ast.Expression;
+import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
 import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
 import ca.uwaterloo.joos1wc.ast.Literal;
 import ca.uwaterloo.joos1wc.ast.PrimitiveType;
@@ -45,27 +51,31 @@ import ca.uwaterloo.joos1wc.ast.statement.VariableDeclarationStatement;
 import ca.uwaterloo.joos1wc.ast.statement.WhileStatement;
 import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
 import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+import ca.uwaterloo.joos1wc.ir.ControlFlowGraph;
+import ca.uwaterloo.joos1wc.ir.IRBuilder;
+import ca.uwaterloo.joos1wc.ir.IROptimizer;
 
 public class CodeGenVisitor extends RecursiveVisitor {
 
   public static final int DEFAULT_THIS_OFFSET = -2;
 
-  final TypeDeclaration CLASS_STRING = StringLiteral.getStringType(Joos1Wc.DEFAULT_PKG);
+  private final CompilationContext context;
+  final TypeDeclaration CLASS_STRING;
+
+  // the labels of the type being generated
+  private LabelGenerator labels;
 
   // we need a sane default so that field initializers know where to look
   int thisOffset = DEFAULT_THIS_OFFSET;
   int stackSize = 0;
+  // the variables of the current method kept in registers, and the parameters among them, whose registers are saved in
+  // the first stack slots
+  private Map<IVariableDeclaration, Register> registers = Collections.emptyMap();
+  private List<VariableDeclaration> savedParams = Collections.emptyList();
 
-  @Override
-  public void visit(TypeDeclaration node) {
-    // Run code gen on parent class first
-    if (node.asm != null) {
-      return;
-    }
-    if (node.superclass != null) {
-      ((TypeDeclaration) node.superclass.name.declNode).accept(new CodeGenVisitor());
-    }
-    super.visit(node);
+  public CodeGenVisitor(CompilationContext context) {
+    this.context = context;
+    this.CLASS_STRING = StringLiteral.getStringType(context.defaultPackage);
   }
 
   /**
@@ -91,7 +101,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     // address of the array goes on the stack
     node.asm.addChild(AssemblyNode.push(Register.EAX));
     // get the array length for comparison
-    int lengthOffset = ArrayVTable.getVTable().getOffset(FieldDeclaration.ARRAY_LENGTH);
+    int lengthOffset = context.arrayVTable.getOffset(FieldDeclaration.ARRAY_LENGTH);
     node.asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EAX, lengthOffset), node.array.token.getImage()
         + ".length");
     // push it onto the stack
@@ -123,7 +133,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
   public void postVisit(ArrayCreation node) {
     node.asm = new AssemblyNode();
 
-    CodeGenUtils.allocateArray(node.asm, node.type.type.getFormalType(), node.dimExpr.asm);
+    CodeGenUtils.allocateArray(context, node.asm, node.type.type.getFormalType(), node.dimExpr.asm);
   }
 
   @Override
@@ -135,6 +145,12 @@ public class CodeGenVisitor extends RecursiveVisitor {
   @Override
   public void postVisit(Assignment node) {
     node.asm = new AssemblyNode();
+    Register register = getRegister(node.lhs);
+    if (register != null) {
+      node.asm.addChild(node.rhs.asm);
+      node.asm.addChild(AssemblyNode.mov(register, Register.EAX), node.token.getImage());
+      return;
+    }
     node.asm.addChild(node.lhs.asm);
     // eax should be the address where we want to store things
     node.asm.addChild(AssemblyNode.push(Register.EAX));
@@ -157,14 +173,14 @@ public class CodeGenVisitor extends RecursiveVisitor {
     // Pop block declared variables off the stack
     if (node.statements.size() > 0) {
       stackSize -= CodeGenUtils.popStack(node.asm, node.statements.get(node.statements.size() - 1).symbols,
-          node.symbols);
+          node.symbols, registers);
     }
   }
 
   @Override
   public void postVisit(CastExpression node) {
     // like a few others, this might be a constant expression
-    AssemblyNode constant = CodeGenUtils.getConstantAssembly(node);
+    AssemblyNode constant = CodeGenUtils.getConstantAssembly(context, node);
     if (constant != null) {
       node.asm = constant;
     } else {
@@ -224,7 +240,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
         // Prepare call to CodeGenUtils helper
         node.asm.addChild(AssemblyNode.mov(Register.EBX, Register.EAX));
         node.asm.addChild(AssemblyNode.mov(Register.EAX, 0));
-        String endLabel = AssemblyNode.generateLabel("CastCheck");
+        String endLabel = labels.generate("CastCheck");
 
         // Null? (automatically succeeds)
         node.asm.addChild(AssemblyNode.cmp(Register.EBX, 0));
@@ -232,7 +248,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
         node.asm.addChild(AssemblyNode.j(Condition.E, endLabel), "LHS is null");
 
         // Call CodeGenUtils helper
-        CodeGenUtils.addInstanceofCheck(node.asm, castType, endLabel);
+        CodeGenUtils.addInstanceofCheck(context, node.asm, castType, endLabel);
         node.asm.addChild(AssemblyNode.label(endLabel), node.token.getImage());
 
         // Check result and either throw exception or recover object reference on successful cast
@@ -257,7 +273,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
 
     // call the constructor
     Collection<AssemblyNode> nodeargs = CodeGenUtils.getExpressionNodes(node.args);
-    CodeGenUtils.callMethod(node.asm, node.constructor, nodeargs);
+    CodeGenUtils.callMethod(context, node.asm, node.constructor, nodeargs);
 
     // finally pop the address of the instance
     node.asm.addChild(AssemblyNode.pop(Register.EAX));
@@ -278,7 +294,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm = new AssemblyNode();
     node.asm.addChild(node.expr.asm);
 
-    CodeGenUtils.addFieldAccess(node.asm, node.declNode, node.addressExpected);
+    CodeGenUtils.addFieldAccess(context, node.asm, node.declNode, node.addressExpected);
   }
 
   @Override
@@ -292,8 +308,8 @@ public class CodeGenVisitor extends RecursiveVisitor {
   @Override
   public void postVisit(ForStatement node) {
     node.asm = new AssemblyNode();
-    String startLabel = AssemblyNode.generateLabel("For");
-    String endLabel = AssemblyNode.generateLabel("EndFor");
+    String startLabel = labels.generate("For");
+    String endLabel = labels.generate("EndFor");
 
     if (node.forInit != null) {
       node.asm.addChild(node.forInit.asm);
@@ -316,15 +332,15 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm.addChild(AssemblyNode.label(endLabel));
 
     // Pop declared variables off the stack
-    stackSize -= CodeGenUtils.popStack(node.asm, node.statement.symbols, node.symbols);
+    stackSize -= CodeGenUtils.popStack(node.asm, node.statement.symbols, node.symbols, registers);
   }
 
   @Override
   public void postVisit(IfThenStatement node) {
     node.asm = new AssemblyNode();
 
-    String falseLabel = AssemblyNode.generateLabel("Else");
-    String endLabel = AssemblyNode.generateLabel("EndIf");
+    String falseLabel = labels.generate("Else");
+    String endLabel = labels.generate("EndIf");
 
     // condition expression
     node.asm.addChild(node.expr.asm);
@@ -352,12 +368,12 @@ public class CodeGenVisitor extends RecursiveVisitor {
   @Override
   public void postVisit(InfixExpression node) {
     // might be a constant expression, so check for that first
-    AssemblyNode constant = CodeGenUtils.getConstantAssembly(node);
+    AssemblyNode constant = CodeGenUtils.getConstantAssembly(context, node);
 
     if (constant != null) {
       node.asm = constant;
     } else {
-      String endLabel = AssemblyNode.generateLabel("LOG");
+      String endLabel = labels.generate("LOG");
       node.asm = new AssemblyNode();
       node.asm.addChild(node.lhs.asm);
       // Short-circuit && and ||
@@ -399,7 +415,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
         break;
       case PLUS:
         if (node.expressionType == CLASS_STRING.formalType) {
-          CodeGenUtils.performStringConcat(node.asm, CLASS_STRING, node.lhs, node.rhs);
+          CodeGenUtils.performStringConcat(context, labels, node.asm, CLASS_STRING, node.lhs, node.rhs);
         } else {
           node.asm.addChild(AssemblyNode.add(Register.EAX, Register.EBX));
         }
@@ -463,13 +479,13 @@ public class CodeGenVisitor extends RecursiveVisitor {
     // Prepare call to CodeGenUtils helper
     node.asm.addChild(AssemblyNode.mov(Register.EBX, Register.EAX));
     node.asm.addChild(AssemblyNode.mov(Register.EAX, 0));
-    String endLabel = AssemblyNode.generateLabel("EndInstanceof");
+    String endLabel = labels.generate("EndInstanceof");
 
     // Null?
     node.asm.addChild(AssemblyNode.cmp(Register.EBX, 0));
     node.asm.addChild(AssemblyNode.j(Condition.E, endLabel), "LHS is null");
 
-    CodeGenUtils.addInstanceofCheck(node.asm, rhsType, endLabel);
+    CodeGenUtils.addInstanceofCheck(context, node.asm, rhsType, endLabel);
     node.asm.addChild(AssemblyNode.label(endLabel), node.token.getImage());
   }
 
@@ -491,45 +507,62 @@ public class CodeGenVisitor extends RecursiveVisitor {
       it.previous().setStackOffset(offset--);
     }
     thisOffset = offset;
+
+    registers = context.registerLocals ? RegisterAllocator.allocate(node)
+        : Collections.<IVariableDeclaration, Register> emptyMap();
+    savedParams = new ArrayList<VariableDeclaration>();
+    for (VariableDeclaration param : node.formalParams) {
+      if (registers.containsKey(param)) {
+        savedParams.add(param);
+        stackSize++;
+      }
+    }
   }
 
   @Override
   public void postVisit(MethodDeclaration node) {
     node.asm = new AssemblyNode();
     String name = node.getGlobalName();
+    ControlFlowGraph graph = null;
+    if (context.optimizeIR) {
+      graph = IRBuilder.build(node);
+      if (graph != null) {
+        IROptimizer optimizer = new IROptimizer();
+        optimizer.optimize(graph);
+        context.addIRCounts(optimizer);
+      }
+    }
+
     if (!node.isNative()) {
       node.asm.addChild(AssemblyNode.label(name));
 
+      if (graph != null) {
+        // the graph returns at the end of every path
+        node.asm.addChild(AssemblyNode.push(Register.EBP));
+        node.asm.addChild(AssemblyNode.mov(Register.EBP, Register.ESP));
+        if (node.isConstructor) {
+          addConstructorPreamble(node);
+        }
+        node.asm.addChild(new IRCodeGenerator(context, labels, CLASS_STRING, graph, thisOffset).generate());
+        node.asm.addChild(AssemblyNode.comment("END method " + name));
+        thisOffset = DEFAULT_THIS_OFFSET;
+        return;
+      }
+
       if (node.body != null) {
         // Registers? What registers?
         node.asm.addChild(AssemblyNode.push(Register.EBP));
         node.asm.addChild(AssemblyNode.mov(Register.EBP, Register.ESP));
+        for (VariableDeclaration param : savedParams) {
+          Register register = registers.get(param);
+          node.asm.addChild(AssemblyNode.pushSlot(register), "save " + register.toString().toLowerCase());
+          node.asm.addChild(
+              AssemblyNode.movFromMem(register, Register.EBP, -(CodeGenUtils.DWORD) * param.getStackOffset()),
+              param.token.getImage());
+        }
 
         if (node.isConstructor) {
-          // type declaration of the class we're instantiating
-          TypeDeclaration type = node.getTypeDeclaration();
-
-          // get this and push it onto the stack again
-          AssemblyNode asm = AssemblyNode.movFromMem(Register.EAX, Register.EBP, -(CodeGenUtils.DWORD) * thisOffset);
-          node.asm.addChild(asm, "this");
-          node.asm.addChild(AssemblyNode.push(Register.EAX));
-
-          // if there's a parent class, call its zero-arg constructor
-          if (type.superclass != null) {
-            MethodDeclaration superConstructor = CodeGenUtils.getZeroArgConstructor(type.getSuperclassDecl());
-
-            // call the constructor
-            CodeGenUtils.callMethod(node.asm, superConstructor, 0);
-          }
-
-          // VTable of the class
-          VTable vtable = type.getVTable();
-          // call the initialization procedure for the fields
-          node.asm.requires(vtable.getInitializerLabel());
-          node.asm.addChild(AssemblyNode.call(vtable.getInitializerLabel()));
-
-          // pop this
-          node.asm.addChild(AssemblyNode.pop(Register.EAX));
+          addConstructorPreamble(node);
         }
 
         node.asm.addChild(node.body.asm);
@@ -539,6 +572,8 @@ public class CodeGenVisitor extends RecursiveVisitor {
     }
     // if this is void type or a constructor, add an implicit return
     if (node.type == null) {
+      // the locals were popped at the end of the body
+      restoreRegisters(node.asm, null);
       node.asm.addChild(AssemblyNode.LEAVE);
       node.asm.addChild(AssemblyNode.RET);
     }
@@ -546,6 +581,37 @@ public class CodeGenVisitor extends RecursiveVisitor {
     thisOffset = DEFAULT_THIS_OFFSET;
   }
 
+  /**
+   * Calls the zero argument constructor of the superclass and the initializers of the fields, before the body of a
+   * constructor.
+   */
+  private void addConstructorPreamble(MethodDeclaration node) {
+    // type declaration of the class we're instantiating
+    TypeDeclaration type = node.getTypeDeclaration();
+
+    // get this and push it onto the stack again
+    AssemblyNode asm = AssemblyNode.movFromMem(Register.EAX, Register.EBP, -(CodeGenUtils.DWORD) * thisOffset);
+    node.asm.addChild(asm, "this");
+    node.asm.addChild(AssemblyNode.push(Register.EAX));
+
+    // if there's a parent class, call its zero-arg constructor
+    if (type.superclass != null) {
+      MethodDeclaration superConstructor = CodeGenUtils.getZeroArgConstructor(type.getSuperclassDecl());
+
+      // call the constructor
+      CodeGenUtils.callMethod(context, node.asm, superConstructor, 0);
+    }
+
+    // VTable of the class
+    VTable vtable = type.getVTable();
+    // call the initialization procedure for the fields
+    node.asm.requires(vtable.getInitializerLabel());
+    node.asm.addChild(AssemblyNode.call(vtable.getInitializerLabel()));
+
+    // pop this
+    node.asm.addChild(AssemblyNode.pop(Register.EAX));
+  }
+
   @Override
   public void postVisit(MethodInvocation node) {
     node.asm = new AssemblyNode();
@@ -567,7 +633,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     }
 
     Collection<AssemblyNode> nodeargs = CodeGenUtils.getExpressionNodes(node.args);
-    CodeGenUtils.callMethod(node.asm, method, nodeargs);
+    CodeGenUtils.callMethod(context, node.asm, method, nodeargs);
 
     if (!method.isStatic()) {
       // pop this
@@ -583,7 +649,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     }
 
     FieldDeclaration decl = (FieldDeclaration) node.declNode;
-    CodeGenUtils.addFieldAccess(node.asm, decl, node.addressExpected);
+    CodeGenUtils.addFieldAccess(context, node.asm, decl, node.addressExpected);
   }
 
   @Override
@@ -595,7 +661,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
   public void postVisit(PrefixExpression node) {
     // optimize a little bit and see if this is a const expression
     // note that this also saves us from figuring out when to negate literals
-    AssemblyNode constant = CodeGenUtils.getConstantAssembly(node);
+    AssemblyNode constant = CodeGenUtils.getConstantAssembly(context, node);
 
     if (constant != null) {
       node.asm = constant;
@@ -623,6 +689,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     if (node.expr != null) {
       node.asm.addChild(node.expr.asm);
     }
+    restoreRegisters(node.asm, node.symbols);
     node.asm.addChild(AssemblyNode.LEAVE);
     node.asm.addChild(AssemblyNode.RET);
   }
@@ -637,7 +704,13 @@ public class CodeGenVisitor extends RecursiveVisitor {
     switch (node.declNode.getEntityType()) {
     case VARIABLE: {
       IVariableDeclaration decl = (IVariableDeclaration) node.declNode;
-      if (node.addressExpected) {
+      Register register = registers.get(decl);
+      if (register != null) {
+        // an assignment to the variable stores to the register itself
+        if (!node.addressExpected) {
+          node.asm.addChild(AssemblyNode.mov(Register.EAX, register), node.token.getImage());
+        }
+      } else if (node.addressExpected) {
         node.asm.addChild(AssemblyNode.lea(Register.EAX, Register.EBP, -(CodeGenUtils.DWORD) * decl.getStackOffset()),
             "&" + node.token.getImage());
       } else {
@@ -653,7 +726,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
         node.asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, -(CodeGenUtils.DWORD) * thisOffset),
             "this");
       }
-      CodeGenUtils.addFieldAccess(node.asm, decl, node.addressExpected);
+      CodeGenUtils.addFieldAccess(context, node.asm, decl, node.addressExpected);
       return;
     }
     default:
@@ -672,7 +745,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm = new AssemblyNode();
     String value = node.valueOf();
 
-    CodeGenUtils.addStringLiteral(node.asm, CLASS_STRING, value);
+    CodeGenUtils.addStringLiteral(context, node.asm, CLASS_STRING, value);
   }
 
   @Override
@@ -681,6 +754,11 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm.setComment("This Expression");
   }
 
+  @Override
+  public void preVisit(TypeDeclaration node) {
+    labels = new LabelGenerator(node.getCanonicalName());
+  }
+
   @Override
   public void postVisit(TypeDeclaration node) {
     node.asm = new AssemblyNode();
@@ -692,8 +770,8 @@ public class CodeGenVisitor extends RecursiveVisitor {
     // construct vtable (note that this outputs the class label)
     node.getVTable().addVTable(node.asm);
     // add the array vtable to the object file
-    if (node == TypeDeclaration.getObjectType()) {
-      ArrayVTable.getVTable().addVTable(node.asm);
+    if (node == Literal.getObjectType(context.defaultPackage)) {
+      context.arrayVTable.addVTable(node.asm);
     }
 
     // Declare static fields, methods
@@ -756,7 +834,7 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm = new AssemblyNode();
     assert node.initExpr != null;
     node.asm.addChild(node.initExpr.asm);
-    node.asm.addChild(AssemblyNode.push(Register.EAX), "var " + node.token.getImage());
+    addVariable(node.asm, node, node.token.getImage());
   }
 
   @Override
@@ -766,14 +844,62 @@ public class CodeGenVisitor extends RecursiveVisitor {
     node.asm = new AssemblyNode();
     assert node.initExpr != null;
     node.asm.addChild(node.initExpr.asm);
-    node.asm.addChild(AssemblyNode.push(Register.EAX), "var " + node.token.getImage());
+    addVariable(node.asm, node, node.token.getImage());
+  }
+
+  /**
+   * Pushes the value of a new variable, or if it is kept in a register, saves the register in its slot and moves the
+   * value there.
+   */
+  private void addVariable(AssemblyNode asm, IVariableDeclaration decl, String name) {
+    Register register = registers.get(decl);
+    if (register != null) {
+      asm.addChild(AssemblyNode.pushSlot(register), "save " + register.toString().toLowerCase());
+      asm.addChild(AssemblyNode.mov(register, Register.EAX), "var " + name);
+    } else {
+      asm.addChild(AssemblyNode.pushSlot(Register.EAX), "var " + name);
+    }
+  }
+
+  /**
+   * Restores the registers of the variables in scope, and of the parameters, from the slots they were saved in, before
+   * returning.
+   */
+  private void restoreRegisters(AssemblyNode asm, SymbolTable symbols) {
+    if (symbols != null) {
+      for (SymbolTable.Entry entry : symbols) {
+        Register register = registers.get(entry.decl);
+        // the parameters are restored below, from their own slots
+        if (register != null && !(entry.decl instanceof VariableDeclaration)) {
+          IVariableDeclaration decl = (IVariableDeclaration) entry.decl;
+          asm.addChild(AssemblyNode.movFromMem(register, Register.EBP, -(CodeGenUtils.DWORD) * decl.getStackOffset()),
+              "restore " + register.toString().toLowerCase());
+        }
+      }
+    }
+    for (int slot = 0; slot < savedParams.size(); slot++) {
+      Register register = registers.get(savedParams.get(slot));
+      asm.addChild(AssemblyNode.movFromMem(register, Register.EBP, -(CodeGenUtils.DWORD) * (slot + 1)),
+          "restore " + register.toString().toLowerCase());
+    }
+  }
+
+  /**
+   * @return the register a variable is kept in, if the expression names one
+   */
+  private Register getRegister(Expression expr) {
+    if (!(expr instanceof SimpleName)) {
+      return null;
+    }
+    INamedEntityNode decl = ((SimpleName) expr).declNode;
+    return decl != null && decl.getEntityType() == EntityType.VARIABLE ? registers.get(decl) : null;
   }
 
   @Override
   public void postVisit(WhileStatement node) {
     node.asm = new AssemblyNode();
-    String startLabel = AssemblyNode.generateLabel("While");
-    String endLabel = AssemblyNode.generateLabel("EndWhile");
+    String startLabel = labels.generate("While");
+    String endLabel = labels.generate("EndWhile");
 
     // start label
     node.asm.addChild(AssemblyNode.label(startLabel));
@@ -0,0 +1,873 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwaterloo.joos1wc.CompilationContext;
+import ca.uwaterloo.joos1wc.ast.Type.FormalType;
+import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.VariableDeclaration;
+import ca.uwaterloo.joos1wc.ast.expression.ClassInstanceCreation;
+import ca.uwaterloo.joos1wc.ast.expression.InfixExpression;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+import ca.uwaterloo.joos1wc.ir.BasicBlock;
+import ca.uwaterloo.joos1wc.ir.ControlFlowGraph;
+import ca.uwaterloo.joos1wc.ir.Instruction;
+import ca.uwaterloo.joos1wc.ir.Instruction.Opcode;
+
+/**
+ * Generates the code for the body of a method from its optimized graph, in place of the code generated from its tree.
+ * Every value the code uses gets a location of its own, which is one of the registers the tree generator keeps
+ * variables in or a stack slot below the saved registers. A value is live from the first to the last point in the
+ * blocks, in order, where it is defined, used or live across a block boundary, so a value used in a loop stays live
+ * over its back edge. The intervals are handed out registers in one linear scan in the order they start, and when none
+ * is free the value that is used least goes to the stack. A use counts ten times over for each loop it is in. Constants
+ * have no location and are used as immediates.
+ *
+ * The operands of the phis of a block are moved to the locations of the phis at the end of each predecessor. The edges
+ * from a block with two successors to a block with phis are split first, so that the moves only run on their edge.
+ * eax, ebx and edx are scratch registers, as they are for the tree generator.
+ */
+public class IRCodeGenerator {
+  private static final Register[] REGISTERS = RegisterAllocator.REGISTERS;
+  private static final int LOOP_WEIGHT = 10;
+  private static final int MAX_LOOP_DEPTH = 4;
+
+  private final CompilationContext context;
+  private final LabelGenerator labels;
+  private final TypeDeclaration CLASS_STRING;
+  private final ControlFlowGraph graph;
+  private final int thisOffset;
+  private final AssemblyNode asm = new AssemblyNode();
+
+  // the register or Slot of each value that has one
+  private final Map<Instruction, Object> locations = new IdentityHashMap<Instruction, Object>();
+  // the registers used, saved in the first stack slots
+  private final List<Register> saved = new ArrayList<Register>();
+  private int spills = 0;
+  // by instruction id
+  private int[] uses;
+  // the comparisons generated with the branch that uses them
+  private boolean[] fused;
+  // by block id, for the blocks jumped to
+  private String[] blockLabels;
+
+  /**
+   * A dword on the stack, at a displacement from ebp.
+   */
+  private static class Slot {
+    final int offset;
+
+    Slot(int offset) {
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Slot && ((Slot) o).offset == offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return offset;
+    }
+  }
+
+  private static class Interval {
+    final Instruction value;
+    int start = Integer.MAX_VALUE;
+    int end = -1;
+    int weight = 0;
+    Register register = null;
+
+    Interval(Instruction value) {
+      this.value = value;
+    }
+
+    void cover(int position) {
+      start = Math.min(start, position);
+      end = Math.max(end, position);
+    }
+  }
+
+  public IRCodeGenerator(CompilationContext context, LabelGenerator labels, TypeDeclaration CLASS_STRING,
+      ControlFlowGraph graph, int thisOffset) {
+    this.context = context;
+    this.labels = labels;
+    this.CLASS_STRING = CLASS_STRING;
+    this.graph = graph;
+    this.thisOffset = thisOffset;
+  }
+
+  /**
+   * @return the code for the method after the frame is set up and the constructor has called the super constructor:
+   *         saving the registers it uses, the body, and returning
+   */
+  public AssemblyNode generate() {
+    splitCriticalEdges();
+    graph.number();
+    graph.findDominators();
+    graph.findLoops();
+
+    countUses();
+    allocate();
+    findLabels();
+
+    for (Register register : saved) {
+      asm.addChild(AssemblyNode.pushSlot(register), "save " + register);
+    }
+    if (spills > 0) {
+      asm.addChild(AssemblyNode.sub(Register.ESP, CodeGenUtils.DWORD * spills),
+          String.format("%d temporaries", spills));
+    }
+    for (BasicBlock block : graph.blocks) {
+      generate(block);
+    }
+    return asm;
+  }
+
+  /*
+   * Preparation
+   */
+
+  private void splitCriticalEdges() {
+    for (BasicBlock block : new ArrayList<BasicBlock>(graph.blocks)) {
+      if (block.successors.size() < 2) {
+        continue;
+      }
+      for (int i = 0; i < block.successors.size(); i++) {
+        BasicBlock successor = block.successors.get(i);
+        if (successor.getFirstNonPhi() == 0) {
+          continue;
+        }
+        BasicBlock edge = new BasicBlock();
+        graph.blocks.add(edge);
+        edge.add(new Instruction(Opcode.JUMP));
+        block.successors.set(i, edge);
+        successor.predecessors.set(successor.predecessors.indexOf(block), edge);
+        edge.predecessors.add(block);
+        edge.successors.add(successor);
+      }
+    }
+  }
+
+  private void countUses() {
+    uses = new int[graph.size()];
+    fused = new boolean[graph.size()];
+    for (BasicBlock block : graph.blocks) {
+      for (Instruction instruction : block.instructions) {
+        for (Instruction operand : instruction.operands) {
+          uses[operand.id]++;
+        }
+      }
+    }
+    for (BasicBlock block : graph.blocks) {
+      int size = block.instructions.size();
+      Instruction terminator = block.getTerminator();
+      if (terminator.opcode != Opcode.BRANCH || size < 2) {
+        continue;
+      }
+      Instruction compare = block.instructions.get(size - 2);
+      if (compare.opcode == Opcode.CMP && terminator.getOperand(0) == compare && uses[compare.id] == 1) {
+        fused[compare.id] = true;
+      }
+    }
+  }
+
+  private boolean needsLocation(Instruction value) {
+    return !value.opcode.isVoid() && !value.isConstant() && uses[value.id] > 0 && !fused[value.id];
+  }
+
+  /**
+   * Finds the live intervals and gives the values their locations.
+   */
+  private void allocate() {
+    List<BasicBlock> blocks = graph.blocks;
+    int[] starts = new int[blocks.size()];
+    int[] ends = new int[blocks.size()];
+    int position = 0;
+    for (BasicBlock block : blocks) {
+      starts[block.id] = position;
+      position += block.instructions.size();
+      ends[block.id] = position - 1;
+    }
+
+    // the values live into and out of each block, by id, where the operands of a phi are live out of the predecessor
+    BitSet[] liveIn = new BitSet[blocks.size()];
+    BitSet[] liveOut = new BitSet[blocks.size()];
+    for (BasicBlock block : blocks) {
+      liveIn[block.id] = new BitSet();
+      liveOut[block.id] = new BitSet();
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int b = blocks.size() - 1; b >= 0; b--) {
+        BasicBlock block = blocks.get(b);
+        BitSet live = new BitSet();
+        for (BasicBlock successor : block.successors) {
+          live.or(liveIn[successor.id]);
+          int index = successor.predecessors.indexOf(block);
+          for (int i = 0; i < successor.getFirstNonPhi(); i++) {
+            live.set(successor.instructions.get(i).getOperand(index).id);
+          }
+        }
+        liveOut[block.id] = (BitSet) live.clone();
+        for (int i = block.instructions.size() - 1; i >= 0; i--) {
+          Instruction instruction = block.instructions.get(i);
+          live.clear(instruction.id);
+          if (instruction.opcode != Opcode.PHI) {
+            for (Instruction operand : instruction.operands) {
+              live.set(operand.id);
+            }
+          }
+        }
+        if (!live.equals(liveIn[block.id])) {
+          liveIn[block.id] = live;
+          changed = true;
+        }
+      }
+    }
+
+    Map<Instruction, Interval> intervals = new IdentityHashMap<Instruction, Interval>();
+    List<Interval> order = new ArrayList<Interval>();
+    Instruction[] values = new Instruction[graph.size()];
+    for (BasicBlock block : blocks) {
+      for (Instruction instruction : block.instructions) {
+        values[instruction.id] = instruction;
+        if (needsLocation(instruction)) {
+          Interval interval = new Interval(instruction);
+          intervals.put(instruction, interval);
+          order.add(interval);
+        }
+      }
+    }
+    for (BasicBlock block : blocks) {
+      for (int id = liveIn[block.id].nextSetBit(0); id >= 0; id = liveIn[block.id].nextSetBit(id + 1)) {
+        Interval interval = intervals.get(values[id]);
+        if (interval != null) {
+          interval.cover(starts[block.id]);
+        }
+      }
+      for (int id = liveOut[block.id].nextSetBit(0); id >= 0; id = liveOut[block.id].nextSetBit(id + 1)) {
+        Interval interval = intervals.get(values[id]);
+        if (interval != null) {
+          interval.cover(ends[block.id]);
+        }
+      }
+      int weight = getWeight(block);
+      for (int i = 0; i < block.instructions.size(); i++) {
+        Instruction instruction = block.instructions.get(i);
+        Interval interval = intervals.get(instruction);
+        if (interval != null) {
+          interval.cover(starts[block.id] + i);
+          interval.weight += weight;
+        }
+        for (int k = 0; k < instruction.operands.size(); k++) {
+          Interval operand = intervals.get(instruction.getOperand(k));
+          if (operand == null) {
+            continue;
+          } else if (instruction.opcode == Opcode.PHI) {
+            // moved at the end of the predecessor, into the location of the phi
+            BasicBlock predecessor = block.predecessors.get(k);
+            operand.cover(ends[predecessor.id]);
+            operand.weight += getWeight(predecessor);
+            if (interval != null) {
+              interval.cover(ends[predecessor.id]);
+            }
+          } else {
+            operand.cover(starts[block.id] + i);
+            operand.weight += weight;
+          }
+        }
+      }
+    }
+
+    // the linear scan, over the intervals in the order they start
+    Collections.sort(order, new Comparator<Interval>() {
+      @Override
+      public int compare(Interval a, Interval b) {
+        return a.start - b.start;
+      }
+    });
+    List<Interval> active = new ArrayList<Interval>();
+    for (Interval interval : order) {
+      for (int i = active.size() - 1; i >= 0; i--) {
+        if (active.get(i).end < interval.start) {
+          active.remove(i);
+        }
+      }
+
+      Register free = null;
+      for (Register register : REGISTERS) {
+        boolean taken = false;
+        for (Interval other : active) {
+          taken |= other.register == register;
+        }
+        if (!taken) {
+          free = register;
+          break;
+        }
+      }
+      if (free == null) {
+        Interval lightest = null;
+        for (Interval other : active) {
+          if (lightest == null || other.weight < lightest.weight) {
+            lightest = other;
+          }
+        }
+        if (lightest.weight >= interval.weight) {
+          continue;
+        }
+        free = lightest.register;
+        lightest.register = null;
+        active.remove(lightest);
+      }
+      interval.register = free;
+      active.add(interval);
+    }
+
+    for (Register register : REGISTERS) {
+      for (Interval interval : order) {
+        if (interval.register == register) {
+          saved.add(register);
+          break;
+        }
+      }
+    }
+
+    // the values left on the stack share the slots after the saved registers, in another scan
+    List<Interval> spilled = new ArrayList<Interval>();
+    List<Slot> freeSlots = new ArrayList<Slot>();
+    for (Interval interval : order) {
+      Object location = interval.register;
+      if (location == null) {
+        location = getIncomingSlot(interval.value);
+      }
+      if (location == null) {
+        for (int i = spilled.size() - 1; i >= 0; i--) {
+          if (spilled.get(i).end < interval.start) {
+            freeSlots.add((Slot) locations.get(spilled.remove(i).value));
+          }
+        }
+        if (freeSlots.isEmpty()) {
+          spills++;
+          location = new Slot(-CodeGenUtils.DWORD * (saved.size() + spills));
+        } else {
+          location = freeSlots.remove(freeSlots.size() - 1);
+        }
+        spilled.add(interval);
+      }
+      locations.put(interval.value, location);
+    }
+  }
+
+  private static int getWeight(BasicBlock block) {
+    int weight = 1;
+    for (int i = 0; i < Math.min(block.loopDepth, MAX_LOOP_DEPTH); i++) {
+      weight *= LOOP_WEIGHT;
+    }
+    return weight;
+  }
+
+  /**
+   * @return the slot a parameter or this was passed in, or null for any other value
+   */
+  private Slot getIncomingSlot(Instruction value) {
+    if (value.opcode == Opcode.PARAM) {
+      return new Slot(-CodeGenUtils.DWORD * ((VariableDeclaration) value.target).getStackOffset());
+    } else if (value.opcode == Opcode.THIS) {
+      return new Slot(-CodeGenUtils.DWORD * thisOffset);
+    }
+    return null;
+  }
+
+  /**
+   * Labels the blocks that are not only reached by falling through from the block before them.
+   */
+  private void findLabels() {
+    List<BasicBlock> blocks = graph.blocks;
+    blockLabels = new String[blocks.size()];
+    for (int i = 0; i < blocks.size(); i++) {
+      BasicBlock block = blocks.get(i);
+      BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+      for (BasicBlock successor : block.successors) {
+        if (successor != next || (block.successors.size() > 1 && successor == block.successors.get(1)
+            && block.successors.get(0) == next)) {
+          if (blockLabels[successor.id] == null) {
+            blockLabels[successor.id] = labels.generate("Block");
+          }
+        }
+      }
+    }
+  }
+
+  /*
+   * Instructions
+   */
+
+  private void generate(BasicBlock block) {
+    if (blockLabels[block.id] != null) {
+      asm.addChild(AssemblyNode.label(blockLabels[block.id]));
+    }
+    for (Instruction instruction : block.instructions) {
+      generate(instruction);
+    }
+  }
+
+  private void generate(Instruction instruction) {
+    switch (instruction.opcode) {
+    case CONST:
+    case PHI:
+      // used as immediates, and moved into place by the predecessors
+      break;
+    case PARAM:
+    case THIS:
+      if (locations.get(instruction) instanceof Register) {
+        asm.addChild(AssemblyNode.movFromMem((Register) locations.get(instruction), Register.EBP,
+            getIncomingSlot(instruction).offset), instruction.name);
+      }
+      break;
+    case STRING:
+      CodeGenUtils.addStringLiteral(context, asm, CLASS_STRING, (String) instruction.target);
+      store(instruction, Register.EAX);
+      break;
+    case ADD:
+    case SUB:
+    case MUL:
+    case AND:
+    case OR:
+      arithmetic(instruction);
+      break;
+    case DIV:
+    case MOD:
+      divide(instruction);
+      break;
+    case NEG:
+    case NOT: {
+      Register register = getTarget(instruction);
+      load(register, instruction.getOperand(0));
+      asm.addChild(instruction.opcode == Opcode.NEG ? AssemblyNode.neg(register) : AssemblyNode.xor(register, 1));
+      store(instruction, register);
+      break;
+    }
+    case EXTEND_BYTE:
+    case EXTEND_SHORT:
+      load(Register.EAX, instruction.getOperand(0));
+      if (instruction.opcode == Opcode.EXTEND_BYTE) {
+        asm.addChild(AssemblyNode.CBW);
+      }
+      asm.addChild(AssemblyNode.CWDE);
+      store(instruction, Register.EAX);
+      break;
+    case CMP:
+      if (!fused[instruction.id]) {
+        Condition condition = compare(instruction);
+        asm.addChild(AssemblyNode.mov(Register.EAX, 0));
+        asm.addChild(AssemblyNode.set(condition, Register.AL));
+        store(instruction, Register.EAX);
+      }
+      break;
+    case GET_FIELD:
+    case LENGTH: {
+      Register object = getRegister(instruction.getOperand(0), Register.EAX);
+      Register register = getTarget(instruction);
+      asm.addChild(AssemblyNode.movFromMem(register, object, getOffset((FieldDeclaration) instruction.target)),
+          instruction.name);
+      store(instruction, register);
+      break;
+    }
+    case PUT_FIELD: {
+      Register object = getRegister(instruction.getOperand(0), Register.EBX);
+      Object value = getOperand(instruction.getOperand(1), Register.EAX);
+      asm.addChild(AssemblyNode.movToMem(object, value, getOffset((FieldDeclaration) instruction.target)),
+          instruction.name);
+      break;
+    }
+    case GET_STATIC: {
+      String label = ((FieldDeclaration) instruction.target).getGlobalName();
+      asm.requires(label);
+      Register register = getTarget(instruction);
+      asm.addChild(AssemblyNode.movFromMem(register, label, 0), instruction.name);
+      store(instruction, register);
+      break;
+    }
+    case PUT_STATIC: {
+      String label = ((FieldDeclaration) instruction.target).getGlobalName();
+      asm.requires(label);
+      asm.addChild(AssemblyNode.movToMem(label, getOperand(instruction.getOperand(0), Register.EAX)), instruction.name);
+      break;
+    }
+    case CHECK_INDEX: {
+      Register index = getRegister(instruction.getOperand(0), Register.EAX);
+      asm.addChild(AssemblyNode.cmp(index, getOperand(instruction.getOperand(1), Register.EBX)), "index < length");
+      asm.requires(CodeGenUtils.EXCEPTION);
+      asm.addChild(AssemblyNode.j(Condition.GE, CodeGenUtils.EXCEPTION));
+      break;
+    }
+    case GET_ELEMENT: {
+      Register register = getTarget(instruction);
+      if (instruction.getOperand(1).isConstant()) {
+        Register array = getRegister(instruction.getOperand(0), Register.EAX);
+        asm.addChild(AssemblyNode.movFromMem(register, array, getElementOffset(instruction.getOperand(1))));
+      } else {
+        addElementAddress(instruction);
+        asm.addChild(AssemblyNode.movFromMem(register, Register.EAX, CodeGenUtils.DWORD));
+      }
+      store(instruction, register);
+      break;
+    }
+    case PUT_ELEMENT:
+      if (instruction.getOperand(1).isConstant()) {
+        Register array = getRegister(instruction.getOperand(0), Register.EAX);
+        Object value = getOperand(instruction.getOperand(2), Register.EBX);
+        asm.addChild(AssemblyNode.movToMem(array, value, getElementOffset(instruction.getOperand(1))));
+      } else {
+        addElementAddress(instruction);
+        Object value = getOperand(instruction.getOperand(2), Register.EDX);
+        asm.addChild(AssemblyNode.movToMem(Register.EAX, value, CodeGenUtils.DWORD));
+      }
+      break;
+    case CALL: {
+      MethodDeclaration method = (MethodDeclaration) instruction.target;
+      asm.addChild(AssemblyNode.comment("calling " + method.getGlobalName()));
+      for (Instruction operand : instruction.operands) {
+        push(operand);
+      }
+      if (method.isNative() && !instruction.operands.isEmpty()) {
+        // the runtime takes the argument in eax, where pushing it from the tree leaves it
+        load(Register.EAX, instruction.getOperand(instruction.operands.size() - 1));
+      }
+      int receivers = method.isStatic() ? 0 : 1;
+      CodeGenUtils.callMethod(context, asm, method, instruction.operands.size() - receivers,
+          !instruction.skipNullCheck);
+      clearArguments(instruction.operands.size());
+      store(instruction, Register.EAX);
+      break;
+    }
+    case NEW: {
+      ClassInstanceCreation creation = (ClassInstanceCreation) instruction.target;
+      CodeGenUtils.allocateObject(asm, creation.classType.getFormalType().decl);
+      asm.addChild(AssemblyNode.push(Register.EAX));
+      for (Instruction operand : instruction.operands) {
+        push(operand);
+      }
+      CodeGenUtils.callMethod(context, asm, creation.constructor, instruction.operands.size(),
+          !instruction.skipNullCheck);
+      clearArguments(instruction.operands.size());
+      asm.addChild(AssemblyNode.pop(Register.EAX));
+      store(instruction, Register.EAX);
+      break;
+    }
+    case NEW_ARRAY:
+      load(Register.EAX, instruction.getOperand(0));
+      // the size is already in eax
+      CodeGenUtils.allocateArray(context, asm, (FormalType) instruction.target, new AssemblyNode());
+      store(instruction, Register.EAX);
+      break;
+    case CONCAT: {
+      InfixExpression node = (InfixExpression) instruction.target;
+      load(Register.EBX, instruction.getOperand(1));
+      load(Register.EAX, instruction.getOperand(0));
+      CodeGenUtils.performStringConcat(context, labels, asm, CLASS_STRING, node.lhs, node.rhs);
+      store(instruction, Register.EAX);
+      break;
+    }
+    case INSTANCEOF: {
+      load(Register.EBX, instruction.getOperand(0));
+      asm.addChild(AssemblyNode.mov(Register.EAX, 0));
+      String endLabel = labels.generate("EndInstanceof");
+      asm.addChild(AssemblyNode.cmp(Register.EBX, 0));
+      asm.addChild(AssemblyNode.j(Condition.E, endLabel), "LHS is null");
+      CodeGenUtils.addInstanceofCheck(context, asm, (FormalType) instruction.target, endLabel);
+      asm.addChild(AssemblyNode.label(endLabel));
+      store(instruction, Register.EAX);
+      break;
+    }
+    case CHECK_CAST: {
+      load(Register.EBX, instruction.getOperand(0));
+      asm.addChild(AssemblyNode.mov(Register.EAX, 0));
+      String endLabel = labels.generate("CastCheck");
+      asm.addChild(AssemblyNode.cmp(Register.EBX, 0));
+      asm.addChild(AssemblyNode.set(Condition.E, Register.AL));
+      asm.addChild(AssemblyNode.j(Condition.E, endLabel), "LHS is null");
+      CodeGenUtils.addInstanceofCheck(context, asm, (FormalType) instruction.target, endLabel);
+      asm.addChild(AssemblyNode.label(endLabel), instruction.name);
+      asm.addChild(AssemblyNode.cmp(Register.EAX, 0));
+      asm.requires(CodeGenUtils.EXCEPTION);
+      asm.addChild(AssemblyNode.j(Condition.E, CodeGenUtils.EXCEPTION));
+      break;
+    }
+    case JUMP:
+      jump(instruction.block);
+      break;
+    case BRANCH:
+      branch(instruction);
+      break;
+    case RETURN:
+      if (!instruction.operands.isEmpty()) {
+        load(Register.EAX, instruction.getOperand(0));
+      }
+      for (int i = 0; i < saved.size(); i++) {
+        asm.addChild(AssemblyNode.movFromMem(saved.get(i), Register.EBP, -CodeGenUtils.DWORD * (i + 1)),
+            "restore " + saved.get(i));
+      }
+      asm.addChild(AssemblyNode.LEAVE);
+      asm.addChild(AssemblyNode.RET);
+      break;
+    }
+  }
+
+  private void arithmetic(Instruction instruction) {
+    Register register = getTarget(instruction);
+    Object rhs = getOperand(instruction.getOperand(1), Register.EBX);
+    if (rhs == register) {
+      // the register is about to be overwritten by the lhs
+      register = Register.EAX;
+    }
+    load(register, instruction.getOperand(0));
+    switch (instruction.opcode) {
+    case ADD:
+      asm.addChild(AssemblyNode.add(register, rhs));
+      break;
+    case SUB:
+      asm.addChild(AssemblyNode.sub(register, rhs));
+      break;
+    case MUL:
+      asm.addChild(AssemblyNode.imul(register, rhs));
+      break;
+    case AND:
+      asm.addChild(AssemblyNode.and(register, rhs));
+      break;
+    default:
+      asm.addChild(AssemblyNode.or(register, rhs));
+      break;
+    }
+    store(instruction, register);
+  }
+
+  private void divide(Instruction instruction) {
+    Instruction divisor = instruction.getOperand(1);
+    load(Register.EBX, divisor);
+    load(Register.EAX, instruction.getOperand(0));
+    if (!divisor.isConstant() || divisor.constant == 0) {
+      asm.requires(CodeGenUtils.EXCEPTION);
+      asm.addChild(AssemblyNode.cmp(Register.EBX, 0));
+      asm.addChild(AssemblyNode.j(Condition.E, CodeGenUtils.EXCEPTION), "division by zero");
+    }
+    asm.addChild(AssemblyNode.CDQ);
+    asm.addChild(AssemblyNode.idiv(Register.EBX));
+    store(instruction, instruction.opcode == Opcode.DIV ? Register.EAX : Register.EDX);
+  }
+
+  /**
+   * Compares the operands of a comparison, with a register first.
+   *
+   * @return the condition the flags are then tested for
+   */
+  private Condition compare(Instruction instruction) {
+    Instruction lhs = instruction.getOperand(0), rhs = instruction.getOperand(1);
+    Condition condition = instruction.condition;
+    if (lhs.isConstant() && !rhs.isConstant()) {
+      Instruction swap = lhs;
+      lhs = rhs;
+      rhs = swap;
+      condition = condition.swap();
+    }
+    Register register = getRegister(lhs, Register.EAX);
+    asm.addChild(AssemblyNode.cmp(register, getOperand(rhs, Register.EBX)));
+    return condition;
+  }
+
+  /**
+   * Leaves the address of the element before the element accessed in eax, as the index is checked to be in bounds.
+   */
+  private void addElementAddress(Instruction instruction) {
+    load(Register.EAX, instruction.getOperand(1));
+    asm.addChild(AssemblyNode.shl(Register.EAX, 2));
+    asm.addChild(AssemblyNode.add(Register.EAX, getOperand(instruction.getOperand(0), Register.EBX)));
+  }
+
+  private static int getElementOffset(Instruction index) {
+    return CodeGenUtils.DWORD * (index.constant + 1);
+  }
+
+  private int getOffset(FieldDeclaration field) {
+    if (field == FieldDeclaration.LENGTH_FIELD) {
+      return context.arrayVTable.getOffset(FieldDeclaration.ARRAY_LENGTH);
+    }
+    return field.getTypeDeclaration().getVTable().getOffset(field.name);
+  }
+
+  private void push(Instruction value) {
+    if (value.isConstant()) {
+      asm.addChild(AssemblyNode.push(Integer.toString(value.constant)));
+    } else {
+      asm.addChild(AssemblyNode.push(getRegister(value, Register.EAX)));
+    }
+  }
+
+  private void clearArguments(int arguments) {
+    if (arguments > 0) {
+      asm.addChild(AssemblyNode.add(Register.ESP, CodeGenUtils.DWORD * arguments),
+          String.format("clear %d args", arguments));
+    }
+  }
+
+  /*
+   * Control flow
+   */
+
+  private void jump(BasicBlock block) {
+    BasicBlock successor = block.successors.get(0);
+    addPhiMoves(block, successor);
+    if (!isNext(block, successor)) {
+      asm.addChild(AssemblyNode.jmp(blockLabels[successor.id]));
+    }
+  }
+
+  private void branch(Instruction branch) {
+    BasicBlock block = branch.block;
+    Instruction value = branch.getOperand(0);
+    Condition condition;
+    if (value.opcode == Opcode.CMP && fused[value.id]) {
+      condition = compare(value);
+    } else {
+      asm.addChild(AssemblyNode.cmp(getRegister(value, Register.EAX), 0));
+      condition = Condition.NE;
+    }
+    BasicBlock whenTrue = block.successors.get(0), whenFalse = block.successors.get(1);
+    if (isNext(block, whenTrue)) {
+      asm.addChild(AssemblyNode.j(condition.negate(), blockLabels[whenFalse.id]));
+    } else {
+      asm.addChild(AssemblyNode.j(condition, blockLabels[whenTrue.id]));
+      if (!isNext(block, whenFalse)) {
+        asm.addChild(AssemblyNode.jmp(blockLabels[whenFalse.id]));
+      }
+    }
+  }
+
+  private boolean isNext(BasicBlock block, BasicBlock successor) {
+    return block.id + 1 == successor.id;
+  }
+
+  /**
+   * Moves the operands of the phis of the successor for this block into their locations, all at once: a move waits
+   * until no other move reads its location, and a cycle of moves goes through eax.
+   */
+  private void addPhiMoves(BasicBlock block, BasicBlock successor) {
+    int index = successor.predecessors.indexOf(block);
+    List<Object> targets = new ArrayList<Object>();
+    List<Object> sources = new ArrayList<Object>();
+    for (int i = 0; i < successor.getFirstNonPhi(); i++) {
+      Instruction phi = successor.instructions.get(i);
+      Object target = locations.get(phi);
+      Instruction operand = phi.getOperand(index);
+      Object source = operand.isConstant() ? Integer.valueOf(operand.constant) : locations.get(operand);
+      if (target != null && !target.equals(source)) {
+        targets.add(target);
+        sources.add(source);
+      }
+    }
+
+    while (!targets.isEmpty()) {
+      int ready = -1;
+      for (int i = 0; i < targets.size() && ready < 0; i++) {
+        if (!sources.contains(targets.get(i))) {
+          ready = i;
+        }
+      }
+      if (ready >= 0) {
+        move(targets.remove(ready), sources.remove(ready));
+      } else {
+        // every target is still to be read: keep one aside
+        Object target = targets.get(0);
+        move(Register.EAX, target);
+        for (int i = 0; i < sources.size(); i++) {
+          if (sources.get(i).equals(target)) {
+            sources.set(i, Register.EAX);
+          }
+        }
+      }
+    }
+  }
+
+  private void move(Object target, Object source) {
+    if (source instanceof Slot) {
+      Register register = target instanceof Register ? (Register) target : Register.EDX;
+      asm.addChild(AssemblyNode.movFromMem(register, Register.EBP, ((Slot) source).offset));
+      source = register;
+    }
+    if (target instanceof Register) {
+      if (target != source) {
+        asm.addChild(AssemblyNode.mov((Register) target, source));
+      }
+    } else {
+      asm.addChild(AssemblyNode.movToMem(Register.EBP, source, ((Slot) target).offset));
+    }
+  }
+
+  /*
+   * Locations
+   */
+
+  /**
+   * @return the register to compute the value in: its own, or eax if it has none
+   */
+  private Register getTarget(Instruction value) {
+    Object location = locations.get(value);
+    return location instanceof Register ? (Register) location : Register.EAX;
+  }
+
+  /**
+   * @return the value as the source operand of an instruction: its register, the constant, or the scratch register
+   *         after loading it there
+   */
+  private Object getOperand(Instruction value, Register scratch) {
+    if (value.isConstant()) {
+      return value.constant;
+    }
+    return getRegister(value, scratch);
+  }
+
+  /**
+   * @return the register of the value, or the scratch register after loading it there
+   */
+  private Register getRegister(Instruction value, Register scratch) {
+    Object location = locations.get(value);
+    if (location instanceof Register) {
+      return (Register) location;
+    }
+    load(scratch, value);
+    return scratch;
+  }
+
+  private void load(Register register, Instruction value) {
+    if (value.isConstant()) {
+      asm.addChild(AssemblyNode.mov(register, value.constant));
+    } else {
+      move(register, locations.get(value));
+    }
+  }
+
+  private void store(Instruction value, Register register) {
+    Object location = locations.get(value);
+    if (location == null || location == register) {
+      return;
+    }
+    if (location instanceof Register) {
+      asm.addChild(AssemblyNode.mov((Register) location, register), value.name);
+    } else {
+      asm.addChild(AssemblyNode.movToMem(Register.EBP, register, ((Slot) location).offset), value.name);
+    }
+  }
+
+}
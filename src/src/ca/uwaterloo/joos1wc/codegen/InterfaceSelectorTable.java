@@ -2,6 +2,8 @@ package ca.uwaterloo.joos1wc.codegen;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,17 +15,50 @@ import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 public class InterfaceSelectorTable {
   private List<MethodDeclaration.Signature> methodList;
   private HashMap<MethodDeclaration.Signature, Integer> methodMap;
-  private static final InterfaceSelectorTable singleton = new InterfaceSelectorTable();
-
-  private InterfaceSelectorTable() {
+  /**
+   * Numbers the methods of the library interfaces first, in name order, so that their offsets do not depend on the rest
+   * of the program, and then those of the interfaces each class implements.
+   * 
+   * @param typeDecls
+   *          Every type, in the order of the type hierarchy table.
+   */
+  public InterfaceSelectorTable(Collection<TypeDeclaration> typeDecls) {
     methodList = new ArrayList<MethodDeclaration.Signature>();
     methodMap = new HashMap<MethodDeclaration.Signature, Integer>();
+
+    for (TypeDeclaration typeDecl : typeDecls) {
+      if (!typeDecl.isLibrary || !typeDecl.isInterface) {
+        continue;
+      }
+      List<MethodDeclaration> methods = new ArrayList<MethodDeclaration>(typeDecl.getDeclaredMethods().values());
+      Collections.sort(methods, new Comparator<MethodDeclaration>() {
+        @Override
+        public int compare(MethodDeclaration a, MethodDeclaration b) {
+          return a.getGlobalName().compareTo(b.getGlobalName());
+        }
+      });
+      for (MethodDeclaration method : methods) {
+        if (!methodMap.containsKey(method.getSignature())) {
+          methodMap.put(method.getSignature(), methodList.size());
+          methodList.add(method.getSignature());
+        }
+      }
+    }
+
+    for (TypeDeclaration typeDecl : typeDecls) {
+      if (typeDecl.isClass) {
+        addMethods(typeDecl.getDeclaredMethods().keySet(), typeDecl.getIfaceDecls(), typeDecl.getSuperclassDecl());
+      }
+    }
   }
-  
-  public static InterfaceSelectorTable getSelectorTable() {
-    return singleton;
+
+  /**
+   * @return every selector, in offset order
+   */
+  public List<MethodDeclaration.Signature> getSignatures() {
+    return Collections.unmodifiableList(methodList);
   }
-  
+
   public int getOffset(MethodDeclaration.Signature signature) {
     assert methodMap.containsKey(signature);
     return methodMap.get(signature) * CodeGenUtils.DWORD;
@@ -78,7 +113,7 @@ public class InterfaceSelectorTable {
         asm.requires(method.getGlobalName());
       } else {
         // have to put something here
-        asm.addChild(AssemblyNode.DD, signature.name());
+        asm.addChild(AssemblyNode.dd("0"), signature.name());
       }
     }
   }
@@ -0,0 +1,20 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+/**
+ * Generates the local labels for the code of one type. Labels are numbered within the type, so that the code for a type
+ * only changes when it does, and so that several types can be generated at once.
+ */
+public class LabelGenerator {
+  private final String scope;
+  private int count = 0;
+
+  public LabelGenerator(String scope) {
+    this.scope = scope;
+  }
+
+  // try to generate a valid unique label with the given suffix
+  public String generate(String suffix) {
+    return String.format("._%s_%d$%s", scope, count++, suffix);
+  }
+
+}
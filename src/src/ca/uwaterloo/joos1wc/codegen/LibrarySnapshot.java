@@ -0,0 +1,249 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+
+/**
+ * A snapshot of the assembly generated for the standard library, stored in a cache directory under a key computed from
+ * the library sources and the compiler itself. Library code is numbered before the rest of the program in the type
+ * hierarchy and interface selector tables, and the tables themselves are output separately, so the assembly for a
+ * library type is the same for every program and can be reused as is.
+ *
+ * The declarations of the library are still built from source on every run, since the rest of the program is linked
+ * against them, but the bodies of precompiled types are neither analysed nor generated again.
+ */
+public class LibrarySnapshot {
+  // Bump this whenever the generated code changes in a way the compiler fingerprint might miss
+  private static final int VERSION = 1;
+  private static final String KEY_ALGORITHM = "SHA-256";
+  private static final String ASSEMBLY_SUFFIX = ".s";
+
+  private final File libraryDir;
+  private final File cacheDir;
+  private final String options;
+  private final Map<String, File> libraryFiles = new TreeMap<String, File>();
+  private String key;
+
+  /**
+   * @param libraryDir
+   *          The directory holding the library sources. Every source file under it is part of the library.
+   * @param cacheDir
+   *          The directory to keep snapshots in, or null to only mark the library types.
+   * @param sourceFileNames
+   *          All the source files of the program.
+   */
+  public LibrarySnapshot(File libraryDir, File cacheDir, String[] sourceFileNames) throws IOException {
+    this(libraryDir, cacheDir, sourceFileNames, "");
+  }
+
+  /**
+   * @param options
+   *          The options that change the generated code. A snapshot is only reused with the same options.
+   */
+  public LibrarySnapshot(File libraryDir, File cacheDir, String[] sourceFileNames, String options) throws IOException {
+    this.libraryDir = libraryDir.getCanonicalFile();
+    this.cacheDir = cacheDir;
+    this.options = options;
+    for (String sourceFileName : sourceFileNames) {
+      String path = getLibraryPath(new File(sourceFileName));
+      if (path != null) {
+        libraryFiles.put(path, new File(sourceFileName));
+      }
+    }
+  }
+
+  /**
+   * @return whether the file is under the library directory
+   */
+  public boolean isLibrary(File sourceFile) throws IOException {
+    return getLibraryPath(sourceFile) != null;
+  }
+
+  /**
+   * @return whether a snapshot of the library is stored in the cache
+   */
+  public boolean isStored() throws IOException {
+    return cacheDir != null && getSnapshotDir().isDirectory();
+  }
+
+  /**
+   * Copies the stored assembly for the library into the output directory, leaving files that are already up to date.
+   * 
+   * @return the output files
+   */
+  public List<File> restore(File outputDir) throws IOException {
+    File[] files = getSnapshotDir().listFiles();
+    if (files == null) {
+      throw new IOException(String.format("Could not read library snapshot %s", getSnapshotDir()));
+    }
+    List<File> outputFiles = new ArrayList<File>(files.length);
+    for (File file : files) {
+      File outputFile = new File(outputDir, file.getName());
+      outputFiles.add(outputFile);
+      if (!outputFile.isFile() || outputFile.length() != file.length()
+          || !Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(outputFile.toPath()))) {
+        Files.copy(file.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    return outputFiles;
+  }
+
+  /**
+   * Stores the assembly just generated for the library types, unless it cannot be reused. The snapshot is written to a
+   * temporary directory first and then moved into place, so that concurrent builds never see a partial snapshot.
+   */
+  public void store(File outputDir, Collection<TypeDeclaration> libraryDecls) throws IOException {
+    if (cacheDir == null || !isReusable(libraryDecls)) {
+      return;
+    }
+
+    Files.createDirectories(cacheDir.toPath());
+    Path snapshotDir = getSnapshotDir().toPath();
+    Path tempDir = Files.createTempDirectory(cacheDir.toPath(), "." + getKey());
+    try {
+      for (TypeDeclaration typeDecl : libraryDecls) {
+        String filename = typeDecl.getCanonicalName() + ASSEMBLY_SUFFIX;
+        Files.copy(new File(outputDir, filename).toPath(), tempDir.resolve(filename));
+      }
+      try {
+        Files.move(tempDir, snapshotDir, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        // another build may have stored the same snapshot first
+        if (!Files.isDirectory(snapshotDir)) {
+          throw e;
+        }
+      }
+    } finally {
+      if (Files.exists(tempDir)) {
+        deleteDirectory(tempDir);
+      }
+    }
+  }
+
+  /**
+   * The key of the snapshot, which covers the snapshot version, the compiler classes, the code generation options and
+   * the path and contents of every library source file.
+   */
+  public String getKey() throws IOException {
+    if (key != null) {
+      return key;
+    }
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(KEY_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    update(digest, "version " + VERSION);
+    addCompiler(digest);
+    update(digest, "options " + options);
+    for (Map.Entry<String, File> entry : libraryFiles.entrySet()) {
+      byte[] contents = Files.readAllBytes(entry.getValue().toPath());
+      update(digest, String.format("source %s %d", entry.getKey(), contents.length));
+      digest.update(contents);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    key = sb.toString();
+    return key;
+  }
+
+  /**
+   * The initializers of instance fields are generated into the initializer of each subclass as well, so a library with
+   * such fields needs its field initializers generated for every program.
+   */
+  private static boolean isReusable(Collection<TypeDeclaration> libraryDecls) {
+    for (TypeDeclaration typeDecl : libraryDecls) {
+      for (FieldDeclaration field : typeDecl.getFields()) {
+        if (!field.isStatic() && field.initExpr != null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private File getSnapshotDir() throws IOException {
+    return new File(cacheDir, getKey());
+  }
+
+  /**
+   * @return the path of the file relative to the library directory, or null if it is not under it
+   */
+  private String getLibraryPath(File sourceFile) throws IOException {
+    String path = sourceFile.getCanonicalPath();
+    String prefix = libraryDir.getPath() + File.separator;
+    return path.startsWith(prefix) ? path.substring(prefix.length()) : null;
+  }
+
+  /**
+   * Adds the size and modification time of the compiler classes, either the jar or every class file under the build
+   * directory.
+   */
+  private static void addCompiler(MessageDigest digest) throws IOException {
+    CodeSource source = LibrarySnapshot.class.getProtectionDomain().getCodeSource();
+    if (source == null) {
+      return;
+    }
+    File location;
+    try {
+      location = new File(source.getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+
+    List<File> files = new ArrayList<File>();
+    findFiles(location, files);
+    for (File file : files) {
+      update(digest, String.format("compiler %s %d %d", file.getPath(), file.length(), file.lastModified()));
+    }
+  }
+
+  private static void findFiles(File file, List<File> files) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      files.add(file);
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      findFiles(child, files);
+    }
+  }
+
+  private static void update(MessageDigest digest, String line) {
+    digest.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void deleteDirectory(Path dir) throws IOException {
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(dir);
+  }
+
+}
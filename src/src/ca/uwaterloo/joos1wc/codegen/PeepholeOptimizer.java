@@ -0,0 +1,807 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Opcode;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+
+/**
+ * Rewrites short windows of instructions into cheaper ones before they are printed. The code generator keeps every
+ * temporary in eax and on the stack, so most of what this finds is a push whose value is popped a couple of
+ * instructions later, and a boolean that is made with set only to be compared and branched on.
+ *
+ * Comments are skipped over, but a label always ends a window, since another jump may land there. A rewrite that
+ * drops a write to a register first checks that the register is dead: that along every path from there, it is written
+ * before it is read. The paths are followed through jumps for a bounded number of instructions, and anything not
+ * understood (a call, data, a jump out of the file) counts as a read.
+ *
+ * Variables live in slots at fixed offsets from ebp, made by a push when they come into scope and dropped by a pop
+ * when they leave it. The rules that rewrite pushes and pops leave those alone, and push-temporary, whose window is
+ * the longest, also gives up on any window that reaches memory through ebp, so a slot never moves out from under the
+ * code that uses it.
+ */
+public class PeepholeOptimizer {
+  // an unlikely number of passes; each one that changes anything is usually followed by one that changes nothing
+  private static final int MAX_PASSES = 16;
+  // the number of instructions followed when looking for a read of a register
+  private static final int LIVENESS_BUDGET = 256;
+  // the number of instructions a pushed value may be kept in a register over
+  private static final int TEMPORARY_WINDOW = 16;
+
+  private static final int EAX = 1, EBX = 2, ECX = 4, EDX = 8, ESI = 16, EDI = 32, ESP = 64, EBP = 128;
+  private static final int ALL = 255;
+  // scratch registers a pushed value may be kept in instead
+  private static final Register[] TEMPORARIES = { Register.EDX, Register.EBX };
+
+  public static enum Rule {
+    // push X; pop Y => mov Y, X
+    PUSH_POP("push-pop"),
+    // push A; mov A, x; mov B, A; pop A => mov B, x
+    SPILL("spill"),
+    // push A; mov C, x; pop B => mov B, A; mov C, x
+    PUSH_MOVE_POP("push-move-pop"),
+    // push A; ...; pop B => mov T, A; ...; mov B, T, when the instructions between leave T alone
+    PUSH_TEMPORARY("push-temporary"),
+    // mov A, x; mov B, A => mov B, x, when A is dead
+    COPY_FORWARD("copy-forward"),
+    // lea B, [R + d]; mov DWORD [B], V => mov DWORD [R + d], V, when B is dead
+    STORE_ADDRESS("store-address"),
+    // cmp X, Y; mov eax, 0; setcc al; cmp eax, 1; jne L => cmp X, Y; jncc L, when eax is dead
+    BRANCH_ON_CONDITION("branch-condition"),
+    // jmp L; L: => L:
+    JUMP_TO_NEXT("jump-next"),
+    // jmp L; ... L: jmp M => jmp M; ... L: jmp M
+    JUMP_THREADING("jump-thread"),
+    // the instructions between a jmp or ret and the next label
+    UNREACHABLE("unreachable"),
+    // mov A, x => nothing, when A is dead
+    DEAD_MOVE("dead-move"),
+    // mov B, n; add A, B => add A, n, when B is dead
+    IMMEDIATE("immediate"),
+    // imul A, 2^k => shl A, k
+    STRENGTH_REDUCTION("strength");
+
+    public final String name;
+
+    private Rule(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @return the rule with the given name, or null if there is none
+     */
+    public static Rule forName(String name) {
+      for (Rule rule : values()) {
+        if (rule.name.equals(name)) {
+          return rule;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final Rule[] rules;
+  // labels that are jumped to but never come back, so nothing is live there
+  private final Set<String> exits;
+  private final int[] counts = new int[Rule.values().length];
+
+  private AssemblyNode asm;
+  private Map<String, Integer> labels;
+
+  public PeepholeOptimizer(Set<Rule> rules, Set<String> exits) {
+    this.rules = rules.toArray(new Rule[rules.size()]);
+    this.exits = exits;
+  }
+
+  /**
+   * @return a formatted string listing the rules, for the names accepted by Rule.forName
+   */
+  public static String format(Set<Rule> rules) {
+    if (rules.isEmpty()) {
+      return "none";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Rule rule : rules) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(rule.name);
+    }
+    return sb.toString();
+  }
+
+  public static EnumSet<Rule> parse(String names) {
+    EnumSet<Rule> rules = EnumSet.noneOf(Rule.class);
+    if (names.equals("all")) {
+      rules.addAll(EnumSet.allOf(Rule.class));
+    } else if (!names.equals("none")) {
+      for (String name : names.split(",")) {
+        Rule rule = Rule.forName(name);
+        if (rule == null) {
+          throw new IllegalArgumentException("Unknown peephole rule: " + name);
+        }
+        rules.add(rule);
+      }
+    }
+    return rules;
+  }
+
+  /**
+   * @return the number of rewrites made by a rule so far
+   */
+  public int getCount(Rule rule) {
+    return counts[rule.ordinal()];
+  }
+
+  public void optimize(AssemblyNode asm) {
+    this.asm = asm;
+    for (int pass = 0; pass < MAX_PASSES; pass++) {
+      indexLabels();
+      boolean changed = false;
+      for (int i = 0; i < asm.size(); i++) {
+        for (Rule rule : rules) {
+          if (isSkipped(asm.getOpcode(i))) {
+            break;
+          }
+          if (apply(rule, i)) {
+            counts[rule.ordinal()]++;
+            changed = true;
+          }
+        }
+      }
+      if (!changed) {
+        break;
+      }
+    }
+    asm.compact();
+    this.asm = null;
+    this.labels = null;
+  }
+
+  private void indexLabels() {
+    labels = new HashMap<String, Integer>();
+    for (int i = 0; i < asm.size(); i++) {
+      if (asm.getOpcode(i) == Opcode.LABEL) {
+        labels.put(asm.getSymbol(i), i);
+      }
+    }
+  }
+
+  private boolean apply(Rule rule, int i) {
+    switch (rule) {
+    case PUSH_POP:
+      return pushPop(i);
+    case SPILL:
+      return spill(i);
+    case PUSH_MOVE_POP:
+      return pushMovePop(i);
+    case PUSH_TEMPORARY:
+      return pushTemporary(i);
+    case COPY_FORWARD:
+      return copyForward(i);
+    case STORE_ADDRESS:
+      return storeAddress(i);
+    case BRANCH_ON_CONDITION:
+      return branchOnCondition(i);
+    case JUMP_TO_NEXT:
+      return jumpToNext(i);
+    case JUMP_THREADING:
+      return jumpThreading(i);
+    case UNREACHABLE:
+      return unreachable(i);
+    case DEAD_MOVE:
+      return deadMove(i);
+    case IMMEDIATE:
+      return immediate(i);
+    case STRENGTH_REDUCTION:
+      return strengthReduction(i);
+    default:
+      return false;
+    }
+  }
+
+  private boolean pushPop(int i) {
+    int j = next(i);
+    if (asm.getOpcode(i) != Opcode.PUSH || j < 0 || asm.getOpcode(j) != Opcode.POP || asm.isSlot(i) || asm.isSlot(j)) {
+      return false;
+    }
+    Object value = asm.getOperand(i, AssemblyNode.A);
+    Register to = asm.getRegister(j, AssemblyNode.A);
+    if (value == to) {
+      asm.remove(i);
+    } else {
+      asm.set(i, AssemblyNode.mov(to, value));
+    }
+    asm.remove(j);
+    return true;
+  }
+
+  private boolean spill(int i) {
+    Register spilled = asm.getRegister(i, AssemblyNode.A);
+    int j = next(i), k = next(j), l = next(k);
+    if (asm.getOpcode(i) != Opcode.PUSH || spilled == null || l < 0 || asm.isSlot(i) || !isMove(j)
+        || asm.getRegister(j, AssemblyNode.A) != spilled || (reads(j) & ESP) != 0) {
+      return false;
+    }
+    Register to = asm.getRegister(k, AssemblyNode.A);
+    if (asm.getOpcode(k) != Opcode.MOV || !isFull(to) || to == spilled || to == Register.ESP
+        || asm.getRegister(k, AssemblyNode.B) != spilled || asm.getOpcode(l) != Opcode.POP
+        || asm.getRegister(l, AssemblyNode.A) != spilled || asm.isSlot(l)) {
+      return false;
+    }
+    asm.set(i, moveTo(j, to));
+    asm.remove(j);
+    asm.remove(k);
+    asm.remove(l);
+    return true;
+  }
+
+  private boolean pushMovePop(int i) {
+    Register pushed = asm.getRegister(i, AssemblyNode.A);
+    int j = next(i), k = next(j);
+    if (asm.getOpcode(i) != Opcode.PUSH || pushed == null || k < 0 || !isMove(j) || asm.getOpcode(k) != Opcode.POP
+        || asm.isSlot(i) || asm.isSlot(k)) {
+      return false;
+    }
+    Register to = asm.getRegister(k, AssemblyNode.A);
+    int toMask = mask(to);
+    if (to == pushed || ((reads(j) | writes(j)) & (toMask | ESP)) != 0) {
+      return false;
+    }
+    asm.set(i, AssemblyNode.mov(to, pushed));
+    asm.remove(k);
+    return true;
+  }
+
+  private boolean pushTemporary(int i) {
+    Register pushed = asm.getRegister(i, AssemblyNode.A);
+    if (asm.getOpcode(i) != Opcode.PUSH || pushed == null || asm.isSlot(i)) {
+      return false;
+    }
+    // the instructions up to the pop may only leave the block for an exit, where the stack no longer matters
+    int touched = 0, changed = 0;
+    int k = next(i);
+    for (int count = 0; k >= 0 && asm.getOpcode(k) != Opcode.POP; k = next(k), count++) {
+      Opcode opcode = asm.getOpcode(k);
+      if (count == TEMPORARY_WINDOW || !isCode(opcode) || opcode == Opcode.JMP
+          || (opcode == Opcode.J && !exits.contains(asm.getSymbol(k)))) {
+        return false;
+      }
+      touched |= reads(k) | changes(k);
+      changed |= changes(k);
+    }
+    if (k < 0 || asm.isSlot(k) || (touched & (ESP | EBP)) != 0) {
+      return false;
+    }
+    Register to = asm.getRegister(k, AssemblyNode.A);
+
+    if ((changed & mask(pushed)) == 0) {
+      // the pushed register still holds the value at the pop
+      asm.remove(i);
+      if (to == pushed) {
+        asm.remove(k);
+      } else {
+        asm.set(k, AssemblyNode.mov(to, pushed));
+      }
+      return true;
+    }
+    if ((touched & mask(to)) == 0) {
+      asm.set(i, AssemblyNode.mov(to, pushed));
+      asm.remove(k);
+      return true;
+    }
+    for (Register temporary : TEMPORARIES) {
+      if (temporary != to && (touched & mask(temporary)) == 0 && isDead(mask(temporary), next(k))) {
+        asm.set(i, AssemblyNode.mov(temporary, pushed));
+        asm.set(k, AssemblyNode.mov(to, temporary));
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean copyForward(int i) {
+    int j = next(i);
+    if (!isMove(i) || j < 0 || asm.getOpcode(j) != Opcode.MOV) {
+      return false;
+    }
+    Register from = asm.getRegister(i, AssemblyNode.A);
+    Register to = asm.getRegister(j, AssemblyNode.A);
+    if (asm.getRegister(j, AssemblyNode.B) != from || !isFull(to) || to == from || to == Register.ESP
+        || !isDead(mask(from), next(j))) {
+      return false;
+    }
+    if (asm.getOpcode(i) == Opcode.MOV && asm.getOperand(i, AssemblyNode.B) == to) {
+      asm.remove(i);
+    } else {
+      asm.set(i, moveTo(i, to));
+    }
+    asm.remove(j);
+    return true;
+  }
+
+  private boolean storeAddress(int i) {
+    Register address = asm.getRegister(i, AssemblyNode.A);
+    Register base = asm.getRegister(i, AssemblyNode.B);
+    if (asm.getOpcode(i) != Opcode.LEA || base == null) {
+      return false;
+    }
+    int addressMask = mask(address);
+    // the store may follow the lea directly, or after a move of its value
+    int j = next(i);
+    if (j >= 0 && isMove(j) && (reads(j) & addressMask) == 0 && (writes(j) & (addressMask | mask(base))) == 0) {
+      j = next(j);
+    }
+    if (j < 0 || asm.getOpcode(j) != Opcode.STORE || asm.getRegister(j, AssemblyNode.A) != address) {
+      return false;
+    }
+    Object value = asm.getOperand(j, AssemblyNode.B);
+    if (value == address || !isDead(addressMask, next(j))) {
+      return false;
+    }
+    asm.set(j, AssemblyNode.movToMem(base, value, asm.getDisplacement(i)));
+    asm.remove(i);
+    return true;
+  }
+
+  private boolean branchOnCondition(int i) {
+    int j = next(i), k = next(j), l = next(k), m = next(l);
+    if (asm.getOpcode(i) != Opcode.CMP || m < 0 || asm.getOpcode(j) != Opcode.MOV
+        || asm.getRegister(j, AssemblyNode.A) != Register.EAX || !isImmediate(j, 0) || asm.getOpcode(k) != Opcode.SET
+        || asm.getRegister(k, AssemblyNode.A) != Register.AL || asm.getOpcode(l) != Opcode.CMP
+        || asm.getRegister(l, AssemblyNode.A) != Register.EAX || asm.getOpcode(m) != Opcode.J) {
+      return false;
+    }
+    // eax is 1 when the condition holds, and 0 otherwise
+    boolean whenTrue;
+    if (isImmediate(l, 1)) {
+      whenTrue = asm.getCondition(m) == Condition.E;
+    } else if (isImmediate(l, 0)) {
+      whenTrue = asm.getCondition(m) == Condition.NE;
+    } else {
+      return false;
+    }
+    if (asm.getCondition(m) != Condition.E && asm.getCondition(m) != Condition.NE) {
+      return false;
+    }
+    String target = asm.getSymbol(m);
+    if (!isDead(EAX, next(m)) || !isDeadAt(EAX, target)) {
+      return false;
+    }
+    Condition condition = asm.getCondition(k);
+    asm.set(m, AssemblyNode.j(whenTrue ? condition : condition.negate(), target));
+    asm.remove(j);
+    asm.remove(k);
+    asm.remove(l);
+    return true;
+  }
+
+  private boolean jumpToNext(int i) {
+    Opcode opcode = asm.getOpcode(i);
+    if (opcode != Opcode.JMP && opcode != Opcode.J) {
+      return false;
+    }
+    String target = asm.getSymbol(i);
+    for (int j = next(i); j >= 0 && asm.getOpcode(j) == Opcode.LABEL; j = next(j)) {
+      if (asm.getSymbol(j).equals(target)) {
+        asm.remove(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean jumpThreading(int i) {
+    Opcode opcode = asm.getOpcode(i);
+    if (opcode != Opcode.JMP && opcode != Opcode.J) {
+      return false;
+    }
+    String target = asm.getSymbol(i);
+    int j = skipLabels(labels.get(target));
+    if (j < 0 || asm.getOpcode(j) != Opcode.JMP) {
+      return false;
+    }
+    String next = asm.getSymbol(j);
+    if (next.equals(target)) {
+      return false;
+    }
+    asm.set(i, opcode == Opcode.JMP ? AssemblyNode.jmp(next) : AssemblyNode.j(asm.getCondition(i), next));
+    return true;
+  }
+
+  private boolean unreachable(int i) {
+    Opcode opcode = asm.getOpcode(i);
+    if (opcode != Opcode.JMP && opcode != Opcode.RET) {
+      return false;
+    }
+    boolean changed = false;
+    for (int j = next(i); j >= 0 && isCode(asm.getOpcode(j)); j = next(j)) {
+      asm.remove(j);
+      changed = true;
+    }
+    return changed;
+  }
+
+  private boolean deadMove(int i) {
+    Opcode opcode = asm.getOpcode(i);
+    // a load is kept, since it may fault
+    if (opcode != Opcode.MOV && opcode != Opcode.LEA) {
+      return false;
+    }
+    Register to = asm.getRegister(i, AssemblyNode.A);
+    if (!isFull(to) || to == Register.ESP || to == Register.EBP || !isDead(mask(to), next(i))) {
+      return false;
+    }
+    asm.remove(i);
+    return true;
+  }
+
+  private boolean immediate(int i) {
+    Register temporary = asm.getRegister(i, AssemblyNode.A);
+    Object value = asm.getOperand(i, AssemblyNode.B);
+    int j = next(i);
+    if (asm.getOpcode(i) != Opcode.MOV || !isFull(temporary) || !(value instanceof Integer) || j < 0
+        || asm.getRegister(j, AssemblyNode.B) != temporary) {
+      return false;
+    }
+    Register to = asm.getRegister(j, AssemblyNode.A);
+    if (to == null || to == temporary || !isDead(mask(temporary), next(j))) {
+      return false;
+    }
+    AssemblyNode instruction;
+    switch (asm.getOpcode(j)) {
+    case ADD:
+      instruction = AssemblyNode.add(to, value);
+      break;
+    case AND:
+      instruction = AssemblyNode.and(to, value);
+      break;
+    case CMP:
+      instruction = AssemblyNode.cmp(to, value);
+      break;
+    case IMUL:
+      instruction = AssemblyNode.imul(to, value);
+      break;
+    case OR:
+      instruction = AssemblyNode.or(to, value);
+      break;
+    case SUB:
+      instruction = AssemblyNode.sub(to, value);
+      break;
+    case XOR:
+      instruction = AssemblyNode.xor(to, value);
+      break;
+    default:
+      return false;
+    }
+    asm.set(j, instruction);
+    asm.remove(i);
+    return true;
+  }
+
+  private boolean strengthReduction(int i) {
+    Object factor = asm.getOperand(i, AssemblyNode.B);
+    if (asm.getOpcode(i) != Opcode.IMUL || !(factor instanceof Integer)) {
+      return false;
+    }
+    int value = (Integer) factor;
+    if (value <= 0 || Integer.bitCount(value) != 1) {
+      return false;
+    }
+    asm.set(i, AssemblyNode.shl(asm.getRegister(i, AssemblyNode.A), Integer.numberOfTrailingZeros(value)));
+    return true;
+  }
+
+  /**
+   * @return whether the register is written before it is read, on every path from instruction i
+   */
+  private boolean isDead(int register, int i) {
+    return isDead(register, i, new Walk());
+  }
+
+  private boolean isDeadAt(int register, String label) {
+    if (exits.contains(label)) {
+      return true;
+    }
+    Integer target = labels.get(label);
+    return target != null && isDead(register, target, new Walk());
+  }
+
+  private boolean isDead(int register, int i, Walk walk) {
+    for (; i >= 0 && i < asm.size(); i++) {
+      Opcode opcode = asm.getOpcode(i);
+      if (opcode == Opcode.LABEL) {
+        // a path back to a label already followed cannot read the register any sooner
+        if (walk.visited.get(i)) {
+          return true;
+        }
+        walk.visited.set(i);
+        continue;
+      }
+      if (isSkipped(opcode)) {
+        continue;
+      }
+      if (--walk.budget < 0 || (reads(i) & register) != 0) {
+        return false;
+      }
+      if ((writes(i) & register) != 0) {
+        return true;
+      }
+      switch (opcode) {
+      case RET:
+        // whatever the caller needs was read above
+        return true;
+      case J:
+      case JMP:
+        String label = asm.getSymbol(i);
+        if (!exits.contains(label)) {
+          Integer target = labels.get(label);
+          if (target == null || !isDead(register, target, walk)) {
+            return false;
+          }
+        }
+        if (opcode == Opcode.JMP) {
+          return true;
+        }
+        break;
+      default:
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The state of one liveness query, which is shared by all the paths it follows.
+   */
+  private static class Walk {
+    int budget = LIVENESS_BUDGET;
+    final BitSet visited = new BitSet();
+  }
+
+  /**
+   * @return the registers read by instruction i, where a write to part of a register counts as a read of all of it
+   */
+  private int reads(int i) {
+    Register a = asm.getRegister(i, AssemblyNode.A);
+    Register b = asm.getRegister(i, AssemblyNode.B);
+    switch (asm.getOpcode(i)) {
+    case MOV:
+    case LOAD:
+    case LOAD_OFFSET:
+    case LEA:
+    case POP:
+      return (isFull(a) ? 0 : mask(a)) | mask(b) | (asm.getOpcode(i) == Opcode.POP ? ESP : 0);
+    case ADD:
+    case AND:
+    case CMP:
+    case IMUL:
+    case NEG:
+    case OR:
+    case SET:
+    case SHL:
+    case STORE:
+    case STORE_OFFSET:
+    case SUB:
+    case XOR:
+      return mask(a) | mask(b);
+    case PUSH:
+      return mask(a) | ESP;
+    case IDIV:
+      return mask(a) | EAX | EDX;
+    case CBW:
+    case CDQ:
+    case CWDE:
+      return EAX;
+    case LEAVE:
+      return EBP | ESP;
+    case RET:
+      // the value returned, and the registers variables are kept in, which every method leaves as it found them
+      return EAX | ECX | ESI | EDI | ESP | EBP;
+    case J:
+    case JMP:
+    case LABEL:
+    case COMMENT:
+    case NOP:
+      return 0;
+    default:
+      // calls, interrupts and anything else not understood
+      return ALL;
+    }
+  }
+
+  /**
+   * @return the registers changed by instruction i, in full or in part
+   */
+  private int changes(int i) {
+    Register a = asm.getRegister(i, AssemblyNode.A);
+    switch (asm.getOpcode(i)) {
+    case MOV:
+    case LOAD:
+    case LOAD_OFFSET:
+    case LEA:
+    case ADD:
+    case AND:
+    case IMUL:
+    case NEG:
+    case OR:
+    case SET:
+    case SHL:
+    case SUB:
+    case XOR:
+      return mask(a);
+    case POP:
+      return mask(a) | ESP;
+    case PUSH:
+      return ESP;
+    case CBW:
+    case CWDE:
+      return EAX;
+    case CDQ:
+      return EDX;
+    case IDIV:
+      return EAX | EDX;
+    case LEAVE:
+      return ESP | EBP;
+    case CMP:
+    case STORE:
+    case STORE_OFFSET:
+    case J:
+    case JMP:
+    case LABEL:
+    case COMMENT:
+    case NOP:
+      return 0;
+    default:
+      return ALL;
+    }
+  }
+
+  /**
+   * @return the registers written in full by instruction i, and so dead just before it unless it also reads them
+   */
+  private int writes(int i) {
+    Register a = asm.getRegister(i, AssemblyNode.A);
+    switch (asm.getOpcode(i)) {
+    case MOV:
+    case LOAD:
+    case LOAD_OFFSET:
+    case LEA:
+    case POP:
+      return isFull(a) ? mask(a) : 0;
+    case CDQ:
+      return EDX;
+    default:
+      return 0;
+    }
+  }
+
+  private boolean isMove(int i) {
+    if (i < 0) {
+      return false;
+    }
+    Opcode opcode = asm.getOpcode(i);
+    return (opcode == Opcode.MOV || opcode == Opcode.LOAD || opcode == Opcode.LOAD_OFFSET || opcode == Opcode.LEA)
+        && isFull(asm.getRegister(i, AssemblyNode.A));
+  }
+
+  /**
+   * @return instruction i, a move, with its destination changed
+   */
+  private AssemblyNode moveTo(int i, Register to) {
+    Object from = asm.getOperand(i, AssemblyNode.B);
+    switch (asm.getOpcode(i)) {
+    case MOV:
+      return AssemblyNode.mov(to, from);
+    case LOAD:
+      return AssemblyNode.movFromMem(to, from);
+    case LOAD_OFFSET:
+      return AssemblyNode.movFromMem(to, from, asm.getDisplacement(i));
+    default:
+      return AssemblyNode.lea(to, from, asm.getDisplacement(i));
+    }
+  }
+
+  private boolean isImmediate(int i, int value) {
+    Object operand = asm.getOperand(i, AssemblyNode.B);
+    return operand instanceof Integer && (Integer) operand == value;
+  }
+
+  /**
+   * @return the index of the next instruction after i that is not a comment or removed, or -1
+   */
+  private int next(int i) {
+    if (i < 0) {
+      return -1;
+    }
+    for (i++; i < asm.size(); i++) {
+      if (!isSkipped(asm.getOpcode(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int skipLabels(Integer i) {
+    if (i == null) {
+      return -1;
+    }
+    int j = i;
+    while (j >= 0 && asm.getOpcode(j) == Opcode.LABEL) {
+      j = next(j);
+    }
+    return j;
+  }
+
+  private static boolean isSkipped(Opcode opcode) {
+    return opcode == Opcode.COMMENT || opcode == Opcode.NOP;
+  }
+
+  /**
+   * @return whether the opcode is an instruction, rather than a label or directive
+   */
+  private static boolean isCode(Opcode opcode) {
+    switch (opcode) {
+    case LABEL:
+    case SECTION:
+    case DB:
+    case DB_CHARS:
+    case DD:
+      return false;
+    default:
+      return true;
+    }
+  }
+
+  private static boolean isFull(Register register) {
+    return register != null && register.ordinal() >= Register.EAX.ordinal()
+        && register.ordinal() <= Register.EBP.ordinal();
+  }
+
+  private static int mask(Register register) {
+    if (register == null) {
+      return 0;
+    }
+    switch (register) {
+    case AL:
+    case AH:
+    case AX:
+    case EAX:
+      return EAX;
+    case BL:
+    case BH:
+    case BX:
+    case EBX:
+      return EBX;
+    case CL:
+    case CH:
+    case CX:
+    case ECX:
+      return ECX;
+    case DL:
+    case DH:
+    case DX:
+    case EDX:
+      return EDX;
+    case SI:
+    case ESI:
+      return ESI;
+    case DI:
+    case EDI:
+      return EDI;
+    case SP:
+    case ESP:
+      return ESP;
+    case BP:
+    case EBP:
+      return EBP;
+    default:
+      return 0;
+    }
+  }
+
+}
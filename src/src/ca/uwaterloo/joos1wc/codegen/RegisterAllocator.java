@@ -0,0 +1,207 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwaterloo.joos1wc.ast.Block;
+import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
+import ca.uwaterloo.joos1wc.ast.RecursiveVisitor;
+import ca.uwaterloo.joos1wc.ast.SimpleName;
+import ca.uwaterloo.joos1wc.ast.declaration.IVariableDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.VariableDeclaration;
+import ca.uwaterloo.joos1wc.ast.expression.VariableDeclarationExpression;
+import ca.uwaterloo.joos1wc.ast.statement.ForStatement;
+import ca.uwaterloo.joos1wc.ast.statement.VariableDeclarationStatement;
+import ca.uwaterloo.joos1wc.ast.statement.WhileStatement;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+
+/**
+ * Picks the parameters and local variables of a method to keep in registers rather than on the stack. A variable is
+ * live over its whole scope: a local from its declaration to the end of the block or for statement declaring it, and a
+ * parameter over the whole method. Scopes nest, so a variable is only ever live alongside the variables of the scopes
+ * around it, and the intervals are handed out registers in one linear scan in the order they start. When none is free,
+ * the variable that is used least gives its register up and stays on the stack. A use counts ten times over for each
+ * loop it is in.
+ *
+ * A variable in a register still gets its stack slot, where the code generator saves the register before using it, so
+ * that every method leaves the registers as it found them.
+ */
+public class RegisterAllocator extends RecursiveVisitor {
+  // ebx and edx are scratch registers for the code generator, and eax holds every value
+  public static final Register[] REGISTERS = { Register.ESI, Register.EDI, Register.ECX };
+  // saving and restoring a register costs about as much as two uses from the stack
+  private static final int MIN_WEIGHT = 2;
+  private static final int LOOP_WEIGHT = 10;
+  private static final int MAX_LOOP_DEPTH = 4;
+
+  private static class Interval {
+    final IVariableDeclaration decl;
+    final int start;
+    int end = Integer.MAX_VALUE;
+    int weight = 0;
+    Register register = null;
+
+    Interval(IVariableDeclaration decl, int start) {
+      this.decl = decl;
+      this.start = start;
+    }
+  }
+
+  private final Map<IVariableDeclaration, Interval> intervals = new IdentityHashMap<IVariableDeclaration, Interval>();
+  // in the order they start
+  private final List<Interval> order = new ArrayList<Interval>();
+  // the locals declared in each open scope, innermost first
+  private final Deque<List<Interval>> scopes = new ArrayDeque<List<Interval>>();
+  private int position = 0;
+  private int loopDepth = 0;
+
+  private RegisterAllocator() {
+  }
+
+  /**
+   * @return the register of each variable that is given one
+   */
+  public static Map<IVariableDeclaration, Register> allocate(MethodDeclaration method) {
+    RegisterAllocator allocator = new RegisterAllocator();
+    for (VariableDeclaration param : method.formalParams) {
+      allocator.addInterval(param);
+    }
+    if (method.body != null) {
+      method.body.accept(allocator);
+    }
+    return allocator.scan();
+  }
+
+  private Map<IVariableDeclaration, Register> scan() {
+    List<Interval> active = new ArrayList<Interval>();
+    for (Interval interval : order) {
+      for (int i = active.size() - 1; i >= 0; i--) {
+        if (active.get(i).end < interval.start) {
+          active.remove(i);
+        }
+      }
+      if (interval.weight < MIN_WEIGHT) {
+        continue;
+      }
+
+      Register free = null;
+      for (Register register : REGISTERS) {
+        boolean taken = false;
+        for (Interval other : active) {
+          taken |= other.register == register;
+        }
+        if (!taken) {
+          free = register;
+          break;
+        }
+      }
+      if (free == null) {
+        Interval lightest = null;
+        for (Interval other : active) {
+          if (lightest == null || other.weight < lightest.weight) {
+            lightest = other;
+          }
+        }
+        if (lightest.weight >= interval.weight) {
+          continue;
+        }
+        free = lightest.register;
+        lightest.register = null;
+        active.remove(lightest);
+      }
+      interval.register = free;
+      active.add(interval);
+    }
+
+    Map<IVariableDeclaration, Register> registers = new IdentityHashMap<IVariableDeclaration, Register>();
+    for (Interval interval : order) {
+      if (interval.register != null) {
+        registers.put(interval.decl, interval.register);
+      }
+    }
+    return registers;
+  }
+
+  private void addInterval(IVariableDeclaration decl) {
+    Interval interval = new Interval(decl, position++);
+    intervals.put(decl, interval);
+    order.add(interval);
+    if (!scopes.isEmpty()) {
+      scopes.peek().add(interval);
+    }
+  }
+
+  private void openScope() {
+    scopes.push(new ArrayList<Interval>());
+  }
+
+  private void closeScope() {
+    for (Interval interval : scopes.pop()) {
+      interval.end = position;
+    }
+    position++;
+  }
+
+  @Override
+  protected void preVisit(Block node) {
+    openScope();
+  }
+
+  @Override
+  protected void postVisit(Block node) {
+    closeScope();
+  }
+
+  @Override
+  protected void preVisit(ForStatement node) {
+    openScope();
+    loopDepth++;
+  }
+
+  @Override
+  protected void postVisit(ForStatement node) {
+    loopDepth--;
+    closeScope();
+  }
+
+  @Override
+  protected void preVisit(WhileStatement node) {
+    loopDepth++;
+  }
+
+  @Override
+  protected void postVisit(WhileStatement node) {
+    loopDepth--;
+  }
+
+  @Override
+  protected void postVisit(VariableDeclarationStatement node) {
+    addInterval(node);
+  }
+
+  @Override
+  protected void postVisit(VariableDeclarationExpression node) {
+    addInterval(node);
+  }
+
+  @Override
+  protected void postVisit(SimpleName node) {
+    if (node.declNode == null || node.declNode.getEntityType() != EntityType.VARIABLE) {
+      return;
+    }
+    Interval interval = intervals.get(node.declNode);
+    if (interval != null) {
+      int weight = 1;
+      for (int i = 0; i < Math.min(loopDepth, MAX_LOOP_DEPTH); i++) {
+        weight *= LOOP_WEIGHT;
+      }
+      interval.weight += weight;
+    }
+  }
+
+}
@@ -1,9 +1,11 @@
 package ca.uwaterloo.joos1wc.codegen;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.TreeNode;
@@ -11,20 +13,47 @@ import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
 
 public class TypeHierarchyTable {
 
-  private Map<TypeDeclaration, Integer> typeDeclIndex = new LinkedHashMap<>();
+  // TypeDeclaration.hashCode is the same for every class, so index by identity
+  private List<TypeDeclaration> typeDecls = new ArrayList<>();
+  private Map<TypeDeclaration, Integer> typeDeclIndex = new IdentityHashMap<>();
 
   public TypeHierarchyTable(List<TreeNode> sourceTrees) {
+    // library types come first, in name order, so their indices do not depend on the rest of the program
+    List<TypeDeclaration> libraryDecls = new ArrayList<TypeDeclaration>();
     for (TreeNode root : sourceTrees) {
       for (TypeDeclaration typeDecl : ((CompilationUnit) root).typeDecls) {
-        typeDeclIndex.put(typeDecl, typeDeclIndex.size());
+        if (typeDecl.isLibrary) {
+          libraryDecls.add(typeDecl);
+        }
       }
     }
+    Collections.sort(libraryDecls, new Comparator<TypeDeclaration>() {
+      @Override
+      public int compare(TypeDeclaration a, TypeDeclaration b) {
+        return a.getCanonicalName().compareTo(b.getCanonicalName());
+      }
+    });
+    for (TypeDeclaration typeDecl : libraryDecls) {
+      add(typeDecl);
+    }
+
+    for (TreeNode root : sourceTrees) {
+      for (TypeDeclaration typeDecl : ((CompilationUnit) root).typeDecls) {
+        if (!typeDecl.isLibrary) {
+          add(typeDecl);
+        }
+      }
+    }
+  }
+
+  private void add(TypeDeclaration typeDecl) {
+    typeDeclIndex.put(typeDecl, typeDecls.size());
+    typeDecls.add(typeDecl);
   }
 
   public void addHierarchyTableSlice(AssemblyNode asm, TypeDeclaration typeDecl) {
-    Set<TypeDeclaration> supertypes = typeDecl.getSupertypes();
-    for (TypeDeclaration supertype : typeDeclIndex.keySet()) {
-      asm.addChild(AssemblyNode.db(supertypes.contains(supertype) ? "0x01" : "0x00"), supertype.getCanonicalName());
+    for (TypeDeclaration supertype : typeDecls) {
+      asm.addChild(AssemblyNode.db(typeDecl.isSubtypeOf(supertype) ? "0x01" : "0x00"), supertype.getCanonicalName());
     }
   }
 
@@ -32,4 +61,11 @@ public class TypeHierarchyTable {
     return typeDeclIndex.get(typeDecl);
   }
 
+  /**
+   * @return every type, in index order
+   */
+  public List<TypeDeclaration> getTypeDecls() {
+    return Collections.unmodifiableList(typeDecls);
+  }
+
 }
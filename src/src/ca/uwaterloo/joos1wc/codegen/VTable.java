@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.CompilationContext;
 import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
 import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
@@ -34,10 +34,6 @@ public class VTable {
 
   public VTable(TypeDeclaration typeDecl) {
     assert typeDecl.isClass;
-    // add methods to the global SelectorTable
-    InterfaceSelectorTable.getSelectorTable().addMethods(typeDecl.getDeclaredMethods().keySet(), typeDecl.getIfaceDecls(),
-        typeDecl.getSuperclassDecl());
-    
     TypeDeclaration superclass = typeDecl.getSuperclassDecl();
     if (superclass != null) {
       init(typeDecl.getGlobalName(), typeDecl.name, typeDecl.getFields(), 
@@ -174,14 +170,11 @@ public class VTable {
     node.addChild(AssemblyNode.dd("" + this.name.length()));
     node.addChild(AssemblyNode.dbChar(this.name));
 
+    // the type tables depend on the whole program, so they are output separately by addTables
     String hierarchyTableLabel = this.label + HIERARCHY_TABLE_SUFFIX;
-    node.addChild(AssemblyNode.label(hierarchyTableLabel));
-    Joos1Wc.TYPE_HIERARCHY_TABLE.addHierarchyTableSlice(node, typeDecl);
-    
-    // add the iface table
     String ifaceTableLabel = this.label + IFACE_SUFFIX;
-    node.addChild(AssemblyNode.label(ifaceTableLabel));
-    InterfaceSelectorTable.getSelectorTable().addSelectorTable(node, this.methods);
+    node.requires(hierarchyTableLabel);
+    node.requires(ifaceTableLabel);
 
     // Output class label and addresses of name, type hierarchy table and interface method table
     node.addChild(AssemblyNode.label(this.label));
@@ -195,12 +188,20 @@ public class VTable {
         node.addChild(AssemblyNode.dd(element.getGlobalName()));
         node.requires(element.getGlobalName());
       } else {
-        node.addChild(AssemblyNode.DD, element.getGlobalName());
+        node.addChild(AssemblyNode.dd("0"), element.getGlobalName());
       }
     }
     node.addChild(AssemblyNode.comment("END vtable " + label));
   }
 
+  public void addTables(CompilationContext context, AssemblyNode node) {
+    node.addChild(AssemblyNode.label(this.label + HIERARCHY_TABLE_SUFFIX));
+    context.typeHierarchyTable.addHierarchyTableSlice(node, typeDecl);
+
+    node.addChild(AssemblyNode.label(this.label + IFACE_SUFFIX));
+    context.selectorTable.addSelectorTable(node, this.methods);
+  }
+
   public void addInitializer(AssemblyNode node) {
     // add a function that initializes the fields
     String initializerLabel = this.label + INITIALIZER_SUFFIX;
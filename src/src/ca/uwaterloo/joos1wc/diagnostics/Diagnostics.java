@@ -17,7 +17,7 @@ public class Diagnostics {
     exceptions.add(exc);
   }
 
-  public void addAll(List<JoosException> exc) {
+  public void addAll(Collection<JoosException> exc) {
     exceptions.addAll(exc);
   }
 
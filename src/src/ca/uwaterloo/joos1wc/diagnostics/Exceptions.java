@@ -11,6 +11,8 @@ public final class Exceptions {
   public static final String OUT_OF_BOUNDS_STATE = "InvalidFileFormat: Referenced origin state is out-of-bounds in file \"%d\" (max %d)";
   public static final String OUT_OF_BOUNDS_SHIFT = "InvalidFileFormat: Referenced rule is out-of-bounds for reduce \"%d\" (max %d)";
   public static final String OUT_OF_BOUNDS_REDUCE = "InvalidFileFormat: Referenced state is out-of-bounds for shift \"%d\" (max %d)";
+  public static final String OUT_OF_BOUNDS_SYMBOL = "InvalidFileFormat: Referenced symbol is out-of-bounds \"%d\" (max %d)";
+  public static final String INVALID_GRAMMAR_TABLE = "InvalidFileFormat: Not a compiled grammar table of version %d";
 
   public static final String ROOT_REDUCTION = "Encountered unexpected format by [%s]";
   public static final String SHIFT_EXPECTED = "Encountered unexpected token \"%s\" in text [%s] \nIn file at line %d, column %d";
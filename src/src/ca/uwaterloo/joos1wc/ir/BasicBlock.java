@@ -0,0 +1,96 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of instructions that is only entered at the top and left at the bottom. The phis come first and the last
+ * instruction is a terminator: a jump to the one successor, a branch to the first successor when its operand is true
+ * and to the second when it is false, or a return. The operands of a phi follow the order of the predecessors.
+ */
+public class BasicBlock {
+  public final List<Instruction> instructions = new ArrayList<Instruction>();
+  public final List<BasicBlock> predecessors = new ArrayList<BasicBlock>();
+  public final List<BasicBlock> successors = new ArrayList<BasicBlock>();
+
+  // set by ControlFlowGraph.number and ControlFlowGraph.findDominators
+  public int id;
+  public BasicBlock dominator;
+  public int loopDepth;
+
+  public Instruction getTerminator() {
+    if (instructions.isEmpty()) {
+      return null;
+    }
+    Instruction last = instructions.get(instructions.size() - 1);
+    return last.opcode.isTerminator() ? last : null;
+  }
+
+  public boolean isTerminated() {
+    return getTerminator() != null;
+  }
+
+  /**
+   * @return the index of the first instruction that is not a phi
+   */
+  public int getFirstNonPhi() {
+    int i = 0;
+    while (i < instructions.size() && instructions.get(i).opcode == Instruction.Opcode.PHI) {
+      i++;
+    }
+    return i;
+  }
+
+  public Instruction add(Instruction instruction) {
+    instruction.block = this;
+    instructions.add(instruction);
+    return instruction;
+  }
+
+  /**
+   * Adds the instruction just before the terminator.
+   */
+  public Instruction addBeforeTerminator(Instruction instruction) {
+    instruction.block = this;
+    instructions.add(isTerminated() ? instructions.size() - 1 : instructions.size(), instruction);
+    return instruction;
+  }
+
+  public void addSuccessor(BasicBlock successor) {
+    successors.add(successor);
+    successor.predecessors.add(this);
+  }
+
+  /**
+   * Removes the edge to a successor, and the operands its phis have for this block.
+   */
+  public void removeSuccessor(BasicBlock successor) {
+    successors.remove(successor);
+    int index = successor.predecessors.indexOf(this);
+    successor.predecessors.remove(index);
+    for (Instruction phi : successor.instructions) {
+      if (phi.opcode != Instruction.Opcode.PHI) {
+        break;
+      }
+      phi.operands.remove(index);
+    }
+  }
+
+  /**
+   * @return whether this block dominates the other: every path from the entry to it goes through this block
+   */
+  public boolean dominates(BasicBlock other) {
+    for (BasicBlock block = other; block != null; block = block.dominator) {
+      if (block == this) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "b" + id;
+  }
+
+}
@@ -0,0 +1,252 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+
+/**
+ * The basic blocks of one method. The blocks are kept in reverse postorder from the entry, so a block comes before
+ * every block it dominates, and the blocks of a loop follow its header.
+ */
+public class ControlFlowGraph {
+  public final MethodDeclaration method;
+  public final BasicBlock entry = new BasicBlock();
+  public final List<BasicBlock> blocks = new ArrayList<BasicBlock>();
+
+  /**
+   * The blocks that reach the header of a loop from inside it, and the header, which dominates them.
+   */
+  public static class Loop {
+    public final BasicBlock header;
+    public final Set<BasicBlock> blocks = new LinkedHashSet<BasicBlock>();
+
+    Loop(BasicBlock header) {
+      this.header = header;
+    }
+
+    public boolean contains(Instruction instruction) {
+      return blocks.contains(instruction.block);
+    }
+  }
+
+  public ControlFlowGraph(MethodDeclaration method) {
+    this.method = method;
+    blocks.add(entry);
+  }
+
+  /**
+   * Drops the blocks that cannot be reached from the entry, puts the rest in reverse postorder and numbers the blocks
+   * and instructions in that order.
+   */
+  public void number() {
+    List<BasicBlock> order = new ArrayList<BasicBlock>();
+    Set<BasicBlock> visited = Collections.newSetFromMap(new IdentityHashMap<BasicBlock, Boolean>());
+    // an iterative depth first search, with the index of the next successor to visit of each block on the stack
+    Deque<BasicBlock> stack = new ArrayDeque<BasicBlock>();
+    Deque<Integer> next = new ArrayDeque<Integer>();
+    visited.add(entry);
+    stack.push(entry);
+    next.push(0);
+    while (!stack.isEmpty()) {
+      BasicBlock block = stack.peek();
+      int i = next.pop();
+      if (i < block.successors.size()) {
+        next.push(i + 1);
+        // the first successor is visited last, so that it comes right after the block, as the code falls through to it
+        BasicBlock successor = block.successors.get(block.successors.size() - 1 - i);
+        if (visited.add(successor)) {
+          stack.push(successor);
+          next.push(0);
+        }
+      } else {
+        stack.pop();
+        order.add(block);
+      }
+    }
+    Collections.reverse(order);
+
+    for (BasicBlock block : blocks) {
+      if (!visited.contains(block)) {
+        for (BasicBlock successor : new ArrayList<BasicBlock>(block.successors)) {
+          block.removeSuccessor(successor);
+        }
+      }
+    }
+    blocks.clear();
+    blocks.addAll(order);
+
+    int id = 0;
+    for (int i = 0; i < blocks.size(); i++) {
+      BasicBlock block = blocks.get(i);
+      block.id = i;
+      for (Instruction instruction : block.instructions) {
+        instruction.id = id++;
+      }
+    }
+  }
+
+  /**
+   * @return the number of instructions, and one more than the largest id, after number
+   */
+  public int size() {
+    int size = 0;
+    for (BasicBlock block : blocks) {
+      size += block.instructions.size();
+    }
+    return size;
+  }
+
+  /**
+   * Finds the immediate dominator of every block, as in Cooper, Harvey and Kennedy, "A Simple, Fast Dominance
+   * Algorithm". The blocks must be numbered.
+   */
+  public void findDominators() {
+    for (BasicBlock block : blocks) {
+      block.dominator = null;
+    }
+    entry.dominator = entry;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : blocks) {
+        if (block == entry) {
+          continue;
+        }
+        BasicBlock dominator = null;
+        for (BasicBlock predecessor : block.predecessors) {
+          if (predecessor.dominator == null) {
+            continue;
+          }
+          dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+        }
+        if (dominator != block.dominator) {
+          block.dominator = dominator;
+          changed = true;
+        }
+      }
+    }
+    entry.dominator = null;
+  }
+
+  private BasicBlock intersect(BasicBlock a, BasicBlock b) {
+    while (a != b) {
+      while (a.id > b.id) {
+        a = a.dominator;
+      }
+      while (b.id > a.id) {
+        b = b.dominator;
+      }
+    }
+    return a;
+  }
+
+  /**
+   * Finds the natural loops and sets the loop depth of every block. The blocks must be numbered and have their
+   * dominators. Loops with the same header are merged.
+   *
+   * @return the loops, inner loops before the loops around them
+   */
+  public List<Loop> findLoops() {
+    // in the order of the headers, so loops of the same size keep the same order on every run
+    Map<BasicBlock, Loop> loops = new LinkedHashMap<BasicBlock, Loop>();
+    for (BasicBlock block : blocks) {
+      block.loopDepth = 0;
+      for (BasicBlock successor : block.successors) {
+        if (!successor.dominates(block)) {
+          continue;
+        }
+        // a back edge: the loop is the header and every block reaching the back edge without going through it
+        Loop loop = loops.get(successor);
+        if (loop == null) {
+          loop = new Loop(successor);
+          loop.blocks.add(successor);
+          loops.put(successor, loop);
+        }
+        Deque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+        if (loop.blocks.add(block)) {
+          work.push(block);
+        }
+        while (!work.isEmpty()) {
+          for (BasicBlock predecessor : work.pop().predecessors) {
+            if (loop.blocks.add(predecessor)) {
+              work.push(predecessor);
+            }
+          }
+        }
+      }
+    }
+
+    List<Loop> result = new ArrayList<Loop>(loops.values());
+    for (Loop loop : result) {
+      for (BasicBlock block : loop.blocks) {
+        block.loopDepth++;
+      }
+    }
+    Collections.sort(result, new Comparator<Loop>() {
+      @Override
+      public int compare(Loop a, Loop b) {
+        return a.blocks.size() - b.blocks.size();
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Replaces the operands that are keys of the map with their values, following chains of replacements, and removes
+   * the replaced instructions.
+   */
+  public void replace(Map<Instruction, Instruction> replacements) {
+    if (replacements.isEmpty()) {
+      return;
+    }
+    for (BasicBlock block : blocks) {
+      for (Instruction instruction : block.instructions) {
+        for (int i = 0; i < instruction.operands.size(); i++) {
+          Instruction operand = instruction.operands.get(i);
+          Instruction replacement = replacements.get(operand);
+          if (replacement == null) {
+            continue;
+          }
+          while (replacements.containsKey(replacement)) {
+            replacement = replacements.get(replacement);
+          }
+          instruction.operands.set(i, replacement);
+        }
+      }
+    }
+    for (Instruction replaced : replacements.keySet()) {
+      if (replaced.block != null) {
+        replaced.block.instructions.remove(replaced);
+        replaced.block = null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(method.getGlobalName()).append('\n');
+    for (BasicBlock block : blocks) {
+      sb.append(block).append(':');
+      for (BasicBlock predecessor : block.predecessors) {
+        sb.append(' ').append(predecessor);
+      }
+      sb.append('\n');
+      for (Instruction instruction : block.instructions) {
+        sb.append("  ").append(instruction).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+}
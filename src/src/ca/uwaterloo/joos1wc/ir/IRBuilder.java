@@ -0,0 +1,674 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.ast.Block;
+import ca.uwaterloo.joos1wc.ast.Expression;
+import ca.uwaterloo.joos1wc.ast.INamedEntityNode;
+import ca.uwaterloo.joos1wc.ast.INamedEntityNode.EntityType;
+import ca.uwaterloo.joos1wc.ast.Literal;
+import ca.uwaterloo.joos1wc.ast.PrimitiveType;
+import ca.uwaterloo.joos1wc.ast.QualifiedName;
+import ca.uwaterloo.joos1wc.ast.SimpleName;
+import ca.uwaterloo.joos1wc.ast.Type.FormalType;
+import ca.uwaterloo.joos1wc.ast.declaration.FieldDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.IVariableDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.ast.declaration.VariableDeclaration;
+import ca.uwaterloo.joos1wc.ast.expression.ArrayAccess;
+import ca.uwaterloo.joos1wc.ast.expression.ArrayCreation;
+import ca.uwaterloo.joos1wc.ast.expression.Assignment;
+import ca.uwaterloo.joos1wc.ast.expression.CastExpression;
+import ca.uwaterloo.joos1wc.ast.expression.ClassInstanceCreation;
+import ca.uwaterloo.joos1wc.ast.expression.FieldAccess;
+import ca.uwaterloo.joos1wc.ast.expression.InfixExpression;
+import ca.uwaterloo.joos1wc.ast.expression.InstanceofExpression;
+import ca.uwaterloo.joos1wc.ast.expression.MethodInvocation;
+import ca.uwaterloo.joos1wc.ast.expression.ParenthesizedExpression;
+import ca.uwaterloo.joos1wc.ast.expression.PrefixExpression;
+import ca.uwaterloo.joos1wc.ast.expression.ThisExpression;
+import ca.uwaterloo.joos1wc.ast.expression.VariableDeclarationExpression;
+import ca.uwaterloo.joos1wc.ast.literal.BooleanLiteral;
+import ca.uwaterloo.joos1wc.ast.literal.CharLiteral;
+import ca.uwaterloo.joos1wc.ast.literal.IntLiteral;
+import ca.uwaterloo.joos1wc.ast.literal.StringLiteral;
+import ca.uwaterloo.joos1wc.ast.statement.EmptyStatement;
+import ca.uwaterloo.joos1wc.ast.statement.ExpressionStatement;
+import ca.uwaterloo.joos1wc.ast.statement.ForStatement;
+import ca.uwaterloo.joos1wc.ast.statement.IfThenStatement;
+import ca.uwaterloo.joos1wc.ast.statement.ReturnStatement;
+import ca.uwaterloo.joos1wc.ast.statement.Statement;
+import ca.uwaterloo.joos1wc.ast.statement.VariableDeclarationStatement;
+import ca.uwaterloo.joos1wc.ast.statement.WhileStatement;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.diagnostics.CastException;
+import ca.uwaterloo.joos1wc.diagnostics.ConstantEvaluationException;
+import ca.uwaterloo.joos1wc.ir.Instruction.Opcode;
+
+/**
+ * Builds the control flow graph of a method body from its type checked tree, evaluating everything in the order the
+ * tree is generated in. The graph is put in SSA form as it is built, as in Braun et al., "Simple and Efficient
+ * Construction of Static Single Assignment Form": a read of a variable looks for its last assignment back through the
+ * predecessors, and makes a phi where they meet. A block is sealed once all its predecessors are known, and until then
+ * its phis wait for their operands. The phis that turn out to be trivial are left for the copy propagation of
+ * IROptimizer.
+ */
+public class IRBuilder {
+  private final MethodDeclaration method;
+  private final ControlFlowGraph graph;
+  private BasicBlock current;
+  private Instruction thisValue = null;
+
+  // the value each variable has at the end of each block, as far as it was built
+  private final Map<BasicBlock, Map<IVariableDeclaration, Instruction>> definitions =
+      new IdentityHashMap<BasicBlock, Map<IVariableDeclaration, Instruction>>();
+  private final Map<BasicBlock, Map<IVariableDeclaration, Instruction>> incompletePhis =
+      new IdentityHashMap<BasicBlock, Map<IVariableDeclaration, Instruction>>();
+  private final Set<BasicBlock> sealed = Collections.newSetFromMap(new IdentityHashMap<BasicBlock, Boolean>());
+
+  /**
+   * Thrown for a tree the builder does not expect, so that the method is generated from the tree instead.
+   */
+  private static class UnsupportedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedException(Object node) {
+      super(String.valueOf(node));
+    }
+  }
+
+  private IRBuilder(MethodDeclaration method) {
+    this.method = method;
+    this.graph = new ControlFlowGraph(method);
+    this.current = graph.entry;
+  }
+
+  /**
+   * @return the graph of the method, numbered, or null if it has no body or the builder cannot handle it
+   */
+  public static ControlFlowGraph build(MethodDeclaration method) {
+    if (method.body == null || method.isNative()) {
+      return null;
+    }
+    IRBuilder builder = new IRBuilder(method);
+    try {
+      builder.buildBody();
+    } catch (UnsupportedException e) {
+      return null;
+    }
+    builder.graph.number();
+    return builder.graph;
+  }
+
+  private void buildBody() {
+    sealed.add(graph.entry);
+    for (int i = 0; i < method.formalParams.size(); i++) {
+      VariableDeclaration param = method.formalParams.get(i);
+      Instruction value = emit(Opcode.PARAM);
+      value.constant = i;
+      value.target = param;
+      value.name = param.name;
+      write(param, current, value);
+    }
+    if (!method.isStatic()) {
+      thisValue = emit(Opcode.THIS);
+      thisValue.name = "this";
+    }
+
+    statement(method.body);
+    if (!current.isTerminated()) {
+      // the end of a method returning a value is never reached
+      emit(Opcode.RETURN);
+    }
+  }
+
+  /*
+   * Statements
+   */
+
+  private void statement(Statement node) {
+    if (node == null) {
+      return;
+    } else if (node instanceof Block) {
+      for (Statement statement : ((Block) node).statements) {
+        statement(statement);
+      }
+    } else if (node instanceof ExpressionStatement) {
+      expression(((ExpressionStatement) node).expr);
+    } else if (node instanceof VariableDeclarationStatement) {
+      VariableDeclarationStatement decl = (VariableDeclarationStatement) node;
+      declare(decl, decl.name, decl.initExpr);
+    } else if (node instanceof IfThenStatement) {
+      ifThen((IfThenStatement) node);
+    } else if (node instanceof WhileStatement) {
+      WhileStatement loop = (WhileStatement) node;
+      loop(null, loop.expr, null, loop.statement);
+    } else if (node instanceof ForStatement) {
+      ForStatement loop = (ForStatement) node;
+      loop(loop.forInit, loop.condExpr, loop.forUpdate, loop.statement);
+    } else if (node instanceof ReturnStatement) {
+      Expression expr = ((ReturnStatement) node).expr;
+      if (expr != null) {
+        emit(Opcode.RETURN, expression(expr));
+      } else {
+        emit(Opcode.RETURN);
+      }
+      // anything after the return is unreachable, and dropped when the graph is numbered
+      current = newBlock();
+      sealed.add(current);
+    } else if (!(node instanceof EmptyStatement)) {
+      throw new UnsupportedException(node);
+    }
+  }
+
+  private void ifThen(IfThenStatement node) {
+    BasicBlock thenBlock = newBlock();
+    BasicBlock join = newBlock();
+    BasicBlock elseBlock = node.falseStatement != null ? newBlock() : join;
+
+    condition(node.expr, thenBlock, elseBlock);
+    seal(thenBlock);
+    current = thenBlock;
+    statement(node.trueStatement);
+    jump(join);
+    if (elseBlock != join) {
+      seal(elseBlock);
+      current = elseBlock;
+      statement(node.falseStatement);
+      jump(join);
+    }
+    seal(join);
+    current = join;
+  }
+
+  private void loop(Expression init, Expression condition, Expression update, Statement body) {
+    if (init != null) {
+      expression(init);
+    }
+    BasicBlock header = newBlock();
+    BasicBlock bodyBlock = newBlock();
+    BasicBlock exit = newBlock();
+    jump(header);
+
+    current = header;
+    if (condition != null) {
+      condition(condition, bodyBlock, exit);
+    } else {
+      jump(bodyBlock);
+    }
+    seal(bodyBlock);
+    current = bodyBlock;
+    statement(body);
+    if (update != null) {
+      expression(update);
+    }
+    jump(header);
+    seal(header);
+    seal(exit);
+    current = exit;
+  }
+
+  /**
+   * Ends the current block with a branch on the condition, short circuiting && and || into more blocks.
+   */
+  private void condition(Expression node, BasicBlock whenTrue, BasicBlock whenFalse) {
+    while (node instanceof ParenthesizedExpression) {
+      node = ((ParenthesizedExpression) node).expr;
+    }
+    Literal constant = constantValue(node);
+    if (constant instanceof BooleanLiteral) {
+      jump(((BooleanLiteral) constant).valueOf() ? whenTrue : whenFalse);
+      return;
+    }
+
+    if (node instanceof PrefixExpression
+        && ((PrefixExpression) node).operator == PrefixExpression.PrefixOperator.BANG) {
+      condition(((PrefixExpression) node).expr, whenFalse, whenTrue);
+      return;
+    }
+    if (node instanceof InfixExpression) {
+      InfixExpression infix = (InfixExpression) node;
+      if (infix.operator == InfixExpression.InfixOperator.LOGAND
+          || infix.operator == InfixExpression.InfixOperator.LOGOR) {
+        BasicBlock rhs = newBlock();
+        if (infix.operator == InfixExpression.InfixOperator.LOGAND) {
+          condition(infix.lhs, rhs, whenFalse);
+        } else {
+          condition(infix.lhs, whenTrue, rhs);
+        }
+        seal(rhs);
+        current = rhs;
+        condition(infix.rhs, whenTrue, whenFalse);
+        return;
+      }
+    }
+
+    Instruction branch = emit(Opcode.BRANCH, expression(node));
+    branch.block.addSuccessor(whenTrue);
+    branch.block.addSuccessor(whenFalse);
+  }
+
+  private void jump(BasicBlock target) {
+    if (!current.isTerminated()) {
+      emit(Opcode.JUMP);
+      current.addSuccessor(target);
+    }
+  }
+
+  /*
+   * Expressions
+   */
+
+  private Instruction expression(Expression node) {
+    if (node instanceof ParenthesizedExpression) {
+      return expression(((ParenthesizedExpression) node).expr);
+    }
+    if (node instanceof Literal || node instanceof InfixExpression || node instanceof PrefixExpression
+        || node instanceof CastExpression) {
+      // like the code generator, fold constant expressions first
+      Literal constant = constantValue(node);
+      if (constant != null) {
+        return constant(constant);
+      }
+    }
+
+    if (node instanceof SimpleName) {
+      return simpleName((SimpleName) node);
+    } else if (node instanceof QualifiedName) {
+      return qualifiedName((QualifiedName) node);
+    } else if (node instanceof ThisExpression) {
+      return thisValue;
+    } else if (node instanceof InfixExpression) {
+      return infix((InfixExpression) node);
+    } else if (node instanceof PrefixExpression) {
+      PrefixExpression prefix = (PrefixExpression) node;
+      Instruction value = expression(prefix.expr);
+      return emit(prefix.operator == PrefixExpression.PrefixOperator.MINUS ? Opcode.NEG : Opcode.NOT, value);
+    } else if (node instanceof CastExpression) {
+      return cast((CastExpression) node);
+    } else if (node instanceof Assignment) {
+      return assignment((Assignment) node);
+    } else if (node instanceof ArrayAccess) {
+      ArrayAccess access = (ArrayAccess) node;
+      Instruction array = expression(access.array);
+      Instruction index = checkIndex(array, access.index);
+      return emit(Opcode.GET_ELEMENT, array, index);
+    } else if (node instanceof FieldAccess) {
+      FieldAccess access = (FieldAccess) node;
+      return getField(expression(access.expr), access.declNode);
+    } else if (node instanceof MethodInvocation) {
+      return call((MethodInvocation) node);
+    } else if (node instanceof ClassInstanceCreation) {
+      ClassInstanceCreation creation = (ClassInstanceCreation) node;
+      Instruction[] args = new Instruction[creation.args.size()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = expression(creation.args.get(i));
+      }
+      Instruction instance = emit(Opcode.NEW, args);
+      instance.target = creation;
+      return instance;
+    } else if (node instanceof ArrayCreation) {
+      ArrayCreation creation = (ArrayCreation) node;
+      Instruction array = emit(Opcode.NEW_ARRAY, expression(creation.dimExpr));
+      array.target = creation.type.type.getFormalType();
+      return array;
+    } else if (node instanceof InstanceofExpression) {
+      InstanceofExpression test = (InstanceofExpression) node;
+      Instruction result = emit(Opcode.INSTANCEOF, expression(test.expr));
+      result.target = test.referenceType.getFormalType();
+      return result;
+    } else if (node instanceof VariableDeclarationExpression) {
+      VariableDeclarationExpression decl = (VariableDeclarationExpression) node;
+      return declare(decl, decl.name, decl.initExpr);
+    }
+    throw new UnsupportedException(node);
+  }
+
+  private Instruction declare(IVariableDeclaration decl, String name, Expression initExpr) {
+    Instruction value = expression(initExpr);
+    if (value.name == null) {
+      value.name = name;
+    }
+    write(decl, current, value);
+    return value;
+  }
+
+  private Instruction simpleName(SimpleName node) {
+    INamedEntityNode decl = node.declNode;
+    if (decl != null && decl.getEntityType() == EntityType.VARIABLE) {
+      return read((IVariableDeclaration) decl, current);
+    } else if (decl != null && decl.getEntityType() == EntityType.FIELD) {
+      FieldDeclaration field = (FieldDeclaration) decl;
+      return getField(field.isStatic() ? null : thisValue, field);
+    }
+    throw new UnsupportedException(node);
+  }
+
+  private Instruction qualifiedName(QualifiedName node) {
+    INamedEntityNode decl = node.declNode;
+    if (decl == null || decl.getEntityType() != EntityType.FIELD) {
+      throw new UnsupportedException(node);
+    }
+    FieldDeclaration field = (FieldDeclaration) decl;
+    // the qualifier of a static field names its type, and is not evaluated
+    Instruction object = isStatic(field) ? null : expression(node.qualifier);
+    return getField(object, field);
+  }
+
+  private Instruction getField(Instruction object, FieldDeclaration field) {
+    Instruction value;
+    if (field == FieldDeclaration.LENGTH_FIELD) {
+      value = emit(Opcode.LENGTH, object);
+    } else if (field.isStatic()) {
+      value = emit(Opcode.GET_STATIC);
+    } else {
+      value = emit(Opcode.GET_FIELD, object);
+    }
+    value.target = field;
+    value.name = field.name;
+    return value;
+  }
+
+  private Instruction putField(Instruction object, FieldDeclaration field, Instruction value) {
+    Instruction store = field.isStatic() ? emit(Opcode.PUT_STATIC, value) : emit(Opcode.PUT_FIELD, object, value);
+    store.target = field;
+    store.name = field.name;
+    return value;
+  }
+
+  private static boolean isStatic(FieldDeclaration field) {
+    return field != FieldDeclaration.LENGTH_FIELD && field.isStatic();
+  }
+
+  /**
+   * Loads the length of the array before evaluating the index, as the tree is generated, and checks the index.
+   *
+   * @return the index
+   */
+  private Instruction checkIndex(Instruction array, Expression indexExpr) {
+    Instruction length = emit(Opcode.LENGTH, array);
+    length.target = FieldDeclaration.LENGTH_FIELD;
+    length.name = FieldDeclaration.ARRAY_LENGTH;
+    Instruction index = expression(indexExpr);
+    emit(Opcode.CHECK_INDEX, index, length);
+    return index;
+  }
+
+  private Instruction assignment(Assignment node) {
+    Expression lhs = node.lhs;
+    while (lhs instanceof ParenthesizedExpression) {
+      lhs = ((ParenthesizedExpression) lhs).expr;
+    }
+
+    if (lhs instanceof SimpleName) {
+      INamedEntityNode decl = ((SimpleName) lhs).declNode;
+      if (decl != null && decl.getEntityType() == EntityType.VARIABLE) {
+        Instruction value = expression(node.rhs);
+        write((IVariableDeclaration) decl, current, value);
+        return value;
+      } else if (decl != null && decl.getEntityType() == EntityType.FIELD) {
+        FieldDeclaration field = (FieldDeclaration) decl;
+        return putField(field.isStatic() ? null : thisValue, field, expression(node.rhs));
+      }
+    } else if (lhs instanceof QualifiedName) {
+      INamedEntityNode decl = ((QualifiedName) lhs).declNode;
+      if (decl != null && decl.getEntityType() == EntityType.FIELD) {
+        FieldDeclaration field = (FieldDeclaration) decl;
+        Instruction object = isStatic(field) ? null : expression(((QualifiedName) lhs).qualifier);
+        return putField(object, field, expression(node.rhs));
+      }
+    } else if (lhs instanceof FieldAccess) {
+      FieldAccess access = (FieldAccess) lhs;
+      Instruction object = expression(access.expr);
+      return putField(object, access.declNode, expression(node.rhs));
+    } else if (lhs instanceof ArrayAccess) {
+      ArrayAccess access = (ArrayAccess) lhs;
+      Instruction array = expression(access.array);
+      Instruction index = checkIndex(array, access.index);
+      Instruction value = expression(node.rhs);
+      emit(Opcode.PUT_ELEMENT, array, index, value);
+      return value;
+    }
+    throw new UnsupportedException(node);
+  }
+
+  private Instruction infix(InfixExpression node) {
+    switch (node.operator) {
+    case LOGAND:
+    case LOGOR: {
+      // as a value, the result of the branches on the condition
+      BasicBlock whenTrue = newBlock();
+      BasicBlock whenFalse = newBlock();
+      BasicBlock join = newBlock();
+      condition(node, whenTrue, whenFalse);
+      seal(whenTrue);
+      seal(whenFalse);
+      current = whenTrue;
+      Instruction trueValue = constant(1);
+      jump(join);
+      current = whenFalse;
+      Instruction falseValue = constant(0);
+      jump(join);
+      seal(join);
+      current = join;
+      Instruction phi = new Instruction(Opcode.PHI, trueValue, falseValue);
+      phi.block = join;
+      join.instructions.add(0, phi);
+      return phi;
+    }
+    default:
+    }
+
+    Instruction lhs = expression(node.lhs);
+    Instruction rhs = expression(node.rhs);
+    switch (node.operator) {
+    case MULT:
+      return emit(Opcode.MUL, lhs, rhs);
+    case DIV:
+      return emit(Opcode.DIV, lhs, rhs);
+    case MOD:
+      return emit(Opcode.MOD, lhs, rhs);
+    case PLUS:
+      if (!node.expressionType.isPrimitive()) {
+        Instruction concat = emit(Opcode.CONCAT, lhs, rhs);
+        concat.target = node;
+        return concat;
+      }
+      return emit(Opcode.ADD, lhs, rhs);
+    case MINUS:
+      return emit(Opcode.SUB, lhs, rhs);
+    case BITAND:
+      return emit(Opcode.AND, lhs, rhs);
+    case BITOR:
+      return emit(Opcode.OR, lhs, rhs);
+    case LT:
+      return compare(Condition.L, lhs, rhs);
+    case GT:
+      return compare(Condition.G, lhs, rhs);
+    case LTE:
+      return compare(Condition.LE, lhs, rhs);
+    case GTE:
+      return compare(Condition.GE, lhs, rhs);
+    case DEQUAL:
+      return compare(Condition.E, lhs, rhs);
+    case NEQ:
+      return compare(Condition.NE, lhs, rhs);
+    default:
+      throw new UnsupportedException(node);
+    }
+  }
+
+  private Instruction compare(Condition condition, Instruction lhs, Instruction rhs) {
+    Instruction compare = emit(Opcode.CMP, lhs, rhs);
+    compare.condition = condition;
+    return compare;
+  }
+
+  private Instruction cast(CastExpression node) {
+    Instruction value = expression(node.expr);
+    FormalType exprType = node.expr.expressionType;
+    FormalType castType = node.type.getFormalType();
+
+    if (!castType.isPrimitive()) {
+      Instruction check = emit(Opcode.CHECK_CAST, value);
+      check.target = castType;
+      check.name = node.token.getImage();
+      // the reference itself is the value of the cast
+      return value;
+    } else if (!exprType.isPrimitive()) {
+      return value;
+    }
+
+    // the same conversions as the code generator makes
+    boolean fromByte = exprType.code == PrimitiveType.Code.BYTE;
+    switch (castType.code) {
+    case BYTE:
+      return emit(Opcode.AND, value, constant(0xff));
+    case CHAR:
+    case SHORT:
+      return emit(Opcode.AND, fromByte ? emit(Opcode.EXTEND_BYTE, value) : value, constant(0xffff));
+    case INT:
+      return emit(fromByte ? Opcode.EXTEND_BYTE : Opcode.EXTEND_SHORT, value);
+    default:
+      return value;
+    }
+  }
+
+  private Instruction call(MethodInvocation node) {
+    MethodDeclaration method = node.methodDecl;
+    int receivers = method.isStatic() ? 0 : 1;
+    Instruction[] operands = new Instruction[receivers + node.args.size()];
+    if (!method.isStatic()) {
+      if (node.expr != null) {
+        operands[0] = expression(node.expr);
+      } else if (node.qualifier != null) {
+        operands[0] = expression(node.qualifier);
+      } else {
+        operands[0] = thisValue;
+      }
+    }
+    for (int i = 0; i < node.args.size(); i++) {
+      operands[receivers + i] = expression(node.args.get(i));
+    }
+    Instruction call = emit(Opcode.CALL, operands);
+    call.target = method;
+    call.name = method.name;
+    return call;
+  }
+
+  private static Literal constantValue(Expression node) {
+    try {
+      return node.constantValue();
+    } catch (ConstantEvaluationException cee) {
+      // as the code generator does
+      throw new RuntimeException(cee);
+    } catch (CastException ce) {
+      throw new RuntimeException(ce);
+    }
+  }
+
+  private Instruction constant(Literal literal) {
+    if (literal instanceof StringLiteral) {
+      Instruction string = emit(Opcode.STRING);
+      string.target = ((StringLiteral) literal).valueOf();
+      return string;
+    } else if (literal instanceof IntLiteral) {
+      return constant(((IntLiteral) literal).valueOf());
+    } else if (literal instanceof CharLiteral) {
+      return constant((int) ((CharLiteral) literal).valueOf());
+    } else if (literal instanceof BooleanLiteral) {
+      return constant(((BooleanLiteral) literal).valueOf() ? 1 : 0);
+    }
+    // null
+    return constant(0);
+  }
+
+  private Instruction constant(int value) {
+    Instruction constant = emit(Opcode.CONST);
+    constant.constant = value;
+    return constant;
+  }
+
+  private Instruction emit(Opcode opcode, Instruction... operands) {
+    return current.add(new Instruction(opcode, operands));
+  }
+
+  private BasicBlock newBlock() {
+    BasicBlock block = new BasicBlock();
+    graph.blocks.add(block);
+    return block;
+  }
+
+  /*
+   * SSA construction
+   */
+
+  private void write(IVariableDeclaration variable, BasicBlock block, Instruction value) {
+    Map<IVariableDeclaration, Instruction> values = definitions.get(block);
+    if (values == null) {
+      values = new IdentityHashMap<IVariableDeclaration, Instruction>();
+      definitions.put(block, values);
+    }
+    values.put(variable, value);
+  }
+
+  private Instruction read(IVariableDeclaration variable, BasicBlock block) {
+    Map<IVariableDeclaration, Instruction> values = definitions.get(block);
+    Instruction value = values != null ? values.get(variable) : null;
+    if (value != null) {
+      return value;
+    }
+
+    if (!sealed.contains(block)) {
+      value = newPhi(block);
+      Map<IVariableDeclaration, Instruction> phis = incompletePhis.get(block);
+      if (phis == null) {
+        // completed in the order they were made, since completing one can make more phis
+        phis = new LinkedHashMap<IVariableDeclaration, Instruction>();
+        incompletePhis.put(block, phis);
+      }
+      phis.put(variable, value);
+    } else if (block.predecessors.size() == 1) {
+      value = read(variable, block.predecessors.get(0));
+    } else if (block.predecessors.isEmpty()) {
+      // only in unreachable code, since every variable is assigned before it is read
+      value = new Instruction(Opcode.CONST);
+      value.block = block;
+      block.instructions.add(0, value);
+    } else {
+      value = newPhi(block);
+      write(variable, block, value);
+      addPhiOperands(variable, value);
+    }
+    write(variable, block, value);
+    return value;
+  }
+
+  private Instruction newPhi(BasicBlock block) {
+    Instruction phi = new Instruction(Opcode.PHI);
+    phi.block = block;
+    block.instructions.add(0, phi);
+    return phi;
+  }
+
+  private void addPhiOperands(IVariableDeclaration variable, Instruction phi) {
+    for (BasicBlock predecessor : phi.block.predecessors) {
+      phi.operands.add(read(variable, predecessor));
+    }
+  }
+
+  private void seal(BasicBlock block) {
+    Map<IVariableDeclaration, Instruction> phis = incompletePhis.remove(block);
+    if (phis != null) {
+      for (Map.Entry<IVariableDeclaration, Instruction> entry : phis.entrySet()) {
+        addPhiOperands(entry.getKey(), entry.getValue());
+      }
+    }
+    sealed.add(block);
+  }
+
+}
@@ -0,0 +1,779 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.ast.declaration.MethodDeclaration;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.ir.ControlFlowGraph.Loop;
+import ca.uwaterloo.joos1wc.ir.Instruction.Opcode;
+
+/**
+ * The scalar optimizations made on the graph of a method in SSA form. Each pass is simple by itself, and they are run
+ * in turn until none of them changes anything, since each finds work for the others: a folded branch leaves phis with
+ * one operand, a copy makes two expressions the same, and a hoisted expression makes another in the loop redundant.
+ *
+ * Nothing that can fault is moved or dropped, except for an array length that was already loaded on every path, or
+ * that is loaded at the top of a loop before anything else the loop does.
+ */
+public class IROptimizer {
+  // each round that changes anything is usually followed by one that changes nothing
+  private static final int MAX_ROUNDS = 8;
+
+  public static enum Pass {
+    // phi(a, a) => a, and x + 0, x * 1 and the like => x
+    COPIES("copies"),
+    // an operation on constants => its value, and a branch on a constant => a jump
+    CONSTANTS("constants"),
+    // an expression computed again where it was already computed on every path => the first value
+    COMMON_SUBEXPRESSIONS("cse"),
+    // an expression of values from outside a loop => computed once before the loop
+    LOOP_INVARIANTS("licm"),
+    // an instruction whose value is never used and that has no effect => nothing
+    DEAD_CODE("dce"),
+    // the check that the receiver of a call is not null, when it cannot be => nothing
+    NULL_CHECKS("null-checks"),
+    // the check that an array index is less than the length, when it already was on every path => nothing
+    BOUNDS_CHECKS("bounds-checks");
+
+    public final String name;
+
+    private Pass(String name) {
+      this.name = name;
+    }
+  }
+
+  private final int[] counts = new int[Pass.values().length];
+
+  /**
+   * @return the number of instructions a pass changed so far
+   */
+  public int getCount(Pass pass) {
+    return counts[pass.ordinal()];
+  }
+
+  /**
+   * Optimizes the graph and leaves it numbered, with its dominators and loops found.
+   */
+  public void optimize(ControlFlowGraph graph) {
+    for (int round = 0; round < MAX_ROUNDS; round++) {
+      boolean changed = propagateCopies(graph);
+      changed |= propagateConstants(graph);
+      graph.number();
+      graph.findDominators();
+      changed |= eliminateCommonSubexpressions(graph);
+      changed |= hoistLoopInvariants(graph);
+      changed |= eliminateDeadCode(graph);
+      if (!changed) {
+        break;
+      }
+    }
+    // once the lengths and indexes are the same values wherever they can be
+    graph.number();
+    graph.findDominators();
+    eliminateChecks(graph);
+    graph.number();
+    graph.findDominators();
+    graph.findLoops();
+  }
+
+  /*
+   * Copy propagation
+   */
+
+  private boolean propagateCopies(ControlFlowGraph graph) {
+    boolean changed = false;
+    // a phi may only become a copy once the phis it uses are replaced
+    while (true) {
+      Map<Instruction, Instruction> copies = new IdentityHashMap<Instruction, Instruction>();
+      for (BasicBlock block : graph.blocks) {
+        for (Instruction instruction : block.instructions) {
+          Instruction copy = getCopied(instruction);
+          if (copy != null) {
+            copies.put(instruction, copy);
+          }
+        }
+      }
+      if (copies.isEmpty()) {
+        return changed;
+      }
+      counts[Pass.COPIES.ordinal()] += copies.size();
+      graph.replace(copies);
+      changed = true;
+    }
+  }
+
+  /**
+   * @return the value the instruction copies, or null if it computes a value of its own
+   */
+  private static Instruction getCopied(Instruction instruction) {
+    if (instruction.opcode == Opcode.PHI) {
+      Instruction same = null;
+      for (Instruction operand : instruction.operands) {
+        if (operand == instruction || operand == same) {
+          continue;
+        } else if (same != null) {
+          return null;
+        }
+        same = operand;
+      }
+      return same;
+    }
+    if (instruction.operands.size() != 2) {
+      return null;
+    }
+    Instruction a = instruction.getOperand(0), b = instruction.getOperand(1);
+    switch (instruction.opcode) {
+    case ADD:
+    case OR:
+      return b.isConstant(0) ? a : a.isConstant(0) ? b : null;
+    case SUB:
+      return b.isConstant(0) ? a : null;
+    case MUL:
+      return b.isConstant(1) ? a : a.isConstant(1) ? b : null;
+    case DIV:
+      return b.isConstant(1) ? a : null;
+    case AND:
+      return b.isConstant(-1) ? a : a.isConstant(-1) ? b : null;
+    default:
+      return null;
+    }
+  }
+
+  /*
+   * Constant propagation
+   */
+
+  private boolean propagateConstants(ControlFlowGraph graph) {
+    Map<Instruction, Instruction> constants = new IdentityHashMap<Instruction, Instruction>();
+    boolean folded = false;
+    for (BasicBlock block : graph.blocks) {
+      for (int i = 0; i < block.instructions.size(); i++) {
+        Instruction instruction = block.instructions.get(i);
+        if (instruction.opcode == Opcode.BRANCH && instruction.getOperand(0).isConstant()) {
+          // jump to the successor taken, which leaves the other for number to drop if nothing else reaches it
+          BasicBlock taken = block.successors.get(instruction.getOperand(0).constant != 0 ? 0 : 1);
+          BasicBlock notTaken = block.successors.get(instruction.getOperand(0).constant != 0 ? 1 : 0);
+          Instruction jump = new Instruction(Opcode.JUMP);
+          jump.block = block;
+          block.instructions.set(i, jump);
+          block.removeSuccessor(notTaken);
+          if (taken == notTaken) {
+            // both edges went to the same block; keep the one left
+            continue;
+          }
+          counts[Pass.CONSTANTS.ordinal()]++;
+          folded = true;
+          continue;
+        }
+
+        Integer value = fold(instruction);
+        if (value == null) {
+          continue;
+        }
+        Instruction constant = new Instruction(Opcode.CONST);
+        constant.constant = value;
+        constant.block = block;
+        // a phi is replaced by a constant after the phis of its block
+        int position = instruction.opcode == Opcode.PHI ? block.getFirstNonPhi() : i + 1;
+        block.instructions.add(position, constant);
+        constants.put(instruction, constant);
+      }
+    }
+    counts[Pass.CONSTANTS.ordinal()] += constants.size();
+    graph.replace(constants);
+    return folded || !constants.isEmpty();
+  }
+
+  /**
+   * @return the value of the instruction if its operands are constants, or null
+   */
+  private static Integer fold(Instruction instruction) {
+    if (instruction.operands.isEmpty()) {
+      return null;
+    }
+    for (Instruction operand : instruction.operands) {
+      if (!operand.isConstant()) {
+        return null;
+      }
+    }
+    int a = instruction.getOperand(0).constant;
+    int b = instruction.operands.size() > 1 ? instruction.getOperand(1).constant : 0;
+    switch (instruction.opcode) {
+    case PHI:
+      for (Instruction operand : instruction.operands) {
+        if (operand.constant != a) {
+          return null;
+        }
+      }
+      return a;
+    case ADD:
+      return a + b;
+    case SUB:
+      return a - b;
+    case MUL:
+      return a * b;
+    case DIV:
+      return instruction.isPure() ? a / b : null;
+    case MOD:
+      return instruction.isPure() ? a % b : null;
+    case AND:
+      return a & b;
+    case OR:
+      return a | b;
+    case NEG:
+      return -a;
+    case NOT:
+      return a ^ 1;
+    case EXTEND_BYTE:
+      return (int) (byte) a;
+    case EXTEND_SHORT:
+      return (int) (short) a;
+    case CMP:
+      return compare(instruction.condition, a, b) ? 1 : 0;
+    case INSTANCEOF:
+      // the only constant reference is null
+      return 0;
+    default:
+      return null;
+    }
+  }
+
+  private static boolean compare(Condition condition, int a, int b) {
+    switch (condition) {
+    case E:
+      return a == b;
+    case NE:
+      return a != b;
+    case L:
+      return a < b;
+    case LE:
+      return a <= b;
+    case G:
+      return a > b;
+    default:
+      return a >= b;
+    }
+  }
+
+  /*
+   * Common subexpression elimination
+   */
+
+  private boolean eliminateCommonSubexpressions(ControlFlowGraph graph) {
+    Map<BasicBlock, List<BasicBlock>> children = getDominatorTree(graph);
+    Map<Instruction, Instruction> redundant = new IdentityHashMap<Instruction, Instruction>();
+    Map<List<Object>, Instruction> available = new HashMap<List<Object>, Instruction>();
+
+    // walk the dominator tree, with the expressions each block made available to undo when leaving it, which are
+    // null until the block is visited
+    List<BasicBlock> stack = new ArrayList<BasicBlock>();
+    List<List<List<Object>>> added = new ArrayList<List<List<Object>>>();
+    stack.add(graph.entry);
+    added.add(null);
+    while (!stack.isEmpty()) {
+      int top = stack.size() - 1;
+      BasicBlock block = stack.get(top);
+      if (added.get(top) != null) {
+        for (List<Object> key : added.remove(top)) {
+          available.remove(key);
+        }
+        stack.remove(top);
+        continue;
+      }
+
+      List<List<Object>> keys = new ArrayList<List<Object>>();
+      for (Instruction instruction : block.instructions) {
+        List<Object> key = getKey(instruction, redundant);
+        if (key == null) {
+          continue;
+        }
+        Instruction previous = available.get(key);
+        if (previous != null) {
+          redundant.put(instruction, previous);
+        } else {
+          available.put(key, instruction);
+          keys.add(key);
+        }
+      }
+      added.set(top, keys);
+      List<BasicBlock> dominated = children.get(block);
+      if (dominated != null) {
+        for (BasicBlock child : dominated) {
+          stack.add(child);
+          added.add(null);
+        }
+      }
+    }
+
+    counts[Pass.COMMON_SUBEXPRESSIONS.ordinal()] += redundant.size();
+    graph.replace(redundant);
+    return !redundant.isEmpty();
+  }
+
+  /**
+   * @return what identifies the value of the instruction, or null if another instruction never has the same value
+   */
+  private static List<Object> getKey(Instruction instruction, Map<Instruction, Instruction> redundant) {
+    if (!instruction.isPure() && instruction.opcode != Opcode.LENGTH) {
+      return null;
+    }
+    if (instruction.opcode == Opcode.PARAM || instruction.opcode == Opcode.THIS) {
+      return null;
+    }
+
+    List<Object> key = new ArrayList<Object>();
+    key.add(instruction.opcode);
+    key.add(instruction.condition);
+    key.add(instruction.constant);
+    key.add(instruction.target == null ? null : new Identity(instruction.target));
+    List<Instruction> operands = new ArrayList<Instruction>(instruction.operands.size());
+    for (Instruction operand : instruction.operands) {
+      Instruction replacement = redundant.get(operand);
+      operands.add(replacement != null ? replacement : operand);
+    }
+    if (isCommutative(instruction) && operands.get(0).id > operands.get(1).id) {
+      Collections.reverse(operands);
+    }
+    for (Instruction operand : operands) {
+      key.add(new Identity(operand));
+    }
+    return key;
+  }
+
+  private static boolean isCommutative(Instruction instruction) {
+    switch (instruction.opcode) {
+    case ADD:
+    case MUL:
+    case AND:
+    case OR:
+      return true;
+    case CMP:
+      return instruction.condition == Condition.E || instruction.condition == Condition.NE;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Compares an object by identity, for the keys of a hash map.
+   */
+  private static class Identity {
+    private final Object object;
+
+    Identity(Object object) {
+      this.object = object;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Identity && ((Identity) o).object == object;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(object);
+    }
+  }
+
+  private static Map<BasicBlock, List<BasicBlock>> getDominatorTree(ControlFlowGraph graph) {
+    Map<BasicBlock, List<BasicBlock>> children = new IdentityHashMap<BasicBlock, List<BasicBlock>>();
+    for (BasicBlock block : graph.blocks) {
+      if (block.dominator == null) {
+        continue;
+      }
+      List<BasicBlock> dominated = children.get(block.dominator);
+      if (dominated == null) {
+        dominated = new ArrayList<BasicBlock>();
+        children.put(block.dominator, dominated);
+      }
+      dominated.add(block);
+    }
+    return children;
+  }
+
+  /*
+   * Loop invariant code motion
+   */
+
+  private boolean hoistLoopInvariants(ControlFlowGraph graph) {
+    List<Loop> loops = graph.findLoops();
+    if (loops.isEmpty()) {
+      return false;
+    }
+    boolean added = false;
+    for (Loop loop : loops) {
+      if (getPreheader(loop) == null) {
+        addPreheader(graph, loop);
+        added = true;
+      }
+    }
+    if (added) {
+      graph.number();
+      graph.findDominators();
+      loops = graph.findLoops();
+    }
+
+    int hoisted = 0;
+    for (Loop loop : loops) {
+      BasicBlock preheader = getPreheader(loop);
+      for (BasicBlock block : graph.blocks) {
+        if (!loop.blocks.contains(block)) {
+          continue;
+        }
+        // whether every instruction so far in the header could be moved, so that the header starts with the next
+        boolean atTop = block == loop.header;
+        for (int i = block.getFirstNonPhi(); i < block.instructions.size(); i++) {
+          Instruction instruction = block.instructions.get(i);
+          if (!isInvariant(instruction, loop) || !canHoist(instruction, atTop)) {
+            atTop &= instruction.isRemovable() && instruction.opcode != Opcode.STRING;
+            continue;
+          }
+          block.instructions.remove(i--);
+          preheader.addBeforeTerminator(instruction);
+          hoisted++;
+        }
+      }
+    }
+    counts[Pass.LOOP_INVARIANTS.ordinal()] += hoisted;
+    return hoisted > 0;
+  }
+
+  private static boolean isInvariant(Instruction instruction, Loop loop) {
+    for (Instruction operand : instruction.operands) {
+      if (loop.contains(operand)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether the instruction computes the same value anywhere in the loop and may be computed before it. A
+   *         constant is left where it is used, and a comparison by the branch it likely feeds.
+   */
+  private static boolean canHoist(Instruction instruction, boolean atTop) {
+    switch (instruction.opcode) {
+    case CONST:
+    case CMP:
+      return false;
+    case LENGTH:
+      // the preheader leads straight to the header, so the load faults there if it would have in the loop
+      return atTop;
+    default:
+      return instruction.isPure();
+    }
+  }
+
+  /**
+   * @return the one block outside the loop that leads to its header, if it leads nowhere else
+   */
+  private static BasicBlock getPreheader(Loop loop) {
+    BasicBlock preheader = null;
+    for (BasicBlock predecessor : loop.header.predecessors) {
+      if (loop.blocks.contains(predecessor)) {
+        continue;
+      } else if (preheader != null) {
+        return null;
+      }
+      preheader = predecessor;
+    }
+    return preheader != null && preheader.successors.size() == 1 ? preheader : null;
+  }
+
+  /**
+   * Moves the edges into the header of the loop from outside it to a new block, which jumps to the header.
+   */
+  private static void addPreheader(ControlFlowGraph graph, Loop loop) {
+    BasicBlock header = loop.header;
+    BasicBlock preheader = new BasicBlock();
+    graph.blocks.add(preheader);
+
+    List<BasicBlock> inside = new ArrayList<BasicBlock>();
+    List<Integer> outsideIndexes = new ArrayList<Integer>();
+    List<Integer> insideIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < header.predecessors.size(); i++) {
+      BasicBlock predecessor = header.predecessors.get(i);
+      if (loop.blocks.contains(predecessor)) {
+        inside.add(predecessor);
+        insideIndexes.add(i);
+      } else {
+        predecessor.successors.set(predecessor.successors.indexOf(header), preheader);
+        preheader.predecessors.add(predecessor);
+        outsideIndexes.add(i);
+      }
+    }
+
+    // the phis of the header take the values from outside from a phi of the preheader
+    for (Instruction phi : header.instructions) {
+      if (phi.opcode != Opcode.PHI) {
+        break;
+      }
+      Instruction outer = new Instruction(Opcode.PHI);
+      for (int i : outsideIndexes) {
+        outer.operands.add(phi.getOperand(i));
+      }
+      List<Instruction> operands = new ArrayList<Instruction>();
+      operands.add(outer);
+      for (int i : insideIndexes) {
+        operands.add(phi.getOperand(i));
+      }
+      phi.operands.clear();
+      phi.operands.addAll(operands);
+      preheader.add(outer);
+    }
+
+    header.predecessors.clear();
+    preheader.add(new Instruction(Opcode.JUMP));
+    preheader.addSuccessor(header);
+    header.predecessors.addAll(inside);
+  }
+
+  /*
+   * Null and bounds check elimination
+   */
+
+  /**
+   * Drops the checks that cannot fail, walking the dominator tree with what is known on every path to each block. A
+   * reference is not null if it is this, a new object or string, or a phi of those, or if it was already used on the
+   * way, which would have faulted, or compared to null. An index is less than a length if it was already checked
+   * against it, or compared to it by a branch that led here, as the condition of for (i = 0; i < a.length; i = i + 1)
+   * leads to the body of the loop. The length of a new array is the size it was created with.
+   *
+   * The generated code does not check that an index is at least 0, so neither is that needed to drop the check.
+   */
+  private void eliminateChecks(ControlFlowGraph graph) {
+    Set<Instruction> created = findCreated(graph);
+    Map<BasicBlock, List<BasicBlock>> children = getDominatorTree(graph);
+    // the references known not to be null, and the index and length pairs known to be in bounds
+    Set<Instruction> nonNull = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+    Set<List<Object>> inBounds = new HashSet<List<Object>>();
+
+    // as for common subexpressions, with the facts each block added to undo when leaving it
+    List<BasicBlock> stack = new ArrayList<BasicBlock>();
+    List<List<Object>> added = new ArrayList<List<Object>>();
+    stack.add(graph.entry);
+    added.add(null);
+    while (!stack.isEmpty()) {
+      int top = stack.size() - 1;
+      BasicBlock block = stack.get(top);
+      if (added.get(top) != null) {
+        for (Object fact : added.remove(top)) {
+          if (fact instanceof Instruction) {
+            nonNull.remove(fact);
+          } else {
+            inBounds.remove(fact);
+          }
+        }
+        stack.remove(top);
+        continue;
+      }
+
+      List<Object> facts = new ArrayList<Object>();
+      if (block.predecessors.size() == 1) {
+        addBranchFacts(block, nonNull, inBounds, facts);
+      }
+      for (int i = block.getFirstNonPhi(); i < block.instructions.size(); i++) {
+        Instruction instruction = block.instructions.get(i);
+        switch (instruction.opcode) {
+        case GET_FIELD:
+        case PUT_FIELD:
+        case LENGTH:
+        case GET_ELEMENT:
+        case PUT_ELEMENT:
+          // faults on null, so the object is not null after it
+          addFact(nonNull, instruction.getOperand(0), facts);
+          break;
+        case CALL: {
+          if (((MethodDeclaration) instruction.target).isStatic()) {
+            break;
+          }
+          Instruction receiver = instruction.getOperand(0);
+          if (created.contains(receiver) || nonNull.contains(receiver)) {
+            instruction.skipNullCheck = true;
+            counts[Pass.NULL_CHECKS.ordinal()]++;
+          } else {
+            addFact(nonNull, receiver, facts);
+          }
+          break;
+        }
+        case NEW:
+          // the constructor is called on the object just allocated
+          instruction.skipNullCheck = true;
+          counts[Pass.NULL_CHECKS.ordinal()]++;
+          break;
+        case CHECK_INDEX: {
+          Object index = getBoundKey(instruction.getOperand(0));
+          Object length = getLengthKey(instruction.getOperand(1));
+          boolean constant = index instanceof Integer && length instanceof Integer;
+          List<Object> key = Arrays.asList(index, length);
+          if (inBounds.contains(key) || constant && (Integer) index < (Integer) length) {
+            block.instructions.remove(i--);
+            instruction.block = null;
+            counts[Pass.BOUNDS_CHECKS.ordinal()]++;
+          } else {
+            addFact(inBounds, key, facts);
+          }
+          break;
+        }
+        default:
+        }
+      }
+      added.set(top, facts);
+      List<BasicBlock> dominated = children.get(block);
+      if (dominated != null) {
+        for (BasicBlock child : dominated) {
+          stack.add(child);
+          added.add(null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds what the branch into a block with only one predecessor tells about the values compared.
+   */
+  private static void addBranchFacts(BasicBlock block, Set<Instruction> nonNull, Set<List<Object>> inBounds,
+      List<Object> facts) {
+    BasicBlock predecessor = block.predecessors.get(0);
+    Instruction branch = predecessor.getTerminator();
+    if (branch == null || branch.opcode != Opcode.BRANCH || branch.getOperand(0).opcode != Opcode.CMP) {
+      return;
+    }
+    Instruction compare = branch.getOperand(0);
+    Condition condition = compare.condition;
+    if (predecessor.successors.indexOf(block) != 0) {
+      condition = condition.negate();
+    }
+    Instruction a = compare.getOperand(0);
+    Instruction b = compare.getOperand(1);
+    switch (condition) {
+    case NE:
+      if (b.isConstant(0)) {
+        addFact(nonNull, a, facts);
+      } else if (a.isConstant(0)) {
+        addFact(nonNull, b, facts);
+      }
+      break;
+    case L:
+      addFact(inBounds, Arrays.asList(getBoundKey(a), getLengthKey(b)), facts);
+      break;
+    case G:
+      addFact(inBounds, Arrays.asList(getBoundKey(b), getLengthKey(a)), facts);
+      break;
+    default:
+    }
+  }
+
+  private static <T> void addFact(Set<T> known, T fact, List<Object> facts) {
+    if (known.add(fact)) {
+      facts.add(fact);
+    }
+  }
+
+  /**
+   * @return the constant value, or the instruction by identity
+   */
+  private static Object getBoundKey(Instruction instruction) {
+    return instruction.isConstant() ? (Object) instruction.constant : new Identity(instruction);
+  }
+
+  /**
+   * @return the key of the size a new array was created with when the value is its length, which is what a loop
+   *         over the array compares to
+   */
+  private static Object getLengthKey(Instruction instruction) {
+    if (instruction.opcode == Opcode.LENGTH && instruction.getOperand(0).opcode == Opcode.NEW_ARRAY) {
+      return getBoundKey(instruction.getOperand(0).getOperand(0));
+    }
+    return getBoundKey(instruction);
+  }
+
+  /**
+   * @return the values that are new objects, arrays or strings, or this, or phis of only those
+   */
+  private static Set<Instruction> findCreated(ControlFlowGraph graph) {
+    Set<Instruction> created = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+    List<Instruction> phis = new ArrayList<Instruction>();
+    for (BasicBlock block : graph.blocks) {
+      for (Instruction instruction : block.instructions) {
+        switch (instruction.opcode) {
+        case THIS:
+        case NEW:
+        case NEW_ARRAY:
+        case STRING:
+        case CONCAT:
+          created.add(instruction);
+          break;
+        case PHI:
+          // assumed until an operand is found not to be, for the phis of loops
+          created.add(instruction);
+          phis.add(instruction);
+          break;
+        default:
+        }
+      }
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Instruction phi : phis) {
+        if (created.contains(phi) && !created.containsAll(phi.operands)) {
+          created.remove(phi);
+          changed = true;
+        }
+      }
+    }
+    return created;
+  }
+
+  /*
+   * Dead code elimination
+   */
+
+  private boolean eliminateDeadCode(ControlFlowGraph graph) {
+    Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+    Deque<Instruction> work = new ArrayDeque<Instruction>();
+    for (BasicBlock block : graph.blocks) {
+      for (Instruction instruction : block.instructions) {
+        if (!instruction.isRemovable() && live.add(instruction)) {
+          work.push(instruction);
+        }
+      }
+    }
+    while (!work.isEmpty()) {
+      for (Instruction operand : work.pop().operands) {
+        if (live.add(operand)) {
+          work.push(operand);
+        }
+      }
+    }
+
+    int removed = 0;
+    for (BasicBlock block : graph.blocks) {
+      for (int i = block.instructions.size() - 1; i >= 0; i--) {
+        Instruction instruction = block.instructions.get(i);
+        if (!live.contains(instruction)) {
+          block.instructions.remove(i);
+          instruction.block = null;
+          // a constant left over from folding is not worth counting
+          if (instruction.opcode != Opcode.CONST) {
+            removed++;
+          }
+        }
+      }
+    }
+    counts[Pass.DEAD_CODE.ordinal()] += removed;
+    return removed > 0;
+  }
+
+}
@@ -0,0 +1,162 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+
+/**
+ * An instruction of the mid-level IR, and the value it computes. A method is in SSA form: every value is computed by
+ * exactly one instruction, which is also how it is named, and a variable assigned in several places becomes a phi
+ * instruction where the paths assigning it meet. Every value is a dword, as it is on the stack.
+ */
+public class Instruction {
+
+  public static enum Opcode {
+    // values: the constant n, a new string with the given text, the parameter n, this, and the value from the
+    // predecessor of the same index
+    CONST, STRING, PARAM, THIS, PHI,
+    // arithmetic: a op b, or op a for the unary ones; EXTEND_BYTE and EXTEND_SHORT sign extend the low 8 or 16 bits
+    ADD, SUB, MUL, DIV, MOD, AND, OR, NEG, NOT, EXTEND_BYTE, EXTEND_SHORT,
+    // 1 if a compares to b as the condition says, 0 otherwise
+    CMP,
+    // object.field, object.field = value, Type.field and Type.field = value
+    GET_FIELD, PUT_FIELD, GET_STATIC, PUT_STATIC,
+    // array.length, the check that index < length, array[index] and array[index] = value
+    LENGTH, CHECK_INDEX, GET_ELEMENT, PUT_ELEMENT,
+    // a call with the receiver first unless the method is static, new Type(args), new Type[size] and lhs + rhs
+    CALL, NEW, NEW_ARRAY, CONCAT,
+    // value instanceof Type, and the check made by the cast (Type) value
+    INSTANCEOF, CHECK_CAST,
+    // the last instruction of every block
+    JUMP, BRANCH, RETURN;
+
+    /**
+     * @return whether the instruction computes a value from its operands alone, whatever its operands are
+     */
+    private boolean isPure() {
+      switch (this) {
+      case CONST:
+      case PARAM:
+      case THIS:
+      case ADD:
+      case SUB:
+      case MUL:
+      case AND:
+      case OR:
+      case NEG:
+      case NOT:
+      case EXTEND_BYTE:
+      case EXTEND_SHORT:
+      case CMP:
+      case INSTANCEOF:
+        return true;
+      default:
+        return false;
+      }
+    }
+
+    public boolean isTerminator() {
+      return this == JUMP || this == BRANCH || this == RETURN;
+    }
+
+    /**
+     * @return whether the instruction never has a value
+     */
+    public boolean isVoid() {
+      switch (this) {
+      case PUT_FIELD:
+      case PUT_STATIC:
+      case CHECK_INDEX:
+      case PUT_ELEMENT:
+      case CHECK_CAST:
+      case JUMP:
+      case BRANCH:
+      case RETURN:
+        return true;
+      default:
+        return false;
+      }
+    }
+  }
+
+  public final Opcode opcode;
+  public final List<Instruction> operands;
+  // the constant of CONST and the index of PARAM
+  public int constant;
+  public Condition condition;
+  // what the instruction refers to: the field, method, constructor, text, type or expression
+  public Object target;
+  // where in the source the value comes from, for the comments in the generated code
+  public String name;
+  public BasicBlock block;
+  // set on a call, or the constructor call of NEW, whose receiver is known not to be null, so that it is not checked
+  public boolean skipNullCheck = false;
+  // numbers the instructions of a graph, see ControlFlowGraph.number
+  public int id;
+
+  public Instruction(Opcode opcode, Instruction... operands) {
+    this.opcode = opcode;
+    this.operands = new ArrayList<Instruction>(Arrays.asList(operands));
+  }
+
+  public Instruction getOperand(int i) {
+    return operands.get(i);
+  }
+
+  public boolean isConstant() {
+    return opcode == Opcode.CONST;
+  }
+
+  public boolean isConstant(int value) {
+    return opcode == Opcode.CONST && constant == value;
+  }
+
+  /**
+   * @return whether the value only depends on the operands, and computing it has no effect and cannot fault
+   */
+  public boolean isPure() {
+    if (opcode == Opcode.DIV || opcode == Opcode.MOD) {
+      // idiv faults on a zero divisor, and on the smallest int divided by -1
+      Instruction divisor = getOperand(1);
+      return divisor.isConstant() && divisor.constant != 0 && divisor.constant != -1;
+    }
+    return opcode.isPure();
+  }
+
+  /**
+   * @return whether the instruction can be left out when its value is not used. A load that faults on null is kept.
+   */
+  public boolean isRemovable() {
+    return isPure() || opcode == Opcode.STRING || opcode == Opcode.PHI || opcode == Opcode.GET_STATIC;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (!opcode.isVoid()) {
+      sb.append('%').append(id).append(" = ");
+    }
+    sb.append(opcode.name().toLowerCase());
+    if (condition != null) {
+      sb.append(' ').append(condition);
+    }
+    if (opcode == Opcode.CONST || opcode == Opcode.PARAM) {
+      sb.append(' ').append(constant);
+    }
+    for (int i = 0; i < operands.size(); i++) {
+      sb.append(i == 0 ? " %" : ", %").append(operands.get(i).id);
+    }
+    if (opcode == Opcode.JUMP || opcode == Opcode.BRANCH) {
+      for (BasicBlock successor : block.successors) {
+        sb.append(" b").append(successor.id);
+      }
+    }
+    if (name != null) {
+      sb.append(" ; ").append(name);
+    }
+    return sb.toString();
+  }
+
+}
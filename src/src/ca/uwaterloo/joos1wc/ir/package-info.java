@@ -0,0 +1,4 @@
+/**
+ * 
+ */
+package ca.uwaterloo.joos1wc.ir;
\ No newline at end of file
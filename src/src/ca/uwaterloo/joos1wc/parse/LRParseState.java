@@ -1,5 +1,6 @@
 package ca.uwaterloo.joos1wc.parse;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,6 +33,14 @@ public class LRParseState {
     return shifts.get(next);
   }
   
+  public Map<TokenKind, Production> getReductions() {
+    return Collections.unmodifiableMap(reductions);
+  }
+  
+  public Map<TokenKind, LRParseState> getShifts() {
+    return Collections.unmodifiableMap(shifts);
+  }
+  
   public boolean isShiftState() {
     return shifts.size() > 0;
   }
@@ -0,0 +1,368 @@
+package ca.uwaterloo.joos1wc.parse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwaterloo.joos1wc.ast.NodeFactory;
+import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
+import ca.uwaterloo.joos1wc.diagnostics.InvalidGrammarException;
+import ca.uwaterloo.joos1wc.diagnostics.ParseException;
+import ca.uwaterloo.joos1wc.diagnostics.TokenNotFoundException;
+import ca.uwaterloo.joos1wc.scanner.NonTerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.TokenKind;
+
+/**
+ * A dense encoding of the graph of LRParseStates. States, symbols and productions are numbered, and the actions are
+ * kept in a single int array indexed by <code>state * symbolCount + symbol</code>. Terminal symbols are numbered by
+ * their ordinal, and every other symbol is numbered after them in the order it is found.
+ *
+ * A table can be written to a compact binary form with writeTo and loaded back with readFrom, which fills the arrays
+ * directly instead of rebuilding the state graph from the text of an lr1 file.
+ */
+public class LRParseTable {
+
+  /** The table entry for a missing action. */
+  public static final int ERROR = 0;
+
+  // the binary form starts with "JLRT" and a version, which is bumped whenever the layout changes
+  private static final int MAGIC = 0x4a4c5254;
+  private static final int VERSION = 1;
+
+  private final int symbolCount;
+  private final int[] actions;
+  private final boolean[] shiftStates;
+  private final Production[] rules;
+  private final int[] ruleLengths;
+  private final int[] ruleSymbols;
+  private final NodeFactory[] ruleFactories;
+  private final Map<TokenKind, Integer> symbols;
+
+  private LRParseTable(int symbolCount, int[] actions, boolean[] shiftStates, Production[] rules,
+      Map<TokenKind, Integer> symbols) {
+    this.symbolCount = symbolCount;
+    this.actions = actions;
+    this.shiftStates = shiftStates;
+    this.rules = rules;
+    this.symbols = symbols;
+
+    this.ruleLengths = new int[rules.length];
+    this.ruleSymbols = new int[rules.length];
+    this.ruleFactories = new NodeFactory[rules.length];
+    for (int i = 0; i < rules.length; i++) {
+      ruleLengths[i] = rules[i].getRHS().size();
+      ruleSymbols[i] = getSymbol(rules[i].getLHS());
+      ruleFactories[i] = NodeFactory.forRule(rules[i].getLHS(), ruleLengths[i]);
+    }
+  }
+
+  /**
+   * Builds the table for all the states reachable from a start state. The start state is numbered 0.
+   *
+   * @param startState
+   *          The start state of the parser.
+   * @return The table.
+   */
+  public static LRParseTable fromStartState(LRParseState startState) {
+    assert startState != null;
+
+    // number the states breadth first from the start state, and the symbols and rules as they are found
+    List<LRParseState> states = new ArrayList<LRParseState>();
+    Map<LRParseState, Integer> stateIds = new IdentityHashMap<LRParseState, Integer>();
+    List<Production> rules = new ArrayList<Production>();
+    Map<Production, Integer> ruleIds = new IdentityHashMap<Production, Integer>();
+    Map<TokenKind, Integer> symbols = new HashMap<TokenKind, Integer>();
+    int symbolCount = TerminalTokenKind.values().length;
+
+    states.add(startState);
+    stateIds.put(startState, 0);
+    for (int i = 0; i < states.size(); i++) {
+      LRParseState state = states.get(i);
+      for (Map.Entry<TokenKind, LRParseState> shift : state.getShifts().entrySet()) {
+        symbolCount = addSymbol(symbols, shift.getKey(), symbolCount);
+        if (!stateIds.containsKey(shift.getValue())) {
+          stateIds.put(shift.getValue(), states.size());
+          states.add(shift.getValue());
+        }
+      }
+      for (Map.Entry<TokenKind, Production> reduce : state.getReductions().entrySet()) {
+        symbolCount = addSymbol(symbols, reduce.getKey(), symbolCount);
+        symbolCount = addSymbol(symbols, reduce.getValue().getLHS(), symbolCount);
+        if (!ruleIds.containsKey(reduce.getValue())) {
+          ruleIds.put(reduce.getValue(), rules.size());
+          rules.add(reduce.getValue());
+        }
+      }
+    }
+
+    int[] actions = new int[states.size() * symbolCount];
+    boolean[] shiftStates = new boolean[states.size()];
+    for (int i = 0; i < states.size(); i++) {
+      LRParseState state = states.get(i);
+      shiftStates[i] = state.isShiftState();
+      for (Map.Entry<TokenKind, LRParseState> shift : state.getShifts().entrySet()) {
+        actions[i * symbolCount + symbolOf(symbols, shift.getKey())] = encodeShift(stateIds.get(shift.getValue()));
+      }
+      // a reduction takes precedence over a shift on the same symbol, as in LRParser
+      for (Map.Entry<TokenKind, Production> reduce : state.getReductions().entrySet()) {
+        actions[i * symbolCount + symbolOf(symbols, reduce.getKey())] = encodeReduce(ruleIds.get(reduce.getValue()));
+      }
+    }
+
+    return new LRParseTable(symbolCount, actions, shiftStates, rules.toArray(new Production[rules.size()]), symbols);
+  }
+
+  /**
+   * Gets the action for a state on a symbol.
+   *
+   * @param state
+   *          The current state.
+   * @param symbol
+   *          The number of the next symbol.
+   * @return A positive value for a shift (see getShiftState), a negative value for a reduce (see getReduceRule) or
+   *         ERROR.
+   */
+  public int getAction(int state, int symbol) {
+    return actions[state * symbolCount + symbol];
+  }
+
+  /**
+   * Gets the state shifted to by a positive action.
+   */
+  public static int getShiftState(int action) {
+    return action - 1;
+  }
+
+  /**
+   * Gets the rule reduced by a negative action.
+   */
+  public static int getReduceRule(int action) {
+    return -action - 1;
+  }
+
+  /**
+   * Returns whether a state has any shift (or goto) actions.
+   */
+  public boolean isShiftState(int state) {
+    return shiftStates[state];
+  }
+
+  /**
+   * Gets the number of a symbol, or -1 if the symbol does not appear in the table.
+   *
+   * @param kind
+   *          The kind of the symbol.
+   * @return The number of the symbol.
+   */
+  public int getSymbol(TokenKind kind) {
+    if (kind instanceof TerminalTokenKind) {
+      return kind.ordinal();
+    }
+    Integer symbol = symbols.get(kind);
+    return symbol == null ? -1 : symbol;
+  }
+
+  public Production getRule(int rule) {
+    return rules[rule];
+  }
+
+  public int getRuleLength(int rule) {
+    return ruleLengths[rule];
+  }
+
+  public int getRuleSymbol(int rule) {
+    return ruleSymbols[rule];
+  }
+
+  /**
+   * Gets the factory that builds the tree nodes for reductions by a rule.
+   */
+  public NodeFactory getRuleFactory(int rule) {
+    return ruleFactories[rule];
+  }
+
+  public int getStateCount() {
+    return shiftStates.length;
+  }
+
+  public int getSymbolCount() {
+    return symbolCount;
+  }
+
+  public int getRuleCount() {
+    return rules.length;
+  }
+
+  /**
+   * Writes this table in the binary form read by readFrom. Symbols are written by name, so a table stays valid for as
+   * long as the terminal kinds it was built with are unchanged.
+   *
+   * @param output
+   *          The stream to write to. It is flushed but not closed.
+   * @throws IOException
+   */
+  public void writeTo(OutputStream output) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    // the terminals are numbered by ordinal, and their names are only written so that readFrom can check them
+    TerminalTokenKind[] terminals = TerminalTokenKind.values();
+    out.writeInt(terminals.length);
+    for (TerminalTokenKind terminal : terminals) {
+      out.writeUTF(terminal.name());
+    }
+    String[] names = new String[symbolCount - terminals.length];
+    for (Map.Entry<TokenKind, Integer> symbol : symbols.entrySet()) {
+      names[symbol.getValue() - terminals.length] = symbol.getKey().name();
+    }
+    out.writeInt(names.length);
+    for (String name : names) {
+      out.writeUTF(name);
+    }
+
+    out.writeInt(rules.length);
+    for (int rule = 0; rule < rules.length; rule++) {
+      out.writeInt(ruleSymbols[rule]);
+      out.writeInt(ruleLengths[rule]);
+      for (TokenKind kind : rules[rule].getRHS()) {
+        out.writeInt(getSymbol(kind));
+      }
+    }
+
+    // most entries are errors, so each state only lists its actions
+    out.writeInt(shiftStates.length);
+    for (int state = 0; state < shiftStates.length; state++) {
+      out.writeBoolean(shiftStates[state]);
+      int count = 0;
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        if (getAction(state, symbol) != ERROR) {
+          count++;
+        }
+      }
+      out.writeInt(count);
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        int action = getAction(state, symbol);
+        if (action != ERROR) {
+          out.writeInt(symbol);
+          out.writeInt(action);
+        }
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a table written by writeTo. The nonterminals are created fresh, as LRGrammar does when it reads an lr1 file.
+   *
+   * @param input
+   *          The stream to read from. It is not closed.
+   * @return The table.
+   * @throws IOException
+   * @throws ParseException
+   *           If the stream is not a table for the current terminals, or refers to states, rules or symbols it does
+   *           not have.
+   */
+  public static LRParseTable readFrom(InputStream input) throws IOException, ParseException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+    if (in.readInt() != MAGIC) {
+      throw new InvalidGrammarException(String.format(Exceptions.INVALID_GRAMMAR_TABLE, VERSION), VERSION);
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new InvalidGrammarException(String.format(Exceptions.INVALID_GRAMMAR_TABLE, version), version);
+    }
+
+    TerminalTokenKind[] terminals = TerminalTokenKind.values();
+    int terminalCount = in.readInt();
+    for (int i = 0; i < terminalCount; i++) {
+      String name = in.readUTF();
+      if (i >= terminals.length || !terminals[i].name().equals(name)) {
+        throw new TokenNotFoundException(String.format(Exceptions.TERMINAL_NOT_FOUND, name), name);
+      }
+    }
+    if (terminalCount != terminals.length) {
+      String name = terminals[terminalCount].name();
+      throw new TokenNotFoundException(String.format(Exceptions.TERMINAL_NOT_FOUND, name), name);
+    }
+
+    int nonTerminalCount = in.readInt();
+    int symbolCount = terminals.length + nonTerminalCount;
+    TokenKind[] kinds = Arrays.copyOf((TokenKind[]) terminals, symbolCount, TokenKind[].class);
+    Map<TokenKind, Integer> symbols = new HashMap<TokenKind, Integer>();
+    for (int symbol = terminals.length; symbol < symbolCount; symbol++) {
+      kinds[symbol] = new NonTerminalTokenKind(in.readUTF());
+      symbols.put(kinds[symbol], symbol);
+    }
+
+    Production[] rules = new Production[in.readInt()];
+    for (int rule = 0; rule < rules.length; rule++) {
+      TokenKind lhs = kinds[checkBounds(in.readInt(), symbolCount, Exceptions.OUT_OF_BOUNDS_SYMBOL)];
+      int length = in.readInt();
+      List<TokenKind> rhs = new ArrayList<TokenKind>(length);
+      while (length-- > 0) {
+        rhs.add(kinds[checkBounds(in.readInt(), symbolCount, Exceptions.OUT_OF_BOUNDS_SYMBOL)]);
+      }
+      rules[rule] = new Production(lhs, rhs);
+    }
+
+    int stateCount = in.readInt();
+    int[] actions = new int[stateCount * symbolCount];
+    boolean[] shiftStates = new boolean[stateCount];
+    for (int state = 0; state < stateCount; state++) {
+      shiftStates[state] = in.readBoolean();
+      int count = in.readInt();
+      while (count-- > 0) {
+        int symbol = checkBounds(in.readInt(), symbolCount, Exceptions.OUT_OF_BOUNDS_SYMBOL);
+        int action = in.readInt();
+        if (action > 0) {
+          checkBounds(getShiftState(action), stateCount, Exceptions.OUT_OF_BOUNDS_REDUCE);
+        } else {
+          checkBounds(getReduceRule(action), rules.length, Exceptions.OUT_OF_BOUNDS_SHIFT);
+        }
+        actions[state * symbolCount + symbol] = action;
+      }
+    }
+
+    return new LRParseTable(symbolCount, actions, shiftStates, rules, symbols);
+  }
+
+  private static int checkBounds(int value, int max, String message) throws InvalidGrammarException {
+    if (value < 0 || value >= max) {
+      throw new InvalidGrammarException(String.format(message, value, max), value);
+    }
+    return value;
+  }
+
+  private static int addSymbol(Map<TokenKind, Integer> symbols, TokenKind kind, int symbolCount) {
+    if (kind instanceof TerminalTokenKind || symbols.containsKey(kind)) {
+      return symbolCount;
+    }
+    symbols.put(kind, symbolCount);
+    return symbolCount + 1;
+  }
+
+  private static int symbolOf(Map<TokenKind, Integer> symbols, TokenKind kind) {
+    return kind instanceof TerminalTokenKind ? kind.ordinal() : symbols.get(kind);
+  }
+
+  private static int encodeShift(int state) {
+    return state + 1;
+  }
+
+  private static int encodeReduce(int rule) {
+    return -rule - 1;
+  }
+
+}
@@ -1,12 +1,15 @@
 package ca.uwaterloo.joos1wc.parse;
 
 import java.io.File;
+import java.util.AbstractList;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 
+import ca.uwaterloo.joos1wc.ast.NodeFactory;
 import ca.uwaterloo.joos1wc.ast.TreeNode;
 import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
 import ca.uwaterloo.joos1wc.diagnostics.LRException;
@@ -14,10 +17,22 @@ import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
 import ca.uwaterloo.joos1wc.scanner.Token;
 
 public class LRParser {
+  private static final int INITIAL_STACK_SIZE = 64;
+
   private final LRParseState startState;
+  private final LRParseTable table;
 
   public LRParser(LRParseState startState) {
     this.startState = startState;
+    this.table = null;
+  }
+
+  /**
+   * Constructs a parser that runs on the dense table instead of the graph of parse states.
+   */
+  public LRParser(LRParseTable table) {
+    this.startState = null;
+    this.table = table;
   }
 
   /**
@@ -26,6 +41,10 @@ public class LRParser {
    * @throws LRException
    */
   public TreeNode parse(List<Token> tokens) throws LRException {
+    if (table != null) {
+      return parseTable(tokens);
+    }
+
     Deque<TreeNode> symbolStack = new ArrayDeque<TreeNode>();
     Deque<LRParseState> stateStack = new ArrayDeque<LRParseState>();
 
@@ -52,6 +71,143 @@ public class LRParser {
     return symbolStack.pop();
   }
 
+  /**
+   * The shift-reduce loop of parse, run on the dense table with the states kept on an int stack. Each symbol on the
+   * stack covers a range of the input tokens, starting at the index kept on a parallel stack and ending where the next
+   * symbol starts, so a reduction can make its token from the range instead of from the tokens of its children. The
+   * AST node for a reduction is built straight from the top of the stack, without copying the children into a list.
+   */
+  private TreeNode parseTable(List<Token> tokens) throws LRException {
+    LRParseTable table = this.table;
+    Token[] leaves = tokens.toArray(new Token[tokens.size()]);
+    int[] stateStack = new int[INITIAL_STACK_SIZE];
+    int[] startStack = new int[INITIAL_STACK_SIZE];
+    TreeNode[] symbolStack = new TreeNode[INITIAL_STACK_SIZE];
+    StackSlice children = new StackSlice();
+    int symbolCount = 0;
+    int state = 0;
+    stateStack[0] = state;
+
+    for (int index = 0; index < leaves.length; index++) {
+      Token next = leaves[index];
+      int symbol = table.getSymbol(next.getKind());
+      int action = symbol < 0 ? LRParseTable.ERROR : table.getAction(state, symbol);
+
+      // reduce while this is a reduce state where the follow set contains next
+      while (action < 0) {
+        int rule = LRParseTable.getReduceRule(action);
+        int size = table.getRuleLength(rule);
+        symbolCount -= size;
+        int start = size == 0 ? index : startStack[symbolCount];
+        TreeNode lhs = reduceNode(symbolStack, symbolCount, size, table.getRule(rule), table.getRuleFactory(rule),
+            leaves, start, index, children);
+
+        state = LRParseTable.getShiftState(table.getAction(stateStack[symbolCount], table.getRuleSymbol(rule)));
+        if (symbolCount + 1 == symbolStack.length) {
+          symbolStack = Arrays.copyOf(symbolStack, 2 * symbolStack.length);
+          stateStack = Arrays.copyOf(stateStack, 2 * stateStack.length);
+          startStack = Arrays.copyOf(startStack, 2 * startStack.length);
+        }
+        startStack[symbolCount] = start;
+        symbolStack[symbolCount++] = lhs;
+        stateStack[symbolCount] = state;
+        action = table.getAction(state, symbol);
+      }
+
+      if (!table.isShiftState(state)) {
+        String error = String.format(Exceptions.SHIFT_EXPECTED, next.getImage(), getImages(symbolStack, symbolCount),
+            next.getLineNumber(), next.getPosition());
+        throw new LRException(error);
+      }
+      if (next.getKind() == TerminalTokenKind.EOF) {
+        break;
+      }
+      if (action == LRParseTable.ERROR) {
+        String error = String.format(Exceptions.SHIFT_FAILURE, next.getImage(), next.getKind().name(),
+            next.getLineNumber(), next.getPosition());
+        throw new LRException(error);
+      }
+
+      state = LRParseTable.getShiftState(action);
+      if (symbolCount + 1 == symbolStack.length) {
+        symbolStack = Arrays.copyOf(symbolStack, 2 * symbolStack.length);
+        stateStack = Arrays.copyOf(stateStack, 2 * stateStack.length);
+        startStack = Arrays.copyOf(startStack, 2 * startStack.length);
+      }
+      startStack[symbolCount] = index;
+      symbolStack[symbolCount++] = TreeNode.newTerminalNode(next);
+      stateStack[symbolCount] = state;
+    }
+
+    if (symbolCount > 1) {
+      throw new LRException(String.format(Exceptions.ROOT_REDUCTION, getImages(symbolStack, symbolCount)));
+    }
+
+    return symbolStack[0];
+  }
+
+  /**
+   * Builds the node for a reduction from the symbols at the top of the stack, as popStacks does, with the node factory
+   * resolved for the rule when the table was built. The token of the node covers leaves[start, end).
+   */
+  private static TreeNode reduceNode(TreeNode[] symbolStack, int first, int size, Production production,
+      NodeFactory factory, Token[] leaves, int start, int end, StackSlice children) {
+    File file = null;
+    int line = -1;
+    int pos = -1;
+    if (size > 0) {
+      Token token = symbolStack[first].token;
+      file = token.getFile();
+      line = token.getLineNumber();
+      pos = token.getPosition();
+    }
+
+    children.reset(symbolStack, first, size);
+    TreeNode node = factory.newNode(new Token(file, production.getLHS(), leaves, start, end, line, pos), children);
+    Arrays.fill(symbolStack, first, first + size, null);
+    return node;
+  }
+
+  /**
+   * A view of the symbols at the top of the stack being reduced. It is only valid until the next reduction.
+   */
+  private static class StackSlice extends AbstractList<TreeNode> {
+    private TreeNode[] symbolStack;
+    private int first;
+    private int size;
+
+    void reset(TreeNode[] symbolStack, int first, int size) {
+      this.symbolStack = symbolStack;
+      this.first = first;
+      this.size = size;
+    }
+
+    @Override
+    public TreeNode get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return symbolStack[first + index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Lists the images of the symbols on the stack from the top down, for error messages.
+   */
+  private static String getImages(TreeNode[] symbolStack, int symbolCount) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = symbolCount - 1; i >= 0; i--) {
+      sb.append(symbolStack[i].token.getImage());
+      sb.append(' ');
+    }
+    return sb.toString();
+  }
+
   public static void reduceToken(Deque<TreeNode> symbolStack, Deque<LRParseState> stateStack, Token next)
       throws LRException {
 
@@ -121,7 +277,7 @@ public class LRParser {
     Deque<TreeNode> reverseStack = new ArrayDeque<TreeNode>(size);
 
     File file = null;
-    StringBuilder lexeme = new StringBuilder();
+    Token[] parts = new Token[size];
     int line = -1;
     int pos = -1;
     
@@ -141,16 +297,14 @@ public class LRParser {
       }
     }
 
+    // the image of the new token is only built if it is asked for, since near the root it is the whole file
     List<TreeNode> children = new ArrayList<TreeNode>(reverseStack.size());
     while (!reverseStack.isEmpty()) {
       TreeNode node = reverseStack.pop();
+      parts[children.size()] = node.token;
       children.add(node);
-      lexeme.append(node.token.getImage());
-      if (!reverseStack.isEmpty()) {
-        lexeme.append(" ");
-      }
     }
 
-    return TreeNode.newNonTerminalNode(new Token(file, production.getLHS(), lexeme.toString(), line, pos), children);
+    return TreeNode.newNonTerminalNode(new Token(file, production.getLHS(), parts, line, pos), children);
   }
 }
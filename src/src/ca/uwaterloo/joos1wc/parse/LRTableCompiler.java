@@ -0,0 +1,48 @@
+package ca.uwaterloo.joos1wc.parse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ca.uwaterloo.joos1wc.diagnostics.ParseException;
+
+/**
+ * Compiles an lr1 file into the binary parse table read by LRParseTable.readFrom. This is run by the grammar target of
+ * the build, which bundles the table in the jar so the compiler does not parse the grammar text on every run.
+ */
+public class LRTableCompiler {
+  private static final int EXIT_CODE_USAGE = 2;
+
+  public static void main(String[] args) throws IOException, ParseException {
+    if (args.length != 2) {
+      System.err.println("Usage: LRTableCompiler <grammar.lalr1> <table.lrt>");
+      System.exit(EXIT_CODE_USAGE);
+    }
+
+    LRParseTable table = compile(new File(args[0]));
+    File tableFile = new File(args[1]);
+    if (tableFile.getParentFile() != null) {
+      tableFile.getParentFile().mkdirs();
+    }
+    OutputStream output = new FileOutputStream(tableFile);
+    try {
+      table.writeTo(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Reads an lr1 file and builds its parse table.
+   */
+  public static LRParseTable compile(File grammarFile) throws IOException, ParseException {
+    FileInputStream input = new FileInputStream(grammarFile);
+    try {
+      return LRParseTable.fromStartState(new LRGrammar().fromFile(input));
+    } finally {
+      input.close();
+    }
+  }
+}
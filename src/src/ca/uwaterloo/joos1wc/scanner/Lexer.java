@@ -78,7 +78,7 @@ public class Lexer {
         // advance the cursor to the position after the token we found
         cursor.advance(longestToken.length());
         // add the token to the list we'll return if it isn't in the ignore set
-        if (!this.ignore.contains(longestToken.getKind())) {
+        if (!isIgnored(longestToken.getKind())) {
           tokens.add(longestToken);
         }
 
@@ -101,6 +101,17 @@ public class Lexer {
     return tokens;
   }
 
+  /**
+   * Checks whether tokens of a kind are dropped from the lexer output.
+   * 
+   * @param kind
+   *          The kind of token to check
+   * @return True if tokens of this kind are not returned
+   */
+  protected boolean isIgnored(TokenKind kind) {
+    return this.ignore.contains(kind);
+  }
+
   /**
    * Tries to get a token from the passed DFA and input, then returns the longer of the acquired and passed tokens. If
    * the DFA doesn't return a token the the passed token is returned. If the passed token is null then the acquired
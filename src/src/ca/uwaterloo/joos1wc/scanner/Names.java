@@ -0,0 +1,48 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The pool of identifiers and qualified names shared by every compilation. Identifiers are interned as they are read
+ * from the source, and qualified names as they are built, so there is one String for each name however often it
+ * appears. Two interned names are equal exactly when they are the same object, which is what lets the package, type
+ * and symbol tables compare their keys by identity.
+ *
+ * The pool hands out the same instances as String.intern(), so the names the compiler itself refers to with string
+ * literals, like "java" and "Object", are interned already.
+ */
+public final class Names {
+  // in front of String.intern(), which is slower to look up
+  private static final ConcurrentMap<String, String> POOL = new ConcurrentHashMap<String, String>();
+
+  private Names() {
+  }
+
+  /**
+   * @return The one instance of the name
+   */
+  public static String intern(String name) {
+    String interned = POOL.get(name);
+    if (interned == null) {
+      interned = name.intern();
+      POOL.putIfAbsent(interned, interned);
+    }
+    return interned;
+  }
+
+  /**
+   * @return The one instance of the name qualified by the prefix, or of the name itself if the prefix is empty
+   */
+  public static String qualify(String prefix, String name) {
+    return intern(prefix.length() > 0 ? prefix + "." + name : name);
+  }
+
+  /**
+   * For assertions on the keys of tables that compare names by identity.
+   */
+  public static boolean isInterned(String name) {
+    return name == null || POOL.get(name) == name || name.intern() == name;
+  }
+
+}
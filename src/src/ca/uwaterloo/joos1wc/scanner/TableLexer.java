@@ -0,0 +1,110 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.Joos1Wc;
+import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+import ca.uwaterloo.joos1wc.automata.DFState;
+import ca.uwaterloo.joos1wc.automata.DFTransition;
+import ca.uwaterloo.joos1wc.automata.TableDFAutomaton;
+import ca.uwaterloo.joos1wc.diagnostics.Exceptions;
+import ca.uwaterloo.joos1wc.diagnostics.LexException;
+import ca.uwaterloo.joos1wc.utility.CharacterStream;
+
+/**
+ * A lexer that runs all of its automata at once through their combined table automaton, examining each character of
+ * the input once per token instead of once per token kind. Produces the same tokens as Lexer, and allocates nothing
+ * per token apart from the token itself and the value of literals.
+ */
+public class TableLexer extends Lexer {
+  private static final byte[] NO_LITERAL_VALUE = new byte[0];
+
+  private final TableDFAutomaton table;
+  private final Set<TerminalTokenKind> literalKinds;
+
+  public TableLexer(List<DFAutomaton> dfaList, Set<TokenKind> ignore) {
+    super(dfaList, ignore);
+    this.table = TableDFAutomaton.fromAutomata(dfaList);
+
+    // only automata with actions compute a literal value, so only those need to be run again on a match
+    this.literalKinds = new HashSet<TerminalTokenKind>();
+    for (DFAutomaton dfa : dfaList) {
+      for (DFState state : dfa.getStates()) {
+        for (DFTransition trans : state.transitions) {
+          if (trans.hasAction()) {
+            literalKinds.add(dfa.getKind());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Worker method for lexing. Runs the combined automaton over the input, remembering the last accepting state seen,
+   * and emits the longest match.
+   *
+   * @param cursor
+   *          The CharacterStream to use for keeping track of our place in the input
+   * @return A list of the Tokens contained in the source file
+   * @throws IOException
+   */
+  @Override
+  protected List<Token> getTokensFromDFAs(CharacterStream cursor) throws IOException, LexException {
+    List<Token> tokens = new ArrayList<Token>();
+
+    while (!cursor.isEndOfInput()) {
+      int state = table.getStartingState();
+      TerminalTokenKind longestKind = null;
+      int longestLength = 0;
+      int length = 0;
+
+      while (!cursor.isEndOfInput()) {
+        char nextSym = cursor.next();
+        state = table.next(state, nextSym);
+        if (state == TableDFAutomaton.DEAD_STATE) {
+          break;
+        }
+        length++;
+        TerminalTokenKind kind = table.getAcceptingKind(state);
+        if (kind != null) {
+          longestKind = kind;
+          longestLength = length;
+        }
+      }
+
+      if (longestKind == null) {
+        if (Joos1Wc.DEBUG) {
+          Token.printTokenList(tokens);
+        }
+        // report the character that could not start a token
+        cursor.resetCurrentPosition();
+        cursor.next();
+        String buffer = cursor.getBufferedString();
+        int currLine = cursor.getCurrentLine();
+        int linePos = cursor.getLinePosition();
+        throw new LexException(String.format(Exceptions.ILLEGAL_TOKEN, currLine, linePos, buffer), buffer, currLine,
+            linePos);
+      }
+
+      if (!isIgnored(longestKind)) {
+        if (literalKinds.contains(longestKind)) {
+          // run the matching automaton on its own to collect the literal value
+          cursor.resetCurrentPosition();
+          tokens.add(table.getAutomaton(longestKind).munge(cursor));
+        } else {
+          tokens.add(new Token(cursor.getFile(), longestKind, cursor.getBuffer(), cursor.getStartPosition(),
+              longestLength, cursor.getCurrentLine(), cursor.getLinePosition(), NO_LITERAL_VALUE));
+        }
+      }
+      cursor.advance(longestLength);
+    }
+
+    tokens.add(new Token(cursor.getFile(), TerminalTokenKind.EOF, "$", -1, -1));
+    return tokens;
+  }
+
+}
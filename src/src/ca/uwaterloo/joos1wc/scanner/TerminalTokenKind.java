@@ -1,10 +1,9 @@
 package ca.uwaterloo.joos1wc.scanner;
 
-import java.io.ByteArrayOutputStream;
-
 import ca.uwaterloo.joos1wc.automata.DFAutomaton;
 import ca.uwaterloo.joos1wc.automata.DFState;
 import ca.uwaterloo.joos1wc.automata.DFTransition;
+import ca.uwaterloo.joos1wc.automata.LiteralBuffer;
 
 public enum TerminalTokenKind implements TokenKind {
   WHITESPACE {
@@ -92,19 +91,18 @@ public enum TerminalTokenKind implements TokenKind {
       states[7] = new DFState(false);  // can see no more octal digits
       states[8] = new DFState(true);   // saw a close apostrophe
       
-      // A little hacky - we need to store context across multiple transitions for octal escapes, which should really
-      // be kept within DFAutomaton, but we need to do all initialization here
+      // We need to store context across multiple transitions for octal escapes, which is kept in the LiteralBuffer
+      // so that the automaton itself stays stateless
       DFTransition.Action octalAction = new DFTransition.Action() {
-        byte val = 0;
         @Override
-        public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+        public void execute(char c, DFTransition t, LiteralBuffer out) {
           if (t.fromState == states[3]) {
-            val = 0;
+            out.escapeValue = 0;
           }
           if (t.toState == states[8]) {
-            out.write(val);
+            out.write(out.escapeValue);
           } else {
-            val = (byte)((val << 3) + (c - '0'));
+            out.escapeValue = (byte)((out.escapeValue << 3) + (c - '0'));
           }
         }
       };
@@ -113,7 +111,7 @@ public enum TerminalTokenKind implements TokenKind {
         new DFTransition(states[0], '\'',  states[1]),
         new DFTransition(states[1], DFTransition.NOTAPOS, states[2], new DFTransition.Action() {
           @Override
-          public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+          public void execute(char c, DFTransition t, LiteralBuffer out) {
             out.write(c);
           }
         }),
@@ -122,7 +120,7 @@ public enum TerminalTokenKind implements TokenKind {
         new DFTransition(states[1], '\\', states[3]),
         new DFTransition(states[3], DFTransition.ESCAPE, states[4], new DFTransition.Action() {
           @Override
-          public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+          public void execute(char c, DFTransition t, LiteralBuffer out) {
             out.write(ESCAPE_CODE_VALS.charAt(ESCAPE_CODES.indexOf(c)));
           }
         }),
@@ -164,25 +162,24 @@ public enum TerminalTokenKind implements TokenKind {
       
       DFTransition.Action plainCharAction = new DFTransition.Action() {
         @Override
-        public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+        public void execute(char c, DFTransition t, LiteralBuffer out) {
           out.write(c);
         }
       };
       
       DFTransition.Action octalAction = new DFTransition.Action() {
-        byte val = 0;
         @Override
-        public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+        public void execute(char c, DFTransition t, LiteralBuffer out) {
           if (t.fromState == states[2]) {
-            val = 0;
+            out.escapeValue = 0;
           }
           if (t.toState == states[1] || t.toState == states[2] || t.toState == states[7]) {
-            out.write(val);
+            out.write(out.escapeValue);
             if (t.toState == states[1]) {
               out.write(c);
             }
           } else {
-            val = (byte)((val << 3) + (c - '0'));
+            out.escapeValue = (byte)((out.escapeValue << 3) + (c - '0'));
           }
         }
       };
@@ -195,7 +192,7 @@ public enum TerminalTokenKind implements TokenKind {
         new DFTransition(states[1], '\\', states[2]),
         new DFTransition(states[2], DFTransition.ESCAPE, states[3], new DFTransition.Action() {
           @Override
-          public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+          public void execute(char c, DFTransition t, LiteralBuffer out) {
             out.write(ESCAPE_CODE_VALS.charAt(ESCAPE_CODES.indexOf(c)));
           }
         }),
@@ -241,7 +238,7 @@ public enum TerminalTokenKind implements TokenKind {
       
       DFTransition.Action action = new DFTransition.Action() {
         @Override
-        public void execute(char c, DFTransition t, ByteArrayOutputStream out) {
+        public void execute(char c, DFTransition t, LiteralBuffer out) {
           out.write(c - '0');
         }
       };
@@ -1,14 +1,22 @@
 package ca.uwaterloo.joos1wc.scanner;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
- * The token is an abstract symbol representing a kind of lexical unit.
+ * The token is an abstract symbol representing a kind of lexical unit. Tokens made by the lexer refer to a range of
+ * the source buffer they were read from, and tokens made by the parser refer to a range of the tokens they were
+ * reduced from. Either kind only builds its string image when it is asked for.
  * */
 public class Token {
 
-  private final String lexeme;
+  private String lexeme;
+  private final byte[] source;
+  private final int start; // the first character in source, or the first token in parts
+  private final int end; // the end of the range in parts
+  private int length; // computed on demand for tokens made from parts
+  private final Token[] parts;
   private final TokenKind tkind;
   private final File sourcefile;
   private final int linenumber;
@@ -31,7 +39,12 @@ public class Token {
    * */
   public Token(File file, TokenKind kind, String text, int line, int posn) {
     tkind = kind;
-    lexeme = text;
+    lexeme = kind == TerminalTokenKind.ID ? Names.intern(text) : text;
+    source = null;
+    start = 0;
+    end = 0;
+    length = text.length();
+    parts = null;
     sourcefile = file;
     linenumber = line;
     position = posn;
@@ -39,9 +52,99 @@ public class Token {
 
   public Token(File file, TokenKind kind, String text, int line, int posn, byte[] literalValue) {
     this(file, kind, text, line, posn);
+    setLiteralValue(literalValue);
+  }
+
+  /**
+   * Constructs a new token for a range of a source buffer. The buffer must not change while the token is in use.
+   * 
+   * @param file
+   *          The filename of this Token.
+   * @param kind
+   *          A value that describes the kind of this token.
+   * @param source
+   *          The ASCII source buffer containing the token.
+   * @param start
+   *          The offset of the first character of this Token in the source buffer.
+   * @param length
+   *          The number of characters in this Token.
+   * @param line
+   *          The line number of the character of this Token.
+   * @param posn
+   *          The column number of the first character of this Token.
+   * @param literalValue
+   *          The value of a literal token.
+   * */
+  public Token(File file, TokenKind kind, byte[] source, int start, int length, int line, int posn,
+      byte[] literalValue) {
+    tkind = kind;
+    lexeme = null;
+    this.source = source;
+    this.start = start;
+    this.end = 0;
+    this.length = length;
+    parts = null;
+    sourcefile = file;
+    linenumber = line;
+    position = posn;
+    setLiteralValue(literalValue);
+  }
+
+  /**
+   * Constructs a new token for a nonterminal from the tokens of the symbols it was reduced from. Its image is the
+   * non-empty images of the parts separated by single spaces.
+   * 
+   * @param file
+   *          The filename of this Token.
+   * @param kind
+   *          A value that describes the kind of this token.
+   * @param parts
+   *          The tokens of the symbols this Token was reduced from, in order.
+   * @param line
+   *          The line number of the character of this Token.
+   * @param posn
+   *          The column number of the first character of this Token.
+   * */
+  public Token(File file, TokenKind kind, Token[] parts, int line, int posn) {
+    this(file, kind, parts, 0, parts.length, line, posn);
+  }
+
+  /**
+   * Constructs a new token for a nonterminal from a range of tokens, usually the terminals of a whole file. This lets
+   * the parser make the tokens for every reduction share one array, rather than each keeping the tokens of its
+   * children. The array must not change while the token is in use.
+   * 
+   * @param file
+   *          The filename of this Token.
+   * @param kind
+   *          A value that describes the kind of this token.
+   * @param parts
+   *          The tokens containing the range.
+   * @param start
+   *          The index of the first token in the range.
+   * @param end
+   *          The index after the last token in the range.
+   * @param line
+   *          The line number of the character of this Token.
+   * @param posn
+   *          The column number of the first character of this Token.
+   * */
+  public Token(File file, TokenKind kind, Token[] parts, int start, int end, int line, int posn) {
+    tkind = kind;
+    lexeme = null;
+    source = null;
+    this.start = start;
+    this.end = end;
+    this.length = -1;
+    this.parts = parts;
+    sourcefile = file;
+    linenumber = line;
+    position = posn;
+  }
 
+  private void setLiteralValue(byte[] literalValue) {
     // Do some post-processing for integer literals
-    if (kind == TerminalTokenKind.INTLITERAL) {
+    if (tkind == TerminalTokenKind.INTLITERAL) {
       long value = 0;
       for (byte x : literalValue) {
         value = value * 10 + x;
@@ -74,16 +177,62 @@ public class Token {
    * @return The string image of the token.
    * */
   public String getImage() {
+    if (lexeme == null) {
+      if (parts != null) {
+        StringBuilder image = new StringBuilder(length());
+        appendImage(image);
+        lexeme = image.toString();
+      } else {
+        lexeme = new String(source, start, length, StandardCharsets.US_ASCII);
+        if (tkind == TerminalTokenKind.ID) {
+          lexeme = Names.intern(lexeme);
+        }
+      }
+    }
     return lexeme;
   }
 
+  /**
+   * Appends the image of this token without building the images of its parts, which are usually never asked for.
+   */
+  private void appendImage(StringBuilder image) {
+    if (lexeme != null) {
+      image.append(lexeme);
+    } else if (parts != null) {
+      int first = image.length();
+      for (int i = start; i < end; i++) {
+        if (parts[i].length() == 0) {
+          continue;
+        }
+        if (image.length() > first) {
+          image.append(' ');
+        }
+        parts[i].appendImage(image);
+      }
+    } else {
+      for (int i = start; i < start + length; i++) {
+        image.append((char) source[i]);
+      }
+    }
+  }
+
   /**
    * Returns the length of this string. The length is equal to the number of ASCII-7 code units in the string.
    * 
    * @return The length of the sequence of characters represented by this object.
    */
   public int length() {
-    return lexeme.length();
+    if (length < 0) {
+      int length = 0;
+      for (int i = start; i < end; i++) {
+        int partLength = parts[i].length();
+        if (partLength > 0) {
+          length += length > 0 ? partLength + 1 : partLength;
+        }
+      }
+      this.length = length;
+    }
+    return length;
   }
 
   /**
@@ -139,7 +288,7 @@ public class Token {
     if (tkind == TerminalTokenKind.WHITESPACE) {
       return "<WS>";
     }
-    return String.format("<%s %s>", tkind, "\"" + lexeme + "\"");
+    return String.format("<%s %s>", tkind, "\"" + getImage() + "\"");
   }
 
   /**
@@ -0,0 +1,103 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.uwaterloo.joos1wc.diagnostics.LexException;
+
+/**
+ * Keeps the tokens of each source file between compilations, so that a file is only lexed again when its contents
+ * change. Files are fingerprinted by a digest of their contents rather than their modification time, which is too
+ * coarse for quick edits. Tokens are never changed after lexing, so they can be shared between compilations.
+ *
+ * Lookups are thread safe, since the front end lexes files in parallel.
+ */
+public class TokenCache {
+  private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  private int hits = 0;
+  private int misses = 0;
+
+  private static class Entry {
+    final byte[] fingerprint;
+    final List<Token> tokens;
+
+    Entry(byte[] fingerprint, List<Token> tokens) {
+      this.fingerprint = fingerprint;
+      this.tokens = tokens;
+    }
+  }
+
+  /**
+   * Returns the tokens of a source file, lexing it only if it changed since it was last lexed.
+   */
+  public List<Token> lex(Lexer lexer, File sourceFile) throws IOException, LexException {
+    String key = sourceFile.getCanonicalPath();
+    byte[] fingerprint = fingerprint(sourceFile);
+
+    Entry entry = entries.get(key);
+    if (entry != null && Arrays.equals(entry.fingerprint, fingerprint)) {
+      count(true);
+      return entry.tokens;
+    }
+
+    count(false);
+    List<Token> tokens = Collections.unmodifiableList(lexer.lex(sourceFile));
+    entries.put(key, new Entry(fingerprint, tokens));
+    return tokens;
+  }
+
+  /**
+   * Forgets the files that are not in the given list, e.g. because they were deleted.
+   */
+  public void retain(String[] sourceFileNames) throws IOException {
+    List<String> keys = new ArrayList<String>(sourceFileNames.length);
+    for (String sourceFileName : sourceFileNames) {
+      keys.add(new File(sourceFileName).getCanonicalPath());
+    }
+    entries.keySet().retainAll(keys);
+  }
+
+  /**
+   * @return the fingerprint of the contents the file had when it was last lexed, or null if it has not been lexed
+   */
+  public byte[] getFingerprint(File sourceFile) throws IOException {
+    Entry entry = entries.get(sourceFile.getCanonicalPath());
+    return entry == null ? null : entry.fingerprint;
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  private synchronized void count(boolean hit) {
+    if (hit) {
+      hits++;
+    } else {
+      misses++;
+    }
+  }
+
+  private static byte[] fingerprint(File sourceFile) throws IOException {
+    try {
+      return MessageDigest.getInstance(FINGERPRINT_ALGORITHM).digest(Files.readAllBytes(sourceFile.toPath()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -5,26 +5,29 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
- * Exposes a Cursor around a stream, supporting read and seek operations on the underlying buffered stream.
+ * Exposes a Cursor around a stream, supporting read and seek operations on the underlying stream. The whole stream is
+ * read into a single buffer on first use, so seeking is constant time and an offset into the buffer stays valid for the
+ * life of the stream. Line and column numbers are looked up on demand in an index of line starts.
  */
 public class CharacterStream {
 
   private static final char NEWLINE = '\n';
+  private static final int DEFAULT_BUFFER_SIZE = 1024;
 
   private final InputStream input;
   private final File file;
-  private boolean isInputEof;
   private int startPosition;
   private int endPosition;
   private int readPosition;
-  private int line = 1, col = 1;
-  private byte[] buffer = new byte[1024];
+  private byte[] buffer = null;
+  private int[] lineStarts;
 
   /**
    * Constructs an cursor on the specified file.
-   * 
+   *
    * @param file
    *          The file to scan.
    * @throws FileNotFoundException
@@ -36,7 +39,7 @@ public class CharacterStream {
 
   /**
    * Constructs an cursor on the specified stream.
-   * 
+   *
    * @param input
    *          The stream to scan.
    */
@@ -47,7 +50,7 @@ public class CharacterStream {
 
   /**
    * Closes this cursor.
-   * 
+   *
    * @throws IOException
    */
   public void close() throws IOException {
@@ -56,22 +59,18 @@ public class CharacterStream {
 
   /**
    * Sets the current position of this stream based on the given offset value.
-   * 
+   *
    * @param distance
    *          The point relative to origin from which to begin seeking.
    * @throws IOException
    */
   public void advance(int distance) throws IOException {
-    resetCurrentPosition();
-    for (int i = 0; i < distance; i++) {
-      char c = next();
-      col++;
-      if (c == NEWLINE) {
-        line++;
-        col = 1;
-      }
+    load();
+    if (startPosition + distance > endPosition) {
+      throw new IOException("Tried to read past end of file");
     }
-    startPosition = readPosition;
+    startPosition += distance;
+    readPosition = startPosition;
   }
 
   /**
@@ -83,48 +82,32 @@ public class CharacterStream {
 
   /**
    * Returns true if this scanner has reached then end of its input.
-   * 
+   *
    * @return Whether or not we have reached the end of the input stream.
    */
   public boolean isEndOfInput() {
-    return isInputEof && readPosition == endPosition;
+    if (buffer == null) {
+      try {
+        load();
+      } catch (IOException e) {
+        // leave the error to be reported by the next read
+        return false;
+      }
+    }
+    return readPosition == endPosition;
   }
 
   /**
    * Finds and returns the next character from this scanner.
-   * 
+   *
    * @return The next character in the input stream.
    * @throws IOException
    */
   public char next() throws IOException {
-    if (isEndOfInput()) {
-      throw new IOException("Tried to read past end of file");
-    }
-
-    // If no bytes left in buffer, read from input stream
+    load();
     if (readPosition == endPosition) {
-      if (isInputEof) {
-        throw new IOException("Tried to read past end of file");
-      }
-
-      // If we started reading from the first half of the buffer, expand the buffer first
-      // Then copy everything after startPosition to the beginning of the buffer
-      // The copy can be avoided with a cyclic buffer, but it's probably not worth the extra complexity
-      if (startPosition < buffer.length / 2) {
-        byte[] newBuffer = new byte[2 * buffer.length];
-        System.arraycopy(buffer, startPosition, newBuffer, 0, endPosition - startPosition);
-        buffer = newBuffer;
-      } else {
-        System.arraycopy(buffer, startPosition, buffer, 0, endPosition - startPosition);
-      }
-
-      // Update the indices and read
-      endPosition -= startPosition;
-      readPosition -= startPosition;
-      startPosition = 0;
-      readToBuffer();
+      throw new IOException("Tried to read past end of file");
     }
-    assert(readPosition < endPosition);
 
     // Check for ASCII, advance position and return
     byte b = buffer[readPosition];
@@ -137,7 +120,7 @@ public class CharacterStream {
 
   /**
    * The file currently being scanned.
-   * 
+   *
    * @return A file to be scanned.
    */
   public File getFile() {
@@ -146,38 +129,116 @@ public class CharacterStream {
 
   /**
    * Get the current line number.
-   * 
+   *
    * @return The current line number.
    */
   public int getCurrentLine() {
-    return line;
+    return getLine(startPosition);
   }
 
   /**
    * Get the current column position.
-   * 
+   *
    * @return The current column position.
    */
   public int getLinePosition() {
-    return col;
+    if (lineStarts == null) {
+      return 1;
+    }
+    return startPosition - lineStarts[getLine(startPosition) - 1] + 1;
+  }
+
+  /**
+   * Gets the line number of an offset in the input buffer.
+   *
+   * @param offset
+   *          An offset in the input buffer.
+   * @return The line number containing the offset.
+   */
+  public int getLine(int offset) {
+    if (lineStarts == null) {
+      return 1;
+    }
+    int index = Arrays.binarySearch(lineStarts, offset);
+    // a miss returns -(insertion point) - 1, and the line is the one before the insertion point
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  /**
+   * Gets the buffer holding the whole input.
+   *
+   * @return The input buffer.
+   */
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Gets the offset in the input buffer of the current position, where the next token starts.
+   *
+   * @return The offset of the current position.
+   */
+  public int getStartPosition() {
+    return startPosition;
   }
 
   /**
    * Returns a buffer string representing recently read input.
-   * 
+   *
    * @return A string representing buffered input.
    */
   public String getBufferedString() {
-    byte[] subset = new byte[readPosition - startPosition];
-    System.arraycopy(buffer, startPosition, subset, 0, readPosition - startPosition);
-    return new String(subset);
+    if (buffer == null) {
+      return "";
+    }
+    return new String(buffer, startPosition, readPosition - startPosition);
   }
 
-  private void readToBuffer() throws IOException {
-    int numBytesToRead = buffer.length - endPosition;
-    int bytesRead = input.read(buffer, endPosition, numBytesToRead);
-    isInputEof = bytesRead < numBytesToRead;
-    endPosition += bytesRead;
+  /**
+   * Reads the whole input into the buffer and indexes the start of each line, unless that has already been done.
+   */
+  private void load() throws IOException {
+    if (buffer != null) {
+      return;
+    }
+
+    long size = file == null ? 0 : file.length();
+    byte[] bytes = new byte[size > 0 && size < Integer.MAX_VALUE ? (int) size : DEFAULT_BUFFER_SIZE];
+    int length = 0;
+    while (true) {
+      if (length == bytes.length) {
+        // check for the end of input before growing, since a file size is usually exact
+        int b = input.read();
+        if (b < 0) {
+          break;
+        }
+        bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        bytes[length++] = (byte) b;
+      }
+      int bytesRead = input.read(bytes, length, bytes.length - length);
+      if (bytesRead < 0) {
+        break;
+      }
+      length += bytesRead;
+    }
+
+    int lineCount = 1;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == NEWLINE) {
+        lineCount++;
+      }
+    }
+    int[] lineStarts = new int[lineCount];
+    int line = 1;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == NEWLINE) {
+        lineStarts[line++] = i + 1;
+      }
+    }
+
+    this.buffer = bytes;
+    this.endPosition = length;
+    this.lineStarts = lineStarts;
   }
 
 }
@@ -0,0 +1,197 @@
+package ca.uwaterloo.joos1wc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.scanner.TokenCache;
+
+/**
+ * Compiles a program, edits it and compiles it again with the state of the first compilation, and checks both which
+ * types were reused and that the output is the same as that of a compilation from scratch.
+ */
+public class BuildStateTest {
+  private static final String[] TYPES = new String[] { "Main", "A", "B", "C", "D", "E" };
+
+  private File workingDir;
+  private File fullDir;
+  private String[] args;
+  private TokenCache tokenCache;
+  private BuildState buildState;
+
+  @Before
+  public void setup() throws IOException {
+    workingDir = E2ETestHelper.createWorkingDir("BuildStateTest");
+    fullDir = E2ETestHelper.createWorkingDir("BuildStateTest");
+
+    List<String> sourceFiles = new ArrayList<String>();
+    for (String type : TYPES) {
+      sourceFiles.add(new File(workingDir, type + ".java").getPath());
+    }
+    sourceFiles.addAll(E2ETestHelper.getDirectoryStructure(E2ETestHelper.STDLIB_DIR));
+    args = sourceFiles.toArray(new String[sourceFiles.size()]);
+
+    write("Main", "public class Main {\n"
+        + "  public Main() {}\n"
+        + "  public static int test() {\n"
+        + "    B b = new B();\n"
+        + "    E e = new A();\n"
+        + "    return b.get() + e.get() + C.twice(b.x) + D.three();\n"
+        + "  }\n"
+        + "}\n");
+    write("A", "public class A implements E {\n"
+        + "  public int x = 1;\n"
+        + "  public A() {}\n"
+        + "  public int get() { return x; }\n"
+        + "}\n");
+    write("B", "public class B extends A {\n"
+        + "  public int y = 2;\n"
+        + "  public B() {}\n"
+        + "  public int get() { return x + y; }\n"
+        + "}\n");
+    write("C", "public class C {\n"
+        + "  public C() {}\n"
+        + "  public static int twice(int n) { return n * 2; }\n"
+        + "}\n");
+    write("D", "public class D {\n"
+        + "  public D() {}\n"
+        + "  public static int three() { return 3; }\n"
+        + "}\n");
+    write("E", "public interface E {\n"
+        + "  public int get();\n"
+        + "}\n");
+
+    tokenCache = new TokenCache();
+    buildState = new BuildState(tokenCache);
+    compile();
+    assertReused();
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    E2ETestHelper.recursivelyDelete(workingDir.toPath());
+    E2ETestHelper.recursivelyDelete(fullDir.toPath());
+  }
+
+  @Test
+  public void unchangedProgramIsReused() throws IOException {
+    compile();
+    assertReused(TYPES);
+  }
+
+  @Test
+  public void bodyEditOnlyGeneratesItsType() throws IOException {
+    write("C", "public class C {\n"
+        + "  public C() {}\n"
+        + "  public static int twice(int n) { return n + n; }\n"
+        + "}\n");
+    compile();
+    assertReused("Main", "A", "B", "D", "E");
+  }
+
+  @Test
+  public void declarationEditGeneratesDependentTypes() throws IOException {
+    write("C", "public class C {\n"
+        + "  public C() {}\n"
+        + "  public static int once(int n) { return n; }\n"
+        + "  public static int twice(int n) { return n * 2; }\n"
+        + "}\n");
+    compile();
+    assertReused("A", "B", "D", "E");
+  }
+
+  @Test
+  public void initializerEditGeneratesSubclasses() throws IOException {
+    write("A", "public class A implements E {\n"
+        + "  public int x = 5;\n"
+        + "  public A() {}\n"
+        + "  public int get() { return x; }\n"
+        + "}\n");
+    compile();
+    assertReused("Main", "C", "D", "E");
+  }
+
+  @Test
+  public void subclassEditGeneratesInitializersOfSuperclass() throws IOException {
+    write("B", "public class B extends A {\n"
+        + "  public int y = 7;\n"
+        + "  public B() {}\n"
+        + "  public int get() { return x + y; }\n"
+        + "}\n");
+    compile();
+    assertReused("Main", "C", "D", "E");
+  }
+
+  @Test
+  public void failedBuildReusesNothing() throws IOException {
+    write("D", "public class D {\n"
+        + "  public D() {}\n"
+        + "  public static int three() { return true; }\n"
+        + "}\n");
+    Assert.assertEquals("Compilation should fail", 42, Joos1Wc.compile(createContext(workingDir)));
+    // as the compile server does
+    buildState.clear();
+
+    write("D", "public class D {\n"
+        + "  public D() {}\n"
+        + "  public static int three() { return 3; }\n"
+        + "}\n");
+    compile();
+    assertReused();
+  }
+
+  private void write(String type, String source) throws IOException {
+    Files.write(new File(workingDir, type + ".java").toPath(), source.getBytes());
+  }
+
+  private CompilationContext createContext(File dir) {
+    CompilationContext context = new CompilationContext(dir, args);
+    if (dir == workingDir) {
+      context.tokenCache = tokenCache;
+      context.buildState = buildState;
+    }
+    return context;
+  }
+
+  /**
+   * Compiles the program with the build state, and from scratch into another directory, and expects the same output.
+   */
+  private void compile() throws IOException {
+    CompilationContext context = createContext(workingDir);
+    Assert.assertEquals("Compilation failed", 0, Joos1Wc.compile(context));
+    CompilationContext fullContext = createContext(fullDir);
+    Assert.assertEquals("Compilation failed", 0, Joos1Wc.compile(fullContext));
+
+    String[] names = new File(fullDir, "output").list();
+    Arrays.sort(names);
+    String[] actualNames = new File(workingDir, "output").list();
+    Arrays.sort(actualNames);
+    Assert.assertArrayEquals("Wrong output files", names, actualNames);
+    for (String name : names) {
+      byte[] expected = Files.readAllBytes(new File(fullDir, "output/" + name).toPath());
+      byte[] actual = Files.readAllBytes(new File(workingDir, "output/" + name).toPath());
+      Assert.assertTrue(name + " should be the same as from scratch", Arrays.equals(expected, actual));
+    }
+  }
+
+  private void assertReused(String... types) {
+    Set<String> reused = new TreeSet<String>();
+    for (String type : TYPES) {
+      if (buildState.getReusedTypes().contains(type)) {
+        reused.add(type);
+      }
+    }
+    Assert.assertEquals("Wrong types reused", new TreeSet<String>(Arrays.asList(types)), reused);
+  }
+
+}
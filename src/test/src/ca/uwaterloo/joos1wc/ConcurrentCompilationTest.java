@@ -0,0 +1,133 @@
+package ca.uwaterloo.joos1wc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compiles every a5 program one after the other and then all at once, and checks that both ways give the same results.
+ * Also checks that the phases which run in parallel within one compilation give the same results on one thread.
+ */
+public class ConcurrentCompilationTest {
+  private static final File TESTCASE_DIR = new File("test/resources/assignment_testcases/a5");
+  private static final File STDLIB_DIR = new File("test/resources/stdlib/5.0");
+  private static final int THREADS = 4;
+
+  private List<String[]> programs;
+  private File root;
+
+  @Before
+  public void setup() throws IOException {
+    List<String> stdlibFiles = new ArrayList<String>();
+    findSourceFiles(STDLIB_DIR, stdlibFiles);
+
+    programs = new ArrayList<String[]>();
+    String[] names = TESTCASE_DIR.list();
+    Arrays.sort(names);
+    for (String name : names) {
+      if (!name.endsWith(".status")) {
+        continue;
+      }
+      List<String> sourceFiles = new ArrayList<String>();
+      findSourceFiles(new File(TESTCASE_DIR, name.substring(0, name.length() - ".status".length())), sourceFiles);
+      sourceFiles.addAll(stdlibFiles);
+      programs.add(sourceFiles.toArray(new String[sourceFiles.size()]));
+    }
+
+    root = Files.createTempDirectory("ConcurrentCompilationTest").toFile();
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    E2ETestHelper.recursivelyDelete(root.toPath());
+  }
+
+  @Test
+  public void concurrentMatchesSequential() throws IOException {
+    List<CompilationContext> sequential = createContexts("sequential", 1);
+    int[] expectedExitCodes = new int[sequential.size()];
+    for (int i = 0; i < sequential.size(); i++) {
+      expectedExitCodes[i] = Joos1Wc.compile(sequential.get(i));
+    }
+
+    List<CompilationContext> concurrent = createContexts("concurrent", 1);
+    int[] exitCodes = Joos1Wc.compileAll(concurrent, THREADS);
+
+    Assert.assertArrayEquals("Exit codes should not depend on concurrency", expectedExitCodes, exitCodes);
+    assertSameOutput(sequential, concurrent);
+  }
+
+  @Test
+  public void parallelPhasesMatchOneThread() throws IOException {
+    // only the programs with several files of their own, since every program is checked above
+    List<String[]> allPrograms = programs;
+    programs = new ArrayList<String[]>();
+    for (String[] program : allPrograms) {
+      if (new File(program[0]).getParentFile().getParentFile().equals(TESTCASE_DIR)) {
+        programs.add(program);
+      }
+    }
+    Assert.assertFalse("There should be programs with several files", programs.isEmpty());
+
+    List<CompilationContext> oneThread = createContexts("one", 1);
+    List<CompilationContext> parallel = createContexts("parallel", THREADS);
+    for (int i = 0; i < programs.size(); i++) {
+      Assert.assertEquals("Exit codes should not depend on threads", Joos1Wc.compile(oneThread.get(i)),
+          Joos1Wc.compile(parallel.get(i)));
+    }
+    assertSameOutput(oneThread, parallel);
+  }
+
+  private static void assertSameOutput(List<CompilationContext> expected, List<CompilationContext> actual)
+      throws IOException {
+    for (int i = 0; i < expected.size(); i++) {
+      File expectedDir = new File(expected.get(i).workingDir, "output");
+      File outputDir = new File(actual.get(i).workingDir, "output");
+      String[] expectedFiles = expectedDir.list();
+      Arrays.sort(expectedFiles);
+      String[] files = outputDir.list();
+      Arrays.sort(files);
+      Assert.assertArrayEquals("Wrong output files for program " + i, expectedFiles, files);
+      for (String file : files) {
+        Assert.assertArrayEquals("Wrong output in " + file + " for program " + i,
+            Files.readAllBytes(new File(expectedDir, file).toPath()),
+            Files.readAllBytes(new File(outputDir, file).toPath()));
+      }
+    }
+  }
+
+  private List<CompilationContext> createContexts(String name, int threads) throws IOException {
+    List<CompilationContext> contexts = new ArrayList<CompilationContext>(programs.size());
+    for (int i = 0; i < programs.size(); i++) {
+      File workingDir = new File(root, name + i);
+      Files.createDirectories(new File(workingDir, "output").toPath());
+      CompilationContext context = new CompilationContext(workingDir, programs.get(i));
+      context.threads = threads;
+      contexts.add(context);
+    }
+    return contexts;
+  }
+
+  private static void findSourceFiles(File file, List<String> sourceFiles) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      if (file.getName().endsWith(".java")) {
+        sourceFiles.add(file.getPath());
+      }
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      findSourceFiles(child, sourceFiles);
+    }
+  }
+
+}
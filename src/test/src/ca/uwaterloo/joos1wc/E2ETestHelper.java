@@ -37,7 +37,7 @@ public class E2ETestHelper {
       new File(E2EDIR + "a1"), new File(ADIR + "a1"), new File(E2EDIR + "a2"), new File(ADIR + "a2"),
       new File(E2EDIR + "a3"), new File(ADIR + "a3") };
 
-  private static final File STDLIB_DIR = new File("test/resources/stdlib/5.0");
+  public static final File STDLIB_DIR = new File("test/resources/stdlib/5.0");
   private static final List<String> STDLIB_FILES = getDirectoryStructure(STDLIB_DIR);
 
   private static final String ASSEMBLER_CMD = "tools/nasm -O1 -f elf -g -F dwarf %s -o %s";
@@ -49,7 +49,7 @@ public class E2ETestHelper {
         BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
         System.out.print("Recursively delete " + BASE_OUTPUT_DIR.getAbsolutePath() + "? (y/n) ");
         String input = in.readLine();
-        if (input.equals("y")) {
+        if ("y".equals(input)) {
           E2ETestHelper.recursivelyDelete(BASE_OUTPUT_DIR.toPath());
           Files.createDirectories(BASE_OUTPUT_DIR.toPath());
         }
@@ -81,6 +81,47 @@ public class E2ETestHelper {
     return ret;
   }
 
+  /**
+   * Creates a temporary working directory for a compilation, with its output directory. Remove it with
+   * recursivelyDelete when done.
+   */
+  public static File createWorkingDir(String prefix) throws IOException {
+    File workingDir = Files.createTempDirectory(prefix).toFile();
+    Files.createDirectory(new File(workingDir, "output").toPath());
+    return workingDir;
+  }
+
+  /**
+   * Compiles the source as Main.java in the working directory, with the other arguments, and expects it to succeed.
+   * Main is the first file, so its test method is the one the program runs.
+   *
+   * @return the assembly generated for Main
+   */
+  public static String compileMain(File workingDir, List<String> args, String source) throws IOException {
+    File program = new File(workingDir, "Main.java");
+    Files.write(program.toPath(), source.getBytes());
+    List<String> allArgs = new ArrayList<String>();
+    allArgs.add(program.getPath());
+    allArgs.addAll(args);
+
+    CompilationContext context = new CompilationContext(workingDir, allArgs.toArray(new String[allArgs.size()]));
+    Assert.assertEquals("Compilation failed", 0, Joos1Wc.compile(context));
+    return new String(Files.readAllBytes(new File(workingDir, "output/Main.s").toPath()));
+  }
+
+  /**
+   * Assembles and links the output of a compilation in the working directory, and runs it.
+   *
+   * @return the exit status of the program
+   */
+  public static int assembleAndRun(File workingDir) throws IOException, InterruptedException {
+    assembleAndLink(workingDir);
+    Process p = new ProcessBuilder(new File(workingDir, "main").getAbsolutePath()).start();
+    int status = p.waitFor();
+    redirectToStderr(p.getErrorStream());
+    return status;
+  }
+
   public static List<String> getFiles(File[] testcases) {
     List<String> data = new ArrayList<String>();
     for (File dir : testcases) {
@@ -11,7 +11,11 @@ import static ca.uwaterloo.joos1wc.scanner.TerminalTokenKind.RPAREN;
 import static ca.uwaterloo.joos1wc.scanner.TerminalTokenKind.STATIC;
 import static ca.uwaterloo.joos1wc.scanner.TerminalTokenKind.VOID;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -20,7 +24,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import ca.uwaterloo.joos1wc.ast.CompilationUnit;
 import ca.uwaterloo.joos1wc.ast.TreeNode;
+import ca.uwaterloo.joos1wc.diagnostics.LRException;
 import ca.uwaterloo.joos1wc.scanner.Token;
 import ca.uwaterloo.joos1wc.scanner.TokenKind;
 
@@ -88,4 +94,59 @@ public class Joos1WcTest {
     // maybe make a counting visitor that just counts the nodes?
   }
   
-}
\ No newline at end of file
+  @Test
+  public void lexAndParseInInputOrder() throws Exception {
+    String[] manyFiles = new String[8];
+    String[] typeNames = new String[manyFiles.length];
+    for (int i = 0; i < manyFiles.length; i++) {
+      manyFiles[i] = files[i % files.length];
+      typeNames[i] = new File(manyFiles[i]).getName().replace(".java", "");
+    }
+    
+    CompilationContext context = new CompilationContext(Joos1Wc.CWD, manyFiles);
+    context.threads = 4;
+    List<TreeNode> returnedTrees = Joos1Wc.lexAndParse(context, manyFiles);
+    Assert.assertEquals("Wrong number of trees", manyFiles.length, returnedTrees.size());
+    for (int i = 0; i < manyFiles.length; i++) {
+      CompilationUnit unit = (CompilationUnit) returnedTrees.get(i);
+      Assert.assertEquals("Tree out of order", typeNames[i], unit.typeDecls.get(0).name);
+    }
+  }
+  
+  @Test
+  public void lexAndParseReportsFirstError() throws Exception {
+    File lexError = File.createTempFile("Joos1WcTest", ".java");
+    lexError.deleteOnExit();
+    Files.write(lexError.toPath(), "public class # {}".getBytes());
+    File parseError = File.createTempFile("Joos1WcTest", ".java");
+    parseError.deleteOnExit();
+    Files.write(parseError.toPath(), "public class {}".getBytes());
+    
+    String[] sourceFileNames = new String[] { file0, parseError.getPath(), lexError.getPath(), file1 };
+    CompilationContext context = new CompilationContext(Joos1Wc.CWD, sourceFileNames);
+    context.threads = 4;
+    try {
+      Joos1Wc.lexAndParse(context, sourceFileNames);
+      Assert.fail("An error should have been thrown");
+    } catch (LRException e) {
+      // the parse error comes first in input order
+    }
+  }
+  
+  @Test
+  public void serveAnswersEachRequest() throws Exception {
+    File dir = Files.createTempDirectory("Joos1WcTest").toFile();
+    File missing = new File(dir, "Missing.java");
+    String requests = String.format("%s\n%s\n\nignored.java\n", missing.getPath(), missing.getPath());
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    
+    try {
+      Joos1Wc.serve(new String[0], new ByteArrayInputStream(requests.getBytes()), new PrintStream(output));
+    } finally {
+      E2ETestHelper.recursivelyDelete(dir.toPath());
+    }
+    String[] answers = output.toString().split("\n");
+    Assert.assertArrayEquals("Wrong answers", new String[] { "exit 42", "exit 42" }, answers);
+  }
+  
+}
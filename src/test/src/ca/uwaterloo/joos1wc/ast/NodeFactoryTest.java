@@ -0,0 +1,39 @@
+package ca.uwaterloo.joos1wc.ast;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.scanner.NonTerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.Token;
+
+public class NodeFactoryTest {
+  private final NonTerminalTokenKind simpleName = new NonTerminalTokenKind("SimpleName");
+  private final Terminal id = new Terminal(new Token(null, TerminalTokenKind.ID, "foo", 1, 1));
+
+  @Test
+  public void buildsMatchingProduction() {
+    Token token = new Token(null, simpleName, "foo", 1, 1);
+    List<TreeNode> children = Arrays.<TreeNode> asList(id);
+
+    TreeNode node = NodeFactory.forRule(simpleName, 1).newNode(token, children);
+    Assert.assertTrue("Wrong node class", node instanceof SimpleName);
+    Assert.assertEquals("Wrong identifier", "foo", ((SimpleName) node).identifier);
+    Assert.assertEquals("Should match the name lookup", TreeNode.newNonTerminalNode(token, children).getClass(),
+        node.getClass());
+  }
+
+  @Test
+  public void fallsBackToNonTerminal() {
+    Token token = new Token(null, simpleName, "foo foo", 1, 1);
+    TreeNode node = NodeFactory.forRule(simpleName, 2).newNode(token, Arrays.<TreeNode> asList(id, id));
+    Assert.assertTrue("No production has two children", node instanceof NonTerminal);
+
+    NonTerminalTokenKind unknown = new NonTerminalTokenKind("NoSuchSymbol");
+    node = NodeFactory.forRule(unknown, 1).newNode(new Token(null, unknown, "foo", 1, 1), Arrays.<TreeNode> asList(id));
+    Assert.assertTrue("Unknown symbols are left as NonTerminals", node instanceof NonTerminal);
+  }
+}
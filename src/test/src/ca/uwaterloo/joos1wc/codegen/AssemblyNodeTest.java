@@ -0,0 +1,79 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+
+public class AssemblyNodeTest {
+
+  @Test
+  public void printInstructions() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.label("Cfoo"));
+    asm.addChild(AssemblyNode.push(Register.EBP));
+    asm.addChild(AssemblyNode.mov(Register.EAX, 42), "answer");
+    asm.addChild(AssemblyNode.mov(Register.EAX, "1"));
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, -8));
+    asm.addChild(AssemblyNode.movFromMem(Register.AL, Register.EBX));
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, "Cfoo$bar", 0));
+    asm.addChild(AssemblyNode.movToMem(Register.EBX, Register.EAX));
+    asm.addChild(AssemblyNode.movToMem(Register.EAX, "Cfoo", -8));
+    asm.addChild(AssemblyNode.lea(Register.EAX, Register.EBP, 12));
+    asm.addChild(AssemblyNode.j(Condition.GE, "__exception"));
+    asm.addChild(AssemblyNode.set(Condition.NE, Register.AL));
+    asm.addChild(AssemblyNode.call(Register.EAX));
+    asm.addChild(AssemblyNode.push("Cfoo"));
+    asm.addChild(AssemblyNode.dbChar("foo"));
+    asm.addChild(AssemblyNode.dd(3));
+    asm.addChild(AssemblyNode.comment("two\nlines"));
+    asm.addChild(AssemblyNode.SECTION_TEXT);
+    asm.addChild(AssemblyNode.INT_EXIT);
+
+    Assert.assertEquals("Wrong assembly", "  global Cfoo\n" + "Cfoo:\n" + "  push ebp\n" + "  mov eax, 42 ; answer\n"
+        + "  mov eax, 1\n" + "  mov eax, [ebp + -8]\n" + "  mov al, [ebx]\n" + "  mov eax, [Cfoo$bar + 0]\n"
+        + "  mov DWORD [ebx], eax\n" + "  mov DWORD [eax + -8], Cfoo\n" + "  lea eax, [ebp + 12]\n"
+        + "  jge __exception\n" + "  setne al\n" + "  call eax\n" + "  push dword Cfoo\n" + "  db 'foo'\n"
+        + "  dd 3\n" + "; two lines\n" + "section .text\n" + "  int 0x80\n", print(asm));
+  }
+
+  @Test
+  public void symbols() {
+    AssemblyNode inner = new AssemblyNode();
+    inner.addChild(AssemblyNode.label(".local"));
+    inner.requires("__exception");
+    inner.requires("Cfoo");
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(inner);
+    asm.addChild(AssemblyNode.label("Cfoo"));
+
+    String text = print(asm);
+    Assert.assertTrue("Missing extern", text.contains("  extern __exception\n"));
+    Assert.assertFalse("Provided symbols are not extern", text.contains("extern Cfoo"));
+    Assert.assertTrue("Missing global", text.contains("  global Cfoo\n"));
+    Assert.assertFalse("Local labels are not global", text.contains("global .local"));
+  }
+
+  @Test
+  public void sharedInstructionsUnchanged() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.RET, "return");
+    asm.addChild(AssemblyNode.RET);
+
+    Assert.assertEquals("Comment should only be on the copy", "  ret ; return\n  ret\n", print(asm));
+    Assert.assertEquals("Shared instruction was changed", "  ret\n", print(AssemblyNode.RET));
+  }
+
+  private static String print(AssemblyNode asm) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream stream = new PrintStream(bytes);
+    asm.print(stream);
+    stream.close();
+    return bytes.toString();
+  }
+
+}
@@ -0,0 +1,83 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.E2ETestHelper;
+import ca.uwaterloo.joos1wc.ast.declaration.TypeDeclaration;
+
+public class LibrarySnapshotTest {
+  private File root;
+  private File libraryDir;
+  private File cacheDir;
+  private File objectFile;
+  private File programFile;
+  private String[] sourceFileNames;
+
+  @Before
+  public void setup() throws Exception {
+    root = Files.createTempDirectory("LibrarySnapshotTest").toFile();
+    libraryDir = new File(root, "stdlib");
+    cacheDir = new File(root, "cache");
+    objectFile = new File(libraryDir, "java/lang/Object.java");
+    programFile = new File(root, "Main.java");
+
+    Files.createDirectories(objectFile.getParentFile().toPath());
+    Files.write(objectFile.toPath(), "package java.lang; public class Object { public Object() {} }".getBytes());
+    Files.write(programFile.toPath(), "public class Main { public Main() {} }".getBytes());
+    sourceFileNames = new String[] { programFile.getPath(), objectFile.getPath() };
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    E2ETestHelper.recursivelyDelete(root.toPath());
+  }
+
+  @Test
+  public void libraryFiles() throws Exception {
+    LibrarySnapshot snapshot = new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames);
+
+    Assert.assertTrue("Object should be in the library", snapshot.isLibrary(objectFile));
+    Assert.assertFalse("Main should not be in the library", snapshot.isLibrary(programFile));
+    Assert.assertFalse("A directory next to the library is not in it",
+        snapshot.isLibrary(new File(libraryDir.getPath() + "2", "Foo.java")));
+  }
+
+  @Test
+  public void keyCoversLibrarySources() throws Exception {
+    String key = new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames).getKey();
+    Assert.assertEquals("Key should be stable", key, new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames).getKey());
+
+    Files.write(programFile.toPath(), "public class Main { }".getBytes());
+    Assert.assertEquals("Key should not depend on the program", key,
+        new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames).getKey());
+
+    Files.write(objectFile.toPath(), "package java.lang; public class Object { }".getBytes());
+    Assert.assertNotEquals("Key should depend on the library", key,
+        new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames).getKey());
+  }
+
+  @Test
+  public void storeThenRestore() throws Exception {
+    LibrarySnapshot snapshot = new LibrarySnapshot(libraryDir, cacheDir, sourceFileNames);
+    Assert.assertFalse("Nothing should be stored yet", snapshot.isStored());
+
+    File outputDir = new File(root, "output");
+    Files.createDirectory(outputDir.toPath());
+    snapshot.store(outputDir, Collections.<TypeDeclaration> emptyList());
+    Assert.assertTrue("Snapshot should be stored", snapshot.isStored());
+    Assert.assertEquals("Only the snapshot should be left in the cache", 1, cacheDir.list().length);
+
+    // storing the same snapshot again is harmless
+    snapshot.store(outputDir, Collections.<TypeDeclaration> emptyList());
+    Assert.assertEquals("Only the snapshot should be left in the cache", 1, cacheDir.list().length);
+    snapshot.restore(outputDir);
+  }
+
+}
@@ -0,0 +1,161 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Condition;
+import ca.uwaterloo.joos1wc.codegen.AssemblyNode.Register;
+import ca.uwaterloo.joos1wc.codegen.PeepholeOptimizer.Rule;
+
+public class PeepholeOptimizerTest {
+
+  @Test
+  public void spill() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.push(Register.EAX));
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, -8), "x");
+    asm.addChild(AssemblyNode.mov(Register.EBX, Register.EAX));
+    asm.addChild(AssemblyNode.pop(Register.EAX));
+    asm.addChild(AssemblyNode.add(Register.EAX, Register.EBX));
+
+    PeepholeOptimizer optimizer = optimize(asm, EnumSet.allOf(Rule.class));
+    Assert.assertEquals("Wrong assembly", "  mov ebx, [ebp + -8]\n  add eax, ebx\n", print(asm));
+    Assert.assertEquals("Wrong count", 1, optimizer.getCount(Rule.SPILL));
+  }
+
+  @Test
+  public void pushTemporary() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.push(Register.EAX));
+    asm.addChild(AssemblyNode.movFromMem(Register.EBX, Register.EAX, -4));
+    asm.addChild(AssemblyNode.mov(Register.EAX, Register.ECX));
+    asm.addChild(AssemblyNode.cmp(Register.EAX, Register.EBX));
+    asm.addChild(AssemblyNode.j(Condition.GE, CodeGenUtils.EXCEPTION));
+    asm.addChild(AssemblyNode.pop(Register.EBX));
+    asm.addChild(AssemblyNode.add(Register.EAX, Register.EBX));
+    asm.addChild(AssemblyNode.RET);
+
+    optimize(asm, EnumSet.of(Rule.PUSH_TEMPORARY));
+    Assert.assertEquals("Wrong assembly", "  mov edx, eax\n  mov ebx, [eax + -4]\n  mov eax, ecx\n  cmp eax, ebx\n"
+        + "  jge __exception\n  mov ebx, edx\n  add eax, ebx\n  ret\n", print(asm));
+  }
+
+  @Test
+  public void variableSlotsKept() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.pushSlot(Register.EAX), "var t");
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, 12), "b");
+    asm.addChild(AssemblyNode.movToMem(Register.EBP, Register.EAX, 8), "a");
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, -8), "t");
+    asm.addChild(AssemblyNode.movToMem(Register.EBP, Register.EAX, 12), "b");
+    asm.addChild(AssemblyNode.popSlot(Register.EBX), "clear t");
+    asm.addChild(AssemblyNode.pushSlot(Register.EAX), "var u");
+    asm.addChild(AssemblyNode.popSlot(Register.EBX), "clear u");
+    asm.addChild(AssemblyNode.RET);
+    String before = print(asm);
+
+    optimize(asm, EnumSet.of(Rule.PUSH_POP, Rule.SPILL, Rule.PUSH_MOVE_POP, Rule.PUSH_TEMPORARY));
+    Assert.assertEquals("The slots of t and u are used", before, print(asm));
+  }
+
+  @Test
+  public void temporaryKeptOverFrame() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.push(Register.EAX));
+    asm.addChild(AssemblyNode.movFromMem(Register.EAX, Register.EBP, -4));
+    asm.addChild(AssemblyNode.add(Register.EAX, 1));
+    asm.addChild(AssemblyNode.pop(Register.EBX));
+    asm.addChild(AssemblyNode.RET);
+    String before = print(asm);
+
+    optimize(asm, EnumSet.of(Rule.PUSH_TEMPORARY));
+    Assert.assertEquals("The window reads through ebp", before, print(asm));
+  }
+
+  @Test
+  public void branchOnCondition() {
+    AssemblyNode asm = conditional(AssemblyNode.mov(Register.EAX, 2));
+    optimize(asm, EnumSet.of(Rule.BRANCH_ON_CONDITION));
+    Assert.assertEquals("Wrong assembly", "  cmp eax, ebx\n  jge .else\n  mov eax, 1\n.else:\n  mov eax, 2\n",
+        print(asm));
+  }
+
+  @Test
+  public void conditionKeptWhenLive() {
+    AssemblyNode asm = conditional(AssemblyNode.RET);
+    String before = print(asm);
+
+    PeepholeOptimizer optimizer = optimize(asm, EnumSet.of(Rule.BRANCH_ON_CONDITION));
+    Assert.assertEquals("The boolean is returned", before, print(asm));
+    Assert.assertEquals("Wrong count", 0, optimizer.getCount(Rule.BRANCH_ON_CONDITION));
+  }
+
+  @Test
+  public void jumpsAndUnreachable() {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.j(Condition.E, ".a"));
+    asm.addChild(AssemblyNode.jmp(".b"));
+    asm.addChild(AssemblyNode.pop(Register.EBX), "clear x");
+    asm.addChild(AssemblyNode.label(".b"));
+    asm.addChild(AssemblyNode.RET);
+    asm.addChild(AssemblyNode.label(".a"));
+    asm.addChild(AssemblyNode.jmp(".c"));
+    asm.addChild(AssemblyNode.label(".c"));
+    asm.addChild(AssemblyNode.imul(Register.EAX, 8));
+    asm.addChild(AssemblyNode.RET);
+
+    optimize(asm, EnumSet.allOf(Rule.class));
+    Assert.assertEquals("Wrong assembly", "  je .c\n.b:\n  ret\n.a:\n.c:\n  shl eax, 3\n  ret\n", print(asm));
+  }
+
+  @Test
+  public void parseRules() {
+    Assert.assertEquals("Wrong rules", EnumSet.of(Rule.PUSH_POP, Rule.STRENGTH_REDUCTION),
+        PeepholeOptimizer.parse("strength,push-pop"));
+    Assert.assertEquals("Wrong rules", EnumSet.noneOf(Rule.class), PeepholeOptimizer.parse("none"));
+    Assert.assertEquals("Wrong rules", EnumSet.allOf(Rule.class), PeepholeOptimizer.parse("all"));
+    Assert.assertEquals("Wrong format", "push-pop,strength",
+        PeepholeOptimizer.format(PeepholeOptimizer.parse("strength,push-pop")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownRule() {
+    PeepholeOptimizer.parse("push-pop,nothing");
+  }
+
+  /**
+   * @return the code for if (eax < ebx) eax = 1; followed by the given instruction
+   */
+  private static AssemblyNode conditional(AssemblyNode after) {
+    AssemblyNode asm = new AssemblyNode();
+    asm.addChild(AssemblyNode.cmp(Register.EAX, Register.EBX));
+    asm.addChild(AssemblyNode.mov(Register.EAX, 0));
+    asm.addChild(AssemblyNode.set(Condition.L, Register.AL));
+    asm.addChild(AssemblyNode.cmp(Register.EAX, 1));
+    asm.addChild(AssemblyNode.j(Condition.NE, ".else"));
+    asm.addChild(AssemblyNode.mov(Register.EAX, 1));
+    asm.addChild(AssemblyNode.label(".else"));
+    asm.addChild(after);
+    return asm;
+  }
+
+  private static PeepholeOptimizer optimize(AssemblyNode asm, EnumSet<Rule> rules) {
+    PeepholeOptimizer optimizer = new PeepholeOptimizer(rules, Collections.singleton(CodeGenUtils.EXCEPTION));
+    optimizer.optimize(asm);
+    return optimizer;
+  }
+
+  private static String print(AssemblyNode asm) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream stream = new PrintStream(bytes);
+    asm.print(stream);
+    stream.close();
+    return bytes.toString();
+  }
+
+}
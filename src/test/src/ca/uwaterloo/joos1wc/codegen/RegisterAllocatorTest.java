@@ -0,0 +1,128 @@
+package ca.uwaterloo.joos1wc.codegen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.E2ETestHelper;
+
+public class RegisterAllocatorTest {
+  private File workingDir;
+  private List<String> args;
+
+  @Before
+  public void setup() throws Exception {
+    workingDir = E2ETestHelper.createWorkingDir("RegisterAllocatorTest");
+    args = new ArrayList<String>();
+    args.addAll(E2ETestHelper.getDirectoryStructure(E2ETestHelper.STDLIB_DIR));
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    E2ETestHelper.recursivelyDelete(workingDir.toPath());
+  }
+
+  @Test
+  public void hotVariablesInRegisters() throws Exception {
+    String assembly = compileUnoptimized("public class Main { public Main() {}\n"
+        + "  public static int sum(int n) {\n"
+        + "    int once = 3;\n"
+        + "    int total = 0;\n"
+        + "    for (int i = 0; i < n; i = i + 1) { total = total + i; }\n"
+        + "    return total + once;\n"
+        + "  }\n"
+        + "  public static int test() { return Main.sum(10) + 75; }\n}\n");
+
+    Assert.assertTrue("The loop variable should be in a register", assembly.contains(", eax ; var int i"));
+    Assert.assertTrue("The parameter should be loaded into a register",
+        assembly.contains("mov esi, [ebp + 8] ; int n"));
+    Assert.assertTrue("A variable used once stays on the stack", assembly.contains("push eax ; var int once"));
+    Assert.assertTrue("The registers should be restored on return",
+        assembly.contains("mov esi, [ebp + -4] ; restore"));
+  }
+
+  @Test
+  public void spillOnPressure() throws Exception {
+    String assembly = compileUnoptimized("public class Main { public Main() {}\n"
+        + "  public static int test() {\n"
+        + "    int a = 1; int b = 2; int c = 3; int d = 4;\n"
+        + "    while (a < 100) { a = a + b + c + c + d + d; }\n"
+        + "    return a + b;\n"
+        + "  }\n}\n");
+
+    Assert.assertTrue("The least used variable should be spilled", assembly.contains("push eax ; var int b"));
+    for (String var : new String[] { "a", "c", "d" }) {
+      Assert.assertTrue(var + " should be in a register", assembly.contains(", eax ; var int " + var));
+    }
+  }
+
+  @Test
+  public void variableSlotsInLoop() throws Exception {
+    String source = "public class Main { public int v; public Main() { v = 1000; }\n"
+        + "  public int swap(int a, int b, int c) {\n"
+        + "    int i = 0;\n"
+        + "    while (i < 5) { int t = a; a = b; b = c; c = t; i = i + 1; }\n"
+        + "    return a * 100 + b * 10 + c + v;\n"
+        + "  }\n"
+        + "  public static int test() { Main o = new Main(); return o.swap(1, 2, 3) - 1000; }\n}\n";
+
+    // 312, as an exit status
+    assertExitStatus(56, source);
+  }
+
+  @Test
+  public void registersAcrossScopes() throws Exception {
+    String source = "public class Main { public Main() {}\n"
+        + "  public static int mix(int x, int y) {\n"
+        + "    int k = 0;\n"
+        + "    while (k < 3) { int t = x; x = y; y = t + k; k = k + 1; }\n"
+        + "    return x * 10 + y;\n"
+        + "  }\n"
+        + "  public static int test() {\n"
+        + "    int total = 0;\n"
+        + "    for (int i = 0; i < 4; i = i + 1) {\n"
+        + "      int a = i;\n"
+        + "      { int b = a * 2; int c = b + 1; total = total + Main.mix(b, c); }\n"
+        + "      int d = a + 1;\n"
+        + "      while (d > 0) { int e = d; total = total + e; d = d - 1; }\n"
+        + "    }\n"
+        + "    return total;\n"
+        + "  }\n}\n";
+
+    assertExitStatus(240, source);
+  }
+
+  /**
+   * Runs the program compiled with the peephole optimizer on, with the locals on the stack and in registers, and at
+   * each optimization level.
+   */
+  private void assertExitStatus(int expected, String source) throws Exception {
+    String[][] optionSets = { {}, { "--locals=registers" }, { "-O1", "--locals=registers" }, { "-O2" },
+        { "-O2", "--locals=registers" } };
+    for (String[] options : optionSets) {
+      compile(source, options);
+      Assert.assertEquals("Wrong exit status with " + Arrays.toString(options), expected,
+          E2ETestHelper.assembleAndRun(workingDir));
+    }
+  }
+
+  /**
+   * Compiles with the locals in registers and without the peephole optimizer, so the assembly is as allocated.
+   */
+  private String compileUnoptimized(String source) throws Exception {
+    return compile(source, "--locals=registers", "--peephole=none");
+  }
+
+  private String compile(String source, String... options) throws Exception {
+    List<String> allArgs = new ArrayList<String>(Arrays.asList(options));
+    allArgs.addAll(args);
+    return E2ETestHelper.compileMain(workingDir, allArgs, source);
+  }
+
+}
@@ -0,0 +1,143 @@
+package ca.uwaterloo.joos1wc.ir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.E2ETestHelper;
+
+public class IROptimizerTest {
+  private File workingDir;
+  private List<String> args;
+
+  @Before
+  public void setup() throws Exception {
+    workingDir = E2ETestHelper.createWorkingDir("IROptimizerTest");
+    args = new ArrayList<String>();
+    args.add("-O2");
+    args.add("--peephole=none");
+    args.addAll(E2ETestHelper.getDirectoryStructure(E2ETestHelper.STDLIB_DIR));
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    E2ETestHelper.recursivelyDelete(workingDir.toPath());
+  }
+
+  @Test
+  public void constants() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public static int test() {\n"
+        + "    int x = 6;\n"
+        + "    int y = x * 7;\n"
+        + "    if (y == 42) { return y + 81; }\n"
+        + "    return 0;\n"
+        + "  }\n}\n", "test");
+
+    Assert.assertTrue("The value should be folded", method.contains("mov eax, 123"));
+    Assert.assertFalse("The multiplication should be folded", method.contains("imul"));
+    Assert.assertFalse("The branch should be folded", method.contains("cmp"));
+  }
+
+  @Test
+  public void commonSubexpressions() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public static int square(int a, int b) { return (a + b) * (a + b); }\n"
+        + "  public static int test() { return Main.square(5, 6) + 2; }\n}\n", "square");
+
+    Assert.assertEquals("The sum should be computed once", 1, count(method, "  add "));
+  }
+
+  @Test
+  public void loopInvariants() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public static int sum(int a, int b, int n) {\n"
+        + "    int total = 0;\n"
+        + "    for (int i = 0; i < n; i = i + 1) { total = total + a * b; }\n"
+        + "    return total;\n"
+        + "  }\n"
+        + "  public static int test() { return Main.sum(3, 4, 10) + 3; }\n}\n", "sum");
+
+    Assert.assertEquals("The product should be computed once", 1, count(method, "imul"));
+    Assert.assertTrue("The product should be computed before the loop",
+        method.indexOf("imul") < method.indexOf("$Block:"));
+  }
+
+  @Test
+  public void deadCode() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public static int test() {\n"
+        + "    int unused = 0;\n"
+        + "    for (int i = 0; i < 10; i = i + 1) { unused = unused + i; }\n"
+        + "    return 123;\n"
+        + "  }\n}\n", "test");
+
+    Assert.assertEquals("Only the loop variable should be added to", 1, count(method, "  add "));
+  }
+
+  @Test
+  public void boundsChecks() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public static int sum(int[] a) {\n"
+        + "    int total = 0;\n"
+        + "    for (int i = 0; i < a.length; i = i + 1) { total = total + a[i]; }\n"
+        + "    int[] b = new int[4];\n"
+        + "    b[3] = total;\n"
+        + "    return b[3] + a[total];\n"
+        + "  }\n"
+        + "  public static int test() { return Main.sum(new int[3]) + 123; }\n}\n", "sum");
+
+    Assert.assertEquals("Only the index that is not known to be in bounds should be checked", 1,
+        count(method, "jge __exception"));
+  }
+
+  @Test
+  public void nullChecks() throws Exception {
+    String method = compile("public class Main { public Main() {}\n"
+        + "  public int get() { return 41; }\n"
+        + "  public static int call(Main other) { return other.get() + other.get(); }\n"
+        + "  public int test() { return this.get() + new Main().get() + Main.call(this); }\n}\n", "call");
+
+    Assert.assertEquals("The receiver should only be checked at the first call", 3, count(method, "je __exception"));
+  }
+
+  @Test
+  public void sameCodeEveryTime() throws Exception {
+    String source = "public class Main { public Main() {}\n"
+        + "  public static int loops(int n) {\n"
+        + "    int a = 1; int b = 2; int c = 3; int d = 4; int e = 5;\n"
+        + "    for (int i = 0; i < n; i = i + 1) {\n"
+        + "      for (int j = 0; j < i; j = j + 1) { a = b + c; b = c + d; c = d + e; d = e + a; e = a + b; }\n"
+        + "      for (int k = 0; k < i; k = k + 1) { e = d + c; d = c + b; c = b + a; }\n"
+        + "    }\n"
+        + "    return a + b + c + d + e;\n"
+        + "  }\n"
+        + "  public static int test() { return Main.loops(3); }\n}\n";
+
+    String method = compile(source, "loops");
+    for (int i = 0; i < 8; i++) {
+      Assert.assertEquals("Compiling again should give the same code", method, compile(source, "loops"));
+    }
+  }
+
+  private String compile(String source, String method) throws Exception {
+    String assembly = E2ETestHelper.compileMain(workingDir, args, source);
+    int start = assembly.indexOf("\nMMain." + method);
+    Assert.assertTrue("Missing method " + method, start >= 0);
+    return assembly.substring(start, assembly.indexOf("; END method", start));
+  }
+
+  private static int count(String text, String part) {
+    int count = 0;
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+}
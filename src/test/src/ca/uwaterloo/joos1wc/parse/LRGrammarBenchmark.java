@@ -0,0 +1,51 @@
+package ca.uwaterloo.joos1wc.parse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Compares the startup cost of loading the parser from the lr1 text with loading the precompiled binary table. Both
+ * are read from memory so that only the loading itself is timed. Run with
+ * <code>ant benchmark -Dbenchmark=ca.uwaterloo.joos1wc.parse.LRGrammarBenchmark</code>.
+ */
+public class LRGrammarBenchmark {
+  private static final String GRAMMAR_FILE = "tools/joos1w.lalr1";
+  private static final int DEFAULT_ITERATIONS = 20;
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+    byte[] text = Files.readAllBytes(new File(GRAMMAR_FILE).toPath());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LRParseTable.fromStartState(new LRGrammar().fromFile(new ByteArrayInputStream(text))).writeTo(out);
+    byte[] binary = out.toByteArray();
+
+    System.out.printf("grammar text %d bytes, binary table %d bytes%n", text.length, binary.length);
+
+    // the first load is what a single compiler run pays, before the JIT has seen any of it
+    long start = System.nanoTime();
+    new LRGrammar().fromFile(new ByteArrayInputStream(text));
+    long firstText = System.nanoTime() - start;
+    start = System.nanoTime();
+    LRParseTable.readFrom(new ByteArrayInputStream(binary));
+    long firstBinary = System.nanoTime() - start;
+
+    long totalText = 0;
+    long totalBinary = 0;
+    for (int i = 0; i < iterations; i++) {
+      start = System.nanoTime();
+      LRParseTable.fromStartState(new LRGrammar().fromFile(new ByteArrayInputStream(text)));
+      totalText += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      LRParseTable.readFrom(new ByteArrayInputStream(binary));
+      totalBinary += System.nanoTime() - start;
+    }
+
+    System.out.printf("%-8s %12s %12s%n", "", "first (ms)", "mean (ms)");
+    System.out.printf("%-8s %12.2f %12.2f%n", "text", firstText / 1e6, totalText / 1e6 / iterations);
+    System.out.printf("%-8s %12.2f %12.2f%n", "binary", firstBinary / 1e6, totalBinary / 1e6 / iterations);
+  }
+}
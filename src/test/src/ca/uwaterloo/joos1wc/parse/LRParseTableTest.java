@@ -0,0 +1,147 @@
+package ca.uwaterloo.joos1wc.parse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.ast.TreeNode;
+import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+import ca.uwaterloo.joos1wc.diagnostics.InvalidGrammarException;
+import ca.uwaterloo.joos1wc.diagnostics.LRException;
+import ca.uwaterloo.joos1wc.scanner.Lexer;
+import ca.uwaterloo.joos1wc.scanner.TableLexer;
+import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.Token;
+import ca.uwaterloo.joos1wc.scanner.TokenKind;
+
+public class LRParseTableTest {
+  private static final String GRAMMAR_FILE = "tools/joos1w.lalr1";
+  private static final String RESOURCES_DIR = "test/resources";
+
+  static LRParseState startState;
+  static LRParseTable table;
+  static Lexer lexer;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    startState = new LRGrammar().fromFile(new FileInputStream(GRAMMAR_FILE));
+    table = LRParseTable.fromStartState(startState);
+
+    List<DFAutomaton> dfas = new ArrayList<DFAutomaton>();
+    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
+      dfas.add(kind.getDFAutomaton());
+    }
+    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
+    ignore.add(TerminalTokenKind.WHITESPACE);
+    ignore.add(TerminalTokenKind.COMMENT);
+    lexer = new TableLexer(dfas, ignore);
+  }
+
+  @Test
+  public void tableShape() {
+    Assert.assertTrue("Start state should shift", table.isShiftState(0));
+    Assert.assertTrue("Terminals should be numbered first", table.getSymbolCount() > TerminalTokenKind.values().length);
+    Assert.assertEquals("Terminals should be numbered by ordinal", TerminalTokenKind.CLASS.ordinal(),
+        table.getSymbol(TerminalTokenKind.CLASS));
+    for (int rule = 0; rule < table.getRuleCount(); rule++) {
+      Assert.assertEquals("Wrong rule length", table.getRule(rule).getRHS().size(), table.getRuleLength(rule));
+      Assert.assertEquals("Wrong rule symbol", table.getSymbol(table.getRule(rule).getLHS()),
+          table.getRuleSymbol(rule));
+    }
+  }
+
+  @Test
+  public void sameTreesForAllResources() throws Exception {
+    assertSameTrees(new LRParser(table));
+  }
+
+  @Test
+  public void binaryRoundTrip() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    table.writeTo(out);
+    LRParseTable loaded = LRParseTable.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+    Assert.assertEquals("Wrong state count", table.getStateCount(), loaded.getStateCount());
+    Assert.assertEquals("Wrong symbol count", table.getSymbolCount(), loaded.getSymbolCount());
+    Assert.assertEquals("Wrong rule count", table.getRuleCount(), loaded.getRuleCount());
+    for (int state = 0; state < table.getStateCount(); state++) {
+      Assert.assertEquals("Wrong shift flag", table.isShiftState(state), loaded.isShiftState(state));
+      for (int symbol = 0; symbol < table.getSymbolCount(); symbol++) {
+        Assert.assertEquals("Wrong action", table.getAction(state, symbol), loaded.getAction(state, symbol));
+      }
+    }
+    assertSameTrees(new LRParser(loaded));
+  }
+
+  @Test(expected = InvalidGrammarException.class)
+  public void binaryRejectsText() throws Exception {
+    LRParseTable.readFrom(new FileInputStream(GRAMMAR_FILE));
+  }
+
+  private void assertSameTrees(LRParser parser) throws Exception {
+    List<File> sources = new ArrayList<File>();
+    findSources(new File(RESOURCES_DIR), sources);
+    Assert.assertFalse("No test resources found", sources.isEmpty());
+
+    LRParser reference = new LRParser(startState);
+    for (File source : sources) {
+      List<Token> tokens;
+      try {
+        tokens = lexer.lex(source);
+      } catch (Exception e) {
+        continue; // only parsing is being compared
+      }
+
+      TreeNode expected = null;
+      String expectedError = null;
+      try {
+        expected = reference.parse(tokens);
+      } catch (LRException | RuntimeException e) {
+        // AST construction errors surface from the parser as runtime exceptions
+        expectedError = e.getClass() + ": " + e.getMessage();
+      }
+
+      TreeNode actual = null;
+      String actualError = null;
+      try {
+        actual = parser.parse(tokens);
+      } catch (LRException | RuntimeException e) {
+        actualError = e.getClass() + ": " + e.getMessage();
+      }
+
+      Assert.assertEquals("Wrong error for " + source, expectedError, actualError);
+      if (expected != null) {
+        Assert.assertEquals("Wrong root node for " + source, expected.getClass(), actual.getClass());
+        Assert.assertEquals("Wrong root symbol for " + source, expected.token.getKind().name(),
+            actual.token.getKind().name());
+        Assert.assertEquals("Wrong root image for " + source, expected.token.getImage(), actual.token.getImage());
+      }
+    }
+  }
+
+  private static void findSources(File dir, List<File> sources) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        findSources(child, sources);
+      } else if (child.getName().endsWith(".java")) {
+        sources.add(child);
+      }
+    }
+  }
+
+}
@@ -265,4 +265,48 @@ public class LRParserTest {
     TreeNode result = parser.parse(tokens);
     Assert.assertNotNull("Parse should have succeeded", result);
   }
+  
+  @Test
+  public void parseTable() throws LRException {
+    File f = new File("/tmp");
+    int line = 10;
+    int pos = 100;
+    Token one = new Token(f, id, "var1", line, pos);
+    Token two = new Token(f, plus, "+", line, pos+4);
+    Token three = new Token(f, id, "var2", line, pos+5);
+    Token four = new Token(f, TerminalTokenKind.EOF, "$", line, pos+9);
+    List<Token> tokens = Arrays.asList(one, two, three, four);
+    
+    TreeNode expected = parser.parse(tokens);
+    TreeNode result = new LRParser(LRParseTable.fromStartState(states[0])).parse(tokens);
+    Assert.assertNotNull("Parse should have succeeded", result);
+    Assert.assertEquals("Wrong symbol at the root", expected.token.getKind(), result.token.getKind());
+    Assert.assertEquals("Lexeme in token is wrong", expected.token.getImage(), result.token.getImage());
+    Assert.assertEquals("Line in token is wrong", line, result.token.getLineNumber());
+    Assert.assertEquals("Position in token is wrong", pos, result.token.getPosition());
+  }
+  
+  @Test
+  public void parseTableShiftFailure() {
+    File f = new File("/tmp");
+    Token one = new Token(f, id, "var1", 1, 1);
+    Token two = new Token(f, id, "var2", 1, 6);
+    Token three = new Token(f, TerminalTokenKind.EOF, "$", 1, 10);
+    List<Token> tokens = Arrays.asList(one, two, three);
+    
+    String expected = null;
+    try {
+      parser.parse(tokens);
+    } catch (LRException pe) {
+      expected = pe.getMessage();
+    }
+    String actual = null;
+    try {
+      new LRParser(LRParseTable.fromStartState(states[0])).parse(tokens);
+    } catch (LRException pe) {
+      actual = pe.getMessage();
+    }
+    Assert.assertNotNull("Parse should have failed", expected);
+    Assert.assertEquals("Table parser should fail the same way", expected, actual);
+  }
 }
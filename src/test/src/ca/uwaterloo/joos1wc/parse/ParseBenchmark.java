@@ -0,0 +1,88 @@
+package ca.uwaterloo.joos1wc.parse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+import ca.uwaterloo.joos1wc.scanner.Lexer;
+import ca.uwaterloo.joos1wc.scanner.TableLexer;
+import ca.uwaterloo.joos1wc.scanner.TerminalTokenKind;
+import ca.uwaterloo.joos1wc.scanner.Token;
+import ca.uwaterloo.joos1wc.scanner.TokenKind;
+
+/**
+ * Times parsing and AST construction over the standard library, on the parse state graph and on the parse table. The
+ * sources are lexed once up front so only the parser is timed. Run with
+ * <code>ant benchmark -Dbenchmark=ca.uwaterloo.joos1wc.parse.ParseBenchmark</code>.
+ */
+public class ParseBenchmark {
+  private static final String GRAMMAR_FILE = "tools/joos1w.lalr1";
+  private static final String STDLIB_DIR = "test/resources/stdlib/5.0";
+  private static final int DEFAULT_ITERATIONS = 200;
+  private static final int WARMUP_ITERATIONS = 50;
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+    List<DFAutomaton> dfas = new ArrayList<DFAutomaton>();
+    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
+      dfas.add(kind.getDFAutomaton());
+    }
+    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
+    ignore.add(TerminalTokenKind.WHITESPACE);
+    ignore.add(TerminalTokenKind.COMMENT);
+    Lexer lexer = new TableLexer(dfas, ignore);
+
+    List<File> sources = new ArrayList<File>();
+    findSources(new File(STDLIB_DIR), sources);
+    List<List<Token>> allTokens = new ArrayList<List<Token>>(sources.size());
+    int tokenCount = 0;
+    for (File source : sources) {
+      List<Token> tokens = lexer.lex(source);
+      allTokens.add(tokens);
+      tokenCount += tokens.size();
+    }
+    System.out.printf("%d files, %d tokens%n", sources.size(), tokenCount);
+
+    LRParseState startState = new LRGrammar().fromFile(new FileInputStream(GRAMMAR_FILE));
+    LRParser states = new LRParser(startState);
+    LRParser table = new LRParser(LRParseTable.fromStartState(startState));
+
+    run(states, allTokens, WARMUP_ITERATIONS);
+    run(table, allTokens, WARMUP_ITERATIONS);
+
+    System.out.printf("%-8s %14s%n", "", "stdlib (ms)");
+    System.out.printf("%-8s %14.3f%n", "states", run(states, allTokens, iterations) / 1e6 / iterations);
+    System.out.printf("%-8s %14.3f%n", "table", run(table, allTokens, iterations) / 1e6 / iterations);
+  }
+
+  private static long run(LRParser parser, List<List<Token>> allTokens, int iterations) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (List<Token> tokens : allTokens) {
+        parser.parse(tokens);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void findSources(File dir, List<File> sources) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        findSources(child, sources);
+      } else if (child.getName().endsWith(".java")) {
+        sources.add(child);
+      }
+    }
+  }
+}
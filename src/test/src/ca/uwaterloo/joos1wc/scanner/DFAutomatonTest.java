@@ -53,4 +53,15 @@ public class DFAutomatonTest {
     
     Assert.assertNull("Token should be null", t);
   }
+  
+  @Test
+  public void transitionTable() {
+    int[] table = dfa.getTransitionTable();
+    
+    Assert.assertEquals("Table should cover every state", dfa.getStates().length * DFAutomaton.ALPHABET_SIZE,
+        table.length);
+    Assert.assertEquals("Start state should move on the first letter", 1, table['e']);
+    Assert.assertEquals("Start state shouldn't move on other letters", DFAutomaton.NO_TRANSITION, table['x']);
+    Assert.assertEquals("Second state should move on the second letter", 2, table[DFAutomaton.ALPHABET_SIZE + 'x']);
+  }
 }
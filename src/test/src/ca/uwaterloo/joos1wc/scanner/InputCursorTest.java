@@ -90,6 +90,32 @@ public class InputCursorTest {
     }
   }
 
+  @Test
+  public void testLineLookup() throws IOException {
+    String testString = "ab\n\ncd\n";
+    CharacterStream inputCursor = getInputCursor(testString);
+    inputCursor.next();
+
+    int[] expectedLine = new int[] { 1, 1, 1, 2, 3, 3, 3, 4 };
+    for (int i = 0; i < expectedLine.length; i++) {
+      Assert.assertEquals("Wrong line for offset " + i, expectedLine[i], inputCursor.getLine(i));
+    }
+
+    inputCursor.advance(5);
+    Assert.assertEquals(3, inputCursor.getCurrentLine());
+    Assert.assertEquals(2, inputCursor.getLinePosition());
+    Assert.assertEquals('d', inputCursor.next());
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    CharacterStream inputCursor = getInputCursor("");
+
+    Assert.assertTrue("Empty input should be at the end", inputCursor.isEndOfInput());
+    Assert.assertEquals(1, inputCursor.getCurrentLine());
+    Assert.assertEquals(1, inputCursor.getLinePosition());
+  }
+
   private CharacterStream getInputCursor(String s) {
     return new CharacterStream(new ByteArrayInputStream(s.getBytes(StandardCharsets.US_ASCII)));
   }
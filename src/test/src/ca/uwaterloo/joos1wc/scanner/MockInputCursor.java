@@ -2,6 +2,7 @@ package ca.uwaterloo.joos1wc.scanner;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import ca.uwaterloo.joos1wc.utility.CharacterStream;
 
@@ -14,6 +15,7 @@ public class MockInputCursor extends CharacterStream {
   public int length = 0;
   public int advanced = 0;
   InputStream mockInput;
+  byte[] read = new byte[0];
   
   public MockInputCursor(InputStream input) throws IOException {
     super(input);
@@ -46,6 +48,19 @@ public class MockInputCursor extends CharacterStream {
   
   @Override
   public char next() throws IOException {
-    return (char)mockInput.read();
+    char c = (char)mockInput.read();
+    read = Arrays.copyOf(read, read.length + 1);
+    read[read.length - 1] = (byte)c;
+    return c;
+  }
+  
+  @Override
+  public byte[] getBuffer() {
+    return read;
+  }
+  
+  @Override
+  public int getStartPosition() {
+    return 0;
   }
 }
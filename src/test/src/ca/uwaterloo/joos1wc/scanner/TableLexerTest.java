@@ -0,0 +1,132 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+import ca.uwaterloo.joos1wc.diagnostics.LexException;
+
+public class TableLexerTest {
+  private static final String RESOURCES_DIR = "test/resources";
+
+  Lexer reference;
+  TableLexer lexer;
+
+  @Before
+  public void setup() {
+    List<DFAutomaton> dfas = new ArrayList<DFAutomaton>();
+    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
+      dfas.add(kind.getDFAutomaton());
+    }
+    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
+    ignore.add(TerminalTokenKind.WHITESPACE);
+    ignore.add(TerminalTokenKind.COMMENT);
+
+    reference = new Lexer(dfas, ignore);
+    lexer = new TableLexer(dfas, ignore);
+  }
+
+  @Test
+  public void sameTokensForAllResources() throws Exception {
+    List<File> sources = new ArrayList<File>();
+    findSources(new File(RESOURCES_DIR), sources);
+    Assert.assertFalse("No test resources found", sources.isEmpty());
+
+    for (File source : sources) {
+      assertSameTokens(source);
+    }
+  }
+
+  private void assertSameTokens(File source) throws Exception {
+    List<Token> expected = null;
+    Exception expectedError = null;
+    try {
+      expected = reference.lex(source);
+    } catch (LexException | IOException | RuntimeException e) {
+      expectedError = e;
+    }
+
+    List<Token> actual = null;
+    Exception actualError = null;
+    try {
+      actual = lexer.lex(source);
+    } catch (LexException | IOException | RuntimeException e) {
+      actualError = e;
+    }
+
+    if (expectedError != null) {
+      Assert.assertNotNull("Table lexer should fail on " + source, actualError);
+      Assert.assertEquals("Wrong error type for " + source, expectedError.getClass(), actualError.getClass());
+      if (expectedError instanceof LexException) {
+        LexException expectedLex = (LexException) expectedError;
+        LexException actualLex = (LexException) actualError;
+        Assert.assertEquals("Wrong error line for " + source, expectedLex.lineNumber, actualLex.lineNumber);
+        Assert.assertEquals("Wrong error column for " + source, expectedLex.colNumber, actualLex.colNumber);
+      }
+      return;
+    }
+
+    Assert.assertNull("Table lexer should not fail on " + source, actualError);
+    Assert.assertEquals("Wrong number of tokens in " + source, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Token e = expected.get(i);
+      Token a = actual.get(i);
+      String where = String.format("%s token %d %s", source, i, e);
+      Assert.assertEquals("Wrong kind at " + where, e.getKind(), a.getKind());
+      Assert.assertEquals("Wrong image at " + where, e.getImage(), a.getImage());
+      Assert.assertEquals("Wrong line at " + where, e.getLineNumber(), a.getLineNumber());
+      Assert.assertEquals("Wrong column at " + where, e.getPosition(), a.getPosition());
+      if (isLiteral(e.getKind())) {
+        Assert.assertTrue("Wrong literal value at " + where, Arrays.equals(e.getLiteralValue(), a.getLiteralValue()));
+      }
+    }
+  }
+
+  @Test
+  public void longestMatchWins() throws Exception {
+    File source = File.createTempFile("TableLexerTest", ".java");
+    source.deleteOnExit();
+    Files.write(source.toPath(), "a>>>=b instanceofx 0 07 \"\\101\" /**/".getBytes());
+
+    List<Token> tokens = lexer.lex(source);
+    TokenKind[] kinds = new TokenKind[] { TerminalTokenKind.ID, TerminalTokenKind.URSHIFTEQ, TerminalTokenKind.ID,
+        TerminalTokenKind.ID, TerminalTokenKind.INTLITERAL, TerminalTokenKind.INTLITERAL,
+        TerminalTokenKind.INTLITERAL, TerminalTokenKind.STRLITERAL, TerminalTokenKind.EOF };
+    Assert.assertEquals("Wrong number of tokens", kinds.length, tokens.size());
+    for (int i = 0; i < kinds.length; i++) {
+      Assert.assertEquals("Wrong kind for token " + i, kinds[i], tokens.get(i).getKind());
+    }
+    Assert.assertEquals("Wrong string literal value", "A", new String(tokens.get(7).getLiteralValue()));
+  }
+
+  private static boolean isLiteral(TokenKind kind) {
+    return kind == TerminalTokenKind.INTLITERAL || kind == TerminalTokenKind.CHARLITERAL
+        || kind == TerminalTokenKind.STRLITERAL;
+  }
+
+  private static void findSources(File dir, List<File> sources) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        findSources(child, sources);
+      } else if (child.getName().endsWith(".java")) {
+        sources.add(child);
+      }
+    }
+  }
+
+}
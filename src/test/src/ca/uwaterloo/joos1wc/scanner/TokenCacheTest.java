@@ -0,0 +1,89 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.automata.DFAutomaton;
+
+public class TokenCacheTest {
+  private TableLexer lexer;
+  private TokenCache cache;
+  private File source;
+
+  @Before
+  public void setup() throws Exception {
+    List<DFAutomaton> dfas = new ArrayList<DFAutomaton>();
+    for (TerminalTokenKind kind : TerminalTokenKind.values()) {
+      dfas.add(kind.getDFAutomaton());
+    }
+    Set<TokenKind> ignore = new HashSet<TokenKind>(2);
+    ignore.add(TerminalTokenKind.WHITESPACE);
+    ignore.add(TerminalTokenKind.COMMENT);
+    lexer = new TableLexer(dfas, ignore);
+    cache = new TokenCache();
+
+    source = File.createTempFile("TokenCacheTest", ".java");
+    Files.write(source.toPath(), "int x;".getBytes());
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    Files.delete(source.toPath());
+  }
+
+  @Test
+  public void unchangedFileIsNotLexedAgain() throws Exception {
+    List<Token> tokens = cache.lex(lexer, source);
+    Assert.assertSame("Tokens should be reused", tokens, cache.lex(lexer, source));
+    Assert.assertEquals("Wrong number of hits", 1, cache.getHits());
+    Assert.assertEquals("Wrong number of misses", 1, cache.getMisses());
+  }
+
+  @Test
+  public void changedFileIsLexedAgain() throws Exception {
+    long modified = source.lastModified();
+    List<Token> tokens = cache.lex(lexer, source);
+
+    // same length and timestamp, so only the contents tell the versions apart
+    Files.write(source.toPath(), "int y;".getBytes());
+    source.setLastModified(modified);
+    List<Token> changed = cache.lex(lexer, source);
+
+    Assert.assertNotSame("Tokens should not be reused", tokens, changed);
+    Assert.assertEquals("Wrong image", "y", changed.get(1).getImage());
+    Assert.assertEquals("Wrong number of misses", 2, cache.getMisses());
+  }
+
+  @Test
+  public void retainForgetsOtherFiles() throws Exception {
+    cache.lex(lexer, source);
+    cache.retain(new String[0]);
+    cache.lex(lexer, source);
+    Assert.assertEquals("Wrong number of misses", 2, cache.getMisses());
+  }
+
+  @Test
+  public void fingerprintIsOfLastLexedContents() throws Exception {
+    Assert.assertNull("File has not been lexed", cache.getFingerprint(source));
+    cache.lex(lexer, source);
+    byte[] fingerprint = cache.getFingerprint(source);
+    Assert.assertNotNull("File has been lexed", fingerprint);
+
+    Files.write(source.toPath(), "int y;".getBytes());
+    Assert.assertArrayEquals("Fingerprint should not change until the file is lexed", fingerprint,
+        cache.getFingerprint(source));
+    cache.lex(lexer, source);
+    Assert.assertFalse("Fingerprint should change", Arrays.equals(fingerprint, cache.getFingerprint(source)));
+  }
+
+}
@@ -0,0 +1,74 @@
+package ca.uwaterloo.joos1wc.scanner;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenTest {
+  private final File file = new File("/tmp/token");
+  private final byte[] source = "int x = 42;".getBytes();
+
+  @Test
+  public void imageFromSourceRange() {
+    Token t = new Token(file, TerminalTokenKind.ID, source, 4, 1, 1, 5, new byte[0]);
+
+    Assert.assertEquals("Wrong length", 1, t.length());
+    Assert.assertEquals("Wrong image", "x", t.getImage());
+    Assert.assertSame("Image should only be built once", t.getImage(), t.getImage());
+  }
+
+  @Test
+  public void identifierImageInterned() {
+    Token t = new Token(file, TerminalTokenKind.ID, source, 4, 1, 1, 5, new byte[0]);
+    Token other = new Token(file, TerminalTokenKind.ID, "y x".getBytes(), 2, 1, 1, 3, new byte[0]);
+
+    Assert.assertSame("Identifiers should share one image", t.getImage(), other.getImage());
+    Assert.assertSame("Identifiers should be the same as literals", "x", t.getImage());
+    Assert.assertSame("Qualified names should be interned", "java.lang.Object",
+        Names.qualify(Names.qualify("java", "lang"), new String("Object")));
+  }
+
+  @Test
+  public void intLiteralFromSourceRange() {
+    Token t = new Token(file, TerminalTokenKind.INTLITERAL, source, 8, 2, 1, 9, new byte[] { 4, 2 });
+
+    Assert.assertEquals("Wrong image", "42", t.getImage());
+    Assert.assertArrayEquals("Wrong literal value", new byte[] { 0, 0, 0, 42 }, t.getLiteralValue());
+  }
+
+  @Test
+  public void imageFromString() {
+    Token t = new Token(file, TerminalTokenKind.SEMICOLON, ";", 1, 11);
+
+    Assert.assertEquals("Wrong length", 1, t.length());
+    Assert.assertEquals("Wrong image", ";", t.getImage());
+  }
+
+  @Test
+  public void imageFromParts() {
+    Token type = new Token(file, TerminalTokenKind.INT, source, 0, 3, 1, 1, new byte[0]);
+    Token name = new Token(file, TerminalTokenKind.ID, source, 4, 1, 1, 5, new byte[0]);
+    Token empty = new Token(file, TerminalTokenKind.ID, new Token[0], -1, -1);
+    Token decl = new Token(file, TerminalTokenKind.ID, new Token[] { type, name }, 1, 1);
+    Token t = new Token(file, TerminalTokenKind.ID, new Token[] { decl, empty, name }, 1, 1);
+
+    Assert.assertEquals("Wrong empty image", "", empty.getImage());
+    Assert.assertEquals("Wrong length", "int x x".length(), t.length());
+    Assert.assertEquals("Empty parts should not add spaces", "int x x", t.getImage());
+    Assert.assertEquals("Wrong part image", "int x", decl.getImage());
+  }
+
+  @Test
+  public void imageFromRange() {
+    Token[] leaves = new Token[] { new Token(file, TerminalTokenKind.INT, source, 0, 3, 1, 1, new byte[0]),
+        new Token(file, TerminalTokenKind.ID, source, 4, 1, 1, 5, new byte[0]),
+        new Token(file, TerminalTokenKind.EQ, source, 6, 1, 1, 7, new byte[0]) };
+    Token t = new Token(file, TerminalTokenKind.ID, leaves, 1, 3, 1, 5);
+    Token empty = new Token(file, TerminalTokenKind.ID, leaves, 2, 2, -1, -1);
+
+    Assert.assertEquals("Wrong length", 3, t.length());
+    Assert.assertEquals("Wrong image", "x =", t.getImage());
+    Assert.assertEquals("Wrong empty image", "", empty.getImage());
+  }
+}
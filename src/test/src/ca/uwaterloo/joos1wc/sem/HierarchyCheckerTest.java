@@ -0,0 +1,88 @@
+package ca.uwaterloo.joos1wc.sem;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.CompilationContext;
+import ca.uwaterloo.joos1wc.E2ETestHelper;
+import ca.uwaterloo.joos1wc.Joos1Wc;
+
+public class HierarchyCheckerTest {
+  private static final int DEPTH = 200;
+
+  private File workingDir;
+  private List<String> sourceFiles;
+
+  @Before
+  public void setup() throws Exception {
+    workingDir = E2ETestHelper.createWorkingDir("HierarchyCheckerTest");
+    sourceFiles = E2ETestHelper.getDirectoryStructure(E2ETestHelper.STDLIB_DIR);
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    E2ETestHelper.recursivelyDelete(workingDir.toPath());
+  }
+
+  @Test
+  public void deepHierarchy() throws Exception {
+    // declared deepest first, so the types are not found supertypes first
+    for (int i = DEPTH - 1; i >= 0; i--) {
+      String parent = i > 0 ? String.format(" extends C%d", i - 1) : "";
+      String iparent = i > 0 ? String.format(" extends I%d", i - 1) : "";
+      write(String.format("I%d", i), String.format("public interface I%d%s { public int i%d(); }\n", i, iparent, i));
+      write(String.format("C%d", i), String.format("public abstract class C%d%s { public C%d() {} "
+          + "public int c%d() { return %d; } }\n", i, parent, i, i, i));
+    }
+    // code generation is not up to a hierarchy this deep, so stop at a type error that needs the inherited method
+    write("Main", String.format("public class Main extends C%d { public Main() {}\n"
+        + "  public static int test() { Main m = new Main(); boolean b = m.c0(); return 123; }\n}\n", DEPTH - 1));
+
+    CompilationContext context = new CompilationContext(workingDir, args());
+    Assert.assertNotEquals("Compilation should fail", 0, Joos1Wc.compile(context));
+    Assert.assertTrue("Only the type error should be reported",
+        context.getError().getMessage().startsWith("The variable 'b'"));
+  }
+
+  @Test
+  public void indirectSupertypesAssignable() throws Exception {
+    write("I0", "public interface I0 { public int i0(); }\n");
+    write("I1", "public interface I1 extends I0 { }\n");
+    write("A", "public class A implements I1 { public A() {} public int i0() { return 123; } }\n");
+    write("B", "public class B extends A { public B() {} }\n");
+    write("Main", "public class Main { public Main() {}\n"
+        + "  public static int test() { B b = new B(); A a = b; I1 i1 = b; I0 i0 = i1; return i0.i0(); }\n}\n");
+
+    CompilationContext context = new CompilationContext(workingDir, args());
+    Assert.assertEquals("Indirect supertypes should be assignable", 0, Joos1Wc.compile(context));
+  }
+
+  @Test
+  public void cycleReported() throws Exception {
+    write("A", "public class A extends C { public A() {} }\n");
+    write("B", "public class B extends A { public B() {} }\n");
+    write("C", "public class C extends B { public C() {} }\n");
+    write("Main", "public class Main extends A { public Main() {} public static int test() { return 123; } }\n");
+
+    CompilationContext context = new CompilationContext(workingDir, args());
+    Assert.assertNotEquals("Compilation should fail", 0, Joos1Wc.compile(context));
+    Assert.assertTrue("A cycle should be reported", context.getError().getMessage().startsWith("Cycle detected"));
+  }
+
+  private void write(String name, String source) throws Exception {
+    File program = new File(workingDir, name + ".java");
+    Files.write(program.toPath(), source.getBytes());
+    sourceFiles.add(program.getPath());
+  }
+
+  private String[] args() {
+    return sourceFiles.toArray(new String[sourceFiles.size()]);
+  }
+
+}
@@ -0,0 +1,27 @@
+package ca.uwaterloo.joos1wc.sem;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.analysis.ResolutionCache;
+
+public class ResolutionCacheTest {
+
+  @Test
+  public void cachesMissingResults() {
+    ResolutionCache<String, String> cache = new ResolutionCache<>();
+    Assert.assertFalse("Nothing should be cached yet", cache.contains("foo"));
+
+    cache.put("foo", null);
+    cache.put("bar", "baz");
+    Assert.assertTrue("Missing result should be cached", cache.contains("foo"));
+    Assert.assertNull("Missing result should be null", cache.get("foo"));
+    Assert.assertTrue("Result should be cached", cache.contains("bar"));
+    Assert.assertEquals("Wrong result returned", "baz", cache.get("bar"));
+
+    cache.clear();
+    Assert.assertFalse("Results should be forgotten", cache.contains("foo"));
+    Assert.assertNull("Results should be forgotten", cache.get("bar"));
+  }
+
+}
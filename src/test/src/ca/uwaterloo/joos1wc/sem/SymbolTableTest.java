@@ -71,4 +71,39 @@ public class SymbolTableTest {
     Assert.assertNull("Should not have found symbol " + foo, resFoo2);
   }
 
+  @Test
+  public void getShadowed() {
+    INamedEntityNode fooVar = new MockNamedEntityNode(foo, EntityType.VARIABLE);
+    SymbolTable shadow = new SymbolTable(leaf0, foo, fooVar);
+    Assert.assertEquals("Should have found the most recent symbol", fooVar, shadow.get(foo));
+    Assert.assertEquals("Should have found the shadowed symbol", fooNode, shadow.get(foo, EntityType.PACKAGE));
+    Assert.assertEquals("Wrong symbol returned", fooVar, shadow.get(foo, EntityType.VARIABLE));
+    Assert.assertNull("Should not have found symbol " + foo, shadow.get(foo, EntityType.FIELD));
+    Assert.assertEquals("Earlier tables should not see later symbols", fooNode, leaf0.get(foo));
+    Assert.assertNull("Should not have found symbol " + foo, leaf0.get(foo, EntityType.VARIABLE));
+  }
+
+  @Test
+  public void getManySymbols() {
+    // "Aa" and "BB" have the same hash code
+    String[] prefixes = { "Aa", "BB", "x" };
+    SymbolTable table = leaf0;
+    SymbolTable[] tables = new SymbolTable[1000];
+    for (int i = 0; i < tables.length; i++) {
+      String name = prefixes[i % prefixes.length] + (i / prefixes.length);
+      table = new SymbolTable(table, name, new MockNamedEntityNode(name, EntityType.VARIABLE));
+      tables[i] = table;
+    }
+    for (int i = 0; i < tables.length; i++) {
+      String name = prefixes[i % prefixes.length] + (i / prefixes.length);
+      Assert.assertEquals("Wrong symbol returned", name, table.get(name).getName());
+      Assert.assertEquals("Wrong symbol returned", name, tables[i].get(name).getName());
+      if (i > 0) {
+        Assert.assertNull("Should not have found later symbol " + name, tables[i - 1].get(name));
+      }
+    }
+    Assert.assertEquals("Should have found symbol " + bar, barNode, table.get(bar));
+    Assert.assertNull("Should not have found symbol Aa", table.get("Aa"));
+  }
+
 }
@@ -0,0 +1,63 @@
+package ca.uwaterloo.joos1wc.sem;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.joos1wc.CompilationContext;
+import ca.uwaterloo.joos1wc.E2ETestHelper;
+import ca.uwaterloo.joos1wc.Joos1Wc;
+
+public class TypeCheckerTest {
+  private static final int METHODS = 32;
+
+  private File workingDir;
+  private String[] args;
+
+  @Before
+  public void setup() throws Exception {
+    workingDir = E2ETestHelper.createWorkingDir("TypeCheckerTest");
+
+    // every method has a type error, so the one reported depends on the order the methods are checked in
+    StringBuilder sb = new StringBuilder("public class Main { public Main() {}\n");
+    for (int i = 0; i < METHODS; i++) {
+      sb.append(String.format("  public int m%d() { return true; }\n", i));
+    }
+    sb.append("  public static int test() { return 123; }\n}\n");
+    File program = new File(workingDir, "Main.java");
+    Files.write(program.toPath(), sb.toString().getBytes());
+
+    List<String> sourceFiles = new ArrayList<String>();
+    sourceFiles.add(program.getPath());
+    sourceFiles.addAll(E2ETestHelper.getDirectoryStructure(E2ETestHelper.STDLIB_DIR));
+    args = sourceFiles.toArray(new String[sourceFiles.size()]);
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    E2ETestHelper.recursivelyDelete(workingDir.toPath());
+  }
+
+  @Test
+  public void errorDoesNotDependOnThreads() {
+    String expected = check(1);
+    Assert.assertNotNull("A type error should have been reported", expected);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals("Wrong error reported", expected, check(8));
+    }
+  }
+
+  private String check(int threads) {
+    CompilationContext context = new CompilationContext(workingDir, args);
+    context.threads = threads;
+    Assert.assertNotEquals("Compilation should fail", 0, Joos1Wc.compile(context));
+    return context.getError().getMessage();
+  }
+
+}